@@ -26,6 +26,7 @@
 import com.formdev.flatlaf.FlatDarculaLaf;
 import com.formdev.flatlaf.FlatDarkLaf;
 import com.formdev.flatlaf.FlatLightLaf;
+import deformablemesh.MeshImageStack;
 import deformablemesh.SegmentationController;
 import deformablemesh.SegmentationModel;
 import deformablemesh.geometry.DeformableMesh3D;
@@ -85,6 +86,8 @@ public class DeformingMesh3DApp{
         setFlatLAF();
         JAWTUtil.getJAWT(true);
         MeshFrame3D mf3d = new MeshFrame3D();
+        //the image being segmented keeps recent frames, scaled to the memory available.
+        MeshImageStack.setDefaultFrameCacheBudget(Runtime.getRuntime().maxMemory()/8);
         SegmentationModel model = new SegmentationModel();
         SegmentationController segmentationController = new SegmentationController(model);
         segmentationController.setGlobalExecutor(Executors.newFixedThreadPool(3));
@@ -120,7 +120,7 @@ public class BoundingBoxTransformer {
      * @param track to be transformed.
      */
     public void transformTrack(Track track){
-        for(Integer i: track.getTrack().keySet()){
+        for(Integer i: track.getFrames()){
             transformMesh(track.getMesh(i));
         }
     }
@@ -31,6 +31,7 @@ import deformablemesh.io.MeshReader;
 import deformablemesh.track.Track;
 import deformablemesh.util.Vector3DOps;
 import deformablemesh.util.astar.*;
+import deformablemesh.voxels.MeshVoxelizer;
 import ij.ImageJ;
 import ij.ImagePlus;
 import ij.ImageStack;
@@ -1498,46 +1499,66 @@ public class DeformableMesh3DTools {
 
     /**
      * This puts topographical constraints on the intersections. When an intersection is 'dirty' it means it was
-     * decided at a region of low confidence.
+     * decided at a region of low confidence. A dirty intersection is removed when there is another intersection
+     * closer than its dirty value.
+     *
+     * Intersections are sorted along the x-axis so that only the neighboring intersections need to be checked.
      *
      * @param sections a list of intersections that will be scanned
      */
     public static void scanDirty(List<Intersection> sections){
-        for(int i = 0; i<sections.size(); i++){
+        int n = sections.size();
+        if(n < 2){
+            return;
+        }
+        Integer[] order = new Integer[n];
+        for(int i = 0; i<n; i++){
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(sections.get(a).location[0], sections.get(b).location[0]));
+        int[] rank = new int[n];
+        for(int i = 0; i<n; i++){
+            rank[order[i]] = i;
+        }
+        boolean[] removed = new boolean[n];
+        boolean any = false;
+        for(int i = 0; i<n; i++){
             Intersection section = sections.get(i);
-            if(section.dirty != 0){
-                int startI = i;
-                double min = Double.MAX_VALUE;
-                for(int j = 0; j<sections.size(); j++){
-                    if(j == startI){
-                        continue;
-                    }
-                    Intersection other = sections.get(j);
-
-                    double m = Vector3DOps.mag(Vector3DOps.difference(other.location, section.location));
-                    if(m < min){
-                        min = m;
-                    }
-                    if( m < Math.abs(section.dirty) ){
-                        System.out.println("should take it: " + other.dirty);
-                        //System.out.println("removing: " + i + ", " + m + " < " + section.dirty);
-                        //System.out.println("\t by: " + j  + " , " + other.dirty);
-                        if(startI > i){
-                            continue;
-                        }
-                        sections.remove(i);
-                        i--;j--;
-                    }
+            if(section.dirty == 0){
+                continue;
+            }
+            double limit = Math.abs(section.dirty);
+            double x = section.location[0];
+            boolean close = false;
+            for(int r = rank[i] - 1; r >= 0 && !close; r--){
+                Intersection other = sections.get(order[r]);
+                if( x - other.location[0] >= limit){
+                    break;
+                }
+                close = !removed[order[r]] && Vector3DOps.distance(other.location, section.location) < limit;
+            }
+            for(int r = rank[i] + 1; r < n && !close; r++){
+                Intersection other = sections.get(order[r]);
+                if( other.location[0] - x >= limit){
+                    break;
                 }
-                if( startI > i){
-                    System.out.println("removed");
-                } else{
-                    System.out.println("left");
+                close = !removed[order[r]] && Vector3DOps.distance(other.location, section.location) < limit;
+            }
+            if(close){
+                removed[i] = true;
+                any = true;
+            }
+        }
+        if(any){
+            List<Intersection> kept = new ArrayList<>(n);
+            for(int i = 0; i<n; i++){
+                if(!removed[i]){
+                    kept.add(sections.get(i));
                 }
             }
+            sections.clear();
+            sections.addAll(kept);
         }
-
-
     }
 
 
@@ -1557,333 +1578,33 @@ public class DeformableMesh3DTools {
     }
 
     /**
-     * Get pixels contained in the mesh. This has repeated code with "mosaicBinary" and should
-     * be combined.
+     * Get pixels contained in the mesh.
+     *
+     * @see MeshVoxelizer
      *
      * @param stack the image that will have a binary representation
      * @param mesh represents the surface that contains the pixels
      * @return List of voxels within the mesh.
      */
     public static List<int[]> getContainedPixels(MeshImageStack stack, DeformableMesh3D mesh){
-        Box3D box = mesh.getBoundingBox();
-        double[] lowI = stack.getImageCoordinates(box.low);
-        double[] highI = stack.getImageCoordinates(box.high);
-
-        InterceptingMesh3D picker = new InterceptingMesh3D(mesh);
-        double[] xdirection = {1,0,0};
-
-        int slices = stack.getNSlices();
-        int w = stack.getWidthPx();
-        int h = stack.getHeightPx();
-        double center[] = new double[3];
-
-        int sliceLow = (int)lowI[2];
-        int sliceHigh = (int)highI[2];
-        //verify
-        sliceLow = sliceLow < 0 ? 0 : sliceLow;
-        sliceHigh = sliceHigh <= slices ? sliceHigh : slices;
-
-        int jlo = (int)lowI[1];
-        int jhi = (int)highI[1];
-        jlo = jlo < 0 ? 0 : jlo;
-        jhi = jhi <= h ? jhi : h;
-
-        int xlo = (int)lowI[0];
-        int xhi = (int)highI[0];
-        xlo = xlo < 0 ? 0: xlo;
-        xhi = xhi > w ? w : xhi;
-        List<int[]> contained = new ArrayList<>();
-        for(int slice = sliceLow; slice<sliceHigh; slice++){
-
-            center[2] = slice;
-
-
-            for(int j = jlo; j<jhi; j++){
-
-                int offset = j*w;
-                center[1] = j;
-
-                List<Intersection> sections = picker.getIntersections(stack.getNormalizedCoordinate(center), xdirection);
-                if(sections.size()==0){
-                    //No intersections. No points inside.
-                    continue;
-                }
-                scanDirty(sections);
-                sections.sort((a,b)->Double.compare(a.location[0], b.location[0]));
-
-                boolean startInside = false;
-                double count = 0;
-                double[] boundaries = new double[sections.size()+1];
-
-                //the number of boundaries that switch the state from inside to outside.
-                int valid = 0;
-                double lowestEntry = Double.MAX_VALUE;
-                double highestExit = -Double.MAX_VALUE;
-
-                for(int k = 0; k<sections.size(); k++){
-
-                    double bound = stack.getImageCoordinates(sections.get(k).location)[0];
-
-                    boolean facingLeft = sections.get(k).surfaceNormal[0]<0;
-                    boolean facingRight = !facingLeft;
-                    //going through all interfaces, and either going further in
-                    //or back out.
-                    if(facingLeft){
-                        count++;
-                        if(bound < lowestEntry){
-                            lowestEntry = bound;
-                        }
-                    } else{
-                        count--;
-                        if(bound > highestExit){
-                            highestExit = bound;
-                        }
-                    }
-                    if(bound>0) {
-                        //check if it is actually a boundary
-                        if ( count==1 && facingLeft ) {
-                            //boundary entering region.
-                            if( valid == 0){
-                                startInside = false;
-                            }
-                            boundaries[valid] = bound;
-                            valid++;
-                        } else if (count==0 && facingRight) {
-                            //stepped out.
-                            if( valid == 0){
-                                startInside = true;
-                            }
-                            boundaries[valid] = bound;
-                            valid++;
-                        }
-
-                    }
-                }
-
-                boolean inside = startInside;
-
-
-                if(lowestEntry < lowI[0]){
-                    System.out.println("Topo Error: lowest entry is less than bounding box!");
-                }
-                if( (int)highestExit > highI[0] ){
-                    System.out.println("Topo Error: highest exit is outside of bounding box!");
-                }
-
-                if(startInside && lowestEntry>0){
-                    System.out.println("Topo Error: Lower bound above zero but mesh starts inside.");
-                }
-
-                boundaries[valid] = w;
-
-                //This isn't necessarily true.
-                //lowestIntersection >= lowI[0] and highestIntersection <= highI[0]
-                boolean finishesOutsideImage = lowestEntry <= (w-1) && highestExit >= (w - 1) ;
-
-                int current = 0;
-
-
-                for(int p = 0; p<w; p++){
-                    if(p>boundaries[current]){
-                        //switch.
-                        current++;
-                        inside = !inside;
-                    }
-                    if(inside){
-                        contained.add(new int[]{p, j, slice});
-                    }
-                }
-                if(finishesOutsideImage && !inside){
-                    System.out.println("topography warning: bounds outside image, but not inside the shape at end");
-                }
-
-                if(!finishesOutsideImage && inside){
-                    System.out.println("Inconsistent bounding box: End of image is out of bounds, but state is inside the shape");
-                    System.out.println(Arrays.toString(lowI) + " [~] " + Arrays.toString(highI));
-                }
-
-            }
-
-        }
-        return contained;
+        return new MeshVoxelizer(stack, mesh).getContainedPixels();
     }
 
+    /**
+     * Sets the pixels contained in the mesh to the provided value.
+     *
+     * @param stack geometry of the image
+     * @param out color processors that the mesh will be drawn on.
+     * @param mesh mesh being drawn.
+     * @param rgb value of the contained pixels.
+     */
     public static void mosaicBinary(MeshImageStack stack, ImageStack out, DeformableMesh3D mesh, int rgb){
-        Box3D box = mesh.getBoundingBox();
-        double[] lowI = stack.getImageCoordinates(box.low);
-        double[] highI = stack.getImageCoordinates(box.high);
-
-        InterceptingMesh3D picker = new InterceptingMesh3D(mesh);
-        double[] xdirection = {1,0,0};
-
         int slices = out.getSize();
-        int w = out.getWidth();
-        int h = out.getHeight();
-        double[] center = new double[3];
-
-        int sliceLow = (int)lowI[2];
-        int sliceHigh = (int)highI[2];
-        //verify
-        sliceLow = sliceLow < 0 ? 0 : sliceLow;
-        sliceHigh = sliceHigh <= out.getSize() ? sliceHigh : out.getSize();
-
-        int jlo = (int)lowI[1];
-        int jhi = (int)highI[1];
-        jlo = jlo < 0 ? 0 : jlo;
-        jhi = jhi <= h ? jhi : h;
-
-        int xlo = (int)lowI[0];
-        int xhi = (int)highI[0];
-        xlo = xlo < 0 ? 0: xlo;
-        xhi = xhi > w ? w : xhi;
-
-        for(int slice = sliceLow; slice<sliceHigh; slice++){
-
-            int[] pixels = (int[])(out.getProcessor(slice+1).getPixels());
-            center[2] = slice;
-
-
-            for(int j = jlo; j<jhi; j++){
-
-                int offset = j*w;
-                center[1] = j;
-
-                List<Intersection> sections = picker.getIntersections(stack.getNormalizedCoordinate(center), xdirection);
-                scanDirty(sections);
-                if(sections.size() % 2 != 0) {
-                    for (int zeta = 0; zeta < 3; zeta+=2) {
-                        center[1] = j - 0.1 + zeta * 0.1;
-                        sections = picker.getIntersections(stack.getNormalizedCoordinate(center), xdirection);
-                        scanDirty(sections);
-                        if(sections.size() % 2 == 0){
-                            break;
-                        }
-                    }
-                }
-
-                if(sections.size()==0){
-                    //No intersections. No points inside.
-                    continue;
-                }
-
-
-                sections.sort((a,b)->Double.compare(a.location[0], b.location[0]));
-
-                boolean startInside = false;
-                double count = 0;
-                double[] boundaries = new double[sections.size()+1];
-
-                //the number of boundaries that switch the state from inside to outside.
-                int valid = 0;
-                double lowestEntry = Double.MAX_VALUE;
-                double highestExit = -Double.MAX_VALUE;
-
-                for(int k = 0; k<sections.size(); k++){
-
-                    double bound = stack.getImageCoordinates(sections.get(k).location)[0];
-
-                    boolean facingLeft = sections.get(k).surfaceNormal[0]<0;
-                    boolean facingRight = !facingLeft;
-                    //going through all interfaces, and either going further in
-                    //or back out.
-                    if(facingLeft){
-                        count++;
-                        if(bound < lowestEntry){
-                            lowestEntry = bound;
-                        }
-                    } else{
-                        count--;
-                        if(bound > highestExit){
-                            highestExit = bound;
-                        }
-                    }
-                    if(bound>0) {
-                        //check if it is actually a boundary
-                        if ( count==1 && facingLeft ) {
-                            //boundary entering region.
-                            if( valid == 0){
-                                startInside = false;
-                            }
-                            boundaries[valid] = bound;
-                            valid++;
-                        } else if (count==0 && facingRight) {
-                            //stepped out.
-                            if( valid == 0){
-                                startInside = true;
-                            }
-                            boundaries[valid] = bound;
-                            valid++;
-                        }
-
-                    }
-                }
-
-                boolean inside = startInside;
-
-
-                if(lowestEntry < lowI[0]){
-                    System.out.println("Topo Error: lowest entry is less than bounding box!");
-                }
-                if( (int)highestExit > highI[0] ){
-                    System.out.println("Topo Error: highest exit is outside of bounding box!");
-                }
-
-                if(startInside && lowestEntry>0){
-                    System.out.println("Topo Error: Lower bound above zero but mesh starts inside.");
-                }
-
-                boundaries[valid] = w;
-
-                //This isn't necessarily true.
-                //lowestIntersection >= lowI[0] and highestIntersection <= highI[0]
-                boolean finishesOutsideImage = lowestEntry <= (w-1) && highestExit >= (w - 1) ;
-
-                int current = 0;
-
-
-                for(int p = 0; p<w; p++){
-                    if(p>boundaries[current]){
-                        //switch.
-                        current++;
-                        inside = !inside;
-                    }
-                    if(inside && p <= xhi){
-                        pixels[p + offset] = rgb;
-                    }
-                    if( p > xhi && inside){
-                        /*
-                        //System.out.println("truncating scan, beyond bounding box.");
-
-                        double min = Double.MAX_VALUE;
-                        Node3D minNode = null;
-                        for(Node3D node: mesh.nodes){
-                            double[] pt = stack.getImageCoordinates(node.getCoordinates());
-                            double dy = pt[1] - j;
-                            double dz = pt[2] - slice;
-                            double d = Math.sqrt(dy*dy + dz*dz);
-                            if(d < min){
-                                min = d;
-                                minNode = node;
-                            }
-                        }
-                        //double[] mcn = stack.getImageCoordinates(minNode.getCoordinates());
-                        //System.out.println(min + " " + minNode.index);
-                         */
-                    }
-                }
-                if(finishesOutsideImage && !inside){
-                    System.out.println("topography warning: bounds outside image, but not inside the shape at end");
-                }
-                
-                if(!finishesOutsideImage && inside){
-                    System.out.println("Inconsistent bounding box: End of image is out of bounds, but state is inside the shape");
-                    System.out.println( "slice: " + slice + ", y: " + j);
-                    System.out.println(Arrays.toString(lowI) + " [~] " + Arrays.toString(highI));
-                }
-
-            }
-
+        int[][] pixels = new int[slices][];
+        for(int i = 0; i<slices; i++){
+            pixels[i] = (int[])out.getPixels(i + 1);
         }
+        new MeshVoxelizer(stack, mesh, slices, out.getWidth(), out.getHeight()).fill(pixels, rgb);
     }
 
     public static DeformableMesh3D copyOf(DeformableMesh3D mesh) {
@@ -1996,7 +1717,7 @@ public class DeformableMesh3DTools {
             List<double[]> volumes = new ArrayList<>();
             List<Track> tracks = MeshReader.loadMeshes(p.toFile());
             for(Track t: tracks) {
-                for(Integer key : t.getTrack().keySet()) {
+                for(Integer key : t.getFrames()) {
                     DeformableMesh3D mesh = t.getMesh(key);
                     long start = System.nanoTime();
                     double v1 = calculateVolume(mesh.triangles);
@@ -28,6 +28,9 @@ package deformablemesh;
 import deformablemesh.geometry.Box3D;
 import deformablemesh.geometry.Furrow3D;
 import deformablemesh.ringdetection.FurrowTransformer;
+import deformablemesh.voxels.FrameCache;
+import deformablemesh.voxels.VoxelStore;
+import deformablemesh.voxels.VoxelStoreType;
 import ij.ImagePlus;
 import ij.ImageStack;
 import ij.io.FileInfo;
@@ -64,7 +67,14 @@ public class MeshImageStack {
         }
     };
 
-    public double[][][] data;
+    static VoxelStoreType defaultStoreType = VoxelStoreType.FLOAT;
+
+    static long defaultFrameCacheBudget = 0;
+
+    VoxelStore store;
+    volatile VoxelStoreType storeType = defaultStoreType;
+    boolean sharedStore = false;
+    final FrameCache frameCache = new FrameCache(this::loadFrame, defaultFrameCacheBudget);
 
     public double SCALE;
     public double[] scale_values;
@@ -90,7 +100,7 @@ public class MeshImageStack {
         offsets=new double[]{0,0,0};
         pixel_dimensions=new double[]{1,1,1};
         PX=1;
-        data = new double[1][1][1];
+        store = VoxelStoreType.FLOAT.create(1, 1, 1);
         max_dex = new int[3];
         FRAMES = 999;
     }
@@ -112,8 +122,6 @@ public class MeshImageStack {
         int py = original.getHeight();
         int px = original.getWidth();
 
-        data = new double[SLICES][py][px];
-
         max_dex = new int[]{px-1, py-1, SLICES-1};
 
         FileInfo info = original.getFileInfo();
@@ -291,138 +299,253 @@ public class MeshImageStack {
     }
 
     /**
-     * Copies the image data from the image stack to the double[][] backing the
-     * image data that is used for obtaining values.
+     * Copies the image data from the image stack to the voxel store that is used for obtaining values. When the frame
+     * cache is enabled, and a frame fits in its budget, the store is taken from the cache and the neighboring frames
+     * are loaded in the background.
      *
      */
     public void copyValues(){
         if(original == null){
             return;
         }
-        int slices = original.getNSlices();
-        int py = original.getHeight();
-        int px = original.getWidth();
-
-        MIN_VALUE=Double.MAX_VALUE;
-        MAX_VALUE=-MIN_VALUE;
+        long frameSize = (long)original.getWidth()*original.getHeight()*SLICES*storeType.getBytesPerVoxel();
+        frameCache.setFrameSize(frameSize);
+        if(frameCache.fits(frameSize)){
+            store = frameCache.get(CURRENT, channel);
+            sharedStore = true;
+            if(CURRENT + 1 < FRAMES){
+                frameCache.prefetch(CURRENT + 1, channel);
+            }
+            if(CURRENT > 0){
+                frameCache.prefetch(CURRENT - 1, channel);
+            }
+        } else{
+            if(store == null || sharedStore){
+                store = storeType.create(original.getWidth(), original.getHeight(), SLICES);
+                sharedStore = false;
+            }
+            store.load(getSliceProcessors(CURRENT, channel));
+        }
+        MIN_VALUE = store.getMinValue();
+        MAX_VALUE = store.getMaxValue();
+    }
 
+    ImageProcessor[] getSliceProcessors(int frame, int c){
+        int slices = original.getNSlices();
+        ImageStack stack = original.getStack();
+        ImageProcessor[] procs = new ImageProcessor[slices];
         for(int i = 0;i<slices; i++){
             //int N = z*channels + i * channels * slices + c;
-            int n = i * CHANNELS + CURRENT*CHANNELS*slices + channel + 1;
-            ImageProcessor proc = original.getStack().getProcessor( n );
-            for(int j = 0; j<py; j++){
-                for(int k = 0; k<px; k++){
-                    double v = proc.getPixelValue(k,j);
-                    if(v<MIN_VALUE) MIN_VALUE=v;
-                    else if(v>MAX_VALUE) MAX_VALUE=v;
-                    data[i][j][k] = v;
-                }
-            }
+            int n = i * CHANNELS + frame*CHANNELS*slices + c + 1;
+            procs[i] = stack.getProcessor( n );
         }
+        return procs;
+    }
 
+    /**
+     * Creates a new store with the values of the frame and channel, used by the frame cache.
+     */
+    VoxelStore loadFrame(int frame, int c){
+        VoxelStore loaded = storeType.create(original.getWidth(), original.getHeight(), SLICES);
+        loaded.load(getSliceProcessors(frame, c));
+        return loaded;
     }
 
     /**
-     * For creating a backing double array of another ImagePlus that uses the same geometry as the original image
+     * Sets the memory budget of the frame cache for stacks created after this call. The cache is disabled by
+     * default, each stack with a budget can hold that many bytes in addition to its current frame.
+     *
+     * @param bytes maximum number of bytes cached by each stack, 0 disables caching and prefetching.
+     */
+    public static void setDefaultFrameCacheBudget(long bytes){
+        defaultFrameCacheBudget = bytes;
+    }
+
+    /**
+     * Sets the memory budget of the frame cache.
+     *
+     * @param bytes maximum number of bytes cached, 0 disables caching and prefetching.
+     */
+    public void setFrameCacheBudget(long bytes){
+        frameCache.setBudget(bytes);
+        if(bytes <= 0){
+            frameCache.clear();
+        }
+    }
+
+    /**
+     * Removes all cached frames, this needs to be called if the pixels of the original image have been modified.
+     * The current frame is reloaded.
+     */
+    public void clearFrameCache(){
+        frameCache.clear();
+        copyValues();
+    }
+
+    public FrameCache getFrameCache(){
+        return frameCache;
+    }
+
+    /**
+     * For creating a backing voxel store of another ImagePlus that uses the same geometry as the original image
      * plus.
      *
      * @param other
      */
     public void copyValues(MeshImageStack other){
-        if(other.data.length != data.length
-                || other.data[0].length != data[0].length
-                || other.data[0][0].length != data[0][0].length ){
+        VoxelStore src = other.store;
+        if(src.getWidth() != store.getWidth()
+                || src.getHeight() != store.getHeight()
+                || src.getDepth() != store.getDepth() ){
             return;
         }
-        for(int i = 0; i<data.length; i++){
-            double[][] dest = data[i];
-            double[][] src = other.data[i];
-            for(int j = 0; j<dest.length; j++){
-                double[] line = dest[j];
-                double[] sline = src[j];
-                for(int k = 0; k<line.length; k++){
-                    line[k] = sline[k];
-                }
-            }
+        if(sharedStore){
+            store = storeType.create(store.getWidth(), store.getHeight(), store.getDepth());
+            sharedStore = false;
         }
+        store.copyFrom(src);
+        MIN_VALUE = store.getMinValue();
+        MAX_VALUE = store.getMaxValue();
+    }
 
+    /**
+     * Sets the type of store used by stacks created after this call.
+     *
+     * @param type how voxels will be stored.
+     */
+    public static void setDefaultStoreType(VoxelStoreType type){
+        defaultStoreType = type;
     }
 
-    public double getInterpolatedValue(double x, double y, double z){
-        return getInterpolatedValue(new double[]{x,y,z});
+    /**
+     * Changes how the voxels of this stack are stored, the values of the current frame are reloaded.
+     *
+     * @param type how voxels will be stored.
+     */
+    public void setStoreType(VoxelStoreType type){
+        if(type == storeType){
+            return;
+        }
+        storeType = type;
+        if(original != null){
+            frameCache.clear();
+            store = null;
+            copyValues();
+        }
     }
 
-    final static double min_interp_value=1e-4;
-    public double getInterpolatedValue(double[] xyz){
-        double[] ndex = new double[3];
-        int[] base = new int[3];
-        double[] f = new double[3];
-        for(int i = 0; i<3; i++){
-            ndex[i] = SCALE*(xyz[i] + offsets[i])*scale_values[i];
-            base[i] = (int)ndex[i];
-
-            //outside of image is the same as the edge value.
-            if(base[i]<0){
-                base[i] = 0;
-            } else if(base[i]>max_dex[i]){
-                base[i] = max_dex[i];
-            }
-            /*
-            outside of image is zero.
-            if(base[i]<0||base[i]>max_dex[i]){
-                //out of range
-                return 0;
-            }
-            */
+    public VoxelStoreType getStoreType(){
+        return storeType;
+    }
 
+    public VoxelStore getVoxelStore(){
+        return store;
+    }
 
-            f[i] = base[i]==max_dex[i]?0:ndex[i] - base[i];
+    public double getInterpolatedValue(double x, double y, double z){
+        int bx, by, bz;
+        double fx, fy, fz;
+
+        double nx = SCALE*(x + offsets[0])*scale_values[0];
+        bx = (int)nx;
+        //outside of image is the same as the edge value.
+        if(bx<0){
+            bx = 0;
+        } else if(bx>max_dex[0]){
+            bx = max_dex[0];
+        }
+        fx = bx==max_dex[0]?0:nx - bx;
+
+        double ny = SCALE*(y + offsets[1])*scale_values[1];
+        by = (int)ny;
+        if(by<0){
+            by = 0;
+        } else if(by>max_dex[1]){
+            by = max_dex[1];
+        }
+        fy = by==max_dex[1]?0:ny - by;
+
+        double nz = SCALE*(z + offsets[2])*scale_values[2];
+        bz = (int)nz;
+        if(bz<0){
+            bz = 0;
+        } else if(bz>max_dex[2]){
+            bz = max_dex[2];
         }
+        fz = bz==max_dex[2]?0:nz - bz;
 
-        double a = getValue(base[0],base[1], base[2]);
+        final VoxelStore store = this.store;
+        double a = store.getValue(bx, by, bz);
 
-        
-        if(f[0]>min_interp_value){
-            double b = getValue(base[0]+1, base[1], base[2]);
-            a = a + (b-a)*f[0];
+        if(fx>min_interp_value){
+            double b = store.getValue(bx+1, by, bz);
+            a = a + (b-a)*fx;
         }
 
-        if(f[1]>min_interp_value){
-            double c = getValue(base[0],base[1]+1, base[2]);
+        if(fy>min_interp_value){
+            double c = store.getValue(bx, by+1, bz);
 
-            if(f[0]>min_interp_value){
-                double d = getValue(base[0]+1, base[1]+1, base[2]);
-                c = c + (d-c)*f[0];
+            if(fx>min_interp_value){
+                double d = store.getValue(bx+1, by+1, bz);
+                c = c + (d-c)*fx;
             }
-            a = a + (c-a)*f[1]; //first plane.
+            a = a + (c-a)*fy; //first plane.
         }
 
         double v = a;
-        if(f[2]>min_interp_value){
+        if(fz>min_interp_value){
 
-            a = getValue(base[0],base[1], base[2]+1);
+            a = store.getValue(bx, by, bz+1);
 
-            if(f[0]>min_interp_value){
-                double b = getValue(base[0]+1, base[1], base[2]+1);
-                a = a + (b-a)*f[0];
+            if(fx>min_interp_value){
+                double b = store.getValue(bx+1, by, bz+1);
+                a = a + (b-a)*fx;
             }
 
-            if(f[1]>min_interp_value){
-                double c = getValue(base[0],base[1]+1, base[2]+1);
+            if(fy>min_interp_value){
+                double c = store.getValue(bx, by+1, bz+1);
 
-                if(f[0]>min_interp_value){
-                    double d = getValue(base[0]+1, base[1]+1, base[2]+1);
-                    c = c + (d-c)*f[0];
+                if(fx>min_interp_value){
+                    double d = store.getValue(bx+1, by+1, bz+1);
+                    c = c + (d-c)*fx;
                 }
-                a = a + (c-a)*f[1];
+                a = a + (c-a)*fy;
             }
 
-            v = v + (a-v)*f[2];
+            v = v + (a-v)*fz;
         }
 
         return v;
     }
 
+    final static double min_interp_value=1e-4;
+
+    /**
+     * Trilinear interpolation of the image at a normalized coordinate. Points outside of the image take the value
+     * of the nearest edge.
+     *
+     * @param xyz normalized coordinate.
+     * @return interpolated value.
+     */
+    public double getInterpolatedValue(double[] xyz){
+        return getInterpolatedValue(xyz[0], xyz[1], xyz[2]);
+    }
+
+    /**
+     * Samples a batch of points, the same as calling getInterpolatedValue for each point without creating any
+     * objects.
+     *
+     * @param xyz normalized coordinates packed as x0, y0, z0, x1, y1, z1, ...
+     * @param count number of points to sample.
+     * @param out the sampled values, needs to be at least count long.
+     */
+    public void sample(double[] xyz, int count, double[] out){
+        for(int i = 0; i<count; i++){
+            int dex = 3*i;
+            out[i] = getInterpolatedValue(xyz[dex], xyz[dex + 1], xyz[dex + 2]);
+        }
+    }
+
     /**
      * Gets the value at the image coordintes x,y,z doesn't perform any sort of check.
      *
@@ -432,7 +555,7 @@ public class MeshImageStack {
      * @return the backing double
      */
     public double getValue(int x, int y, int z){
-        return data[z][y][x];
+        return store.getValue(x, y, z);
 
     }
 
@@ -442,18 +565,17 @@ public class MeshImageStack {
         int ycounts = transformer.getYCounts();
         ImageProcessor proc = new FloatProcessor(xcounts, ycounts);
         double[] pt = new double[2];
-
-        for (int i = 0; i < xcounts; i++) {
-            for (int j = 0; j < ycounts; j++) {
-
+        double[] xyz = new double[3*xcounts];
+        double[] row = new double[xcounts];
+        for (int j = 0; j < ycounts; j++) {
+            pt[1] = j;
+            for (int i = 0; i < xcounts; i++) {
                 pt[0] = i;
-                pt[1] = j;
-                double v = getInterpolatedValue(transformer.getVolumeCoordinates(pt));
-                try {
-                    proc.setf(i, j, (float) v);
-                } catch(Exception e){
-                    e.printStackTrace();
-                }
+                transformer.getVolumeCoordinates(pt, xyz, 3*i);
+            }
+            sample(xyz, xcounts, row);
+            for (int i = 0; i < xcounts; i++) {
+                proc.setf(i, j, (float) row[i]);
             }
         }
 
@@ -514,9 +636,9 @@ public class MeshImageStack {
         double sumy = 0;
         double sumz = 0;
         double[] r = new double[3];
-        for(int i = 0; i<data[0][0].length; i++){
-            for(int j = 0; j<data[0].length; j++){
-                for(int k = 0; k<data.length; k++){
+        for(int i = 0; i<store.getWidth(); i++){
+            for(int j = 0; j<store.getHeight(); j++){
+                for(int k = 0; k<store.getDepth(); k++){
                     r[0] = i;
                     r[1] = j;
                     r[2] = k;
@@ -760,13 +882,16 @@ public class MeshImageStack {
     }
 
     public double[] getIntensityValues() {
-        double[] n = new double[data.length*data[0].length*data[0][0].length];
-        final int row = data[0][0].length;
-        final int frame = data[0].length*row;
-
-        for(int slice = 0; slice<data.length; slice++){
-            for(int line = 0; line<data[0].length; line++){
-                System.arraycopy(data[slice][line], 0, n,slice*frame + line*row,  row);
+        final int row = store.getWidth();
+        final int lines = store.getHeight();
+        final int slices = store.getDepth();
+        double[] n = new double[row*lines*slices];
+        int dex = 0;
+        for(int slice = 0; slice<slices; slice++){
+            for(int line = 0; line<lines; line++){
+                for(int x = 0; x<row; x++){
+                    n[dex++] = store.getValue(x, line, slice);
+                }
             }
         }
         return n;
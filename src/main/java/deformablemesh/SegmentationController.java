@@ -37,18 +37,22 @@ import deformablemesh.gui.PropertySaver;
 import deformablemesh.gui.RingController;
 import deformablemesh.gui.render2d.RenderFrame2D;
 import deformablemesh.io.ImportType;
+import deformablemesh.io.LabelImageExporter;
+import deformablemesh.io.MeshExporter;
 import deformablemesh.io.MeshReader;
 import deformablemesh.io.TrackMateAdapter;
 import deformablemesh.meshview.*;
 import deformablemesh.ringdetection.FurrowTransformer;
 import deformablemesh.simulations.FillingBinaryImage;
 import deformablemesh.track.FrameToFrameDisplacement;
+import deformablemesh.track.MultiFrameTracker;
 import deformablemesh.track.Track;
 import deformablemesh.util.*;
 import deformablemesh.util.actions.ActionStack;
 import deformablemesh.util.actions.StateListener;
 import deformablemesh.util.actions.UndoableActions;
 import deformablemesh.util.connectedcomponents.Region;
+import deformablemesh.voxels.MeshOverlapCalculator;
 import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
@@ -93,6 +97,7 @@ public class SegmentationController {
     private double minConnectionLength = 0.01;
     private double maxConnectionLength = 0.02;
     private ExecutorService globalExecutor;
+    static int defaultRemeshThreads = Runtime.getRuntime().availableProcessors();
 
     /**
      * Creates a controller for the supplied model.
@@ -590,19 +595,38 @@ public class SegmentationController {
         if(tracks.size() != meshes.size()){
             throw new RuntimeException("tracks and meshes must be a 1 to 1 correspondance");
         }
+        setMeshes(tracks, Collections.nCopies(tracks.size(), frame), meshes);
+    }
 
+    /**
+     * Sets each mesh to its corresponding track and frame as one undoable action. The three lists are
+     * associated by order, and a track can appear more than once for different frames.
+     *
+     * @param tracks that meshes will be added to
+     * @param frames the frame each mesh is added at
+     * @param meshes the meshes to be added, needs to be the same length as tracks and frames
+     */
+    public void setMeshes(List<Track> tracks, List<Integer> frames, List<DeformableMesh3D> meshes){
+        if(tracks.size() != meshes.size() || frames.size() != meshes.size()){
+            throw new RuntimeException("tracks, frames and meshes must be a 1 to 1 correspondance");
+        }
 
         actionStack.postAction(new UndoableActions(){
 
             final List<Track> tcks = new ArrayList<>(tracks);
-            final List<DeformableMesh3D> oldMeshes = tcks.stream().map(t -> t.getMesh(frame)).collect(Collectors.toList());
+            final List<Integer> fs = new ArrayList<>(frames);
+            final List<DeformableMesh3D> oldMeshes = new ArrayList<>();
             final List<DeformableMesh3D> newer = new ArrayList<>(meshes);
-            final int f = frame;
+            {
+                for(int i = 0; i<tcks.size(); i++){
+                    oldMeshes.add(tcks.get(i).getMesh(fs.get(i)));
+                }
+            }
             @Override
             public void perform() {
                 submit(() -> {
                     for(int i = 0; i<tcks.size(); i++){
-                        model.addMeshToTrack(f, newer.get(i), tcks.get(i));
+                        model.addMeshToTrack(fs.get(i), newer.get(i), tcks.get(i));
                     }
                 });
             }
@@ -610,37 +634,34 @@ public class SegmentationController {
             @Override
             public void undo() {
                 submit(()->{
-                    for(int i = 0; i<tcks.size(); i++){
+                    for(int i = tcks.size() - 1; i>=0; i--){
                         DeformableMesh3D old = oldMeshes.get(i);
-                        DeformableMesh3D mesh = newer.get(i);
                         Track t = tcks.get(i);
                         if(old==null){
-                            model.removeMeshFromTrack(f, mesh, t);
+                            model.removeMeshFromTrack(fs.get(i), newer.get(i), t);
                         } else{
-                            model.addMeshToTrack(f, old, t);
+                            model.addMeshToTrack(fs.get(i), old, t);
                         }
-
                     }
                 });
             }
 
             @Override
             public void redo() {
-                submit(() -> {
-                    submit(() -> {
-                        for(int i = 0; i<tcks.size(); i++){
-                            model.addMeshToTrack(f, newer.get(i), tcks.get(i));
-                        }
-                    });
-                });
+                perform();
             }
 
             @Override
             public String getName(){
-                return "set meshes at " + f + " for " + tcks.size() + " tracks";
+                Set<Integer> distinct = new HashSet<>(fs);
+                if(distinct.size() == 1){
+                    return "set meshes at " + fs.get(0) + " for " + tcks.size() + " tracks";
+                }
+                return "set " + newer.size() + " meshes over " + distinct.size() + " frames";
             }
         });
     }
+
     /**
      * Sets the provided mesh to be the mesh for the provided track at the specified frame. This will
      * replace any existing meshes in the provided frame.
@@ -1076,35 +1097,99 @@ public class SegmentationController {
     /**
      * Applies the connection remesh algorith to all meshes in the current frame.
      *
-     * @see SegmentationController#reMeshConnections(Track, int, double, double)
+     * @see SegmentationController#reMeshConnections(List, int, int, double, double)
      * @param minConnectionLength normalized length for min connection lengths.
      * @param maxConnectionLength normalized length for max connection lengths.
      */
     public void reMeshConnectionsAllMeshes(double minConnectionLength, double maxConnectionLength){
+        int f = model.getCurrentFrame();
+        reMeshConnections(model.getAllTracks(), f, f, minConnectionLength, maxConnectionLength);
+    }
+
+    /**
+     * Applies the connection remesh algorithm to all meshes in every frame.
+     *
+     * @see SegmentationController#reMeshConnections(List, int, int, double, double)
+     * @param minConnectionLength normalized length for min connection lengths.
+     * @param maxConnectionLength normalized length for max connection lengths.
+     */
+    public void reMeshConnectionsAllFrames(double minConnectionLength, double maxConnectionLength){
+        reMeshConnections(model.getAllTracks(), 0, getNFrames() - 1, minConnectionLength, maxConnectionLength);
+    }
+
+    /**
+     * Remeshes the meshes of the provided tracks for each frame from first to last, inclusive. The meshes are
+     * remeshed in parallel, each worker uses its own ConnectionRemesher, and the results are set as a single
+     * undoable action. Meshes that fail to remesh are left unchanged.
+     *
+     * @see SegmentationController#setDefaultRemeshThreads(int)
+     * @param tracks tracks to be remeshed, frames a track doesn't contain are skipped.
+     * @param first first frame to remesh.
+     * @param last last frame to remesh, inclusive.
+     * @param minConnectionLength normalized length for min connection lengths.
+     * @param maxConnectionLength normalized length for max connection lengths.
+     */
+    public void reMeshConnections(List<Track> tracks, int first, int last, double minConnectionLength, double maxConnectionLength){
         if(minConnectionLength > maxConnectionLength){
             System.out.println("cannot remesh with a min length longer than a short length!");
             return;
         }
-        int f = model.getCurrentFrame();
-        List<Track> tracks = model.getAllTracks().stream().filter(t -> t.containsKey(f)).collect(Collectors.toList());
+        final List<Track> tcks = new ArrayList<>(tracks);
         submit( ()->{
-            List<DeformableMesh3D> remeshed = tracks.stream().map( t->{
-                DeformableMesh3D mesh = t.getMesh(f);
-                ConnectionRemesher remesher =  new ConnectionRemesher();
-                remesher.setMinAndMaxLengths(minConnectionLength, maxConnectionLength);
-                DeformableMesh3D rep;
-                try{
-                    rep = remesher.remesh(mesh);
-                } catch(Exception e){
-                    System.err.println(e.getMessage());
-                    rep = mesh;
+            List<Track> remeshedTracks = new ArrayList<>();
+            List<Integer> frames = new ArrayList<>();
+            List<Future<DeformableMesh3D>> futures = new ArrayList<>();
+            ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, defaultRemeshThreads));
+            try{
+                for(int f = first; f <= last; f++){
+                    for(Track t: tcks){
+                        if(!t.containsKey(f)){
+                            continue;
+                        }
+                        DeformableMesh3D mesh = t.getMesh(f);
+                        remeshedTracks.add(t);
+                        frames.add(f);
+                        futures.add(pool.submit(()->{
+                            ConnectionRemesher remesher =  new ConnectionRemesher();
+                            remesher.setMinAndMaxLengths(minConnectionLength, maxConnectionLength);
+                            try{
+                                return remesher.remesh(mesh);
+                            } catch(Exception e){
+                                System.err.println(e.getMessage());
+                                return null;
+                            }
+                        }));
+                    }
                 }
-                return rep;
-
-            }).collect(Collectors.toList());
-            setMeshes(tracks, f,  remeshed);
+                List<Track> changedTracks = new ArrayList<>();
+                List<Integer> changedFrames = new ArrayList<>();
+                List<DeformableMesh3D> remeshed = new ArrayList<>();
+                for(int i = 0; i<futures.size(); i++){
+                    DeformableMesh3D rep = futures.get(i).get();
+                    if(rep != null){
+                        changedTracks.add(remeshedTracks.get(i));
+                        changedFrames.add(frames.get(i));
+                        remeshed.add(rep);
+                    }
+                }
+                if(remeshed.size() > 0){
+                    setMeshes(changedTracks, changedFrames, remeshed);
+                }
+            } finally{
+                pool.shutdownNow();
+            }
         });
     }
+
+    /**
+     * Sets the number of workers used when remeshing many meshes.
+     *
+     * @param threads number of meshes remeshed at the same time, defaults to the number of processors.
+     */
+    public static void setDefaultRemeshThreads(int threads){
+        defaultRemeshThreads = threads;
+    }
+
     /**
      * Takes the currently selected mesh and looks for neighbors. Locates 'touching' faces and a
      * dds transient objects that show the touching surface. Also produces curvature histograms,
@@ -1674,7 +1759,7 @@ public class SegmentationController {
         List<Track> dups = new ArrayList<>();
         for(Track t: tracks){
             Track t2 = new Track(t.getName(), t.getColor());
-            for(Integer key: t.getTrack().keySet()){
+            for(Integer key: t.getFrames()){
                 t2.addMesh(key, DeformableMesh3DTools.copyOf(t.getMesh(key)));
             }
             dups.add(t2);
@@ -1696,7 +1781,7 @@ public class SegmentationController {
         List<Track> dups = new ArrayList<>();
         for(Track t: tracks){
             Track t2 = new Track(t.getName(), t.getColor());
-            for(Integer key: t.getTrack().keySet()){
+            for(Integer key: t.getFrames()){
                 t2.addMesh(key, DeformableMesh3DTools.copyOf(t.getMesh(key)));
             }
             dups.add(t2);
@@ -1781,7 +1866,7 @@ public class SegmentationController {
         List<Track> tracks = getAllTracks();
         int removed = 0;
         for(Track t: tracks){
-            Set<Integer> old = new HashSet<>(t.getTrack().keySet());
+            Set<Integer> old = new HashSet<>(t.getFrames());
             for(Integer i: old){
                 DeformableMesh3D mesh = t.getMesh(i);
                 boolean remove = false;
@@ -2478,7 +2563,9 @@ public class SegmentationController {
      */
     public void loadMeshes(File f) {
         submit(()->{
-            List<Track> replacements = MeshReader.loadMeshes(f);
+            List<Track> replacements = MeshReader.isDefaultLazyLoading() ?
+                    MeshReader.loadLazyMeshes(f) :
+                    MeshReader.loadMeshes(f);
             actionStack.postAction(new UndoableActions(){
                 final List<Track> old = new ArrayList<>(model.getAllTracks());
                 @Override
@@ -2735,6 +2822,17 @@ public class SegmentationController {
         submit(()->model.exportAsStl(f));
     }
 
+    /**
+     * Exports every frame to its own binary stl or ply file, the frames are written in parallel.
+     *
+     * @param base file used for naming the frame files.
+     * @param format file format.
+     * @param listener notified as each frame is finished.
+     */
+    public void exportFrames(File base, MeshExporter.Format format, MeshExporter.ProgressListener listener){
+        submit(()->model.exportFrames(base, format, 0, getNFrames() - 1, listener));
+    }
+
     /**
      * Export as wire-frame mesh stl file.
      *
@@ -2967,6 +3065,19 @@ public class SegmentationController {
 
     }
 
+    /**
+     * Writes a label or mosaic image to disk one frame at a time, for time series that are too large to create
+     * in memory.
+     *
+     * @param output destination file, or base name for separate frames.
+     * @param type labels or mosaic.
+     * @param separateFrames one tiff per frame.
+     * @param listener notified as each frame is written.
+     */
+    public void exportLabelImage(File output, LabelImageExporter.Type type, boolean separateFrames, MeshExporter.ProgressListener listener){
+        submit(()->model.exportLabelImage(output, type, separateFrames, listener));
+    }
+
     /**
      * Measures the volumes for all of the mesh tracks, creates a text window with the data like.
      * #frame\ttrack1\ttrack2 ...
@@ -3504,6 +3615,31 @@ public class SegmentationController {
         });
     }
 
+    /**
+     * Links the meshes of every frame at once, the result is a single undoable action.
+     *
+     * @see MultiFrameTracker
+     */
+    public void linkAllFrames(){
+        linkFrames(0, getNFrames() - 1);
+    }
+
+    /**
+     * Links all of the meshes from the first to the last frame. Candidate links are found using the overlap
+     * of meshes, with a voxel size from the current image, and the links for all frames are chosen together.
+     *
+     * @see MultiFrameTracker
+     * @param first first frame.
+     * @param last last frame, inclusive.
+     */
+    public void linkFrames(int first, int last){
+        submit( () -> {
+            MultiFrameTracker tracker = new MultiFrameTracker(new MeshOverlapCalculator(getMeshImageStack()));
+            tracker.link(getAllTracks(), first, last);
+            actionStack.postAction(tracker.createAction(model));
+        });
+    }
+
     /**
      * Creates only single mesh tracks.
      */
@@ -3519,7 +3655,7 @@ public class SegmentationController {
                         if(track.size()==1){
                             newTracks.add(track);
                         } else {
-                            for (Integer key : track.getTrack().keySet()) {
+                            for (Integer key : track.getFrames()) {
                                 DeformableMesh3D mesh = track.getMesh(key);
                                 Track t = model.startEmptyTrack();
                                 t.addMesh(key, mesh);
@@ -31,6 +31,8 @@ import deformablemesh.gui.FrameListener;
 import deformablemesh.gui.GuiTools;
 import deformablemesh.gui.RingController;
 import deformablemesh.io.FurrowWriter;
+import deformablemesh.io.LabelImageExporter;
+import deformablemesh.io.MeshExporter;
 import deformablemesh.io.MeshWriter;
 import deformablemesh.track.MeshTracker;
 import deformablemesh.track.Track;
@@ -61,6 +63,8 @@ public class SegmentationModel {
     double BETA = 0.0;
     double pressure = 0.0;
     double stericNeighborWeight;
+    //bounding boxes further apart than this do not interact sterically when all meshes are deformed.
+    double stericMargin = 0.01;
 
     private double cortex_thickness = 0.3;
 
@@ -87,6 +91,7 @@ public class SegmentationModel {
     private double normalize;
     private File lastSavedFile;
     private boolean hardBoundaries = false;
+    private DeformationScheduler scheduler = new DeformationScheduler();
 
     public SegmentationModel(){
 
@@ -141,11 +146,12 @@ public class SegmentationModel {
         }
         stop = false;
         deformations = 0;
-        Map<DeformableMesh3D, List<StericMesh>> stericEnergies = new HashMap<>();
-
+        Map<DeformableMesh3D, StericNeighborEnergy> stericEnergies = new HashMap<>();
+        StericBroadPhase broadPhase = null;
         if(stericNeighborWeight != 0){
+            broadPhase = new StericBroadPhase(getFrameMeshes(), stericMargin);
             for(DeformableMesh3D mesh: meshes){
-                stericEnergies.put(mesh, generateStericEnergies( mesh ) );
+                stericEnergies.put(mesh, new StericNeighborEnergy(mesh, broadPhase, stericNeighborWeight) );
             }
         }
 
@@ -166,9 +172,7 @@ public class SegmentationModel {
             }
 
             if(stericNeighborWeight!=0){
-                for(ExternalEnergy eg: stericEnergies.get(mesh)){
-                    mesh.addExternalEnergy(eg);
-                }
+                mesh.addExternalEnergy(stericEnergies.get(mesh));
             }
 
             mesh.ALPHA=ALPHA;
@@ -177,28 +181,33 @@ public class SegmentationModel {
             mesh.reshape();
         }
 
+        List<Runnable> stericRefresh = new ArrayList<>(stericEnergies.size());
+        for(StericNeighborEnergy sne: stericEnergies.values()){
+            stericRefresh.add(sne::update);
+        }
+        final StericBroadPhase pairs = broadPhase;
+        Runnable refreshSteric = () -> {
+            if(pairs != null){
+                //pairs are found for the current positions, before the energies are refreshed.
+                pairs.update();
+                scheduler.runAll(stericRefresh);
+            }
+        };
+        refreshSteric.run();
         while(!stop){
-            for(DeformableMesh3D mesh: meshes){
-
-                mesh.update();
-                if(hardBoundaries){
-                    mesh.confine(getBounds());
-                }
-                if(stop){
-                    break;
+            //All meshes calculate their new positions concurrently, then the positions are changed together.
+            scheduler.step(meshes);
+            if(hardBoundaries){
+                Box3D bounds = getBounds();
+                for(DeformableMesh3D mesh: meshes){
+                    mesh.confine(bounds);
                 }
             }
             deformations++;
             if(deformations >= steps){
                 break;
             }
-            if(stericNeighborWeight!=0) {
-                for (DeformableMesh3D mesh : meshes) {
-                    for (StericMesh sm : stericEnergies.get(mesh)) {
-                        sm.update();
-                    }
-                }
-            }
+            refreshSteric.run();
         }
 
     }
@@ -387,6 +396,23 @@ public class SegmentationModel {
         MeshWriter.saveStlMesh(f, tracker.getAllMeshTracks(), stack.offsets, stack.SCALE, getCurrentFrame());
     }
 
+    /**
+     * Exports each frame in the range to a binary file.
+     *
+     * @param base file used to name the files, see {@link MeshExporter#getFrameFile(File, int, MeshExporter.Format)}
+     * @param format stl or ply
+     * @param first first frame, inclusive.
+     * @param last last frame, inclusive.
+     * @param listener notified as frames are finished, can be null.
+     * @return the files that were written.
+     * @throws IOException
+     */
+    public List<File> exportFrames(File base, MeshExporter.Format format, int first, int last, MeshExporter.ProgressListener listener) throws IOException {
+        //same scaling as the single frame exports.
+        double scale = format == MeshExporter.Format.STL ? stack.SCALE : 1.0;
+        return MeshExporter.exportFrames(base, tracker.getAllMeshTracks(), format, first, last, stack.offsets, scale, listener);
+    }
+
     public void exportAsWireframeStl(File f) throws IOException {
         if(f==null){
             return;
@@ -445,6 +471,16 @@ public class SegmentationModel {
         return tracker.prepareEmptyTrack();
     }
 
+    /**
+     * Starts tracks that are not used, with names unique to the existing tracks and to each other.
+     *
+     * @param n number of tracks.
+     * @return list of n empty tracks.
+     */
+    public List<Track> startEmptyTracks(int n){
+        return tracker.prepareEmptyTracks(n);
+    }
+
 
     public Track startMeshTrack(int frame, DeformableMesh3D freshMesh){
         Track track = tracker.createNewMeshTrack(frame, freshMesh);
@@ -631,6 +667,33 @@ public class SegmentationModel {
         return energies;
     }
 
+    /**
+     * All of the meshes in the current frame.
+     */
+    List<DeformableMesh3D> getFrameMeshes(){
+        List<DeformableMesh3D> frameMeshes = new ArrayList<>();
+        for(Track track: tracker.getAllMeshTracks()){
+            if(track.containsKey(stack.CURRENT)){
+                frameMeshes.add(track.getMesh(stack.CURRENT));
+            }
+        }
+        return frameMeshes;
+    }
+
+    /**
+     * Sets how far apart, in normalized units, the bounding boxes of two meshes can be before they no longer
+     * interact sterically when deforming all meshes.
+     *
+     * @param margin
+     */
+    public void setStericMargin(double margin){
+        stericMargin = margin;
+    }
+
+    public double getStericMargin(){
+        return stericMargin;
+    }
+
     private List<StericMesh> generateStericEnergies(DeformableMesh3D mesh) {
         List<Track> tracks = tracker.getAllMeshTracks();
         List<StericMesh> es = new ArrayList<>(tracks.size());
@@ -717,6 +780,25 @@ public class SegmentationModel {
         plus.show();
     }
 
+    /**
+     * Writes a label or mosaic image of every frame directly to disk, without creating the whole image in memory.
+     *
+     * @param output destination, or the base name when each frame is written to its own file.
+     * @param type labels or mosaic.
+     * @param separateFrames write a tiff stack for each frame instead of a single hyperstack.
+     * @param listener notified as frames are written, can be null.
+     * @throws IOException
+     */
+    public void exportLabelImage(File output, LabelImageExporter.Type type, boolean separateFrames, MeshExporter.ProgressListener listener) throws IOException {
+        LabelImageExporter exporter = new LabelImageExporter(stack, tracker.getAllMeshTracks(), type);
+        int last = stack.getNFrames() - 1;
+        if(separateFrames){
+            exporter.writeFrames(output, 0, last, listener);
+        } else{
+            exporter.writeHyperstack(output, 0, last, listener);
+        }
+    }
+
     public boolean hasSelectedMesh() {
         if(tracker.hasSelectedTrack()){
             return tracker.getSelectedMesh(getCurrentFrame())!=null;
@@ -923,7 +1005,7 @@ public class SegmentationModel {
         for(int j = 0; j<tracks.size(); j++){
             values.put(j, new TreeMap<>());
         }
-        for(Integer key: target.getTrack().keySet()){
+        for(Integer key: target.getFrames()){
             DeformableMesh3D m1 = target.getMesh(key);
             double s0 = DeformableMesh3DTools.calculateSurfaceArea(m1);
             double v0 = DeformableMesh3DTools.calculateVolume(m1.triangles);
@@ -52,7 +52,7 @@ public class PlotAverageIntensities {
             double[] times = new double[track.size()];
             double[] intensities = new double[track.size()];
             int index = 0;
-            for(Integer i: track.getTrack().keySet()){
+            for(Integer i: track.getFrames()){
                 stack.setFrame(i);
                 times[index] = i;
                 DeformableMesh3D mesh = track.getMesh(i);
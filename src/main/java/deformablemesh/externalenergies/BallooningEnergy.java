@@ -63,10 +63,14 @@ public class BallooningEnergy implements ExternalEnergy{
     @Override
     public void updateForces(double[] positions, double[] fx, double[] fy, double[] fz) {
 
+        double[] pt = new double[3];
         for(int i = 0; i<positions.length/3; i++){
-            if(constraint.contains(mesh.nodes.get(i).getCoordinates())){
+            pt[0] = positions[3*i];
+            pt[1] = positions[3*i + 1];
+            pt[2] = positions[3*i + 2];
+            if(constraint.contains(pt)){
                 double[] normal = calculator.getNormal(i);
-                double area = calculator.calculateMixedArea(mesh.nodes.get(i));
+                double area = calculator.calculateMixedArea(i);
                 fx[i] += weight*area*normal[0];
                 fy[i] += weight*area*normal[1];
                 fz[i] += weight*area*normal[2];
@@ -46,6 +46,9 @@ public class PerpendicularIntensityEnergy implements ExternalEnergy {
     double[] kernel = GaussianKernels.firstDerivative1DKernel();
     double weight;
     DeformableMesh3D mesh;
+    //scratch space for sampling along the normal, energies are only updated by their mesh.
+    private final double[] samples = new double[3*kernel.length];
+    private final double[] values = new double[kernel.length];
     public PerpendicularIntensityEnergy(MeshImageStack stack, DeformableMesh3D mesh, double weight){
         for(Triangle3D t: mesh.triangles){
             int[] dexs = t.getIndices();
@@ -84,14 +87,24 @@ public class PerpendicularIntensityEnergy implements ExternalEnergy {
     }
 
     public double getForce(double x, double y, double z, double[] direction){
+        return sampleKernel(x, y, z, direction);
+    }
+
+    /**
+     * Samples the image along the direction and applies the kernel.
+     */
+    double sampleKernel(double x, double y, double z, double[] direction){
         double width = kernel.length/2;
+        for(int i = 0; i<kernel.length; i++){
+            int dex = 3*i;
+            samples[dex] = (i - width)*ds*direction[0] + x;
+            samples[dex + 1] = (i - width)*ds*direction[1] + y;
+            samples[dex + 2] = (i - width)*ds*direction[2] + z;
+        }
+        stack.sample(samples, kernel.length, values);
         double m = 0;
-        double[] pos = new double[3];
         for(int i = 0; i<kernel.length; i++){
-            pos[0] = (i - width)*ds*direction[0] + x;
-            pos[1] = (i - width)*ds*direction[1] + y;
-            pos[2] = (i - width)*ds*direction[2] + z;
-            m += stack.getInterpolatedValue(pos)*kernel[i];
+            m += values[i]*kernel[i];
         }
         return m;
     }
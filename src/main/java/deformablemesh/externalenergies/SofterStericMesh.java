@@ -27,7 +27,6 @@ package deformablemesh.externalenergies;
 
 import deformablemesh.geometry.CurvatureCalculator;
 import deformablemesh.geometry.DeformableMesh3D;
-import deformablemesh.geometry.interceptable.InterceptingMesh3D;
 import deformablemesh.geometry.Intersection;
 import deformablemesh.util.Vector3DOps;
 
@@ -64,7 +63,7 @@ public class SofterStericMesh extends StericMesh {
             double dy = s.location[1] - origin[1];
             double dz = s.location[2] - origin[2];
 
-            dot = Vector3DOps.dot(new double[]{dx, dy, dz}, normal);
+            dot = dx*normal[0] + dy*normal[1] + dz*normal[2];
             surface = s.surfaceNormal;
         }
     }
@@ -72,7 +71,7 @@ public class SofterStericMesh extends StericMesh {
     @Override
     public void updateForces(double[] positions, double[] fx, double[] fy, double[] fz) {
         if (!staticShape || mesh == null) {
-            mesh = new InterceptingMesh3D(deformableMesh);
+            refreshMesh();
         }
 
 
@@ -163,8 +162,12 @@ public class SofterStericMesh extends StericMesh {
     public double[] getEffectiveNormal(double[] pt) {
         int best = -1;
         double closest = Double.MAX_VALUE;
-        for (int i = 0; i < deformableMesh.nodes.size(); i++) {
-            double l = Vector3DOps.distance(pt, deformableMesh.nodes.get(i).getCoordinates());
+        double[] positions = deformableMesh.positions;
+        for (int i = 0; i < positions.length/3; i++) {
+            double dx = pt[0] - positions[3*i];
+            double dy = pt[1] - positions[3*i + 1];
+            double dz = pt[2] - positions[3*i + 2];
+            double l = Math.sqrt(dx*dx + dy*dy + dz*dz);
             if(l<closest){
                 best = i;
                 closest = l;
@@ -181,7 +184,7 @@ public class SofterStericMesh extends StericMesh {
     @Override
     public double getEnergy(double[] pt) {
         if (!staticShape || mesh == null) {
-            mesh = new InterceptingMesh3D(deformableMesh);
+            refreshMesh();
         }
 
         if (mesh.boundsContains(pt)) {
@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.externalenergies;
+
+import deformablemesh.geometry.Box3D;
+import deformablemesh.geometry.DeformableMesh3D;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds which meshes of a frame are close enough to interact sterically. The bounding boxes, expanded by a margin,
+ * are swept along the x-axis and only pairs whose boxes overlap are reported.
+ */
+public class StericBroadPhase {
+    final List<DeformableMesh3D> meshes;
+    final double margin;
+    Map<DeformableMesh3D, List<DeformableMesh3D>> neighbors = new IdentityHashMap<>();
+
+    /**
+     *
+     * @param meshes all of the meshes in the frame.
+     * @param margin distance, in normalized units, that the bounding boxes are expanded by.
+     */
+    public StericBroadPhase(List<DeformableMesh3D> meshes, double margin){
+        this.meshes = new ArrayList<>(meshes);
+        this.margin = margin;
+    }
+
+    /**
+     * Recalculates the overlapping pairs using the current positions of the meshes.
+     */
+    public void update(){
+        int n = meshes.size();
+        double[][] low = new double[n][];
+        double[][] high = new double[n][];
+        Integer[] order = new Integer[n];
+        for(int i = 0; i<n; i++){
+            Box3D box = meshes.get(i).getBoundingBox();
+            low[i] = new double[]{box.low[0] - margin, box.low[1] - margin, box.low[2] - margin};
+            high[i] = new double[]{box.high[0] + margin, box.high[1] + margin, box.high[2] + margin};
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(low[a][0], low[b][0]));
+
+        Map<DeformableMesh3D, List<DeformableMesh3D>> pairs = new IdentityHashMap<>();
+        for(DeformableMesh3D mesh: meshes){
+            pairs.put(mesh, new ArrayList<>());
+        }
+        List<Integer> active = new ArrayList<>();
+        for(int k = 0; k<n; k++){
+            int i = order[k];
+            //remove the boxes that end before this one starts.
+            active.removeIf(j -> high[j][0] < low[i][0]);
+            for(Integer j: active){
+                if(low[i][1] <= high[j][1] && low[j][1] <= high[i][1]
+                        && low[i][2] <= high[j][2] && low[j][2] <= high[i][2]){
+                    pairs.get(meshes.get(i)).add(meshes.get(j));
+                    pairs.get(meshes.get(j)).add(meshes.get(i));
+                }
+            }
+            active.add(i);
+        }
+        neighbors = pairs;
+    }
+
+    /**
+     * @param mesh a mesh from this frame.
+     * @return meshes whose expanded bounding box overlaps the expanded bounding box of mesh.
+     */
+    public List<DeformableMesh3D> getNeighbors(DeformableMesh3D mesh){
+        List<DeformableMesh3D> n = neighbors.get(mesh);
+        return n == null ? Collections.emptyList() : n;
+    }
+}
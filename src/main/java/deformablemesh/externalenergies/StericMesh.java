@@ -64,24 +64,35 @@ public class StericMesh implements ExternalEnergy{
         }
     }
     public void update(){
-        mesh = new InterceptingMesh3D(deformableMesh);
+        refreshMesh();
+    }
+
+    /**
+     * Creates the intercepting mesh of the neighbor, or refits the existing one to the neighbors new positions.
+     */
+    void refreshMesh(){
+        if(mesh == null){
+            mesh = new InterceptingMesh3D(deformableMesh);
+        } else{
+            mesh.refit();
+        }
     }
 
 
     @Override
     public void updateForces(double[] positions, double[] fx, double[] fy, double[] fz) {
         if(!staticShape || mesh==null) {
-            mesh = new InterceptingMesh3D(deformableMesh);
+            refreshMesh();
         }
 
 
         double[] pt = new double[3];
+        double[] normal = new double[3];
         double[] center = mesh.getCenter();
         for(int i = 0; i<fx.length; i++){
             pt[0] = positions[3*i];
             pt[1] = positions[3*i + 1];
             pt[2] = positions[3*i + 2];
-            double[] normal = new double[3];
 
             if(mesh.contains(pt)){
                 double dx = pt[0] - center[0];
@@ -0,0 +1,95 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.externalenergies;
+
+import deformablemesh.geometry.DeformableMesh3D;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The steric interactions of one mesh with its neighbors. Only the neighbors found by the broad phase have a
+ * {@link SofterStericMesh}, and the pairs are refreshed on each update.
+ */
+public class StericNeighborEnergy implements ExternalEnergy {
+    final DeformableMesh3D mesh;
+    final StericBroadPhase broadPhase;
+    final double weight;
+    Map<DeformableMesh3D, StericMesh> pairs = new IdentityHashMap<>();
+    List<StericMesh> active = new ArrayList<>();
+
+    public StericNeighborEnergy(DeformableMesh3D mesh, StericBroadPhase broadPhase, double weight){
+        this.mesh = mesh;
+        this.broadPhase = broadPhase;
+        this.weight = weight;
+    }
+
+    /**
+     * Creates energies for new neighbors, removes the energies of meshes that are no longer neighbors and updates
+     * the remaining energies. The broad phase needs to be updated first.
+     */
+    public void update(){
+        Map<DeformableMesh3D, StericMesh> next = new IdentityHashMap<>();
+        for(DeformableMesh3D neighbor: broadPhase.getNeighbors(mesh)){
+            if(neighbor == mesh){
+                continue;
+            }
+            StericMesh sm = pairs.get(neighbor);
+            if(sm == null){
+                sm = new SofterStericMesh(mesh, neighbor, weight);
+            }
+            sm.update();
+            next.put(neighbor, sm);
+        }
+        pairs = next;
+        active = new ArrayList<>(next.values());
+    }
+
+    /**
+     * @return number of neighbors currently interacting with this mesh.
+     */
+    public int getPairCount(){
+        return active.size();
+    }
+
+    @Override
+    public void updateForces(double[] positions, double[] fx, double[] fy, double[] fz) {
+        for(StericMesh sm: active){
+            sm.updateForces(positions, fx, fy, fz);
+        }
+    }
+
+    @Override
+    public double getEnergy(double[] pos) {
+        double sum = 0;
+        for(StericMesh sm: active){
+            sum += sm.getEnergy(pos);
+        }
+        return sum;
+    }
+}
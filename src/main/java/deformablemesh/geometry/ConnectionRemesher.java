@@ -32,7 +32,6 @@ import deformablemesh.meshview.MeshFrame3D;
 import java.awt.Color;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
 
 /**
  *
@@ -40,6 +39,12 @@ import java.util.stream.Collectors;
  * neighboring triangles will be split in two. If a connection is too short, and both opposite nodes have more than 3
  * connections, then the connection will be removed.
  *
+ * Short connections are removed shortest first, using a heap of connection lengths. When a node is moved the
+ * lengths of its connections are pushed again, and outdated entries are discarded as they're polled.
+ *
+ * The work space refers to nodes, connections and triangles by int ids. Node ids are the node index, connections and
+ * triangles are numbered in the order they're added, and removed ids are not reused. The adjacency is started from
+ * the {@link MeshTopology} of the input mesh.
  *
  */
 public class ConnectionRemesher {
@@ -49,17 +54,25 @@ public class ConnectionRemesher {
     double minLength = 0.02;
     double maxLength = 0.04;
 
-    Map<Node3D, List<Triangle3D>> nodeToTriangle = new HashMap<>();
-    Map<Node3D, List<Connection3D>> nodeToConnection = new HashMap<>();
-    Map<Connection3D, List<Triangle3D>> adjacentTriangles = new HashMap<>();
-    Map<Triangle3D, List<Connection3D>> triangleEdges = new HashMap<>();
-    List<Node3D> nodes = new ArrayList<>();
-    List<Triangle3D> triangles = new ArrayList<>();
-    List<Connection3D> connections = new ArrayList<>();
+    IntLists nodeToTriangle = new IntLists();
+    IntLists nodeToConnection = new IntLists();
+    IntLists adjacentTriangles = new IntLists();
+    IntLists triangleEdges = new IntLists();
+
+    //pairs of node ids for each connection id.
+    int[] connectionNodes = new int[0];
+    //triplets of node ids for each triangle id.
+    int[] triangleNodes = new int[0];
+    BitSet removedNodes = new BitSet();
+    BitSet removedConnections = new BitSet();
+    BitSet removedTriangles = new BitSet();
+    int connectionCount;
+    int triangleCount;
+    int nodeCount;
     double[] positions;
     boolean openSurface = false;
-    //defensive copy for connectivity features. ie nodes, connections and triangles.
-    DeformableMesh3D original;
+    //topology of the mesh being remeshed.
+    MeshTopology original;
     public void buildDisplay(){
         frame = new MeshFrame3D();
         frame.showFrame(true);
@@ -69,82 +82,103 @@ public class ConnectionRemesher {
 
     AtomicBoolean cancelled = new AtomicBoolean(false);
     public void prepareWorkSpace(DeformableMesh3D unmodified){
-        original = new DeformableMesh3D(
-                unmodified.positions,
-                unmodified.connection_index,
-                unmodified.triangle_index
-        );
-
-        for(Node3D node: original.nodes){
-            nodeToTriangle.put(node, new ArrayList<>());
-            nodeToConnection.put(node, new ArrayList<>());
-            nodes.add(node);
-        }
-
-        for(Triangle3D t: original.triangles){
-            addTriangle(t);
+        original = new MeshTopology(unmodified);
+        //defensive copy, the positions are changed in place.
+        positions = Arrays.copyOf(unmodified.positions, unmodified.positions.length);
+        nodeCount = original.vertexCount;
+
+        for(int t = 0; t<original.triangleCount; t++){
+            addTriangle(
+                    original.triangle_index[3*t],
+                    original.triangle_index[3*t + 1],
+                    original.triangle_index[3*t + 2]
+            );
         }
 
+        for(int c = 0; c<original.connectionCount; c++){
+            addConnection(original.connection_index[2*c], original.connection_index[2*c + 1]);
 
-        for(Connection3D con: original.connections){
-            addConnection(con);
-
-            List<Triangle3D> pair = adjacentTriangles.get(con);
-
-            List<Triangle3D> ats = nodeToTriangle.get(con.A);
-            List<Triangle3D> bts = nodeToTriangle.get(con.B);
-
-            for(Triangle3D t: ats){
-                if(bts.contains(t)){
-                    pair.add(t);
-                    if(pair.size()==2){
-                        break;
-                    }
-                }
+            int first = original.connectionTriangleOffsets[c];
+            int count = Math.min(2, original.connectionTriangleOffsets[c + 1] - first);
+            for(int i = 0; i<count; i++){
+                int t = original.connectionTriangles[first + i];
+                adjacentTriangles.add(c, t);
+                triangleEdges.add(t, c);
             }
-            if(pair.size()==1){
+            if(count==1){
                 System.out.println("edge of mesh!");
                 openSurface = true;
             }
+        }
 
-            for(Triangle3D t: pair){
-                triangleEdges.get(t).add(con);
-            }
+    }
 
+    /**
+     * The length of a connection when it was added to the heap. Connection ids are in the order the connections
+     * were added, which is used to break ties the same way as a scan of the connections.
+     */
+    static class LengthEntry{
+        final int connection;
+        final double length;
+        LengthEntry(int connection, double length){
+            this.connection = connection;
+            this.length = length;
         }
+    }
 
-
+    static final Comparator<LengthEntry> shortestFirst = (a, b) -> {
+        int c = Double.compare(a.length, b.length);
+        return c != 0 ? c : Integer.compare(a.connection, b.connection);
+    };
+
+    double getLength(int c){
+        int a = 3*connectionNodes[2*c];
+        int b = 3*connectionNodes[2*c + 1];
+        double x = positions[a] - positions[b];
+        double y = positions[a + 1] - positions[b + 1];
+        double z = positions[a + 2] - positions[b + 2];
+        return Math.sqrt(x*x + y*y + z*z);
     }
 
-    public Connection3D getShortestConnection(){
-        double min = Double.MAX_VALUE;
-        Connection3D s = null;
-        for(Connection3D c: connections){
-            c.update();
-            double l = c.length;
-            if(l<min){
-                s = c;
-                min = l;
-            }
-        }
-        return s;
+    void push(PriorityQueue<LengthEntry> heap, int c){
+        heap.add(new LengthEntry(c, getLength(c)));
     }
 
-    public Connection3D getShortestConnection(Set<Connection3D> unavailable){
-        double min = Double.MAX_VALUE;
-        Connection3D s = null;
-        for(Connection3D c: connections){
-            if(unavailable.contains(c)){
+    /**
+     * Polls the shortest connection, skipping connections that have been removed, are unavailable or whose length
+     * has changed since they were pushed. Every change in length needs to be pushed, so that a current entry
+     * exists.
+     *
+     * @param heap connection lengths
+     * @param unavailable connections that will be skipped.
+     * @return the shortest connection, or -1.
+     */
+    int pollShortestConnection(PriorityQueue<LengthEntry> heap, BitSet unavailable){
+        while(!heap.isEmpty()){
+            LengthEntry entry = heap.poll();
+            int c = entry.connection;
+            if(removedConnections.get(c) || unavailable.get(c)){
                 continue;
             }
-            c.update();
-            double l = c.length;
-            if(l<min){
-                s = c;
-                min = l;
+            if(Double.compare(getLength(c), entry.length) != 0){
+                continue;
             }
+            return c;
+        }
+        return -1;
+    }
+
+    /**
+     * Makes sure the positions array can hold more nodes, the array is grown geometrically.
+     *
+     * @param additional number of nodes that will be added.
+     */
+    void ensureCapacity(int additional){
+        int required = 3*(nodeCount + additional);
+        if(required <= positions.length){
+            return;
         }
-        return s;
+        positions = Arrays.copyOf(positions, Math.max(required, 2*positions.length));
     }
 
     public DeformableMesh3D remesh(DeformableMesh3D unmodified){
@@ -154,10 +188,11 @@ public class ConnectionRemesher {
         double mn = 1;
         double ave = 0;
 
-        List<Connection3D> longOnes = new ArrayList<>();
-        for(Connection3D con: original.connections){
-            con.update();
-            double l = con.length;
+        List<Integer> longOnes = new ArrayList<>();
+        double[] lengths = new double[original.connectionCount];
+        for(int con = 0; con<original.connectionCount; con++){
+            double l = getLength(con);
+            lengths[con] = l;
             if(l>maxLength){
                 longOnes.add(con);
             }
@@ -171,13 +206,11 @@ public class ConnectionRemesher {
             ave += l;
 
         }
-        double totalLength = ave;
 
-        ave = ave/original.connections.size();
+        ave = ave/original.connectionCount;
 
-        int originalSize = original.connections.size();
-        double minResult = Math.pow(2, ave/maxLength)*original.connections.size();
-        //System.out.println( "before: " + ave + "// " + mn + "//" + ml + " ... " + originalSize);
+        int originalSize = original.connectionCount;
+        double minResult = Math.pow(2, ave/maxLength)*original.connectionCount;
         if(minResult > originalSize && minResult > 200000){
             throw new RuntimeException("Too many edges are predicted to be created: " + minResult);
         }
@@ -185,119 +218,106 @@ public class ConnectionRemesher {
             throw new RuntimeException("Invalid mesh result: " + "min: " + mn + ", max: " + ml + ", mean: " + ave);
         }
 
-        longOnes.sort(Comparator.comparingDouble(c -> c.length));
+        longOnes.sort(Comparator.comparingDouble(c -> lengths[c]));
 
-        positions = original.positions;
         while(longOnes.size()>0){
-
-            double[] new_positions = new double[3*longOnes.size() + positions.length];
-            System.arraycopy(positions, 0, new_positions, 0, positions.length);
-            positions = new_positions;
-            for(Node3D n: nodes){
-                n.setBackingData(positions);
-            }
-            List<Connection3D> replacements = new ArrayList<>();
-            for(Connection3D c: longOnes) {
-                replacements.addAll(replaceLongConnection(c));
+            ensureCapacity(longOnes.size());
+            List<Integer> replacements = new ArrayList<>();
+            for(int c: longOnes) {
+                replaceLongConnection(c, replacements);
             }
             longOnes.clear();
 
-            for(Connection3D con: replacements){
-                con.update();
-                double l = con.length;
-                if(l>maxLength){
+            for(int con: replacements){
+                if(getLength(con)>maxLength){
                     longOnes.add(con);
                 }
             }
 
         }
 
-        List<Connection3D> shorties = new ArrayList<>();
-
-        for(Connection3D con: connections){
-            con.update();
-            double l = con.length;
-            if(l>maxLength){
-                longOnes.add(con);
-            }
-            if(l<minLength){
-                shorties.add(con);
+        PriorityQueue<LengthEntry> heap = new PriorityQueue<>(Math.max(1, connectionCount), shortestFirst);
+        for(int con = 0; con<connectionCount; con++){
+            if(!removedConnections.get(con)){
+                push(heap, con);
             }
-
-
         }
 
-        Connection3D ss = getShortestConnection();
-
-        Set<Connection3D> nonEligible = new HashSet<>();
-        while(ss!=null && ss.length<minLength){
-            if(removeShortConnection(ss)){
-                ss = getShortestConnection(nonEligible);
-            } else{
-                nonEligible.add(ss);
-                ss = getShortestConnection(nonEligible);
+        BitSet nonEligible = new BitSet();
+        int ss = pollShortestConnection(heap, nonEligible);
+        while(ss>=0 && getLength(ss)<minLength){
+            int a = connectionNodes[2*ss];
+            double[] before = Arrays.copyOfRange(positions, 3*a, 3*a + 3);
+            if(!removeShortConnection(ss)){
+                nonEligible.set(ss);
             }
+            if(!Arrays.equals(before, Arrays.copyOfRange(positions, 3*a, 3*a + 3))){
+                //the node has been moved to the center, so all of its connections have changed.
+                for(int i = 0; i<nodeToConnection.size(a); i++){
+                    push(heap, nodeToConnection.get(a, i));
+                }
+            }
+            ss = pollShortestConnection(heap, nonEligible);
         }
 
-        nodes.sort(Comparator.comparingInt(n->n.index));
-        Map<Integer, Integer> map = new HashMap<>();
-
-        positions = new double[3*nodes.size()];
-        for(int i = 0; i<nodes.size(); i++){
-
-            double[] pt = nodes.get(i).getCoordinates();
-            positions[3*i] = pt[0];
-            positions[3*i+1] = pt[1];
-            positions[3*i+2] = pt[2];
-            map.put(nodes.get(i).index, i);
-        }
-
-        int[] triangle_indexes = new int[3*triangles.size()];
-        int[] connection_indexes = new int[2*connections.size()];
+        int[] map = new int[nodeCount];
+        double[] remeshed = new double[3*(nodeCount - removedNodes.cardinality())];
         int dex = 0;
-        for(Triangle3D t: triangles){
-            triangle_indexes[dex++] = map.get(t.A.index);
-            triangle_indexes[dex++] = map.get(t.B.index);
-            triangle_indexes[dex++] = map.get(t.C.index);
+        for(int i = 0; i<nodeCount; i++){
+            if(removedNodes.get(i)){
+                continue;
+            }
+            System.arraycopy(positions, 3*i, remeshed, 3*dex, 3);
+            map[i] = dex++;
         }
 
+        int[] triangle_indexes = new int[3*(triangleCount - removedTriangles.cardinality())];
         dex = 0;
-        for(Connection3D c: connections){
-            connection_indexes[dex++] = map.get(c.A.index);
-            connection_indexes[dex++] = map.get(c.B.index);
+        for(int t = 0; t<triangleCount; t++){
+            if(removedTriangles.get(t)){
+                continue;
+            }
+            triangle_indexes[dex++] = map[triangleNodes[3*t]];
+            triangle_indexes[dex++] = map[triangleNodes[3*t + 1]];
+            triangle_indexes[dex++] = map[triangleNodes[3*t + 2]];
         }
 
+        int[] connection_indexes = new int[2*(connectionCount - removedConnections.cardinality())];
+        dex = 0;
+        for(int c = 0; c<connectionCount; c++){
+            if(removedConnections.get(c)){
+                continue;
+            }
+            connection_indexes[dex++] = map[connectionNodes[2*c]];
+            connection_indexes[dex++] = map[connectionNodes[2*c + 1]];
+        }
 
-        //System.out.println( "after: " + connections.size());
-
-        return new DeformableMesh3D(positions, connection_indexes, triangle_indexes);
+        return new DeformableMesh3D(remeshed, connection_indexes, triangle_indexes);
 
 
     }
 
+    int getOtherNode(int c, int node){
+        int a = connectionNodes[2*c];
+        return a == node ? connectionNodes[2*c + 1] : a;
+    }
 
-    Node3D getOpposite(Triangle3D t, Node3D a, Node3D b){
-        Node3D[] nodes = {t.A, t.B, t.C};
-
-        for(Node3D n: nodes){
+    int getOpposite(int t, int a, int b){
+        for(int i = 0; i<3; i++){
+            int n = triangleNodes[3*t + i];
             if(n!=a && n!=b){
                 return n;
             }
         }
-        throw new RuntimeException("Broken Triangle: has no nodes exclusive of " + a.index + ", " + b.index);
+        throw new RuntimeException("Broken Triangle: has no nodes exclusive of " + a + ", " + b);
     }
 
-    Connection3D getOppositeEdge(Triangle3D t, Connection3D a, Connection3D b){
-
-        List<Connection3D> edges = triangleEdges.get(t);
-        for(Connection3D c: edges){
-
-            if (c.equals(a) || c.equals(b)) {
-                continue;
-            } else{
+    int getOppositeEdge(int t, int a, int b){
+        for(int i = 0; i<triangleEdges.size(t); i++){
+            int c = triangleEdges.get(t, i);
+            if(c != a && c != b){
                 return c;
             }
-
         }
         throw new RuntimeException("Triangle only contains 2 edges");
 
@@ -312,18 +332,16 @@ public class ConnectionRemesher {
      * @param o1 node from original triangle.
      * @param o2 second node from original triangle.
      * @param n1 new node being added.
-     * @return
+     * @return id of the new triangle.
      */
-    Triangle3D matchedWindingTriangle(Triangle3D org, Node3D o1, Node3D o2, Node3D n1){
-        Node3D[] nodes = {org.A, org.B, org.C};
-
+    int addMatchedWindingTriangle(int org, int o1, int o2, int n1){
         for(int i = 0; i<3; i++){
 
-            if(nodes[i].equals(o1)){
-                if(nodes[(i+1)%3].equals(o2) ){
-                    return new Triangle3D(o1, o2, n1);
+            if(triangleNodes[3*org + i] == o1){
+                if(triangleNodes[3*org + (i+1)%3] == o2){
+                    return addTriangle(o1, o2, n1);
                 } else{
-                    return new Triangle3D(o2, o1, n1);
+                    return addTriangle(o2, o1, n1);
                 }
             }
 
@@ -331,25 +349,25 @@ public class ConnectionRemesher {
 
         throw new RuntimeException(
                 String.format( "Node %d is not in triangle. (%d, %d, %d",
-                o1.index, org.A.index, org.B.index, org.C.index )
+                o1, triangleNodes[3*org], triangleNodes[3*org + 1], triangleNodes[3*org + 2] )
         );
 
 
     }
 
-    Connection3D getMatched(Triangle3D t, Node3D n1, Node3D n2){
+    int getMatched(int t, int n1, int n2){
 
-        for(Connection3D con: triangleEdges.get(t)){
-
-            if(con.A.equals(n1) && con.B.equals(n2)){
-                return con;
-            } else if(con.B.equals(n1) && con.A.equals(n2)){
+        for(int i = 0; i<triangleEdges.size(t); i++){
+            int con = triangleEdges.get(t, i);
+            int a = connectionNodes[2*con];
+            int b = connectionNodes[2*con + 1];
+            if((a == n1 && b == n2) || (b == n1 && a == n2)){
                 return con;
             }
 
         }
         throw new RuntimeException(
-            String.format("Triangle is not mapped to an edge with nodes %d and %d", n1.index, n2.index)
+            String.format("Triangle is not mapped to an edge with nodes %d and %d", n1, n2)
         );
 
     }
@@ -358,148 +376,138 @@ public class ConnectionRemesher {
      * The provided connection will be removed, and both adjacent triangles will also be removed.
      * A new node, and four new triangles, and four new connections will be added.
      *
-     * @param c
+     * @param c id of the connection.
+     * @param replacements the four new connections are added to this list.
      */
-    List<Connection3D> replaceLongConnection(Connection3D c){
-        double[] pa = c.A.getCoordinates();
-        double[] pb = c.B.getCoordinates();
+    void replaceLongConnection(int c, List<Integer> replacements){
+        int ca = connectionNodes[2*c];
+        int cb = connectionNodes[2*c + 1];
 
-        double[] nPt = { 0.5*(pa[0] + pb[0]), 0.5*(pa[1] + pb[1]), 0.5*(pa[2] + pb[2])};
-
-        Node3D node = new Node3D(positions, nodes.size());
-        node.setPosition(nPt);
-        nodes.add(node);
-        nodeToTriangle.put(node, new ArrayList<>());
-        nodeToConnection.put(node, new ArrayList<>());
+        int node = nodeCount++;
+        for(int i = 0; i<3; i++){
+            positions[3*node + i] = 0.5*(positions[3*ca + i] + positions[3*cb + i]);
+        }
 
-        Connection3D a = new Connection3D(c.A, node);
-        Connection3D b = new Connection3D(node, c.B);
-        addConnection(a);
-        addConnection(b);
+        int a = addConnection(ca, node);
+        int b = addConnection(node, cb);
 
         //either 1 (edge of mesh) or 2 triangles to be split.
-        List<Triangle3D> toRemove = adjacentTriangles.get(c);
+        int first = adjacentTriangles.get(c, 0);
 
-        Triangle3D first = toRemove.get(0);
-
-        Node3D opposite1 = getOpposite(first, c.A, c.B);
+        int opposite1 = getOpposite(first, ca, cb);
 
         //Connection that splits previous triangle.
-        Connection3D firstCon = new Connection3D(node, opposite1);
-        addConnection(firstCon);
+        int firstCon = addConnection(node, opposite1);
 
-        Triangle3D firstA = matchedWindingTriangle(first, c.A, opposite1, node);
-        Triangle3D firstB = matchedWindingTriangle(first, c.B, opposite1, node);
-        addTriangle(firstA);
-        addTriangle(firstB);
+        int firstA = addMatchedWindingTriangle(first, ca, opposite1, node);
+        int firstB = addMatchedWindingTriangle(first, cb, opposite1, node);
 
-        adjacentTriangles.get(a).add(firstA);
-        adjacentTriangles.get(b).add(firstB);
+        adjacentTriangles.add(a, firstA);
+        adjacentTriangles.add(b, firstB);
 
-        adjacentTriangles.get(firstCon).add(firstA);
-        adjacentTriangles.get(firstCon).add(firstB);
+        adjacentTriangles.add(firstCon, firstA);
+        adjacentTriangles.add(firstCon, firstB);
 
         //the two external edges will be shared with the new triangles.
-        Connection3D remainA1 = getMatched(first, c.A, opposite1);
-        Connection3D remainB1 = getMatched(first, c.B, opposite1);
+        int remainA1 = getMatched(first, ca, opposite1);
+        int remainB1 = getMatched(first, cb, opposite1);
 
-        adjacentTriangles.get(remainA1).add(firstA);
-        adjacentTriangles.get(remainB1).add(firstB);
+        adjacentTriangles.add(remainA1, firstA);
+        adjacentTriangles.add(remainB1, firstB);
 
-        triangleEdges.get(firstA).addAll(Arrays.asList(a, firstCon, remainA1));
-        triangleEdges.get(firstB).addAll(Arrays.asList(b, firstCon, remainB1));
+        triangleEdges.add(firstA, a, firstCon, remainA1);
+        triangleEdges.add(firstB, b, firstCon, remainB1);
 
         //If there is a second triangle that needs to be removed.
-        Triangle3D second = toRemove.get(1);
+        int second = adjacentTriangles.get(c, 1);
 
-        Node3D opposite2 = getOpposite(second, c.A, c.B);
+        int opposite2 = getOpposite(second, ca, cb);
 
         //diagonal
-        Connection3D secondCon = new Connection3D(node, opposite2);
-        addConnection(secondCon);
+        int secondCon = addConnection(node, opposite2);
 
-        Triangle3D secondA = matchedWindingTriangle(second, c.A, opposite2, node);
-        Triangle3D secondB = matchedWindingTriangle(second, c.B, opposite2, node);
-        addTriangle(secondA);
-        addTriangle(secondB);
+        int secondA = addMatchedWindingTriangle(second, ca, opposite2, node);
+        int secondB = addMatchedWindingTriangle(second, cb, opposite2, node);
 
-        Connection3D remainA2 = getMatched(second, c.A, opposite2);
-        Connection3D remainB2 = getMatched(second, c.B, opposite2);
+        int remainA2 = getMatched(second, ca, opposite2);
+        int remainB2 = getMatched(second, cb, opposite2);
 
         //across from each other.
-        adjacentTriangles.get(secondCon).add(secondA);
-        adjacentTriangles.get(secondCon).add(secondB);
+        adjacentTriangles.add(secondCon, secondA);
+        adjacentTriangles.add(secondCon, secondB);
 
         //across to the other new triangles.
-        adjacentTriangles.get(a).add(secondA);
-        adjacentTriangles.get(b).add(secondB);
+        adjacentTriangles.add(a, secondA);
+        adjacentTriangles.add(b, secondB);
 
         //across external edge
-        adjacentTriangles.get(remainA2).add(secondA);
-        adjacentTriangles.get(remainB2).add(secondB);
+        adjacentTriangles.add(remainA2, secondA);
+        adjacentTriangles.add(remainB2, secondB);
 
         //edge map.
-        triangleEdges.get(secondA).addAll(Arrays.asList(a, secondCon, remainA2));
-        triangleEdges.get(secondB).addAll(Arrays.asList(b, secondCon, remainB2));
+        triangleEdges.add(secondA, a, secondCon, remainA2);
+        triangleEdges.add(secondB, b, secondCon, remainB2);
 
 
         removeTriangle(second);
         removeTriangle(first);
         removeConnection(c);
 
-        return Arrays.asList(a, b, firstCon, secondCon);
+        replacements.add(a);
+        replacements.add(b);
+        replacements.add(firstCon);
+        replacements.add(secondCon);
     }
 
-    Triangle3D remapTriangle(Triangle3D orig, Node3D replacing, Node3D replacement){
-        Node3D a,b,c;
-
-        if(orig.A.equals(replacing)){
-            a = replacement;
-            b = orig.B;
-            c = orig.C;
-        } else if(orig.B.equals(replacing)){
-            a = orig.A;
-            b = replacement;
-            c = orig.C;
-
-        } else if( orig.C.equals(replacing)) {
-            a = orig.A;
-            b = orig.B;
-            c = replacement;
-        } else{
-            throw new RuntimeException("Node to be replaced is not found in the current triangle! " + replacing.index);
-        }
-        return new Triangle3D(a,b,c);
+    /**
+     * Creates a copy of a triangle with one node replaced.
+     *
+     * @return id of the new triangle.
+     */
+    int addRemappedTriangle(int orig, int replacing, int replacement){
+        int[] abc = {triangleNodes[3*orig], triangleNodes[3*orig + 1], triangleNodes[3*orig + 2]};
+        for(int i = 0; i<3; i++){
+            if(abc[i] == replacing){
+                abc[i] = replacement;
+                return addTriangle(abc[0], abc[1], abc[2]);
+            }
+        }
+        throw new RuntimeException("Node to be replaced is not found in the current triangle! " + replacing);
     }
 
-    Connection3D remapConnection(Connection3D c, Node3D replacing, Node3D replacement){
+    /**
+     * Creates a copy of a connection with one node replaced.
+     *
+     * @return id of the new connection.
+     */
+    int addRemappedConnection(int c, int replacing, int replacement){
 
-        if (c.A.equals(replacing)) {
-            Connection3D c3d = new Connection3D(replacement, c.B);
-            if(connections.contains(c3d)){
-                System.out.println("re-mapped");
-            }
-            return c3d;
-        } else if(c.B.equals(replacing)){
-            Connection3D c3d = new Connection3D(c.A, replacement);
-            if(connections.contains(c3d)){
-                System.out.println("wrapped");
-            }
-            return c3d;
+        if (connectionNodes[2*c] == replacing) {
+            return addConnection(replacement, connectionNodes[2*c + 1]);
+        } else if(connectionNodes[2*c + 1] == replacing){
+            return addConnection(connectionNodes[2*c], replacement);
         }
 
-        throw new RuntimeException("Node does not exist to be replaced on connection. " + replacing.index);
+        throw new RuntimeException("Node does not exist to be replaced on connection. " + replacing);
 
 
     }
 
-    public boolean removeShortConnection(Connection3D con){
-        List<Triangle3D> triangles = adjacentTriangles.get(con);
+    /**
+     * Collapses a connection, the first node is moved to the center and the second node is removed.
+     *
+     * @param con id of the connection.
+     * @return false if the connection cannot be removed.
+     */
+    public boolean removeShortConnection(int con){
+        int[] triangles = adjacentTriangles.toArray(con);
+        int ca = connectionNodes[2*con];
+        int cb = connectionNodes[2*con + 1];
 
         //both will be removed.
-        for(Triangle3D t: triangles) {
-            Node3D opposite = getOpposite(t, con.A, con.B);
-            if (nodeToConnection.get(opposite).size() <= 3) {
+        for(int t: triangles) {
+            int opposite = getOpposite(t, ca, cb);
+            if (nodeToConnection.size(opposite) <= 3) {
                 //this fault is also a triangle that is split in three.
                 //the middle node, and three triangles can be removed and
                 // replaced by a single triangle.
@@ -507,26 +515,19 @@ public class ConnectionRemesher {
             }
         }
 
-        double[] apt = con.A.getCoordinates();
-        double[] bpt = con.B.getCoordinates();
-        double[] npt = {0.5*(apt[0] + bpt[0]), 0.5*(apt[1] + bpt[1]), 0.5*(apt[2] + bpt[2])};
-        con.A.setPosition(npt);
-
-        Set<Node3D> aNeighbors = nodeToConnection.get(con.A).stream().map(
-            c3d ->{
-                if (c3d.A.equals(con.A)) {
-                    return c3d.B;
-                } else{
-                    return c3d.A;
-                }
-            }).collect(Collectors.toSet());
+        for(int i = 0; i<3; i++){
+            positions[3*ca + i] = 0.5*(positions[3*ca + i] + positions[3*cb + i]);
+        }
 
-        List<Connection3D> mappingConnections = new ArrayList<>(nodeToConnection.get(con.B));
+        int[] mappingConnections = nodeToConnection.toArray(cb);
         int shared = 0;
-        for(Connection3D forMapping: mappingConnections){
-            Node3D other = forMapping.B == con.B ? forMapping.A : forMapping.B;
-            if (aNeighbors.contains(other)) {
-                shared++;
+        for(int forMapping: mappingConnections){
+            int other = getOtherNode(forMapping, cb);
+            for(int i = 0; i<nodeToConnection.size(ca); i++){
+                if(getOtherNode(nodeToConnection.get(ca, i), ca) == other){
+                    shared++;
+                    break;
+                }
             }
         }
         if(shared != 2){
@@ -535,41 +536,33 @@ public class ConnectionRemesher {
             //This could be a location to split the mesh.
             return false;
         }
-        List<Triangle3D> mappingTriangles = new ArrayList<>(nodeToTriangle.get(con.B));
+        int[] mappingTriangles = nodeToTriangle.toArray(cb);
 
 
-        for(Triangle3D t3d: mappingTriangles){
-            if(triangles.contains(t3d)){
+        for(int t3d: mappingTriangles){
+            if(contains(triangles, t3d)){
                 //will be removed, not remapped.
                 continue;
             }
-            Triangle3D remapped = remapTriangle(t3d, con.B, con.A);
-            addTriangle(remapped);
+            int remapped = addRemappedTriangle(t3d, cb, ca);
 
-            List<Connection3D> edges = triangleEdges.get(t3d);
-            if(edges == null){
-                System.out.println("borked!");
-            }
-            for(Connection3D edge: edges){
-                List<Triangle3D> adj = adjacentTriangles.get(edge);
-                adj.add(remapped);
-                triangleEdges.get(remapped).add(edge);
+            for(int i = 0; i<triangleEdges.size(t3d); i++){
+                int edge = triangleEdges.get(t3d, i);
+                adjacentTriangles.add(edge, remapped);
+                triangleEdges.add(remapped, edge);
             }
             removeTriangle(t3d);
         }
 
-        for(Connection3D toMap: mappingConnections){
+        for(int toMap: mappingConnections){
             if(toMap == con){
                 continue;
             }
-            List<Triangle3D> tri = adjacentTriangles.get(toMap);
-            if(tri == null ){
-                throw new RuntimeException("attempting to remove unmapped connection");
-            }
+            int[] tri = adjacentTriangles.toArray(toMap);
             boolean cleanSwap = true;
-            Connection3D crossEdge = null;
-            for(Triangle3D t: tri){
-                if(triangles.contains(t)) {
+            int crossEdge = -1;
+            for(int t: tri){
+                if(contains(triangles, t)) {
                     //get the opposite edge and connect.
                     cleanSwap = false;
                     crossEdge = getOppositeEdge(t, con, toMap);
@@ -577,17 +570,16 @@ public class ConnectionRemesher {
             }
 
             if(cleanSwap){
-                Connection3D reMapped = remapConnection(toMap, con.B, con.A);
-                addConnection(reMapped);
-                adjacentTriangles.get(reMapped).addAll(tri);
-                for(Triangle3D t: tri){
-                    triangleEdges.get(t).add(reMapped);
+                int reMapped = addRemappedConnection(toMap, cb, ca);
+                for(int t: tri){
+                    adjacentTriangles.add(reMapped, t);
+                    triangleEdges.add(t, reMapped);
                 }
             } else{
-                for(Triangle3D t: tri){
-                    if(!triangles.contains(t)) {
-                        adjacentTriangles.get(crossEdge).add(t);
-                        triangleEdges.get(t).add(crossEdge);
+                for(int t: tri){
+                    if(!contains(triangles, t)) {
+                        adjacentTriangles.add(crossEdge, t);
+                        triangleEdges.add(t, crossEdge);
                     }
                 }
 
@@ -597,57 +589,162 @@ public class ConnectionRemesher {
         }
 
         removeConnection(con);
-        triangles.forEach(this::removeTriangle);
-        nodes.remove(con.B);
+        for(int t: triangles){
+            removeTriangle(t);
+        }
+        removedNodes.set(cb);
         return true;
     }
 
-    public void addTriangle(Triangle3D t){
-        triangles.add(t);
+    static boolean contains(int[] values, int value){
+        for(int v: values){
+            if(v == value){
+                return true;
+            }
+        }
+        return false;
+    }
 
-        nodeToTriangle.get(t.A).add(t);
-        nodeToTriangle.get(t.B).add(t);
-        nodeToTriangle.get(t.C).add(t);
+    /**
+     * @return id of the new triangle.
+     */
+    public int addTriangle(int a, int b, int c){
+        int t = triangleCount++;
+        if(triangleNodes.length < 3*triangleCount){
+            triangleNodes = Arrays.copyOf(triangleNodes, Math.max(3*triangleCount, 2*triangleNodes.length));
+        }
+        triangleNodes[3*t] = a;
+        triangleNodes[3*t + 1] = b;
+        triangleNodes[3*t + 2] = c;
 
-        triangleEdges.put(t, new ArrayList<>());
+        nodeToTriangle.add(a, t);
+        nodeToTriangle.add(b, t);
+        nodeToTriangle.add(c, t);
+
+        return t;
     }
 
-    public void removeTriangle(Triangle3D t){
-        triangles.remove(t);
+    public void removeTriangle(int t){
+        removedTriangles.set(t);
 
-        nodeToTriangle.get(t.A).remove(t);
-        nodeToTriangle.get(t.B).remove(t);
-        nodeToTriangle.get(t.C).remove(t);
+        nodeToTriangle.remove(triangleNodes[3*t], t);
+        nodeToTriangle.remove(triangleNodes[3*t + 1], t);
+        nodeToTriangle.remove(triangleNodes[3*t + 2], t);
 
-        List<Connection3D> edges = triangleEdges.get(t);
-        for(Connection3D c: edges){
-            adjacentTriangles.get(c).remove(t);
+        for(int i = 0; i<triangleEdges.size(t); i++){
+            adjacentTriangles.remove(triangleEdges.get(t, i), t);
         }
-        triangleEdges.remove(t);
+        triangleEdges.clear(t);
 
     }
 
-    public void addConnection(Connection3D c){
-        if(connections.contains(c)){
-            throw new RuntimeException("adding existing connection");
+    /**
+     * @return id of the new connection.
+     */
+    public int addConnection(int a, int b){
+        for(int i = 0; i<nodeToConnection.size(a); i++){
+            if(getOtherNode(nodeToConnection.get(a, i), a) == b){
+                throw new RuntimeException("adding existing connection");
+            }
         }
-        connections.add(c);
+        int c = connectionCount++;
+        if(connectionNodes.length < 2*connectionCount){
+            connectionNodes = Arrays.copyOf(connectionNodes, Math.max(2*connectionCount, 2*connectionNodes.length));
+        }
+        connectionNodes[2*c] = a;
+        connectionNodes[2*c + 1] = b;
+
+        nodeToConnection.add(a, c);
+        nodeToConnection.add(b, c);
+
+        return c;
+    }
 
-        nodeToConnection.get(c.A).add(c);
-        nodeToConnection.get(c.B).add(c);
+    public void removeConnection(int c){
+        removedConnections.set(c);
+        nodeToConnection.remove(connectionNodes[2*c], c);
+        nodeToConnection.remove(connectionNodes[2*c + 1], c);
 
-        adjacentTriangles.put(c, new ArrayList<>());
+        for(int i = 0; i<adjacentTriangles.size(c); i++){
+            triangleEdges.remove(adjacentTriangles.get(c, i), c);
+        }
+        adjacentTriangles.clear(c);
     }
-    public void removeConnection(Connection3D c){
-        connections.remove(c);
-        nodeToConnection.get(c.A).remove(c);
-        nodeToConnection.get(c.B).remove(c);
 
-        List<Triangle3D> ats = adjacentTriangles.get(c);
-        for(Triangle3D t: ats){
-            triangleEdges.get(t).remove(c);
+    /**
+     * Growable int lists, one for each node, connection or triangle id. Removing a value keeps the order of the
+     * remaining values, the same as an ArrayList.
+     */
+    static class IntLists{
+        int[][] values = new int[0][];
+        int[] sizes = new int[0];
+
+        private void ensure(int list){
+            if(list >= sizes.length){
+                int n = Math.max(list + 1, 2*sizes.length);
+                values = Arrays.copyOf(values, n);
+                sizes = Arrays.copyOf(sizes, n);
+            }
+        }
+
+        void add(int list, int value){
+            ensure(list);
+            int[] v = values[list];
+            if(v == null){
+                v = new int[4];
+                values[list] = v;
+            } else if(sizes[list] == v.length){
+                v = Arrays.copyOf(v, 2*v.length);
+                values[list] = v;
+            }
+            v[sizes[list]++] = value;
+        }
+
+        void add(int list, int a, int b, int c){
+            add(list, a);
+            add(list, b);
+            add(list, c);
+        }
+
+        /**
+         * Removes the first occurrence of value.
+         */
+        void remove(int list, int value){
+            if(list >= sizes.length){
+                return;
+            }
+            int[] v = values[list];
+            int n = sizes[list];
+            for(int i = 0; i<n; i++){
+                if(v[i] == value){
+                    System.arraycopy(v, i + 1, v, i, n - i - 1);
+                    sizes[list] = n - 1;
+                    return;
+                }
+            }
+        }
+
+        int size(int list){
+            return list < sizes.length ? sizes[list] : 0;
+        }
+
+        int get(int list, int i){
+            if(i >= size(list)){
+                throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size(list));
+            }
+            return values[list][i];
+        }
+
+        void clear(int list){
+            if(list < sizes.length){
+                sizes[list] = 0;
+            }
+        }
+
+        int[] toArray(int list){
+            int n = size(list);
+            return n == 0 ? new int[0] : Arrays.copyOf(values[list], n);
         }
-        adjacentTriangles.remove(c);
     }
 
 
@@ -50,29 +50,25 @@ import java.util.stream.Collectors;
  */
 public class    CurvatureCalculator {
     DeformableMesh3D mesh;
-    Map<Node3D, List<Triangle3D>> node_to_triangle = new HashMap<>();
     double min_curv = -1;
     double max_curv = -1;
 
     public CurvatureCalculator(DeformableMesh3D mesh){
         this.mesh = mesh;
-        prepareMap();
     }
 
-    public void prepareMap(){
-        for(Triangle3D tri: mesh.triangles){
-            tri.update();
-            addNode(tri.A, tri, node_to_triangle);
-            addNode(tri.B, tri, node_to_triangle);
-            addNode(tri.C, tri, node_to_triangle);
-        }
-    }
-
-    private void addNode(Node3D n, Triangle3D t, Map<Node3D, List<Triangle3D>> map){
-        if(!map.containsKey(n)){
-            map.put(n,new ArrayList<>());
+    /**
+     * The triangles containing a node, from the vertex to triangle offsets of the mesh topology.
+     */
+    private List<Triangle3D> getTriangles(Node3D node){
+        MeshTopology topo = mesh.getTopology();
+        int start = topo.vertexTriangleOffsets[node.index];
+        int end = topo.vertexTriangleOffsets[node.index + 1];
+        List<Triangle3D> triangles = new ArrayList<>(end - start);
+        for(int i = start; i<end; i++){
+            triangles.add(mesh.triangles.get(topo.vertexTriangles[i]));
         }
-        map.get(n).add(t);
+        return triangles;
     }
 
     /**
@@ -155,8 +151,7 @@ public class    CurvatureCalculator {
      * @return normalized vector representing the mean normal at the node.
      */
     public double[] getNormal(int index){
-        Node3D node = mesh.nodes.get(index);
-        return calculateMeanNormal(node, node_to_triangle.get(node));
+        return mesh.getGeometryCache().getNormal(index);
     }
 
 
@@ -322,23 +317,21 @@ public class    CurvatureCalculator {
         return kappa;
     }
     public double calculateMixedArea(Node3D node){
-
-        List<Triangle3D> triangles = node_to_triangle.get(node);
-        return calculateMixedArea(node, triangles);
-
+        return mesh.getGeometryCache().getMixedArea(node.index);
     }
 
     public Set<Node3D> getNeighbors(Node3D node){
-        //neighbors = new HashMap<Node3D, Set<Node3D>>();
-        List<Triangle3D> triangles = node_to_triangle.get(node);
+        MeshTopology topo = mesh.getTopology();
         Set<Node3D> neighbors = new HashSet<>();
-        neighbors.add(node);
-        for(Triangle3D t: triangles){
-            neighbors.add(t.A);
-            neighbors.add(t.B);
-            neighbors.add(t.C);
+        for(int i = topo.vertexTriangleOffsets[node.index]; i<topo.vertexTriangleOffsets[node.index + 1]; i++){
+            int t = 3*topo.vertexTriangles[i];
+            for(int j = 0; j<3; j++){
+                int n = topo.triangle_index[t + j];
+                if(n != node.index){
+                    neighbors.add(mesh.nodes.get(n));
+                }
+            }
         }
-        neighbors.remove(node);
         return neighbors;
     }
 
@@ -352,12 +345,12 @@ public class    CurvatureCalculator {
         Node3D node = mesh.nodes.get(i);
         Set<Node3D> neighbors = getNeighbors(node);
 
-        double[] k1 = calculateMeanCurvatureNormal(node, node_to_triangle.get(node));
+        double[] k1 = calculateMeanCurvatureNormal(node, getTriangles(node));
         double kh = Vector3DOps.normalize(k1)/2;
         double[] k2 = new double[k1.length];
         double kneighbors = 0;
         for(Node3D neighbor: neighbors){
-            double[] ki = calculateMeanCurvatureNormal(node, node_to_triangle.get(node));
+            double[] ki = calculateMeanCurvatureNormal(node, getTriangles(node));
 
         }
 
@@ -370,8 +363,7 @@ public class    CurvatureCalculator {
      * @return mixed area.
      */
     public double calculateMixedArea(int index){
-        Node3D node = mesh.nodes.get(index);
-        return calculateMixedArea(node);
+        return mesh.getGeometryCache().getMixedArea(index);
     }
 
     static public double calculateMixedArea(Node3D node, List<Triangle3D> triangles){
@@ -452,21 +444,20 @@ public class    CurvatureCalculator {
      */
     public List<double[]> calculateCurvature(){
         List<double[]> values = new ArrayList<>();
-
+        MeshGeometryCache cache = mesh.getGeometryCache();
+        cache.update();
 
         for(Node3D node: mesh.nodes){
-            List<Triangle3D> t_angles = node_to_triangle.get(node);
             //all touching triangles.
-            if(t_angles==null) continue;
+            if(cache.getTriangleCount(node.index)==0) continue;
 
-            double[] curvature = getNormalAndCurvature(node, t_angles);
+            double[] normal = cache.getNormal(node.index);
             double[] pt = node.getCoordinates();
-            double mixedArea = calculateMixedArea(node);
             values.add(new double[]{
                     pt[0], pt[1], pt[2],
-                    curvature[3],
-                    curvature[0], curvature[1], curvature[2],
-                    mixedArea
+                    cache.getCurvature(node.index),
+                    normal[0], normal[1], normal[2],
+                    cache.getMixedArea(node.index)
             });
 
 
@@ -546,7 +537,7 @@ public class    CurvatureCalculator {
         Graph ys = new Graph();
         Graph zs = new Graph();
         for(Track track: tracks){
-            for(Integer key: track.getTrack().keySet()){
+            for(Integer key: track.getFrames()){
 
                 MeshFrame3D viewer = new MeshFrame3D();
 
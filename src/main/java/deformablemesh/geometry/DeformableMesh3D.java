@@ -25,11 +25,17 @@
  */
 package deformablemesh.geometry;
 
-import Jama.LUDecomposition;
-import Jama.Matrix;
 import deformablemesh.DeformableMesh3DTools;
 import deformablemesh.MeshImageStack;
 import deformablemesh.externalenergies.ExternalEnergy;
+import deformablemesh.geometry.solvers.DenseLUSolver;
+import deformablemesh.geometry.solvers.MatrixAccumulator;
+import deformablemesh.geometry.solvers.SolverCache;
+import deformablemesh.geometry.solvers.SolverType;
+import deformablemesh.geometry.solvers.SparseIterativeSolver;
+import deformablemesh.geometry.solvers.SparseMatrix;
+import deformablemesh.geometry.solvers.StiffnessKey;
+import deformablemesh.geometry.solvers.StiffnessMatrixSolver;
 import deformablemesh.meshview.DeformableMeshDataObject;
 import deformablemesh.util.Vector3DOps;
 
@@ -51,7 +57,9 @@ public class DeformableMesh3D{
     public double GAMMA;
     public double ALPHA;
     public double BETA;
-    LUDecomposition decomp;
+    StiffnessMatrixSolver solver;
+    MeshWorkspace workspace;
+    SolverType solverType = defaultSolverType;
 
     List<ExternalEnergy> energies = new ArrayList<>();
 
@@ -61,6 +69,8 @@ public class DeformableMesh3D{
     public double[] positions;
     public int[] connection_index;
     public int[] triangle_index;
+    MeshTopology topology;
+    MeshGeometryCache geometryCache;
 
     public DeformableMeshDataObject data_object;
     //private final static
@@ -71,6 +81,8 @@ public class DeformableMesh3D{
     private Color color = Color.BLUE;
     private boolean selected;
     static ExecutorService globalPool = ForkJoinPool.commonPool();
+    static SolverType defaultSolverType = SolverType.DENSE;
+    static SolverCache solverCache = new SolverCache(8);
     /**
      * Creates a deformable mesh in 3d.
      *
@@ -175,7 +187,46 @@ public class DeformableMesh3D{
     public static void setGlobalExecutor(ExecutorService s){
         globalPool = s;
     }
+
+    /**
+     * Sets the solver type used by meshes created after this call.
+     *
+     * @param type solver type for new meshes.
+     */
+    public static void setDefaultSolverType(SolverType type){
+        defaultSolverType = type;
+    }
+
+    /**
+     * Replaces the cache used for sharing solvers between meshes with identical topology and parameters.
+     *
+     * @param cache new cache, a cache with 0 capacity disables sharing.
+     */
+    public static void setSolverCache(SolverCache cache){
+        solverCache = cache;
+    }
+
+    public static SolverCache getSolverCache(){
+        return solverCache;
+    }
+
+    /**
+     * Changes how this mesh solves for new positions. The stiffness matrix will be rebuilt on the next update.
+     *
+     * @param type dense or sparse.
+     */
+    public void setSolverType(SolverType type){
+        if(type != solverType){
+            solverType = type;
+            solver = null;
+        }
+    }
+
+    public SolverType getSolverType(){
+        return solverType;
+    }
     public void syncConnectionIndices(){
+        topology = null;
         connection_index = connection_index.length!=2*connections.size()?new int[2*connections.size()]:connection_index;
         for(int i = 0; i<connections.size();i++){
             Connection3D con = connections.get(i);
@@ -190,6 +241,7 @@ public class DeformableMesh3D{
     }
 
     public void syncTriangleIndices(){
+        topology = null;
 
         if(triangle_index.length!=3*triangles.size()){
             triangle_index = new int[3*triangles.size()];
@@ -210,68 +262,134 @@ public class DeformableMesh3D{
         data_object.setShowSurface(showSurface);
     }
 
+    /**
+     * Prepares the solver for the current connections, triangles and parameters. Meshes with the same topology,
+     * parameters and node gamma factors share a solver through the solver cache.
+     */
     public void reshape(){
-        double[][] data = new double[nodes.size()][nodes.size()];
-        if(BETA>0){
-            updateBetaMatrix(data);
-        }
+        MeshTopology topo = getIndexedTopology();
+        solver = solverCache.getSolver(getStiffnessKey(topo), () -> createSolver(topo));
+    }
 
-        for(Connection3D c: connections){
+    /**
+     * Creates the key that identifies the stiffness matrix of this mesh. The matrix depends only on the
+     * connectivity and parameters, not the node positions.
+     *
+     * @return a key for looking up a shared solver.
+     */
+    public StiffnessKey getStiffnessKey(){
+        return getStiffnessKey(getIndexedTopology());
+    }
 
-            c.update();
-            int[] dex = c.getIndices();
-            data[dex[0]][dex[0]] += ALPHA;
-            data[dex[0]][dex[1]] += -ALPHA;
-            data[dex[1]][dex[0]] += -ALPHA;
-            data[dex[1]][dex[1]] += ALPHA;
+    /**
+     * The key is made from the same index arrays that the matrix is assembled from.
+     */
+    StiffnessKey getStiffnessKey(MeshTopology topo){
+        double[] factors = null;
+        for(Node3D node: nodes){
+            if(node.gammaFactor != 1){
+                factors = new double[nodes.size()];
+                for(Node3D n: nodes){
+                    factors[n.index] = n.gammaFactor;
+                }
+                break;
+            }
+        }
+        int[] tris = BETA > 0 ? topo.triangle_index : new int[0];
+        return new StiffnessKey(solverType, ALPHA, BETA, GAMMA, topo.vertexCount, topo.connection_index, tris, factors);
+    }
 
+    /**
+     * The topology is normally only checked by the length of the index arrays, before the stiffness matrix is
+     * created the contents are compared so the matrix always matches the current indexes.
+     *
+     * @return topology of the current connection_index and triangle_index.
+     */
+    MeshTopology getIndexedTopology(){
+        MeshTopology topo = getTopology();
+        if(!Arrays.equals(topo.connection_index, connection_index) || !Arrays.equals(topo.triangle_index, triangle_index)){
+            topo = new MeshTopology(this);
+            topology = topo;
         }
+        return topo;
+    }
 
+    StiffnessMatrixSolver createSolver(MeshTopology topo){
+        int n = topo.vertexCount;
+        if(solverType == SolverType.SPARSE){
+            int expected = 2*topo.connection_index.length + n + (BETA>0 ? 64*n : 0);
+            SparseMatrix.Builder builder = new SparseMatrix.Builder(n, expected);
+            assembleStiffnessMatrix(topo, builder);
+            return new SparseIterativeSolver(builder.build());
+        } else{
+            double[][] data = new double[n][n];
+            assembleStiffnessMatrix(topo, (i, j, v) -> data[i][j] += v);
+            return new DenseLUSolver(data);
+        }
+    }
 
-        for(Node3D n: nodes){
-            data[n.index][n.index] += n.getGamma(GAMMA);
+    /**
+     * Writes the internal energy terms, connections, curvature and the gamma on the diagonal, into the provided
+     * accumulator.
+     *
+     * @param data destination of the matrix elements.
+     */
+    void assembleStiffnessMatrix(MatrixAccumulator data){
+        assembleStiffnessMatrix(getIndexedTopology(), data);
+    }
+
+    void assembleStiffnessMatrix(MeshTopology topo, MatrixAccumulator data){
+        if(BETA>0){
+            updateBetaMatrix(topo, data);
         }
 
-        Matrix M = new Matrix(data);
+        int[] cons = topo.connection_index;
+        for(int i = 0; i<cons.length; i += 2){
+            int a = cons[i];
+            int b = cons[i + 1];
+            data.add(a, a, ALPHA);
+            data.add(a, b, -ALPHA);
+            data.add(b, a, -ALPHA);
+            data.add(b, b, ALPHA);
+        }
 
-        decomp = M.lu();
-    }
 
-    private void updateBetaMatrix(double[][] data){
-        Map<Node3D, List<Connection3D>> noder = getCurvatureMap();
-        Map<Connection3D, Set<Connection3D>> conner = getAdjacencyMap(noder);
         for(Node3D n: nodes){
-            List<Connection3D> cons = noder.get(n);
+            data.add(n.index, n.index, n.getGamma(GAMMA));
+        }
+    }
+
+    private void updateBetaMatrix(MeshTopology topo, MatrixAccumulator data){
+        int[] offsets = topo.vertexConnectionOffsets;
+        int[] cons = topo.vertexConnections;
+        for(int n = 0; n<topo.vertexCount; n++){
             double small_factor = 1.0;
-            for(int i = 0; i<cons.size(); i++){
-                Connection3D a = cons.get(i);
-                Node3D other = a.A.equals(n)?a.B:a.A;
-                Set<Connection3D> adjacent = conner.get(a);
-                for(int j = i+1; j<cons.size(); j++){
+            for(int i = offsets[n]; i<offsets[n + 1]; i++){
+                int a = cons[i];
+                int other = topo.getOtherVertex(a, n);
+                for(int j = i+1; j<offsets[n + 1]; j++){
                     //pairs of first order connections.
-                    Connection3D b = cons.get(j);
-                    if(adjacent.contains(b)){
+                    int b = cons[j];
+                    if(topo.shareTriangle(a, b)){
                         continue;
                     }
-                    Node3D another = b.A.equals(n)?b.B:b.A;
+                    int another = topo.getOtherVertex(b, n);
 
-                    data[n.index][another.index] += -BETA*small_factor;
-                    data[n.index][other.index] += -BETA*small_factor;
-                    data[n.index][n.index] += 2*BETA*small_factor;
+                    data.add(n, another, -BETA*small_factor);
+                    data.add(n, other, -BETA*small_factor);
+                    data.add(n, n, 2*BETA*small_factor);
                 }
 
-                List<Connection3D> secondOrder = noder.get(other);
-
-
                 double f = 1.0;
-                for(Connection3D con: secondOrder){
-                    if(con.equals(a) || adjacent.contains(con)){
+                for(int k = offsets[other]; k<offsets[other + 1]; k++){
+                    int con = cons[k];
+                    if(con == a || topo.shareTriangle(a, con)){
                         continue;
                     }
-                    Node3D another = con.A.equals(other)?con.B:con.A;
-                    data[n.index][n.index] += BETA*f;
-                    data[n.index][another.index] += BETA*f;
-                    data[n.index][other.index] -= 2*BETA*f;
+                    int another = topo.getOtherVertex(con, other);
+                    data.add(n, n, BETA*f);
+                    data.add(n, another, BETA*f);
+                    data.add(n, other, -2*BETA*f);
                 }
 
 
@@ -280,113 +398,101 @@ public class DeformableMesh3D{
         }
     }
 
+    /**
+     * Compact adjacency of the nodes, connections and triangles, see {@link MeshTopology}. It is cached until the
+     * connection or triangle indices are synchronized.
+     *
+     * @return the topology of the current index arrays.
+     */
+    public MeshTopology getTopology(){
+        MeshTopology topo = topology;
+        if(topo == null || topo.vertexCount != positions.length/3
+                || 2*topo.connectionCount != connection_index.length
+                || 3*topo.triangleCount != triangle_index.length){
+            topo = new MeshTopology(this);
+            topology = topo;
+        }
+        return topo;
+    }
+
+    /**
+     * Normals, mixed areas and curvatures of the nodes, shared by all of the energies and calculators using this
+     * mesh. The cache is updated as the positions change.
+     *
+     * @return the cache for this mesh.
+     */
+    public synchronized MeshGeometryCache getGeometryCache(){
+        if(geometryCache == null){
+            geometryCache = new MeshGeometryCache(this);
+        }
+        return geometryCache;
+    }
+
     /**
      * Performs the bulk of calculations for doing an update. Creates a runnable that represents
      * finally changing the positions
      * @return
      */
     public Runnable partialUpdate(){
-        if(decomp==null){
+        if(solver==null){
             reshape();
         }
+        final StiffnessMatrixSolver s = solver;
+        final MeshWorkspace w = prepareWorkspace(s);
 
-        final double[] fx = new double[nodes.size()];
-        final double[] fy = new double[nodes.size()];
-        final double[] fz = new double[nodes.size()];
-
-        double[] pt;
-        for(Node3D n: nodes){
-            n.update();
-            pt = n.getCoordinates();
-            double gamma = n.getGamma(GAMMA);
-            fx[n.index] += gamma*pt[0];
-            fy[n.index] += gamma*pt[1];
-            fz[n.index] += gamma*pt[2];
-        }
-
-        for(ExternalEnergy external: energies) {
-            external.updateForces(positions, fx, fy, fz);
-        }
-
-        final Matrix FX = new Matrix(fx,nodes.size());
-        Matrix deltax = decomp.solve(FX);
-        double[] nx = deltax.getRowPackedCopy();
-
-        final Matrix FY = new Matrix(fy,nodes.size());
-        Matrix deltay = decomp.solve(FY);
-        double[] ny = deltay.getRowPackedCopy();
+        s.solve(w.fx, w.nx, w.work[0]);
+        s.solve(w.fy, w.ny, w.work[1]);
+        s.solve(w.fz, w.nz, w.work[2]);
 
-        final Matrix FZ = new Matrix(fz,nodes.size());
-        Matrix deltaz = decomp.solve(FZ);
-        double[] nz = deltaz.getRowPackedCopy();
         return ()-> {
-            for (int i = 0; i < nodes.size(); i++) {
-                positions[3 * i] = nx[i];
-                positions[3 * i + 1] = ny[i];
-                positions[3 * i + 2] = nz[i];
-
-            }
+            w.commit(positions);
             if(data_object!=null){
                 data_object.updateGeometry(positions);
             }
         };
     }
 
+    /**
+     * Gets the workspace, creating a new one if the number of nodes or solver have changed, and fills it with the
+     * drag and external energy forces.
+     *
+     * @param s solver that will be used.
+     * @return the workspace ready for solving.
+     */
+    private MeshWorkspace prepareWorkspace(StiffnessMatrixSolver s){
+        MeshWorkspace w = workspace;
+        if(w==null || !w.fits(nodes.size(), s.getWorkVectorCount())){
+            w = new MeshWorkspace(nodes.size(), s.getWorkVectorCount());
+            workspace = w;
+        }
+        w.prepare(positions, nodes, GAMMA);
 
+        for(ExternalEnergy external: energies) {
+            external.updateForces(positions, w.fx, w.fy, w.fz);
+        }
+        return w;
+    }
 
     public void update(){
-        if(decomp==null){
+        if(solver==null){
             reshape();
         }
+        final StiffnessMatrixSolver s = solver;
+        final MeshWorkspace w = prepareWorkspace(s);
 
-        final double[] fx = new double[nodes.size()];
-        final double[] fy = new double[nodes.size()];
-        final double[] fz = new double[nodes.size()];
-
-        double[] pt;
-        for(Node3D n: nodes){
-            n.update();
-            pt = n.getCoordinates();
-            double gamma = n.getGamma(GAMMA);
-            fx[n.index] += gamma*pt[0];
-            fy[n.index] += gamma*pt[1];
-            fz[n.index] += gamma*pt[2];
-        }
-
-        for(ExternalEnergy external: energies) {
-            external.updateForces(positions, fx, fy, fz);
-        }
         ExecutorService pool = globalPool;
+        Future<?> xfuture = pool.submit(() -> s.solve(w.fx, w.nx, w.work[0]));
 
-        Future<double[]> xfuture = pool.submit(() -> {
-            final Matrix FX = new Matrix(fx,nodes.size());
-            Matrix deltax = decomp.solve(FX);
-            return deltax.getRowPackedCopy();
-        });
-
-        Future<double[]> yfuture = pool.submit(() -> {
-            final Matrix FY = new Matrix(fy,nodes.size());
-            Matrix deltay = decomp.solve(FY);
-            return deltay.getRowPackedCopy();
-        });
+        Future<?> yfuture = pool.submit(() -> s.solve(w.fy, w.ny, w.work[1]));
 
-        Future<double[]> zfuture = pool.submit(() -> {
-            final Matrix FZ = new Matrix(fz,nodes.size());
-            Matrix deltaz = decomp.solve(FZ);
-            return deltaz.getRowPackedCopy();
-        });
+        Future<?> zfuture = pool.submit(() -> s.solve(w.fz, w.nz, w.work[2]));
 
 
         try {
-            double[] nx = xfuture.get();
-            double[] ny = yfuture.get();
-            double[] nz = zfuture.get();
-            for(int i = 0; i<nodes.size(); i++){
-                positions[3*i] = nx[i];
-                positions[3*i+1] = ny[i];
-                positions[3*i+2] = nz[i];
-
-            }
+            xfuture.get();
+            yfuture.get();
+            zfuture.get();
+            w.commit(positions);
 
         } catch (InterruptedException e) {
             System.err.println("Program was interrupted during calculations!");
@@ -1152,6 +1258,19 @@ public class DeformableMesh3D{
             @Override
             public void update(){
                 super.update();
+                resetFrozen();
+            }
+
+            @Override
+            public Runnable partialUpdate(){
+                Runnable commit = super.partialUpdate();
+                return () -> {
+                    commit.run();
+                    resetFrozen();
+                };
+            }
+
+            void resetFrozen(){
                 for(int i = 0; i<frozen.length; i++){
                     int dex = frozen[i];
                     positions[3*dex] = fixedPositions[3*i];
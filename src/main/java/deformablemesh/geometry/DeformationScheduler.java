@@ -0,0 +1,116 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.geometry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Deforms a group of meshes one step at a time. Each step the forces and new positions of every mesh are
+ * calculated concurrently with {@link DeformableMesh3D#partialUpdate()}, no positions change during this phase, then
+ * all of the new positions are committed. Anything that depends on the positions of other meshes, eg steric
+ * energies, should be refreshed after the commit.
+ */
+public class DeformationScheduler {
+    final ForkJoinPool pool;
+
+    /**
+     * Uses the common fork join pool.
+     */
+    public DeformationScheduler(){
+        this(ForkJoinPool.commonPool());
+    }
+
+    public DeformationScheduler(ForkJoinPool pool){
+        this.pool = pool;
+    }
+
+    /**
+     * Performs one deformation step for all of the meshes.
+     *
+     * @param meshes meshes to be deformed, energies should already be applied.
+     */
+    public void step(List<DeformableMesh3D> meshes){
+        List<Callable<Runnable>> updates = new ArrayList<>(meshes.size());
+        for(DeformableMesh3D mesh: meshes){
+            updates.add(mesh::partialUpdate);
+        }
+        List<Runnable> commits = invokeAll(updates);
+        for(Runnable commit: commits){
+            commit.run();
+        }
+    }
+
+    /**
+     * Runs the tasks concurrently and waits for all of them to finish.
+     *
+     * @param tasks independent tasks.
+     */
+    public void runAll(List<? extends Runnable> tasks){
+        List<Callable<Object>> callables = new ArrayList<>(tasks.size());
+        for(Runnable r: tasks){
+            callables.add(()->{
+                r.run();
+                return null;
+            });
+        }
+        invokeAll(callables);
+    }
+
+    <T> List<T> invokeAll(List<Callable<T>> tasks){
+        List<T> results = new ArrayList<>(tasks.size());
+        if(tasks.size() == 1){
+            try {
+                results.add(tasks.get(0).call());
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return results;
+        }
+        List<Future<T>> futures = pool.invokeAll(tasks);
+        try {
+            for(Future<T> future: futures){
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while deforming meshes", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException)cause;
+            }
+            throw new RuntimeException("Exception occurred during update", cause);
+        }
+        return results;
+    }
+}
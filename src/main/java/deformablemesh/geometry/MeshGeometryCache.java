@@ -0,0 +1,336 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.geometry;
+
+/**
+ * Triangle normals and areas, and the mean normals, mixed areas and mean curvature normals of the nodes, stored in
+ * primitive arrays. The values are the same as the static methods of {@link CurvatureCalculator}.
+ *
+ * The cache keeps a copy of the positions it was calculated with. When it is updated only the triangles with a node
+ * that has moved, and the nodes of those triangles, are recalculated. The cache is shared by everything using the
+ * mesh through {@link DeformableMesh3D#getGeometryCache()}, so several energies can use the same values each step.
+ */
+public final class MeshGeometryCache {
+    //when more nodes than this fraction have moved everything is recalculated.
+    static final double FULL_UPDATE_FRACTION = 0.25;
+
+    final DeformableMesh3D mesh;
+    MeshTopology topology;
+    double[] computed;
+
+    double[] triangleNormals;
+    double[] triangleAreas;
+    //mixed area and curvature contributions for each corner of each triangle.
+    double[] cornerAreas;
+    double[] cornerKappa;
+
+    double[] vertexNormals;
+    double[] mixedAreas;
+    double[] curvatureNormals;
+
+    boolean[] dirtyTriangles;
+    boolean[] dirtyVertices;
+    long recalculatedTriangles;
+
+    public MeshGeometryCache(DeformableMesh3D mesh){
+        this.mesh = mesh;
+    }
+
+    /**
+     * Recalculates the values affected by nodes that have moved since the last update.
+     */
+    public synchronized void update(){
+        MeshTopology topo = mesh.getTopology();
+        double[] positions = mesh.positions;
+        if(topo != topology || computed == null || computed.length != positions.length){
+            allocate(topo);
+            updateAll(positions);
+            return;
+        }
+
+        int n = topo.vertexCount;
+        int moved = 0;
+        for(int i = 0; i<n; i++){
+            if(hasMoved(positions, i)){
+                moved++;
+                for(int k = topo.vertexTriangleOffsets[i]; k<topo.vertexTriangleOffsets[i + 1]; k++){
+                    dirtyTriangles[topo.vertexTriangles[k]] = true;
+                }
+            }
+        }
+        if(moved == 0){
+            return;
+        }
+        if(moved > FULL_UPDATE_FRACTION*n){
+            updateAll(positions);
+            return;
+        }
+
+        int[] tri = topo.triangle_index;
+        for(int t = 0; t<topo.triangleCount; t++){
+            if(dirtyTriangles[t]){
+                dirtyTriangles[t] = false;
+                updateTriangle(positions, t);
+                dirtyVertices[tri[3*t]] = true;
+                dirtyVertices[tri[3*t + 1]] = true;
+                dirtyVertices[tri[3*t + 2]] = true;
+            }
+        }
+        for(int i = 0; i<n; i++){
+            if(dirtyVertices[i]){
+                dirtyVertices[i] = false;
+                updateVertex(i);
+            }
+        }
+        System.arraycopy(positions, 0, computed, 0, positions.length);
+    }
+
+    private boolean hasMoved(double[] positions, int i){
+        int o = 3*i;
+        return positions[o] != computed[o] || positions[o + 1] != computed[o + 1] || positions[o + 2] != computed[o + 2];
+    }
+
+    /**
+     * Updates the cache if any of the nodes that affect the values of node i have moved.
+     */
+    private void validate(int i){
+        MeshTopology topo = topology;
+        if(topo != mesh.getTopology() || computed.length != mesh.positions.length){
+            update();
+            return;
+        }
+        double[] positions = mesh.positions;
+        int[] tri = topo.triangle_index;
+        for(int k = topo.vertexTriangleOffsets[i]; k<topo.vertexTriangleOffsets[i + 1]; k++){
+            int t = 3*topo.vertexTriangles[k];
+            if(hasMoved(positions, tri[t]) || hasMoved(positions, tri[t + 1]) || hasMoved(positions, tri[t + 2])){
+                update();
+                return;
+            }
+        }
+    }
+
+    private void allocate(MeshTopology topo){
+        topology = topo;
+        int t = topo.triangleCount;
+        int n = topo.vertexCount;
+        computed = new double[3*n];
+        triangleNormals = new double[3*t];
+        triangleAreas = new double[t];
+        cornerAreas = new double[3*t];
+        cornerKappa = new double[9*t];
+        vertexNormals = new double[3*n];
+        mixedAreas = new double[n];
+        curvatureNormals = new double[3*n];
+        dirtyTriangles = new boolean[t];
+        dirtyVertices = new boolean[n];
+    }
+
+    private void updateAll(double[] positions){
+        for(int t = 0; t<topology.triangleCount; t++){
+            updateTriangle(positions, t);
+        }
+        for(int i = 0; i<topology.vertexCount; i++){
+            updateVertex(i);
+        }
+        System.arraycopy(positions, 0, computed, 0, positions.length);
+    }
+
+    private void updateTriangle(double[] positions, int t){
+        recalculatedTriangles++;
+        int[] tri = topology.triangle_index;
+        int a = 3*tri[3*t];
+        int b = 3*tri[3*t + 1];
+        int c = 3*tri[3*t + 2];
+
+        double abx = positions[b] - positions[a];
+        double aby = positions[b + 1] - positions[a + 1];
+        double abz = positions[b + 2] - positions[a + 2];
+        double bcx = positions[c] - positions[b];
+        double bcy = positions[c + 1] - positions[b + 1];
+        double bcz = positions[c + 2] - positions[b + 2];
+        double cax = positions[a] - positions[c];
+        double cay = positions[a + 1] - positions[c + 1];
+        double caz = positions[a + 2] - positions[c + 2];
+
+        //ab x ac, same as Triangle3D
+        double nx = -(aby*caz - abz*cay);
+        double ny = -(abz*cax - abx*caz);
+        double nz = -(abx*cay - aby*cax);
+        double cross = Math.sqrt(nx*nx + ny*ny + nz*nz);
+        double area = 0.5*cross;
+        triangleAreas[t] = area;
+        if(cross > 0){
+            triangleNormals[3*t] = nx/cross;
+            triangleNormals[3*t + 1] = ny/cross;
+            triangleNormals[3*t + 2] = nz/cross;
+        } else{
+            triangleNormals[3*t] = 0;
+            triangleNormals[3*t + 1] = 0;
+            triangleNormals[3*t + 2] = 0;
+        }
+
+        double mab = abx*abx + aby*aby + abz*abz;
+        double mbc = bcx*bcx + bcy*bcy + bcz*bcz;
+        double mca = cax*cax + cay*cay + caz*caz;
+
+        //cotangent of the angle at each corner, the cross product of any two edges has the same magnitude.
+        double cotA = -(cax*abx + cay*aby + caz*abz)/cross;
+        double cotB = -(abx*bcx + aby*bcy + abz*bcz)/cross;
+        double cotC = -(bcx*cax + bcy*cay + bcz*caz)/cross;
+
+        //corner a: opposite edge bc, adjacent edges ab and ca, weighted as in CurvatureCalculator.
+        cornerAreas[3*t] = cornerArea(area, mbc, mab, mca, mab*cotB + mca*cotC);
+        cornerAreas[3*t + 1] = cornerArea(area, mca, mbc, mab, mbc*cotC + mab*cotA);
+        cornerAreas[3*t + 2] = cornerArea(area, mab, mca, mbc, mca*cotA + mbc*cotB);
+
+        int k = 9*t;
+        //corner a, kappa += 0.5*cotC*(a - b) + 0.5*cotB*(a - c)
+        cornerKappa[k] = 0.5*(-cotC*abx + cotB*cax);
+        cornerKappa[k + 1] = 0.5*(-cotC*aby + cotB*cay);
+        cornerKappa[k + 2] = 0.5*(-cotC*abz + cotB*caz);
+        //corner b
+        cornerKappa[k + 3] = 0.5*(-cotA*bcx + cotC*abx);
+        cornerKappa[k + 4] = 0.5*(-cotA*bcy + cotC*aby);
+        cornerKappa[k + 5] = 0.5*(-cotA*bcz + cotC*abz);
+        //corner c
+        cornerKappa[k + 6] = 0.5*(-cotB*cax + cotA*bcx);
+        cornerKappa[k + 7] = 0.5*(-cotB*cay + cotA*bcy);
+        cornerKappa[k + 8] = 0.5*(-cotB*caz + cotA*bcz);
+    }
+
+    /**
+     * Mixed area of the corner.
+     *
+     * @param area triangle area
+     * @param opposite squared length of the opposite edge.
+     * @param first squared length of an adjacent edge.
+     * @param second squared length of the other adjacent edge.
+     * @param voronoi cotangent weighted sum of the squared adjacent lengths.
+     * @return
+     */
+    static double cornerArea(double area, double opposite, double first, double second, double voronoi){
+        if(opposite > first + second){
+            //obtuse at this corner.
+            return area/2;
+        } else if(first > opposite + second || second > opposite + first){
+            return area/4;
+        }
+        return 0.125*voronoi;
+    }
+
+    private void updateVertex(int i){
+        MeshTopology topo = topology;
+        int[] tri = topo.triangle_index;
+        double amixed = 0;
+        double nx = 0, ny = 0, nz = 0;
+        double kx = 0, ky = 0, kz = 0;
+        for(int k = topo.vertexTriangleOffsets[i]; k<topo.vertexTriangleOffsets[i + 1]; k++){
+            int t = topo.vertexTriangles[k];
+            int corner = tri[3*t] == i ? 0 : tri[3*t + 1] == i ? 1 : 2;
+            double v = cornerAreas[3*t + corner];
+            amixed += v;
+            nx += triangleNormals[3*t]*v;
+            ny += triangleNormals[3*t + 1]*v;
+            nz += triangleNormals[3*t + 2]*v;
+            int c = 9*t + 3*corner;
+            kx += cornerKappa[c];
+            ky += cornerKappa[c + 1];
+            kz += cornerKappa[c + 2];
+        }
+        mixedAreas[i] = amixed;
+        double m = Math.sqrt(nx*nx + ny*ny + nz*nz);
+        if(m > 0){
+            nx /= m;
+            ny /= m;
+            nz /= m;
+        }
+        vertexNormals[3*i] = nx;
+        vertexNormals[3*i + 1] = ny;
+        vertexNormals[3*i + 2] = nz;
+        curvatureNormals[3*i] = kx/amixed;
+        curvatureNormals[3*i + 1] = ky/amixed;
+        curvatureNormals[3*i + 2] = kz/amixed;
+    }
+
+    /**
+     * Normalized mean normal, weighted by the mixed area of each triangle.
+     *
+     * @param i node index
+     * @return a new array.
+     */
+    public synchronized double[] getNormal(int i){
+        validate(i);
+        return new double[]{vertexNormals[3*i], vertexNormals[3*i + 1], vertexNormals[3*i + 2]};
+    }
+
+    /**
+     * Mixed voronoi area of the node.
+     *
+     * @param i node index.
+     * @return
+     */
+    public synchronized double getMixedArea(int i){
+        validate(i);
+        return mixedAreas[i];
+    }
+
+    /**
+     * Mean curvature normal, the magnitude is twice the mean curvature.
+     *
+     * @param i node index.
+     * @return a new array.
+     */
+    public synchronized double[] getMeanCurvatureNormal(int i){
+        validate(i);
+        return new double[]{curvatureNormals[3*i], curvatureNormals[3*i + 1], curvatureNormals[3*i + 2]};
+    }
+
+    /**
+     * The mean curvature normal projected on to the mean normal, see
+     * {@link CurvatureCalculator#getNormalAndCurvature(Node3D, java.util.List)}.
+     *
+     * @param i node index
+     * @return twice the mean curvature.
+     */
+    public synchronized double getCurvature(int i){
+        validate(i);
+        int o = 3*i;
+        return curvatureNormals[o]*vertexNormals[o] + curvatureNormals[o + 1]*vertexNormals[o + 1]
+                + curvatureNormals[o + 2]*vertexNormals[o + 2];
+    }
+
+    /**
+     * Number of triangles the node is part of.
+     *
+     * @param i node index.
+     * @return
+     */
+    public synchronized int getTriangleCount(int i){
+        MeshTopology topo = mesh.getTopology();
+        return topo.vertexTriangleOffsets[i + 1] - topo.vertexTriangleOffsets[i];
+    }
+}
@@ -0,0 +1,189 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.geometry;
+
+import java.util.Arrays;
+
+/**
+ * Compressed adjacency of a mesh built from the index arrays. For each vertex the incident connections and
+ * triangles, and for each connection the triangles that contain it, are stored as offsets into flat int arrays, eg.
+ * the connections of vertex v are vertexConnections[vertexConnectionOffsets[v]] up to
+ * vertexConnections[vertexConnectionOffsets[v+1]]. Connections and triangles are referred to by their index in
+ * connection_index and triangle_index, and they are listed in index order.
+ *
+ * This replaces the maps of {@link DeformableMesh3D#getCurvatureMap()} and
+ * {@link DeformableMesh3D#getAdjacencyMap(java.util.Map)} for algorithms that only need the topology. It is immutable,
+ * if the connections or triangles of a mesh change a new topology needs to be created.
+ */
+public final class MeshTopology {
+    public final int vertexCount;
+    public final int connectionCount;
+    public final int triangleCount;
+
+    public final int[] vertexConnectionOffsets;
+    public final int[] vertexConnections;
+    public final int[] vertexTriangleOffsets;
+    public final int[] vertexTriangles;
+    public final int[] connectionTriangleOffsets;
+    public final int[] connectionTriangles;
+    /**
+     * The connections of each triangle, A-B, B-C then C-A, -1 if the connection doesn't exist.
+     */
+    public final int[] triangleConnections;
+
+    final int[] connection_index;
+    final int[] triangle_index;
+
+    /**
+     * Builds the topology from the index arrays.
+     *
+     * @param vertexCount number of nodes.
+     * @param connection_index pairs of node indexes.
+     * @param triangle_index triplets of node indexes.
+     */
+    public MeshTopology(int vertexCount, int[] connection_index, int[] triangle_index){
+        this.vertexCount = vertexCount;
+        this.connection_index = Arrays.copyOf(connection_index, connection_index.length);
+        this.triangle_index = Arrays.copyOf(triangle_index, triangle_index.length);
+        connectionCount = connection_index.length/2;
+        triangleCount = triangle_index.length/3;
+
+        vertexConnectionOffsets = new int[vertexCount + 1];
+        vertexConnections = new int[connection_index.length];
+        fill(vertexConnectionOffsets, vertexConnections, this.connection_index, 2);
+
+        vertexTriangleOffsets = new int[vertexCount + 1];
+        vertexTriangles = new int[triangle_index.length];
+        fill(vertexTriangleOffsets, vertexTriangles, this.triangle_index, 3);
+
+        triangleConnections = new int[triangle_index.length];
+        int[] counts = new int[connectionCount + 1];
+        for(int t = 0; t<triangleCount; t++){
+            for(int k = 0; k<3; k++){
+                int a = triangle_index[3*t + k];
+                int b = triangle_index[3*t + (k + 1)%3];
+                int c = getConnection(a, b);
+                triangleConnections[3*t + k] = c;
+                if(c >= 0){
+                    counts[c + 1]++;
+                }
+            }
+        }
+        connectionTriangleOffsets = counts;
+        for(int i = 0; i<connectionCount; i++){
+            connectionTriangleOffsets[i + 1] += connectionTriangleOffsets[i];
+        }
+        connectionTriangles = new int[connectionTriangleOffsets[connectionCount]];
+        int[] next = Arrays.copyOf(connectionTriangleOffsets, connectionCount);
+        for(int i = 0; i<triangleConnections.length; i++){
+            int c = triangleConnections[i];
+            if(c >= 0){
+                connectionTriangles[next[c]++] = i/3;
+            }
+        }
+    }
+
+    /**
+     * Creates the topology for the current index arrays of the mesh.
+     *
+     * @param mesh
+     */
+    public MeshTopology(DeformableMesh3D mesh){
+        this(mesh.positions.length/3, mesh.connection_index, mesh.triangle_index);
+    }
+
+    /**
+     * Counting sort of the elements by the vertexes they contain.
+     */
+    private void fill(int[] offsets, int[] values, int[] indexes, int stride){
+        for(int index: indexes){
+            offsets[index + 1]++;
+        }
+        for(int i = 0; i<vertexCount; i++){
+            offsets[i + 1] += offsets[i];
+        }
+        int[] next = Arrays.copyOf(offsets, vertexCount);
+        for(int i = 0; i<indexes.length; i++){
+            values[next[indexes[i]]++] = i/stride;
+        }
+    }
+
+    /**
+     *
+     * @param connection index of the connection.
+     * @param vertex one of the nodes of the connection.
+     * @return the node at the other end of the connection.
+     */
+    public int getOtherVertex(int connection, int vertex){
+        int a = connection_index[2*connection];
+        return a == vertex ? connection_index[2*connection + 1] : a;
+    }
+
+    /**
+     * Finds the connection between two nodes.
+     *
+     * @param a node index
+     * @param b node index
+     * @return connection index or -1 if they're not connected.
+     */
+    public int getConnection(int a, int b){
+        for(int i = vertexConnectionOffsets[a]; i<vertexConnectionOffsets[a + 1]; i++){
+            int c = vertexConnections[i];
+            if(getOtherVertex(c, a) == b){
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Number of connections the node is part of.
+     *
+     * @param vertex node index.
+     * @return
+     */
+    public int getDegree(int vertex){
+        return vertexConnectionOffsets[vertex + 1] - vertexConnectionOffsets[vertex];
+    }
+
+    /**
+     * Checks if two connections are edges of the same triangle, this is the relationship of
+     * {@link DeformableMesh3D#getAdjacencyMap(java.util.Map)}.
+     *
+     * @param a connection index
+     * @param b connection index
+     * @return true if a triangle contains both connections.
+     */
+    public boolean shareTriangle(int a, int b){
+        for(int i = connectionTriangleOffsets[a]; i<connectionTriangleOffsets[a + 1]; i++){
+            int t = 3*connectionTriangles[i];
+            if(triangleConnections[t] == b || triangleConnections[t + 1] == b || triangleConnections[t + 2] == b){
+                return true;
+            }
+        }
+        return false;
+    }
+}
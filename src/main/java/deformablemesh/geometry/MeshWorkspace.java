@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.geometry;
+
+import java.util.List;
+
+/**
+ * Buffers used by a mesh during an update, they are kept between steps so that deforming does not allocate.
+ *
+ * The force buffers are passed to the external energies, the position buffers hold the starting guess and then
+ * the solution for each coordinate, and each coordinate has its own solver scratch vectors so the three solves
+ * can run concurrently.
+ */
+public class MeshWorkspace {
+    final int size;
+    public final double[] fx, fy, fz;
+    final double[] nx, ny, nz;
+    final double[][][] work;
+
+    /**
+     *
+     * @param size number of nodes.
+     * @param workVectors number of scratch vectors required by the solver for each coordinate.
+     */
+    public MeshWorkspace(int size, int workVectors){
+        this.size = size;
+        fx = new double[size];
+        fy = new double[size];
+        fz = new double[size];
+        nx = new double[size];
+        ny = new double[size];
+        nz = new double[size];
+        work = new double[3][workVectors][size];
+    }
+
+    /**
+     * Checks if this workspace can be used for a mesh with the provided number of nodes and solver.
+     */
+    boolean fits(int size, int workVectors){
+        return this.size == size && work[0].length >= workVectors;
+    }
+
+    /**
+     * Sets the forces to the drag term, gamma times the current position, and the position buffers to the
+     * current positions.
+     *
+     * @param positions position array of the mesh.
+     * @param nodes nodes of the mesh, for their gamma factor.
+     * @param gamma mesh gamma.
+     */
+    void prepare(double[] positions, List<Node3D> nodes, double gamma){
+        for(Node3D node: nodes){
+            int i = node.index;
+            double x = positions[3*i];
+            double y = positions[3*i + 1];
+            double z = positions[3*i + 2];
+            double g = node.getGamma(gamma);
+            fx[i] = g*x;
+            fy[i] = g*y;
+            fz[i] = g*z;
+            nx[i] = x;
+            ny[i] = y;
+            nz[i] = z;
+        }
+    }
+
+    /**
+     * Copies the solutions into the position array.
+     *
+     * @param positions destination.
+     */
+    void commit(double[] positions){
+        for(int i = 0; i<size; i++){
+            positions[3*i] = nx[i];
+            positions[3*i + 1] = ny[i];
+            positions[3*i + 2] = nz[i];
+        }
+    }
+}
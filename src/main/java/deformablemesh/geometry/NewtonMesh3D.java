@@ -29,9 +29,6 @@ import deformablemesh.externalenergies.ExternalEnergy;
 import deformablemesh.util.Vector3DOps;
 
 import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 /**
  * Created by msmith on 3/4/16.
@@ -48,17 +45,20 @@ public class NewtonMesh3D extends DeformableMesh3D {
         super(mesh.positions, mesh.connection_index, mesh.triangle_index);
     }
 
-    private Map<Node3D, List<Connection3D>> noder;
-    private Map<Connection3D, Set<Connection3D>> conner;
+    private MeshTopology topo;
     @Override
     public void reshape(){
-        noder = getCurvatureMap();
-        conner = getAdjacencyMap(noder);
+        topo = getIndexedTopology();
     }
 
     @Override
     public void update(){
-        if(noder==null || conner==null){
+        partialUpdate().run();
+    }
+
+    @Override
+    public Runnable partialUpdate(){
+        if(topo==null){
             reshape();
         }
 
@@ -94,18 +94,18 @@ public class NewtonMesh3D extends DeformableMesh3D {
 
         if(BETA!=0){
             for(Node3D n: nodes){
-                List<Connection3D> cons = noder.get(n);
-                for(int i = 0; i<cons.size(); i++){
-                    Connection3D a = cons.get(i);
-                    Node3D other = a.A.equals(n)?a.B:a.A;
-                    Set<Connection3D> adjacent = conner.get(a);
-                    for(int j = i+1; j<cons.size(); j++){
+                int start = topo.vertexConnectionOffsets[n.index];
+                int end = topo.vertexConnectionOffsets[n.index + 1];
+                for(int i = start; i<end; i++){
+                    int a = topo.vertexConnections[i];
+                    Node3D other = nodes.get(topo.getOtherVertex(a, n.index));
+                    for(int j = i+1; j<end; j++){
                         //pairs of first order connections.
-                        Connection3D b = cons.get(j);
-                        if(adjacent.contains(b)){
+                        int b = topo.vertexConnections[j];
+                        if(topo.shareTriangle(a, b)){
                             continue;
                         }
-                        Node3D another = b.A.equals(n)?b.B:b.A;
+                        Node3D another = nodes.get(topo.getOtherVertex(b, n.index));
                         double[] s1 = Vector3DOps.difference(n.getCoordinates(), other.getCoordinates());
                         double l1 = Vector3DOps.normalize(s1);
 
@@ -146,14 +146,16 @@ public class NewtonMesh3D extends DeformableMesh3D {
 
 
         double drag = 1/GAMMA;
-        for(int i = 0; i<fx.length; i++){
-            positions[i*3] += fx[i]*drag;
-            positions[i*3+1] += fy[i]*drag;
-            positions[i*3+2] += fz[i]*drag;
+        return () -> {
+            for(int i = 0; i<fx.length; i++){
+                positions[i*3] += fx[i]*drag;
+                positions[i*3+1] += fy[i]*drag;
+                positions[i*3+2] += fz[i]*drag;
 
-        }
-        if(data_object!=null){
-            data_object.updateGeometry(positions);
-        }
+            }
+            if(data_object!=null){
+                data_object.updateGeometry(positions);
+            }
+        };
     }
 }
@@ -60,23 +60,30 @@ public class Triangle3D {
         double[] b = B.getCoordinates();
         double[] c = C.getCoordinates();
 
-        double[] ab = new double[3];
-        double[] ac = new double[3];
-        for(int i = 0; i<3; i++){
-            ab[i] = b[i] - a[i];
-            ac[i] = c[i] - a[i];
-        }
-
-        normal[0] = (ab[1]*ac[2] - ab[2]*ac[1]);
-        normal[1] = (ab[2]*ac[0] - ab[0]*ac[2]);
-        normal[2] = (ab[0]*ac[1] - ab[1]*ac[0]);
-
-        area = 0.5*Math.sqrt(normal[0]*normal[0] + normal[1]*normal[1] + normal[2]*normal[2]);
+        double abx = b[0] - a[0];
+        double aby = b[1] - a[1];
+        double abz = b[2] - a[2];
+        double acx = c[0] - a[0];
+        double acy = c[1] - a[1];
+        double acz = c[2] - a[2];
+
+        double nx = aby*acz - abz*acy;
+        double ny = abz*acx - abx*acz;
+        double nz = abx*acy - aby*acx;
+
+        //the fields are only assigned final values so that meshes sharing a neighbor can update it concurrently.
+        area = 0.5*Math.sqrt(nx*nx + ny*ny + nz*nz);
         if(area>0){
+            normal[0] = nx/area;
+            normal[1] = ny/area;
+            normal[2] = nz/area;
             for(int i = 0; i<3; i++){
-                normal[i] = normal[i]/area;
                 center[i] = (a[i] + b[i] + c[i])*one_third;
             }
+        } else{
+            normal[0] = nx;
+            normal[1] = ny;
+            normal[2] = nz;
         }
 
 
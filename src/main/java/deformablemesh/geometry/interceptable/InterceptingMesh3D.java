@@ -39,14 +39,69 @@ import java.util.stream.Collectors;
  */
 public class InterceptingMesh3D implements Interceptable {
 
+    static boolean defaultUseBVH = true;
+
     final DeformableMesh3D mesh;
     List<InterceptingTriangle3D> triangles;
+    List<Triangle3D> source;
+    TriangleBVH bvh;
+    final boolean useBVH;
     double[] center;
     Box3D bounds;
     public InterceptingMesh3D(DeformableMesh3D mesh){
-        mesh.triangles.forEach(Triangle3D::update);
+        this(mesh, defaultUseBVH);
+    }
+
+    /**
+     *
+     * @param mesh mesh that will be intercepted.
+     * @param useBVH when true intersections are found using a bounding volume hierarchy instead of checking every
+     *               triangle.
+     */
+    public InterceptingMesh3D(DeformableMesh3D mesh, boolean useBVH){
         this.mesh = mesh;
+        this.useBVH = useBVH;
+        build();
+    }
+
+    /**
+     * Sets whether new InterceptingMesh3D use a bounding volume hierarchy.
+     *
+     * @param useBVH
+     */
+    public static void setDefaultUseBVH(boolean useBVH){
+        defaultUseBVH = useBVH;
+    }
+
+    private void build(){
+        mesh.triangles.forEach(Triangle3D::update);
+        source = mesh.triangles;
         triangles = mesh.triangles.stream().map(InterceptingTriangle3D::new).collect(Collectors.toList());
+        bvh = useBVH ? new TriangleBVH(triangles) : null;
+        updateCenter();
+    }
+
+    /**
+     * Updates the triangles after the node positions of the mesh have changed. If the topology has been changed the
+     * triangles are recreated, otherwise the existing bounding volume hierarchy is refit.
+     */
+    public void refit(){
+        if(source != mesh.triangles || triangles.size() != source.size()){
+            build();
+            return;
+        }
+        mesh.triangles.forEach(Triangle3D::update);
+        for(int i = 0; i<triangles.size(); i++){
+            Triangle3D t = source.get(i);
+            triangles.get(i).update(t.A.getCoordinates(), t.B.getCoordinates(), t.C.getCoordinates());
+        }
+        if(bvh != null){
+            bvh.refit();
+        }
+        updateCenter();
+    }
+
+    private void updateCenter(){
         center= new double[3];
         double[] a;
         double sum = 0;
@@ -97,6 +152,10 @@ public class InterceptingMesh3D implements Interceptable {
     @Override
     public List<Intersection> getIntersections(double[] origin, double[] direction) {
         List<Intersection> sections = new ArrayList<>();
+        if(bvh != null){
+            bvh.getIntersections(origin, direction, sections);
+            return sections;
+        }
         for(InterceptingTriangle3D triangle: triangles){
 
             triangle.getIntersection(origin, direction, sections);
@@ -75,6 +75,18 @@ public class InterceptingTriangle3D {
      * @param c
      */
     public InterceptingTriangle3D(double[] a, double[] b, double[] c) {
+        update(a, b, c);
+    }
+
+    /**
+     * Moves the triangle to the new corners, new arrays are used so intersections that have already been found keep
+     * their original normal.
+     *
+     * @param a
+     * @param b
+     * @param c
+     */
+    public void update(double[] a, double[] b, double[] c){
         u = Vector3DOps.difference(b, a);
         v = Vector3DOps.difference(c, a);
 
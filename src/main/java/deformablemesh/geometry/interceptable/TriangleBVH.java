@@ -0,0 +1,258 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.geometry.interceptable;
+
+import deformablemesh.geometry.Intersection;
+
+import java.util.List;
+
+/**
+ * Bounding volume hierarchy over a list of triangles for line intersection queries. The tree is built once with
+ * median splits along the longest axis, and can be refit when the triangles move without changing the topology.
+ *
+ * Queries are for the whole line, like {@link InterceptingTriangle3D#getIntersection(double[], double[], List)}
+ * intersections behind the origin are included.
+ */
+public class TriangleBVH {
+    static final int LEAF_SIZE = 4;
+    //boxes are padded to include intersections within the tolerance of the triangle edges.
+    static final double PADDING = 1e-8;
+
+    final List<InterceptingTriangle3D> triangles;
+    //triangle indexes, each leaf is a contiguous range.
+    final int[] order;
+    //minx, miny, minz, maxx, maxy, maxz for each node.
+    double[] bounds;
+    //for branches the index of the right child (the left child follows the parent), for leaves -1.
+    int[] right;
+    int[] start;
+    int[] count;
+    int nodeCount;
+    int depth;
+
+    public TriangleBVH(List<InterceptingTriangle3D> triangles){
+        this.triangles = triangles;
+        int n = triangles.size();
+        order = new int[n];
+        for(int i = 0; i<n; i++){
+            order[i] = i;
+        }
+        int capacity = Math.max(1, 2*n);
+        bounds = new double[6*capacity];
+        right = new int[capacity];
+        start = new int[capacity];
+        count = new int[capacity];
+
+        double[] centroids = new double[3*n];
+        double[] triBounds = new double[6*n];
+        for(int i = 0; i<n; i++){
+            triangleBounds(triangles.get(i), triBounds, 6*i);
+            for(int k = 0; k<3; k++){
+                centroids[3*i + k] = 0.5*(triBounds[6*i + k] + triBounds[6*i + k + 3]);
+            }
+        }
+        build(0, n, triBounds, centroids, 1);
+    }
+
+    static void triangleBounds(InterceptingTriangle3D t, double[] dest, int offset){
+        for(int k = 0; k<3; k++){
+            double lo = Math.min(t.a[k], Math.min(t.b[k], t.c[k]));
+            double hi = Math.max(t.a[k], Math.max(t.b[k], t.c[k]));
+            double pad = PADDING*(hi - lo) + PADDING;
+            dest[offset + k] = lo - pad;
+            dest[offset + k + 3] = hi + pad;
+        }
+    }
+
+    private int build(int from, int to, double[] triBounds, double[] centroids, int level){
+        int node = nodeCount++;
+        depth = Math.max(depth, level);
+        double[] cmin = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+        double[] cmax = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        int b = 6*node;
+        for(int k = 0; k<3; k++){
+            bounds[b + k] = Double.MAX_VALUE;
+            bounds[b + k + 3] = -Double.MAX_VALUE;
+        }
+        for(int i = from; i<to; i++){
+            int t = order[i];
+            for(int k = 0; k<3; k++){
+                bounds[b + k] = Math.min(bounds[b + k], triBounds[6*t + k]);
+                bounds[b + k + 3] = Math.max(bounds[b + k + 3], triBounds[6*t + k + 3]);
+                cmin[k] = Math.min(cmin[k], centroids[3*t + k]);
+                cmax[k] = Math.max(cmax[k], centroids[3*t + k]);
+            }
+        }
+        start[node] = from;
+        count[node] = to - from;
+        right[node] = -1;
+        if(to - from <= LEAF_SIZE){
+            return node;
+        }
+        int axis = 0;
+        for(int k = 1; k<3; k++){
+            if(cmax[k] - cmin[k] > cmax[axis] - cmin[axis]){
+                axis = k;
+            }
+        }
+        if(cmax[axis] <= cmin[axis]){
+            //all centroids are the same.
+            return node;
+        }
+        int mid = (from + to)/2;
+        select(from, to - 1, mid, axis, centroids);
+        build(from, mid, triBounds, centroids, level + 1);
+        right[node] = build(mid, to, triBounds, centroids, level + 1);
+        return node;
+    }
+
+    /**
+     * Partially sorts order so the element at k has the k'th smallest centroid along the axis.
+     */
+    private void select(int lo, int hi, int k, int axis, double[] centroids){
+        while(hi > lo){
+            double pivot = centroids[3*order[(lo + hi) >>> 1] + axis];
+            int i = lo;
+            int j = hi;
+            while(i <= j){
+                while(centroids[3*order[i] + axis] < pivot) i++;
+                while(centroids[3*order[j] + axis] > pivot) j--;
+                if(i <= j){
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if(k <= j){
+                hi = j;
+            } else if(k >= i){
+                lo = i;
+            } else{
+                return;
+            }
+        }
+    }
+
+    /**
+     * Recalculates the bounds of all of the nodes, for when the triangles have moved but the topology is the same.
+     * Children are always stored after their parents, so the nodes are updated in reverse.
+     */
+    public void refit(){
+        double[] tb = new double[6];
+        for(int node = nodeCount - 1; node >= 0; node--){
+            int b = 6*node;
+            if(right[node] < 0){
+                for(int k = 0; k<3; k++){
+                    bounds[b + k] = Double.MAX_VALUE;
+                    bounds[b + k + 3] = -Double.MAX_VALUE;
+                }
+                for(int i = start[node]; i<start[node] + count[node]; i++){
+                    triangleBounds(triangles.get(order[i]), tb, 0);
+                    for(int k = 0; k<3; k++){
+                        bounds[b + k] = Math.min(bounds[b + k], tb[k]);
+                        bounds[b + k + 3] = Math.max(bounds[b + k + 3], tb[k + 3]);
+                    }
+                }
+            } else{
+                int l = 6*(node + 1);
+                int r = 6*right[node];
+                for(int k = 0; k<3; k++){
+                    bounds[b + k] = Math.min(bounds[l + k], bounds[r + k]);
+                    bounds[b + k + 3] = Math.max(bounds[l + k + 3], bounds[r + k + 3]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if the line intersects the box of a node.
+     */
+    boolean intersects(int node, double[] origin, double[] direction){
+        int b = 6*node;
+        double tmin = -Double.MAX_VALUE;
+        double tmax = Double.MAX_VALUE;
+        for(int k = 0; k<3; k++){
+            double lo = bounds[b + k];
+            double hi = bounds[b + k + 3];
+            if(direction[k] == 0){
+                if(origin[k] < lo || origin[k] > hi){
+                    return false;
+                }
+            } else{
+                double inv = 1/direction[k];
+                double t0 = (lo - origin[k])*inv;
+                double t1 = (hi - origin[k])*inv;
+                if(t0 > t1){
+                    double tmp = t0;
+                    t0 = t1;
+                    t1 = tmp;
+                }
+                if(t0 > tmin) tmin = t0;
+                if(t1 < tmax) tmax = t1;
+                if(tmin > tmax){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds all of the intersections of the line with the triangles.
+     *
+     * @param origin point on the line.
+     * @param direction direction of the line.
+     * @param result intersections are added to this list.
+     */
+    public void getIntersections(double[] origin, double[] direction, List<Intersection> result){
+        if(nodeCount == 0 || count[0] == 0){
+            return;
+        }
+        int[] stack = new int[depth + 1];
+        int top = 0;
+        stack[top++] = 0;
+        while(top > 0){
+            int node = stack[--top];
+            if(!intersects(node, origin, direction)){
+                continue;
+            }
+            if(right[node] < 0){
+                for(int i = start[node]; i<start[node] + count[node]; i++){
+                    triangles.get(order[i]).getIntersection(origin, direction, result);
+                }
+            } else{
+                stack[top++] = right[node];
+                stack[top++] = node + 1;
+            }
+        }
+    }
+
+    public int getNodeCount(){
+        return nodeCount;
+    }
+}
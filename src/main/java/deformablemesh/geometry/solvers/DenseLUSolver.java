@@ -0,0 +1,128 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.geometry.solvers;
+
+/**
+ * Original solver, the full matrix is created and decomposed. The LU decomposition with partial pivoting is done
+ * in place on the provided data, so the matrix is only held once, and solving does not allocate.
+ */
+public class DenseLUSolver implements StiffnessMatrixSolver {
+    final double[][] lu;
+    final int[] pivot;
+    final int size;
+    boolean singular = false;
+
+    /**
+     *
+     * @param data square matrix, it is overwritten with the decomposition.
+     */
+    public DenseLUSolver(double[][] data){
+        size = data.length;
+        lu = data;
+        pivot = new int[size];
+        for(int i = 0; i<size; i++){
+            pivot[i] = i;
+        }
+        decompose();
+    }
+
+    private void decompose(){
+        for(int k = 0; k<size; k++){
+            int p = k;
+            double max = Math.abs(lu[k][k]);
+            for(int i = k + 1; i<size; i++){
+                double v = Math.abs(lu[i][k]);
+                if(v > max){
+                    max = v;
+                    p = i;
+                }
+            }
+            if(p != k){
+                double[] row = lu[p];
+                lu[p] = lu[k];
+                lu[k] = row;
+                int t = pivot[p];
+                pivot[p] = pivot[k];
+                pivot[k] = t;
+            }
+            double[] rowK = lu[k];
+            double diagonal = rowK[k];
+            if(diagonal == 0){
+                singular = true;
+                continue;
+            }
+            for(int i = k + 1; i<size; i++){
+                double[] rowI = lu[i];
+                double factor = rowI[k]/diagonal;
+                rowI[k] = factor;
+                if(factor == 0){
+                    continue;
+                }
+                for(int j = k + 1; j<size; j++){
+                    rowI[j] -= factor*rowK[j];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void solve(double[] b, double[] x, double[][] work) {
+        if(singular){
+            throw new RuntimeException("Matrix is singular.");
+        }
+        for(int i = 0; i<size; i++){
+            x[i] = b[pivot[i]];
+        }
+        //L y = P b, L has a unit diagonal.
+        for(int i = 1; i<size; i++){
+            double[] row = lu[i];
+            double s = x[i];
+            for(int j = 0; j<i; j++){
+                s -= row[j]*x[j];
+            }
+            x[i] = s;
+        }
+        //U x = y
+        for(int i = size - 1; i>=0; i--){
+            double[] row = lu[i];
+            double s = x[i];
+            for(int j = i + 1; j<size; j++){
+                s -= row[j]*x[j];
+            }
+            x[i] = s/row[i];
+        }
+    }
+
+    @Override
+    public int getWorkVectorCount() {
+        return 0;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+}
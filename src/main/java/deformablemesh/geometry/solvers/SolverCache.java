@@ -0,0 +1,120 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.geometry.solvers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Keeps recently created solvers so meshes with the same topology and parameters can share one decomposition
+ * instead of each creating their own. Solvers are immutable and safe to use from multiple threads.
+ *
+ * The cache holds at most capacity solvers, the least recently used is dropped first. Meshes keep a reference to
+ * their solver so dropping it from the cache does not affect them.
+ */
+public class SolverCache {
+    private int capacity;
+    private final Map<StiffnessKey, StiffnessMatrixSolver> solvers;
+    private long hits, misses;
+
+    /**
+     *
+     * @param capacity maximum number of solvers kept. 0 disables caching.
+     */
+    public SolverCache(int capacity){
+        this.capacity = capacity;
+        solvers = new LinkedHashMap<StiffnessKey, StiffnessMatrixSolver>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<StiffnessKey, StiffnessMatrixSolver> eldest){
+                return size() > SolverCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached solver for the key, or creates one. The factory is called without holding the lock, so
+     * meshes with different keys can be reshaped concurrently.
+     *
+     * @param key identifies the stiffness matrix.
+     * @param factory creates the solver when it is not cached.
+     * @return a solver for the matrix identified by key.
+     */
+    public StiffnessMatrixSolver getSolver(StiffnessKey key, Supplier<StiffnessMatrixSolver> factory){
+        synchronized (solvers){
+            StiffnessMatrixSolver solver = solvers.get(key);
+            if(solver != null){
+                hits++;
+                return solver;
+            }
+            misses++;
+        }
+        StiffnessMatrixSolver created = factory.get();
+        synchronized (solvers){
+            if(capacity <= 0){
+                return created;
+            }
+            StiffnessMatrixSolver existing = solvers.putIfAbsent(key, created);
+            return existing == null ? created : existing;
+        }
+    }
+
+    public void setCapacity(int capacity){
+        synchronized (solvers){
+            this.capacity = capacity;
+            if(capacity <= 0){
+                solvers.clear();
+            } else{
+                while(solvers.size() > capacity){
+                    StiffnessKey eldest = solvers.keySet().iterator().next();
+                    solvers.remove(eldest);
+                }
+            }
+        }
+    }
+
+    public void clear(){
+        synchronized (solvers){
+            solvers.clear();
+        }
+    }
+
+    public int size(){
+        synchronized (solvers){
+            return solvers.size();
+        }
+    }
+
+    /**
+     *
+     * @return {hits, misses} since this cache was created.
+     */
+    public long[] getStatistics(){
+        synchronized (solvers){
+            return new long[]{hits, misses};
+        }
+    }
+}
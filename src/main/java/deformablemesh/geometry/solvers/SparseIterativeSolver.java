@@ -0,0 +1,246 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.geometry.solvers;
+
+import java.util.Arrays;
+
+/**
+ * Iterative solver for a SparseMatrix using a Jacobi (diagonal) preconditioner. When the matrix is symmetric,
+ * which is the case when there is no curvature term, conjugate gradient is used, otherwise BiCGSTAB.
+ *
+ * The new positions of a mesh are generally close to the old positions, so starting from the current positions
+ * converges in a handful of iterations. Like {@link DenseLUSolver} with a singular matrix, a RuntimeException is
+ * thrown when the solution does not converge, instead of leaving an inaccurate solution in x.
+ */
+public class SparseIterativeSolver implements StiffnessMatrixSolver {
+    public static final double DEFAULT_TOLERANCE = 1e-10;
+
+    final SparseMatrix matrix;
+    final double[] inverseDiagonal;
+    final boolean symmetric;
+    final double tolerance;
+    final int maxIterations;
+
+    public SparseIterativeSolver(SparseMatrix matrix){
+        this(matrix, DEFAULT_TOLERANCE, Math.max(1000, matrix.getSize()));
+    }
+
+    /**
+     *
+     * @param matrix system being solved.
+     * @param tolerance the solution is accepted when |b - M x| &lt; tolerance*|b|
+     * @param maxIterations limit to the number of iterations.
+     */
+    public SparseIterativeSolver(SparseMatrix matrix, double tolerance, int maxIterations){
+        this.matrix = matrix;
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+        double[] diagonal = matrix.getDiagonal();
+        inverseDiagonal = new double[diagonal.length];
+        for(int i = 0; i<diagonal.length; i++){
+            inverseDiagonal[i] = diagonal[i] == 0 ? 1 : 1/diagonal[i];
+        }
+        symmetric = matrix.isSymmetric(1e-12);
+    }
+
+    public boolean isSymmetric(){
+        return symmetric;
+    }
+
+    @Override
+    public int getSize(){
+        return matrix.getSize();
+    }
+
+    @Override
+    public int getWorkVectorCount(){
+        return symmetric ? 4 : 8;
+    }
+
+    @Override
+    public void solve(double[] b, double[] x, double[][] work){
+        double bNorm = Math.sqrt(dot(b, b));
+        if(bNorm == 0){
+            Arrays.fill(x, 0);
+            return;
+        }
+        double limit = tolerance*bNorm;
+        double residual;
+        if(symmetric){
+            residual = conjugateGradient(b, x, limit, work);
+        } else{
+            residual = biConjugateGradientStabilized(b, x, limit, work);
+        }
+        if(!(residual <= limit)){
+            throw new RuntimeException(
+                    "Iterative solver did not converge, relative residual: " + residual/bNorm
+                    + " tolerance: " + tolerance
+            );
+        }
+    }
+
+    /**
+     * Preconditioned conjugate gradient, x is updated in place.
+     *
+     * @return the norm of the final residual.
+     */
+    double conjugateGradient(double[] b, double[] x, double limit, double[][] work){
+        int n = b.length;
+        double[] r = work[0];
+        double[] z = work[1];
+        double[] p = work[2];
+        double[] ap = work[3];
+
+        matrix.multiply(x, ap);
+        for(int i = 0; i<n; i++){
+            r[i] = b[i] - ap[i];
+        }
+        double residual = Math.sqrt(dot(r, r));
+        if(residual <= limit){
+            return residual;
+        }
+        for(int i = 0; i<n; i++){
+            z[i] = inverseDiagonal[i]*r[i];
+            p[i] = z[i];
+        }
+        double rz = dot(r, z);
+
+        for(int iteration = 0; iteration<maxIterations; iteration++){
+            matrix.multiply(p, ap);
+            double pAp = dot(p, ap);
+            if(pAp == 0){
+                return residual;
+            }
+            double alpha = rz/pAp;
+            double rr = 0;
+            for(int i = 0; i<n; i++){
+                x[i] += alpha*p[i];
+                r[i] -= alpha*ap[i];
+                rr += r[i]*r[i];
+            }
+            residual = Math.sqrt(rr);
+            if(residual <= limit){
+                return residual;
+            }
+            double rzNext = 0;
+            for(int i = 0; i<n; i++){
+                z[i] = inverseDiagonal[i]*r[i];
+                rzNext += r[i]*z[i];
+            }
+            double beta = rzNext/rz;
+            rz = rzNext;
+            for(int i = 0; i<n; i++){
+                p[i] = z[i] + beta*p[i];
+            }
+        }
+        return residual;
+    }
+
+    /**
+     * Preconditioned BiCGSTAB, x is updated in place.
+     *
+     * @return the norm of the final residual.
+     */
+    double biConjugateGradientStabilized(double[] b, double[] x, double limit, double[][] work){
+        int n = b.length;
+        double[] r = work[0];
+        double[] rHat = work[1];
+        double[] p = work[2];
+        double[] v = work[3];
+        double[] y = work[4];
+        double[] s = work[5];
+        double[] z = work[6];
+        double[] t = work[7];
+
+        matrix.multiply(x, v);
+        for(int i = 0; i<n; i++){
+            r[i] = b[i] - v[i];
+            rHat[i] = r[i];
+            v[i] = 0;
+            p[i] = 0;
+        }
+        double residual = Math.sqrt(dot(r, r));
+        if(residual <= limit){
+            return residual;
+        }
+        double rho = 1;
+        double alpha = 1;
+        double omega = 1;
+
+        for(int iteration = 0; iteration<maxIterations; iteration++){
+            double rhoNext = dot(rHat, r);
+            if(rhoNext == 0){
+                //break down, the residual of the best estimate is reported.
+                return residual;
+            }
+            double beta = (rhoNext/rho)*(alpha/omega);
+            rho = rhoNext;
+            for(int i = 0; i<n; i++){
+                p[i] = r[i] + beta*(p[i] - omega*v[i]);
+                y[i] = inverseDiagonal[i]*p[i];
+            }
+            matrix.multiply(y, v);
+            alpha = rho/dot(rHat, v);
+            double ss = 0;
+            for(int i = 0; i<n; i++){
+                s[i] = r[i] - alpha*v[i];
+                ss += s[i]*s[i];
+            }
+            double sNorm = Math.sqrt(ss);
+            if(sNorm <= limit){
+                for(int i = 0; i<n; i++){
+                    x[i] += alpha*y[i];
+                }
+                return sNorm;
+            }
+            for(int i = 0; i<n; i++){
+                z[i] = inverseDiagonal[i]*s[i];
+            }
+            matrix.multiply(z, t);
+            double tt = dot(t, t);
+            omega = tt == 0 ? 0 : dot(t, s)/tt;
+            double rr = 0;
+            for(int i = 0; i<n; i++){
+                x[i] += alpha*y[i] + omega*z[i];
+                r[i] = s[i] - omega*t[i];
+                rr += r[i]*r[i];
+            }
+            residual = Math.sqrt(rr);
+            if(residual <= limit || omega == 0){
+                return residual;
+            }
+        }
+        return residual;
+    }
+
+    static double dot(double[] a, double[] b){
+        double s = 0;
+        for(int i = 0; i<a.length; i++){
+            s += a[i]*b[i];
+        }
+        return s;
+    }
+}
@@ -0,0 +1,212 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.geometry.solvers;
+
+import java.util.Arrays;
+
+/**
+ * Square matrix in compressed sparse row (CSR) format. The entries of row i are stored in
+ * columns[rowOffsets[i]] to columns[rowOffsets[i+1]-1], sorted by column.
+ */
+public class SparseMatrix {
+    final int size;
+    final int[] rowOffsets;
+    final int[] columns;
+    final double[] values;
+
+    SparseMatrix(int size, int[] rowOffsets, int[] columns, double[] values){
+        this.size = size;
+        this.rowOffsets = rowOffsets;
+        this.columns = columns;
+        this.values = values;
+    }
+
+    public int getSize(){
+        return size;
+    }
+
+    /**
+     *
+     * @return number of stored elements.
+     */
+    public int getNonZeroCount(){
+        return rowOffsets[size];
+    }
+
+    /**
+     * Value of the element, zero if the element is not stored.
+     */
+    public double get(int row, int column){
+        int dex = Arrays.binarySearch(columns, rowOffsets[row], rowOffsets[row + 1], column);
+        return dex < 0 ? 0 : values[dex];
+    }
+
+    /**
+     * out = M x
+     *
+     * @param x vector of length size
+     * @param out vector of length size, overwritten.
+     */
+    public void multiply(double[] x, double[] out){
+        for(int i = 0; i<size; i++){
+            double s = 0;
+            for(int k = rowOffsets[i]; k<rowOffsets[i+1]; k++){
+                s += values[k]*x[columns[k]];
+            }
+            out[i] = s;
+        }
+    }
+
+    public double[] getDiagonal(){
+        double[] diagonal = new double[size];
+        for(int i = 0; i<size; i++){
+            diagonal[i] = get(i, i);
+        }
+        return diagonal;
+    }
+
+    /**
+     * Checks if the matrix is symmetric, elements are considered equal if they differ by less than tolerance times
+     * the largest magnitude of the two.
+     *
+     * @param tolerance relative tolerance.
+     * @return true if M[i][j] == M[j][i] for all stored elements.
+     */
+    public boolean isSymmetric(double tolerance){
+        for(int i = 0; i<size; i++){
+            for(int k = rowOffsets[i]; k<rowOffsets[i+1]; k++){
+                int j = columns[k];
+                if(j<=i){
+                    continue;
+                }
+                double a = values[k];
+                double b = get(j, i);
+                double scale = Math.max(Math.abs(a), Math.abs(b));
+                if(Math.abs(a - b) > tolerance*scale){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects matrix elements in any order, including repeats, and compresses them into a SparseMatrix.
+     */
+    public static class Builder implements MatrixAccumulator{
+        final int size;
+        int count = 0;
+        int[] rows;
+        int[] cols;
+        double[] vals;
+
+        /**
+         *
+         * @param size number of rows and columns.
+         * @param expected estimate of the number of calls to add, the storage grows when necessary.
+         */
+        public Builder(int size, int expected){
+            this.size = size;
+            expected = Math.max(expected, 16);
+            rows = new int[expected];
+            cols = new int[expected];
+            vals = new double[expected];
+        }
+
+        @Override
+        public void add(int row, int column, double value){
+            if(count == rows.length){
+                int n = 2*count;
+                rows = Arrays.copyOf(rows, n);
+                cols = Arrays.copyOf(cols, n);
+                vals = Arrays.copyOf(vals, n);
+            }
+            rows[count] = row;
+            cols[count] = column;
+            vals[count] = value;
+            count++;
+        }
+
+        public SparseMatrix build(){
+            //bucket the entries by row.
+            int[] offsets = new int[size + 1];
+            for(int i = 0; i<count; i++){
+                offsets[rows[i] + 1]++;
+            }
+            for(int i = 0; i<size; i++){
+                offsets[i+1] += offsets[i];
+            }
+            int[] fill = Arrays.copyOf(offsets, size);
+            int[] bucketCols = new int[count];
+            double[] bucketVals = new double[count];
+            for(int i = 0; i<count; i++){
+                int dex = fill[rows[i]]++;
+                bucketCols[dex] = cols[i];
+                bucketVals[dex] = vals[i];
+            }
+
+            //sort each row by column and sum duplicates.
+            int[] compressedOffsets = new int[size + 1];
+            int[] compressedCols = new int[count];
+            double[] compressedVals = new double[count];
+            int n = 0;
+            for(int r = 0; r<size; r++){
+                int start = offsets[r];
+                int end = offsets[r+1];
+                for(int i = start + 1; i<end; i++){
+                    int c = bucketCols[i];
+                    double v = bucketVals[i];
+                    int j = i - 1;
+                    while(j>=start && bucketCols[j]>c){
+                        bucketCols[j+1] = bucketCols[j];
+                        bucketVals[j+1] = bucketVals[j];
+                        j--;
+                    }
+                    bucketCols[j+1] = c;
+                    bucketVals[j+1] = v;
+                }
+                int rowStart = n;
+                for(int i = start; i<end; i++){
+                    if(n>rowStart && compressedCols[n-1] == bucketCols[i]){
+                        compressedVals[n-1] += bucketVals[i];
+                    } else{
+                        compressedCols[n] = bucketCols[i];
+                        compressedVals[n] = bucketVals[i];
+                        n++;
+                    }
+                }
+                compressedOffsets[r+1] = n;
+            }
+
+            return new SparseMatrix(
+                    size,
+                    compressedOffsets,
+                    Arrays.copyOf(compressedCols, n),
+                    Arrays.copyOf(compressedVals, n)
+            );
+        }
+    }
+}
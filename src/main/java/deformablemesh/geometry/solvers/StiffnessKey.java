@@ -0,0 +1,94 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.geometry.solvers;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Identifies a stiffness matrix. Two meshes with equal keys have the same matrix, regardless of node positions,
+ * so they can share a solver.
+ */
+public final class StiffnessKey {
+    final SolverType type;
+    final double alpha, beta, gamma;
+    final int nodes;
+    final int[] connections;
+    final int[] triangles;
+    final double[] gammaFactors;
+    final int hash;
+
+    /**
+     *
+     * @param type solver backend.
+     * @param alpha connection stiffness.
+     * @param beta curvature stiffness.
+     * @param gamma drag
+     * @param nodes number of nodes.
+     * @param connections connection node indexes, 2 per connection. Not copied, should not be modified.
+     * @param triangles triangle node indexes, 3 per triangle. Not copied, should not be modified.
+     * @param gammaFactors per node factor applied to gamma, can be null if they're all 1.
+     */
+    public StiffnessKey(SolverType type, double alpha, double beta, double gamma, int nodes,
+                        int[] connections, int[] triangles, double[] gammaFactors){
+        this.type = type;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.gamma = gamma;
+        this.nodes = nodes;
+        this.connections = connections;
+        //triangles only contribute through the curvature term.
+        this.triangles = beta > 0 ? triangles : new int[0];
+        this.gammaFactors = gammaFactors;
+
+        int h = Objects.hash(type, alpha, beta, gamma, nodes);
+        h = 31*h + Arrays.hashCode(connections);
+        h = 31*h + Arrays.hashCode(this.triangles);
+        h = 31*h + Arrays.hashCode(gammaFactors);
+        hash = h;
+    }
+
+    @Override
+    public int hashCode(){
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o){
+        if(this == o) return true;
+        if(!(o instanceof StiffnessKey)) return false;
+        StiffnessKey k = (StiffnessKey)o;
+        return hash == k.hash
+                && type == k.type
+                && Double.compare(alpha, k.alpha) == 0
+                && Double.compare(beta, k.beta) == 0
+                && Double.compare(gamma, k.gamma) == 0
+                && nodes == k.nodes
+                && Arrays.equals(connections, k.connections)
+                && Arrays.equals(triangles, k.triangles)
+                && Arrays.equals(gammaFactors, k.gammaFactors);
+    }
+}
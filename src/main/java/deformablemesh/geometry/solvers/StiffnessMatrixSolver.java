@@ -0,0 +1,69 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.geometry.solvers;
+
+/**
+ * Solves the linear system created by the internal energies of a deformable mesh. The same system is solved
+ * three times per update, once for each coordinate, so implementations need to be safe to call from multiple
+ * threads at the same time.
+ */
+public interface StiffnessMatrixSolver {
+    /**
+     * Solves K x = b.
+     *
+     * @param b right hand side, the forces for one coordinate.
+     * @param guess starting point for iterative solvers, typically the current positions. Can be null.
+     * @return a new array with the solution.
+     */
+    default double[] solve(double[] b, double[] guess){
+        int n = getSize();
+        double[] x = guess == null ? new double[n] : guess.clone();
+        solve(b, x, new double[getWorkVectorCount()][n]);
+        return x;
+    }
+
+    /**
+     * Solves K x = b without allocating.
+     *
+     * @param b right hand side, not modified.
+     * @param x contains the starting guess and will contain the solution.
+     * @param work getWorkVectorCount() arrays of length getSize() used as scratch space. They should not be
+     *             shared between concurrent calls.
+     */
+    void solve(double[] b, double[] x, double[][] work);
+
+    /**
+     *
+     * @return number of scratch vectors required by {@link #solve(double[], double[], double[][])}.
+     */
+    int getWorkVectorCount();
+
+    /**
+     *
+     * @return number of rows in the system, ie the number of nodes.
+     */
+    int getSize();
+}
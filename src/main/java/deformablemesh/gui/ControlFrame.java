@@ -35,6 +35,8 @@ import deformablemesh.geometry.DeformableMesh3D;
 import deformablemesh.gui.meshinitialization.CircularMeshInitializationDialog;
 import deformablemesh.gui.meshinitialization.FurrowInitializer;
 import deformablemesh.io.ImportType;
+import deformablemesh.io.LabelImageExporter;
+import deformablemesh.io.MeshExporter;
 import deformablemesh.io.MeshReader;
 import deformablemesh.io.TrackMateAdapter;
 import deformablemesh.meshview.HotKeyDelegate;
@@ -628,6 +630,7 @@ public class ControlFrame implements ReadyObserver, FrameListener {
     public JPanel createRemeshPanel(){
         JButton raycast = createButtonRemesh();
         JButton action = new JButton("connection remesh");
+        action.setToolTipText("remesh selected mesh, ctrl: all meshes in frame, ctrl+shift: all meshes in all frames");
         buttons.add(action);
 
         JLabel scaledMinUnits = new JLabel("no units");
@@ -718,7 +721,12 @@ public class ControlFrame implements ReadyObserver, FrameListener {
 
         action.addActionListener(evt->{
             boolean reMeshAll = ( evt.getModifiers() & ActionEvent.CTRL_MASK ) > 0;
-            connectionRemesh(reMeshAll);
+            boolean allFrames = ( evt.getModifiers() & ActionEvent.SHIFT_MASK ) > 0;
+            if(reMeshAll && allFrames){
+                connectionRemeshAllFrames();
+            } else{
+                connectionRemesh(reMeshAll);
+            }
         });
         host.setOpaque(false);
         return host;
@@ -742,6 +750,19 @@ public class ControlFrame implements ReadyObserver, FrameListener {
         finished();
     }
 
+    public void connectionRemeshAllFrames(){
+        double mn = segmentationController.getMinConnectionLength();
+        double mx = segmentationController.getMaxConnectionLength();
+        if(mn > mx ){
+            throw new RuntimeException("minimum should be less than max");
+        }else if( mx <= 0 ){
+            throw new RuntimeException("maximum cannot be less than or equal to zero");
+        }
+        setReady(false);
+        segmentationController.reMeshConnectionsAllFrames(mn, mx);
+        finished();
+    }
+
     public JButton createButtonRemesh(){
         JButton button = new JButton("raycast remesh");
         buttons.add(button);
@@ -1170,6 +1191,27 @@ public class ControlFrame implements ReadyObserver, FrameListener {
             finished();
         });
 
+        for(MeshExporter.Format format: MeshExporter.Format.values()){
+            String ext = format.getExtension();
+            JMenuItem allFrames = new JMenuItem("Export all frames as binary " + ext.toUpperCase());
+            mesh.add(allFrames);
+            allFrames.addActionListener((evt)->{
+                FileDialog fd = new FileDialog(frame,"Base name for frame files");
+                fd.setMode(FileDialog.SAVE);
+                fd.setFile(segmentationController.getShortImageName() + "." + ext);
+                fd.setVisible(true);
+                if(fd.getFile()==null || fd.getDirectory()==null){
+                    return;
+                }
+                setReady(false);
+                File f = new File(fd.getDirectory(),fd.getFile());
+                segmentationController.exportFrames(f, format, (i, completed, total)->{
+                    EventQueue.invokeLater(()->message.setText("exported " + completed + " of " + total + " frames"));
+                });
+                finished();
+            });
+        }
+
         JMenu trackMate = createTrackMateMenu();
         mesh.add(trackMate);
 
@@ -1228,6 +1270,17 @@ public class ControlFrame implements ReadyObserver, FrameListener {
             }
         });
 
+        JMenuItem linkAll = new JMenuItem("link all frames");
+        linkAll.setToolTipText("Links the meshes of every frame at once, allowing gaps and divisions.");
+        mesh.add(linkAll);
+        linkAll.addActionListener(evt->{
+            if(ready) {
+                setReady(false);
+                segmentationController.linkAllFrames();
+                finished();
+            }
+        });
+
 
         JMenu tools = new JMenu("tools");
         menu.add(tools);
@@ -1251,6 +1304,28 @@ public class ControlFrame implements ReadyObserver, FrameListener {
             segmentationController.createMosaicImage();
         });
 
+        for(LabelImageExporter.Type type: LabelImageExporter.Type.values()){
+            String name = type == LabelImageExporter.Type.LABELS ? "labels" : "mosaic";
+            JMenuItem export = new JMenuItem("Save " + name + " image to file");
+            export.setToolTipText("Writes the image one frame at a time, without creating it in memory.");
+            tools.add(export);
+            export.addActionListener(evt ->{
+                FileDialog fd = new FileDialog(frame,"Save " + name + " image");
+                fd.setMode(FileDialog.SAVE);
+                fd.setFile(segmentationController.getShortImageName() + "-" + name + ".tif");
+                fd.setVisible(true);
+                if(fd.getFile()==null || fd.getDirectory()==null){
+                    return;
+                }
+                setReady(false);
+                File f = new File(fd.getDirectory(),fd.getFile());
+                segmentationController.exportLabelImage(f, type, false, (i, completed, total)->{
+                    EventQueue.invokeLater(()->message.setText("wrote " + completed + " of " + total + " frames"));
+                });
+                finished();
+            });
+        }
+
         JMenuItem allVolumes = new JMenuItem("Measure All Volumes");
         tools.add(allVolumes);
         allVolumes.addActionListener(evt->{
@@ -0,0 +1,292 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.io;
+
+import deformablemesh.geometry.DeformableMesh3D;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compact encoding of the meshes in a mesh file, version -3. The layout of the file is the same as version
+ * -2, including the index, only the mesh blocks are different.
+ *
+ * Mesh:
+ *  int frame, byte position encoding, int number of position values,
+ *  positions: doubles, floats or, for quantized positions, the 3 minimum and 3 maximum values as doubles
+ *      followed by unsigned 16 bit values relative to the bounding box.
+ *  int topology reference, -1 when the topology follows, otherwise the index of an earlier mesh in the same
+ *      track that has the same connections and triangles.
+ *  topology: varint number of connection indexes, zigzag varint deltas of the connection indexes, then the
+ *      same for the triangle indexes.
+ *
+ * All fixed size values are big endian, like the rest of the file.
+ */
+public final class CompactMeshFormat {
+    public static final int VERSION = -3;
+    public static final int INLINE_TOPOLOGY = -1;
+    static final int QUANTIZED_LEVELS = 65535;
+
+    /**
+     * How the positions of the meshes are stored.
+     */
+    public enum Positions{
+        /** 8 byte floating point, lossless. */
+        DOUBLE,
+        /** 4 byte floating point. */
+        FLOAT,
+        /** 2 byte values relative to the bounding box of the mesh. */
+        QUANTIZED;
+    }
+
+    /**
+     * Provides the topology of an earlier mesh in the track.
+     */
+    interface TopologyLookup{
+        int[][] getTopology(int index) throws IOException;
+    }
+
+    private CompactMeshFormat(){
+    }
+
+    /**
+     * Writes a mesh block.
+     *
+     * @param out destination.
+     * @param mesh mesh that is written.
+     * @param frame time frame of the mesh.
+     * @param encoding how the positions are stored.
+     * @param topology {@link #INLINE_TOPOLOGY} or the index of the earlier mesh in the track with the same topology.
+     * @throws IOException
+     */
+    public static void writeMesh(DataOutput out, DeformableMesh3D mesh, int frame, Positions encoding, int topology) throws IOException {
+        double[] positions = mesh.positions;
+        out.writeInt(frame);
+        out.writeByte(encoding.ordinal());
+        out.writeInt(positions.length);
+        ByteBuffer buffer;
+        switch(encoding){
+            case DOUBLE:
+                buffer = ByteBuffer.allocate(positions.length*Double.BYTES);
+                buffer.asDoubleBuffer().put(positions);
+                buffer.position(buffer.capacity());
+                break;
+            case FLOAT:
+                buffer = ByteBuffer.allocate(positions.length*Float.BYTES);
+                for(double v: positions){
+                    buffer.putFloat((float)v);
+                }
+                break;
+            case QUANTIZED:
+                double[] min = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+                double[] max = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+                for(int i = 0; i<positions.length; i++){
+                    int k = i%3;
+                    min[k] = Math.min(min[k], positions[i]);
+                    max[k] = Math.max(max[k], positions[i]);
+                }
+                buffer = ByteBuffer.allocate(6*Double.BYTES + positions.length*Short.BYTES);
+                for(int k = 0; k<3; k++){
+                    buffer.putDouble(positions.length == 0 ? 0 : min[k]);
+                }
+                for(int k = 0; k<3; k++){
+                    buffer.putDouble(positions.length == 0 ? 0 : max[k]);
+                }
+                for(int i = 0; i<positions.length; i++){
+                    int k = i%3;
+                    double range = max[k] - min[k];
+                    long q = range > 0 ? Math.round((positions[i] - min[k])/range*QUANTIZED_LEVELS) : 0;
+                    buffer.putShort((short)Math.max(0, Math.min(QUANTIZED_LEVELS, q)));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown position encoding: " + encoding);
+        }
+        out.write(buffer.array(), 0, buffer.position());
+
+        out.writeInt(topology);
+        if(topology == INLINE_TOPOLOGY){
+            VarintBuffer topo = new VarintBuffer(mesh.connection_index.length + mesh.triangle_index.length + 10);
+            topo.putIndexes(mesh.connection_index);
+            topo.putIndexes(mesh.triangle_index);
+            out.write(topo.bytes, 0, topo.size);
+        }
+    }
+
+    /**
+     * Reads a mesh block.
+     *
+     * @param block buffer positioned at the start of the mesh.
+     * @param lookup provides the topology of referenced meshes.
+     * @return the mesh arrays, the topology arrays are not shared with other meshes.
+     * @throws IOException
+     */
+    static RawMesh readMesh(ByteBuffer block, TopologyLookup lookup) throws IOException {
+        int frame = block.getInt();
+        double[] positions = readPositions(block);
+        int topology = block.getInt();
+        int[][] indexes;
+        if(topology == INLINE_TOPOLOGY){
+            indexes = readIndexes(block);
+        } else{
+            int[][] shared = lookup.getTopology(topology);
+            indexes = new int[][]{ shared[0].clone(), shared[1].clone() };
+        }
+        return new RawMesh(frame, positions, indexes[0], indexes[1]);
+    }
+
+    /**
+     * Reads the topology of a mesh block that contains its topology.
+     *
+     * @param block buffer positioned at the start of the mesh.
+     * @return {connection indexes, triangle indexes}
+     * @throws IOException if the mesh references another topology.
+     */
+    static int[][] readTopology(ByteBuffer block) throws IOException {
+        block.getInt();
+        int encoding = block.get();
+        int count = checkCount(block, block.getInt(), positionBytes(encoding));
+        int skip = count*positionBytes(encoding) + (encoding == Positions.QUANTIZED.ordinal() ? 6*Double.BYTES : 0);
+        block.position(block.position() + skip);
+        int topology = block.getInt();
+        if(topology != INLINE_TOPOLOGY){
+            throw new IOException("Referenced mesh does not contain a topology.");
+        }
+        return readIndexes(block);
+    }
+
+    static int positionBytes(int encoding) throws IOException {
+        if(encoding == Positions.DOUBLE.ordinal()){
+            return Double.BYTES;
+        } else if(encoding == Positions.FLOAT.ordinal()){
+            return Float.BYTES;
+        } else if(encoding == Positions.QUANTIZED.ordinal()){
+            return Short.BYTES;
+        }
+        throw new IOException("Unknown position encoding: " + encoding);
+    }
+
+    static double[] readPositions(ByteBuffer block) throws IOException {
+        int encoding = block.get();
+        int count = checkCount(block, block.getInt(), positionBytes(encoding));
+        double[] positions = new double[count];
+        if(encoding == Positions.DOUBLE.ordinal()){
+            block.asDoubleBuffer().get(positions);
+            block.position(block.position() + count*Double.BYTES);
+        } else if(encoding == Positions.FLOAT.ordinal()){
+            for(int i = 0; i<count; i++){
+                positions[i] = block.getFloat();
+            }
+        } else{
+            double[] min = new double[3];
+            double[] delta = new double[3];
+            for(int k = 0; k<3; k++){
+                min[k] = block.getDouble();
+            }
+            for(int k = 0; k<3; k++){
+                delta[k] = (block.getDouble() - min[k])/QUANTIZED_LEVELS;
+            }
+            checkCount(block, count, Short.BYTES);
+            for(int i = 0; i<count; i++){
+                int k = i%3;
+                positions[i] = min[k] + (block.getShort() & 0xffff)*delta[k];
+            }
+        }
+        return positions;
+    }
+
+    static int[][] readIndexes(ByteBuffer block) throws IOException {
+        int[] connections = readDeltas(block);
+        int[] triangles = readDeltas(block);
+        return new int[][]{connections, triangles};
+    }
+
+    static int[] readDeltas(ByteBuffer block) throws IOException {
+        //every value is at least 1 byte.
+        int count = checkCount(block, readVarint(block), 1);
+        int[] values = new int[count];
+        int last = 0;
+        for(int i = 0; i<count; i++){
+            int zigzag = readVarint(block);
+            last += (zigzag >>> 1) ^ -(zigzag & 1);
+            values[i] = last;
+        }
+        return values;
+    }
+
+    static int readVarint(ByteBuffer block) throws IOException {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7){
+            byte b = block.get();
+            value |= (b & 0x7f) << shift;
+            if(b >= 0){
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint.");
+    }
+
+    static int checkCount(ByteBuffer buffer, int count, int width) throws IOException {
+        if(count < 0 || (long)count*width > buffer.remaining()){
+            throw new IOException("invalid count variable: " + count + ", remaining " + buffer.remaining());
+        }
+        return count;
+    }
+
+    /**
+     * Growing byte array for writing zigzag delta varints.
+     */
+    static class VarintBuffer{
+        byte[] bytes;
+        int size;
+        VarintBuffer(int capacity){
+            bytes = new byte[capacity];
+        }
+
+        void putIndexes(int[] values){
+            putVarint(values.length);
+            int last = 0;
+            for(int v: values){
+                int delta = v - last;
+                putVarint((delta << 1) ^ (delta >> 31));
+                last = v;
+            }
+        }
+
+        void putVarint(int value){
+            if(size + 5 > bytes.length){
+                bytes = Arrays.copyOf(bytes, Math.max(2*bytes.length, size + 5));
+            }
+            while((value & ~0x7f) != 0){
+                bytes[size++] = (byte)((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte)value;
+        }
+    }
+}
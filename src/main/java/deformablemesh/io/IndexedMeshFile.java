@@ -0,0 +1,428 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.io;
+
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.track.MeshSource;
+import deformablemesh.track.Track;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Random access to a mesh file that was written with an index, version -2. The body of the file is the same as
+ * version -1, it is followed by an index of the byte offset of every mesh and then a fixed size tail.
+ *
+ * Index:
+ *  int number of tracks
+ *  for each track: utf name, int number of meshes, then for each mesh: int frame, long offset, int length.
+ * Tail:
+ *  long offset of the index, int {@link #INDEX_MAGIC}
+ *
+ * Meshes are read by mapping only the bytes of the requested mesh. Files with the compact encoding, version -3, have
+ * the same index, see {@link CompactMeshFormat}.
+ */
+public class IndexedMeshFile implements Closeable {
+    public static final int VERSION = -2;
+    public static final int INDEX_MAGIC = 0x424d4958;
+    static final int TAIL_BYTES = Long.BYTES + Integer.BYTES;
+
+    /**
+     * Location of the meshes of one track.
+     */
+    public static class TrackIndex{
+        final String name;
+        final int[] frames;
+        final long[] offsets;
+        final int[] lengths;
+
+        TrackIndex(String name, int[] frames, long[] offsets, int[] lengths){
+            this.name = name;
+            this.frames = frames;
+            this.offsets = offsets;
+            this.lengths = lengths;
+        }
+
+        public String getName(){
+            return name;
+        }
+
+        /**
+         * @return the frames that this track has a mesh in, in the order they are stored.
+         */
+        public int[] getFrames(){
+            return Arrays.copyOf(frames, frames.length);
+        }
+
+        int find(int frame){
+            for(int i = 0; i<frames.length; i++){
+                if(frames[i] == frame){
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public boolean containsFrame(int frame){
+            return find(frame) >= 0;
+        }
+
+        public int size(){
+            return frames.length;
+        }
+    }
+
+    final Path path;
+    final FileChannel channel;
+    final long size;
+    final List<TrackIndex> tracks;
+    final boolean compact;
+
+    public IndexedMeshFile(File file) throws IOException{
+        path = file.getAbsoluteFile().toPath();
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try{
+            size = channel.size();
+            tracks = readIndex();
+            ByteBuffer head = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(head, 0);
+            head.flip();
+            compact = head.getInt() == CompactMeshFormat.VERSION;
+        } catch(IOException e){
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks if the file is a mesh file with an index.
+     *
+     * @param file
+     * @return true if the version and the index tail are valid.
+     */
+    public static boolean isIndexed(File file){
+        try(FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            long size = fc.size();
+            if(size < Integer.BYTES + TAIL_BYTES){
+                return false;
+            }
+            ByteBuffer head = ByteBuffer.allocate(Integer.BYTES);
+            fc.read(head, 0);
+            head.flip();
+            int version = head.getInt();
+            if(version != VERSION && version != CompactMeshFormat.VERSION){
+                return false;
+            }
+            ByteBuffer tail = ByteBuffer.allocate(TAIL_BYTES);
+            fc.read(tail, size - TAIL_BYTES);
+            tail.flip();
+            long start = tail.getLong();
+            return tail.getInt() == INDEX_MAGIC && start > 0 && start < size - TAIL_BYTES;
+        } catch(IOException e){
+            return false;
+        }
+    }
+
+    private List<TrackIndex> readIndex() throws IOException {
+        if(size < Integer.BYTES + TAIL_BYTES){
+            throw new IOException("File is too small to contain an index.");
+        }
+        ByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, size - TAIL_BYTES, TAIL_BYTES);
+        long start = tail.getLong();
+        if(tail.getInt() != INDEX_MAGIC || start <= 0 || start >= size - TAIL_BYTES){
+            throw new IOException("Mesh file does not contain a valid index.");
+        }
+        long length = size - TAIL_BYTES - start;
+        if(length > Integer.MAX_VALUE){
+            throw new IOException("Index is too large: " + length);
+        }
+        byte[] bytes = new byte[(int)length];
+        channel.map(FileChannel.MapMode.READ_ONLY, start, length).get(bytes);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes));
+        int count = dis.readInt();
+        List<TrackIndex> index = new ArrayList<>(count);
+        for(int i = 0; i<count; i++){
+            String name = dis.readUTF();
+            int meshes = dis.readInt();
+            int[] frames = new int[meshes];
+            long[] offsets = new long[meshes];
+            int[] lengths = new int[meshes];
+            for(int j = 0; j<meshes; j++){
+                frames[j] = dis.readInt();
+                offsets[j] = dis.readLong();
+                lengths[j] = dis.readInt();
+                if(offsets[j] < 0 || offsets[j] + lengths[j] > start){
+                    throw new IOException("Invalid mesh offset in index: " + offsets[j]);
+                }
+            }
+            index.add(new TrackIndex(name, frames, offsets, lengths));
+        }
+        return index;
+    }
+
+    public int getTrackCount(){
+        return tracks.size();
+    }
+
+    public TrackIndex getTrackIndex(int track){
+        return tracks.get(track);
+    }
+
+    public List<String> getTrackNames(){
+        List<String> names = new ArrayList<>(tracks.size());
+        for(TrackIndex ti: tracks){
+            names.add(ti.name);
+        }
+        return names;
+    }
+
+    /**
+     * Reads the arrays of the n'th mesh of the track.
+     *
+     * @param track index of the track.
+     * @param n index of the mesh in the track, not the frame.
+     * @return raw mesh data.
+     * @throws IOException
+     */
+    public RawMesh readRawMesh(int track, int n) throws IOException {
+        TrackIndex ti = tracks.get(track);
+        return readBlock(ti, n);
+    }
+
+    /**
+     * Reads a single mesh.
+     *
+     * @param track index of the track
+     * @param frame time frame
+     * @return the mesh or null if the track doesn't have a mesh at that frame.
+     * @throws IOException
+     */
+    public DeformableMesh3D readMesh(int track, int frame) throws IOException {
+        TrackIndex ti = tracks.get(track);
+        int n = ti.find(frame);
+        if(n < 0){
+            return null;
+        }
+        return readBlock(ti, n).build();
+    }
+
+    /**
+     * Reads all of the meshes of one track.
+     *
+     * @param track index of the track.
+     * @return
+     * @throws IOException
+     */
+    public Track readTrack(int track) throws IOException {
+        TrackIndex ti = tracks.get(track);
+        Map<Integer, DeformableMesh3D> map = new HashMap<>();
+        for(int i = 0; i<ti.frames.length; i++){
+            RawMesh raw = readBlock(ti, i);
+            map.put(raw.frame, raw.build());
+        }
+        Track t = new Track(ti.name);
+        t.setData(map);
+        return t;
+    }
+
+    /**
+     * Reads the meshes of a single frame. Each track that has a mesh in the frame is returned with only that mesh.
+     *
+     * @param frame time frame
+     * @return tracks with a mesh at the frame.
+     * @throws IOException
+     */
+    public List<Track> readFrame(int frame) throws IOException {
+        List<Track> result = new ArrayList<>();
+        for(int i = 0; i<tracks.size(); i++){
+            DeformableMesh3D mesh = readMesh(i, frame);
+            if(mesh != null){
+                Track t = new Track(tracks.get(i).name);
+                t.addMesh(frame, mesh);
+                result.add(t);
+            }
+        }
+        return result;
+    }
+
+    RawMesh readBlock(TrackIndex ti, int n) throws IOException {
+        ByteBuffer block = map(ti, n);
+        if(compact){
+            return CompactMeshFormat.readMesh(block, i -> CompactMeshFormat.readTopology(map(ti, i)));
+        }
+        return decode(block);
+    }
+
+    private ByteBuffer map(TrackIndex ti, int n) throws IOException {
+        if(n < 0 || n >= ti.size()){
+            throw new IOException("Mesh " + n + " is not in track " + ti.name);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, ti.offsets[n], ti.lengths[n]);
+    }
+
+    /**
+     * Reads one mesh block starting at the position of the buffer.
+     *
+     * @param buffer contains the mesh, the position will be moved.
+     * @return the arrays of the mesh.
+     * @throws IOException if the counts do not fit in the buffer.
+     */
+    static RawMesh decode(ByteBuffer buffer) throws IOException {
+        int frame = buffer.getInt();
+
+        int posCount = checkCount(buffer, buffer.getInt(), Double.BYTES);
+        double[] positions = new double[posCount];
+        buffer.asDoubleBuffer().get(positions);
+        buffer.position(buffer.position() + posCount*Double.BYTES);
+
+        int conCount = checkCount(buffer, buffer.getInt(), Integer.BYTES);
+        int[] connections = new int[conCount];
+        buffer.asIntBuffer().get(connections);
+        buffer.position(buffer.position() + conCount*Integer.BYTES);
+
+        int triCount = checkCount(buffer, buffer.getInt(), Integer.BYTES);
+        int[] triangles = new int[triCount];
+        buffer.asIntBuffer().get(triangles);
+        buffer.position(buffer.position() + triCount*Integer.BYTES);
+
+        return new RawMesh(frame, positions, connections, triangles);
+    }
+
+    /**
+     * Creates tracks where the meshes are only read and created when they are requested. Each track maps
+     * the region of the file it occupies, the mapping stays valid after this file has been closed.
+     *
+     * @return all of the tracks, without any meshes created.
+     * @throws IOException
+     */
+    public List<Track> readLazyTracks() throws IOException {
+        List<Track> result = new ArrayList<>(tracks.size());
+        for(TrackIndex ti: tracks){
+            Map<Integer, MeshSource> sources = new HashMap<>();
+            if(ti.size() > 0){
+                long start = Long.MAX_VALUE;
+                long end = 0;
+                for(int i = 0; i<ti.size(); i++){
+                    start = Math.min(start, ti.offsets[i]);
+                    end = Math.max(end, ti.offsets[i] + ti.lengths[i]);
+                }
+                ByteBuffer region = end - start <= Integer.MAX_VALUE ?
+                        channel.map(FileChannel.MapMode.READ_ONLY, start, end - start) :
+                        null;
+                ByteBuffer[] blocks = new ByteBuffer[ti.size()];
+                for(int i = 0; i<ti.size(); i++){
+                    ByteBuffer block;
+                    if(region != null){
+                        ByteBuffer view = region.duplicate();
+                        view.position((int)(ti.offsets[i] - start));
+                        view.limit(view.position() + ti.lengths[i]);
+                        block = view.slice();
+                    } else{
+                        block = channel.map(FileChannel.MapMode.READ_ONLY, ti.offsets[i], ti.lengths[i]);
+                    }
+                    blocks[i] = block;
+                    sources.put(ti.frames[i], new MappedMeshSource(path, blocks, i, compact));
+                }
+            }
+            Track t = new Track(ti.name);
+            t.setLazyData(sources);
+            result.add(t);
+        }
+        return result;
+    }
+
+    /**
+     * A mesh that is decoded from a mapped block of the file each time it is built. The blocks of the other
+     * meshes in the track are kept for compact meshes that share their topology.
+     */
+    static class MappedMeshSource implements MeshSource{
+        final Path file;
+        final ByteBuffer[] blocks;
+        final int index;
+        final boolean compact;
+        MappedMeshSource(Path file, ByteBuffer[] blocks, int index, boolean compact){
+            this.file = file;
+            this.blocks = blocks;
+            this.index = index;
+            this.compact = compact;
+        }
+
+        @Override
+        public boolean reads(Path other){
+            try{
+                return Files.isSameFile(file, other);
+            } catch(IOException e){
+                return file.equals(other.toAbsolutePath());
+            }
+        }
+
+        @Override
+        public DeformableMesh3D build(){
+            try{
+                if(compact){
+                    return CompactMeshFormat.readMesh(
+                            blocks[index].duplicate(),
+                            i -> {
+                                if(i < 0 || i >= blocks.length){
+                                    throw new IOException("Invalid topology reference: " + i);
+                                }
+                                return CompactMeshFormat.readTopology(blocks[i].duplicate());
+                            }
+                        ).build();
+                }
+                return decode(blocks[index].duplicate()).build();
+            } catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    static int checkCount(ByteBuffer buffer, int count, int width) throws IOException {
+        if(count < 0 || (long)count*width > buffer.remaining()){
+            throw new IOException("invalid count variable: " + count + ", remaining " + buffer.remaining());
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,255 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.io;
+
+import deformablemesh.MeshImageStack;
+import deformablemesh.track.Track;
+import deformablemesh.voxels.MeshVoxelizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Writes label or mosaic images of the tracks directly to disk. Frames are rasterized in parallel, but only a bounded
+ * number of frames are held in memory at a time, and they are written in order as they finish. This is the streaming
+ * version of {@link deformablemesh.DeformableMesh3DTools#createUniqueLabelsRepresentation(MeshImageStack, List)} and
+ * {@link deformablemesh.DeformableMesh3DTools#createMosaicRepresentation(MeshImageStack, ij.ImagePlus, List)}, except
+ * every frame in the range is written, including frames without meshes, so the time axis lines up with the original.
+ */
+public class LabelImageExporter {
+    static int defaultFramesInFlight = Runtime.getRuntime().availableProcessors() + 1;
+
+    public enum Type{
+        /**
+         * 16 bit image where each track is labelled with its index + 1.
+         */
+        LABELS,
+        /**
+         * rgb image where each track is drawn with its color.
+         */
+        MOSAIC
+    }
+
+    final MeshImageStack stack;
+    final List<Track> tracks;
+    final Type type;
+    final int width, height, slices;
+    int framesInFlight = defaultFramesInFlight;
+    Executor pool = ForkJoinPool.commonPool();
+
+    /**
+     *
+     * @param stack geometry of the output image.
+     * @param tracks tracks to be drawn, the label of a track is its index + 1.
+     * @param type labels or mosaic.
+     */
+    public LabelImageExporter(MeshImageStack stack, List<Track> tracks, Type type){
+        if(type == Type.LABELS && tracks.size() > 0xffff){
+            throw new IllegalArgumentException("Too many tracks for a 16 bit label image: " + tracks.size());
+        }
+        this.stack = stack;
+        this.tracks = tracks;
+        this.type = type;
+        width = stack.getWidthPx();
+        height = stack.getHeightPx();
+        slices = stack.getNSlices();
+    }
+
+    /**
+     * Sets the default number of frames that can be rasterized, or waiting to be written, at one time.
+     *
+     * @param frames at least 1.
+     */
+    public static void setDefaultFramesInFlight(int frames){
+        defaultFramesInFlight = Math.max(1, frames);
+    }
+
+    /**
+     * Bounds the memory used, each frame in flight holds a full volume.
+     *
+     * @param frames at least 1.
+     */
+    public void setFramesInFlight(int frames){
+        framesInFlight = Math.max(1, frames);
+    }
+
+    /**
+     * Executor used for rasterizing frames, the common pool is used by default.
+     *
+     * @param pool
+     */
+    public void setPool(Executor pool){
+        this.pool = pool;
+    }
+
+    /**
+     * Writes the frames to a single tiff hyperstack.
+     *
+     * @param output destination.
+     * @param first first frame, inclusive.
+     * @param last last frame, inclusive.
+     * @param listener notified after each frame is written, can be null.
+     * @throws IOException
+     */
+    public void writeHyperstack(File output, int first, int last, MeshExporter.ProgressListener listener) throws IOException {
+        try(TiffStackWriter writer = createWriter(output, last - first + 1)){
+            stream(first, last, (frame, pixels) -> writeFrame(writer, pixels), listener);
+            writer.finish();
+        }
+    }
+
+    /**
+     * Writes each frame to its own tiff stack, named by {@link #getFrameFile(File, int)}.
+     *
+     * @param base used for naming the frame files.
+     * @param first first frame, inclusive.
+     * @param last last frame, inclusive.
+     * @param listener notified after each frame is written, can be null.
+     * @return the files that were written.
+     * @throws IOException
+     */
+    public List<File> writeFrames(File base, int first, int last, MeshExporter.ProgressListener listener) throws IOException {
+        List<File> files = new ArrayList<>();
+        stream(first, last, (frame, pixels) -> {
+            File f = getFrameFile(base, frame);
+            try(TiffStackWriter writer = createWriter(f, 1)){
+                writeFrame(writer, pixels);
+                writer.finish();
+            }
+            files.add(f);
+        }, listener);
+        return files;
+    }
+
+    /**
+     * Rasterizes a single frame.
+     *
+     * @param frame time point.
+     * @return short[][] for labels or int[][] for a mosaic, one array per slice.
+     */
+    public Object[] rasterize(int frame){
+        Object[] pixels;
+        if(type == Type.LABELS){
+            short[][] labels = new short[slices][width*height];
+            for(int i = 0; i < tracks.size(); i++){
+                Track t = tracks.get(i);
+                if(t.containsKey(frame)){
+                    new MeshVoxelizer(stack, t.getMesh(frame), slices, width, height).fill(labels, (short)(i + 1));
+                }
+            }
+            pixels = labels;
+        } else{
+            int[][] colors = new int[slices][width*height];
+            for(Track t: tracks){
+                if(t.containsKey(frame)){
+                    new MeshVoxelizer(stack, t.getMesh(frame), slices, width, height).fill(colors, t.getColor().getRGB());
+                }
+            }
+            pixels = colors;
+        }
+        return pixels;
+    }
+
+    /**
+     * Name of the file for a single frame, eg. labels.tif becomes labels-t0005.tif
+     *
+     * @param base name
+     * @param frame time point.
+     * @return file in the same directory as base.
+     */
+    public static File getFrameFile(File base, int frame){
+        String name = base.getName();
+        int dot = name.lastIndexOf('.');
+        if(dot > 0){
+            name = name.substring(0, dot);
+        }
+        return new File(base.getAbsoluteFile().getParentFile(), String.format("%s-t%04d.tif", name, frame));
+    }
+
+    interface FrameSink{
+        void accept(int frame, Object[] pixels) throws IOException;
+    }
+
+    /**
+     * Rasterizes frames ahead of the frame being written, at most framesInFlight frames are held at once including
+     * the frame being written. The frames are passed to the sink in order.
+     */
+    void stream(int first, int last, FrameSink sink, MeshExporter.ProgressListener listener) throws IOException {
+        Deque<CompletableFuture<Object[]>> window = new ArrayDeque<>();
+        int next = first;
+        int total = last - first + 1;
+        try{
+            for(int frame = first; frame <= last; frame++){
+                while(next <= last && window.size() < framesInFlight){
+                    int f = next++;
+                    window.add(CompletableFuture.supplyAsync(() -> rasterize(f), pool));
+                }
+                //the written frame is released before the window is refilled.
+                writeNext(window, frame, sink);
+                if(listener != null){
+                    listener.frameExported(frame, frame - first + 1, total);
+                }
+            }
+        } catch(CompletionException e){
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        } finally{
+            for(CompletableFuture<Object[]> future: window){
+                future.cancel(false);
+            }
+        }
+    }
+
+    private static void writeNext(Deque<CompletableFuture<Object[]>> window, int frame, FrameSink sink) throws IOException {
+        Object[] pixels = window.poll().join();
+        sink.accept(frame, pixels);
+    }
+
+    private TiffStackWriter createWriter(File output, int frames) throws IOException {
+        return new TiffStackWriter(output, width, height, slices, frames, type == Type.MOSAIC, stack.pixel_dimensions);
+    }
+
+    private static void writeFrame(TiffStackWriter writer, Object[] pixels) throws IOException {
+        for(Object slice: pixels){
+            if(slice instanceof short[]){
+                writer.writeSlice((short[]) slice);
+            } else{
+                writer.writeSlice((int[]) slice);
+            }
+        }
+    }
+}
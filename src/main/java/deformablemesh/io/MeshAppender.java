@@ -0,0 +1,295 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.io;
+
+import deformablemesh.geometry.DeformableMesh3D;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends meshes to a single track mesh file, keeping the file open between meshes. The file has the
+ * legacy layout, a header with the number of meshes followed by the meshes.
+ *
+ * Meshes are encoded into a direct buffer, that is written to the file when it is full or when it is
+ * flushed. The header is only updated after the meshes it counts have been written, if the program stops
+ * while writing, the file can still be read up to the last header update.
+ */
+public class MeshAppender implements Closeable {
+    /**
+     * How often the meshes are written to disk.
+     */
+    public enum Durability{
+        /** Meshes are written when the buffer is full, or flush/close is called. */
+        BUFFERED,
+        /** Each mesh is written to the file and the header is updated. */
+        FLUSH,
+        /** Each mesh is written and the file is synchronized to the storage device before and after the header update. */
+        SYNC
+    }
+
+    static int defaultBufferSize = 8*1024*1024;
+    static final int HEADER = Integer.BYTES;
+
+    final FileChannel channel;
+    final ByteBuffer buffer;
+    final ByteBuffer header = ByteBuffer.allocate(HEADER);
+    Durability durability = Durability.FLUSH;
+    int written;
+    int buffered;
+
+    /**
+     * Creates a new file, replacing any existing file.
+     *
+     * @param output file that will be written to.
+     * @return an appender for an empty file.
+     * @throws IOException
+     */
+    public static MeshAppender create(File output) throws IOException {
+        FileChannel channel = FileChannel.open(
+                output.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        );
+        MeshAppender appender = new MeshAppender(channel, 0);
+        appender.writeHeader();
+        channel.position(HEADER);
+        return appender;
+    }
+
+    /**
+     * Opens an existing file and appends meshes after the meshes counted in the header. Bytes after the last
+     * complete mesh, from an interrupted write, are removed.
+     *
+     * @param output existing file created by an appender.
+     * @return an appender positioned after the last mesh.
+     * @throws IOException
+     */
+    public static MeshAppender append(File output) throws IOException {
+        FileChannel channel = FileChannel.open(output.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try{
+            ByteBuffer head = ByteBuffer.allocate(HEADER);
+            channel.read(head, 0);
+            if(head.hasRemaining()){
+                throw new IOException("Mesh file is missing the header.");
+            }
+            head.flip();
+            int count = head.getInt();
+            if(count < 0){
+                throw new IOException("Cannot append to a multi-track mesh file.");
+            }
+            long end = HEADER;
+            ByteBuffer counts = ByteBuffer.allocate(Integer.BYTES);
+            for(int i = 0; i<count; i++){
+                end += Integer.BYTES;
+                end += skipArray(channel, counts, end, Double.BYTES);
+                end += skipArray(channel, counts, end, Integer.BYTES);
+                end += skipArray(channel, counts, end, Integer.BYTES);
+            }
+            if(end > channel.size()){
+                throw new IOException("Mesh file is truncated at " + channel.size());
+            }
+            channel.truncate(end);
+            channel.position(end);
+            return new MeshAppender(channel, count);
+        } catch(IOException e){
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the length of the array at position and returns the number of bytes the array occupies.
+     */
+    private static long skipArray(FileChannel channel, ByteBuffer counts, long position, int width) throws IOException {
+        counts.clear();
+        channel.read(counts, position);
+        if(counts.hasRemaining()){
+            throw new IOException("Mesh file is truncated at " + position);
+        }
+        counts.flip();
+        int n = counts.getInt();
+        if(n < 0){
+            throw new IOException("invalid count variable: " + n + " at " + position);
+        }
+        return Integer.BYTES + (long)n*width;
+    }
+
+    MeshAppender(FileChannel channel, int written){
+        this.channel = channel;
+        this.written = written;
+        this.buffer = ByteBuffer.allocateDirect(defaultBufferSize);
+    }
+
+    /**
+     * Sets the size of the direct buffer used by appenders created after this call.
+     *
+     * @param bytes buffer size, at least 1kB.
+     */
+    public static void setDefaultBufferSize(int bytes){
+        defaultBufferSize = Math.max(bytes, 1024);
+    }
+
+    public void setDurability(Durability durability){
+        this.durability = durability;
+    }
+
+    public Durability getDurability(){
+        return durability;
+    }
+
+    /**
+     * @return the number of meshes that have been appended, including meshes that have not been flushed.
+     */
+    public int getMeshCount(){
+        return written + buffered;
+    }
+
+    /**
+     * Appends the mesh.
+     *
+     * @param mesh mesh to be written.
+     * @param frame time frame of the mesh.
+     * @throws IOException
+     */
+    public synchronized void append(DeformableMesh3D mesh, int frame) throws IOException {
+        ensure(2*Integer.BYTES);
+        buffer.putInt(frame);
+        buffer.putInt(mesh.positions.length);
+        putDoubles(mesh.positions);
+
+        ensure(Integer.BYTES);
+        buffer.putInt(mesh.connection_index.length);
+        putInts(mesh.connection_index);
+
+        ensure(Integer.BYTES);
+        buffer.putInt(mesh.triangle_index.length);
+        putInts(mesh.triangle_index);
+
+        buffered++;
+        if(durability != Durability.BUFFERED){
+            flush();
+        }
+    }
+
+    private void putDoubles(double[] values) throws IOException {
+        int offset = 0;
+        while(offset < values.length){
+            ensure(Double.BYTES);
+            DoubleBuffer view = buffer.asDoubleBuffer();
+            int n = Math.min(view.remaining(), values.length - offset);
+            view.put(values, offset, n);
+            buffer.position(buffer.position() + n*Double.BYTES);
+            offset += n;
+        }
+    }
+
+    private void putInts(int[] values) throws IOException {
+        int offset = 0;
+        while(offset < values.length){
+            ensure(Integer.BYTES);
+            IntBuffer view = buffer.asIntBuffer();
+            int n = Math.min(view.remaining(), values.length - offset);
+            view.put(values, offset, n);
+            buffer.position(buffer.position() + n*Integer.BYTES);
+            offset += n;
+        }
+    }
+
+    /**
+     * Makes sure there is room in the buffer, by writing the buffer to the file.
+     */
+    private void ensure(int bytes) throws IOException {
+        if(buffer.remaining() < bytes){
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the buffered meshes and then updates the header to include them.
+     *
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        if(buffered == 0 && buffer.position() == 0){
+            return;
+        }
+        drain();
+        if(durability == Durability.SYNC){
+            channel.force(false);
+        }
+        written += buffered;
+        buffered = 0;
+        writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        header.clear();
+        header.putInt(written);
+        header.flip();
+        //positional write, the channel stays at the end of the meshes.
+        while(header.hasRemaining()){
+            channel.write(header, header.position());
+        }
+        if(durability == Durability.SYNC){
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Flushes the meshes and synchronizes the file to the storage device, regardless of the durability.
+     *
+     * @throws IOException
+     */
+    public synchronized void sync() throws IOException {
+        flush();
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try{
+            flush();
+        } finally{
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.io;
+
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.Triangle3D;
+import deformablemesh.track.Track;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Binary STL and PLY export. The files are written through a direct buffer, and a range of frames can be
+ * exported in parallel, with one file per frame.
+ */
+public class MeshExporter {
+    static final int BUFFER_SIZE = 1024*1024;
+    static final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(
+            () -> ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+    );
+    static final int STL_TRIANGLE_BYTES = 12*Float.BYTES + Short.BYTES;
+    static final int PLY_VERTEX_BYTES = 3*Float.BYTES + 3;
+    static final int PLY_FACE_BYTES = 1 + 3*Integer.BYTES;
+
+    public enum Format{
+        STL("stl"), PLY("ply");
+        final String extension;
+        Format(String extension){
+            this.extension = extension;
+        }
+        public String getExtension(){
+            return extension;
+        }
+    }
+
+    /**
+     * Notified after each frame has been exported, it is called from the threads doing the export.
+     */
+    public interface ProgressListener{
+        void frameExported(int frame, int completed, int total);
+    }
+
+    /**
+     * Writes a binary stl file of the meshes in the frame. The positions are transformed the same as
+     * {@link MeshWriter#saveStlMesh(File, List, double[], double, Integer)}, the offset is increased if any of
+     * the points would be negative, then the points are scaled.
+     *
+     * @param output destination file.
+     * @param tracks all of the tracks, only tracks with a mesh in the frame are written.
+     * @param offset offset applied to positions before scaling.
+     * @param scale scale applied to the positions.
+     * @param frame frame to be exported.
+     * @throws IOException
+     */
+    public static void writeBinaryStl(File output, List<Track> tracks, double[] offset, double scale, int frame) throws IOException {
+        List<DeformableMesh3D> meshes = new ArrayList<>();
+        for(Track track: tracks){
+            if(track.containsKey(frame)){
+                meshes.add(track.getMesh(frame));
+            }
+        }
+        double[] o = Arrays.copyOf(offset, 3);
+        long triangles = 0;
+        for(DeformableMesh3D mesh: meshes){
+            double[] pos = mesh.positions;
+            for(int i = 0; i<pos.length; i++){
+                int k = i%3;
+                if(pos[i] + o[k] < 0){
+                    o[k] = -pos[i];
+                }
+            }
+            triangles += mesh.triangles.size();
+        }
+
+        try(FileChannel channel = open(output)){
+            ByteBuffer buffer = buffer();
+            byte[] header = Arrays.copyOf("binary stl created by deformable mesh plugin.".getBytes(StandardCharsets.US_ASCII), 80);
+            buffer.put(header);
+            buffer.putInt((int)triangles);
+            int[] indexes = new int[3];
+            float[] values = new float[12];
+            for(DeformableMesh3D mesh: meshes){
+                double[] pos = mesh.positions;
+                for(Triangle3D triangle: mesh.triangles){
+                    triangle.getIndices(indexes);
+                    int a = 3*indexes[0];
+                    int b = 3*indexes[1];
+                    int c = 3*indexes[2];
+                    double abx = pos[b] - pos[a];
+                    double aby = pos[b + 1] - pos[a + 1];
+                    double abz = pos[b + 2] - pos[a + 2];
+                    double acx = pos[c] - pos[a];
+                    double acy = pos[c + 1] - pos[a + 1];
+                    double acz = pos[c + 2] - pos[a + 2];
+                    double nx = aby*acz - abz*acy;
+                    double ny = abz*acx - abx*acz;
+                    double nz = abx*acy - aby*acx;
+                    double l = Math.sqrt(nx*nx + ny*ny + nz*nz);
+                    if(l > 0){
+                        nx /= l;
+                        ny /= l;
+                        nz /= l;
+                    }
+                    values[0] = (float)nx;
+                    values[1] = (float)ny;
+                    values[2] = (float)nz;
+                    for(int v = 0; v<3; v++){
+                        int dex = 3*indexes[v];
+                        for(int k = 0; k<3; k++){
+                            values[3 + 3*v + k] = (float)((pos[dex + k] + o[k])*scale);
+                        }
+                    }
+                    ensure(channel, buffer, STL_TRIANGLE_BYTES);
+                    buffer.asFloatBuffer().put(values);
+                    buffer.position(buffer.position() + 12*Float.BYTES);
+                    buffer.putShort((short)0);
+                }
+            }
+            drain(channel, buffer);
+        }
+    }
+
+    /**
+     * Writes a binary little endian ply file of the meshes in the frame, the vertexes are colored by the color
+     * of their track. The positions are transformed the same as
+     * {@link MeshWriter#exportToPly(File, List, int, double[], double)}.
+     *
+     * @param output destination file.
+     * @param tracks all of the tracks, only tracks with a mesh in the frame are written.
+     * @param frame frame to be exported.
+     * @param scale scale applied to the positions.
+     * @throws IOException
+     */
+    public static void writeBinaryPly(File output, List<Track> tracks, int frame, double scale) throws IOException {
+        List<DeformableMesh3D> meshes = new ArrayList<>();
+        List<Color> colors = new ArrayList<>();
+        long vertices = 0;
+        long faces = 0;
+        for(Track track: tracks){
+            if(track.containsKey(frame)){
+                DeformableMesh3D mesh = track.getMesh(frame);
+                meshes.add(mesh);
+                colors.add(track.getColor());
+                vertices += mesh.positions.length/3;
+                faces += mesh.triangles.size();
+            }
+        }
+        if(meshes.size() == 0){
+            return;
+        }
+
+        String header = "ply\n" +
+                "format binary_little_endian 1.0\n" +
+                "comment meshes created by deformable mesh plugin.\n" +
+                "element vertex " + vertices + "\n" +
+                "property float x\n" +
+                "property float y\n" +
+                "property float z\n" +
+                "property uchar red\n" +
+                "property uchar green\n" +
+                "property uchar blue\n" +
+                "element face " + faces + "\n" +
+                "property list uchar int vertex_index\n" +
+                "end_header\n";
+        byte[] headerBytes = header.getBytes(StandardCharsets.US_ASCII);
+
+        try(FileChannel channel = open(output)){
+            ByteBuffer buffer = buffer();
+            buffer.put(headerBytes);
+            for(int i = 0; i<meshes.size(); i++){
+                double[] pos = meshes.get(i).positions;
+                Color c = colors.get(i);
+                byte r = (byte)c.getRed();
+                byte g = (byte)c.getGreen();
+                byte b = (byte)c.getBlue();
+                for(int j = 0; j<pos.length; j += 3){
+                    ensure(channel, buffer, PLY_VERTEX_BYTES);
+                    buffer.putFloat((float)(pos[j]*scale));
+                    buffer.putFloat((float)(pos[j + 1]*scale));
+                    buffer.putFloat((float)(pos[j + 2]*scale));
+                    buffer.put(r);
+                    buffer.put(g);
+                    buffer.put(b);
+                }
+            }
+            int offset = 0;
+            int[] indexes = new int[3];
+            for(DeformableMesh3D mesh: meshes){
+                for(Triangle3D triangle: mesh.triangles){
+                    triangle.getIndices(indexes);
+                    ensure(channel, buffer, PLY_FACE_BYTES);
+                    buffer.put((byte)3);
+                    buffer.putInt(indexes[0] + offset);
+                    buffer.putInt(indexes[1] + offset);
+                    buffer.putInt(indexes[2] + offset);
+                }
+                offset += mesh.positions.length/3;
+            }
+            drain(channel, buffer);
+        }
+    }
+
+    /**
+     * Exports each frame in the range to its own file, the frames are exported in parallel. The files are
+     * named after the base file with the frame number appended, eg. cells.stl becomes cells-t0005.stl.
+     *
+     * @param base file used to name the exported files.
+     * @param tracks tracks to export.
+     * @param format file format.
+     * @param first first frame, inclusive.
+     * @param last last frame, inclusive.
+     * @param offset offset used for stl files.
+     * @param scale scale applied to the positions.
+     * @param listener notified as each frame finishes, can be null.
+     * @return the files that were written.
+     * @throws IOException
+     */
+    public static List<File> exportFrames(File base, List<Track> tracks, Format format, int first, int last,
+                                          double[] offset, double scale, ProgressListener listener) throws IOException {
+        SortedSet<Integer> frames = new TreeSet<>();
+        for(Track track: tracks){
+            frames.addAll(track.getFrames().subSet(first, last + 1));
+        }
+        List<Integer> toExport = new ArrayList<>(frames);
+        File[] written = new File[toExport.size()];
+        AtomicInteger completed = new AtomicInteger();
+        try{
+            IntStream.range(0, written.length).parallel().forEach(i -> {
+                int frame = toExport.get(i);
+                File f = getFrameFile(base, frame, format);
+                try{
+                    if(format == Format.STL){
+                        writeBinaryStl(f, tracks, offset, scale, frame);
+                    } else{
+                        writeBinaryPly(f, tracks, frame, scale);
+                    }
+                } catch(IOException e){
+                    throw new UncheckedIOException(e);
+                }
+                written[i] = f;
+                int done = completed.incrementAndGet();
+                if(listener != null){
+                    listener.frameExported(frame, done, written.length);
+                }
+            });
+        } catch(UncheckedIOException e){
+            throw e.getCause();
+        }
+        return Arrays.asList(written);
+    }
+
+    /**
+     * The file a frame is exported to.
+     *
+     * @param base file used for the name and directory.
+     * @param frame time frame.
+     * @param format
+     * @return base name with the frame number and the extension of the format.
+     */
+    public static File getFrameFile(File base, int frame, Format format){
+        String name = base.getName();
+        int dot = name.lastIndexOf('.');
+        if(dot > 0){
+            name = name.substring(0, dot);
+        }
+        return new File(base.getAbsoluteFile().getParentFile(), String.format("%s-t%04d.%s", name, frame, format.extension));
+    }
+
+    private static FileChannel open(File output) throws IOException {
+        return FileChannel.open(output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Each thread reuses a direct buffer.
+     */
+    private static ByteBuffer buffer(){
+        ByteBuffer buffer = buffers.get();
+        buffer.clear();
+        return buffer;
+    }
+
+    private static void ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if(buffer.remaining() < bytes){
+            drain(channel, buffer);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -26,6 +26,7 @@
 package deformablemesh.io;
 
 import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.track.MeshSource;
 import deformablemesh.track.Track;
 
 import java.io.BufferedInputStream;
@@ -33,19 +34,29 @@ import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MeshReader {
+    static boolean defaultLazyLoading = false;
+    static boolean defaultParallelDecode = true;
     final long limit;
     File input;
     long current = 0;
     DataInputStream dis;
     long pos = 0;
+    boolean parallel = defaultParallelDecode;
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+    final AtomicLong decoded = new AtomicLong();
+    byte[] scratch = new byte[64*1024];
     private class CountingInputStream extends InputStream {
 
         final InputStream src;
@@ -59,6 +70,15 @@ public class MeshReader {
             pos++;
             return src.read();
         }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = src.read(b, off, len);
+            if(n > 0){
+                pos += n;
+            }
+            return n;
+        }
         @Override
         public void close() throws IOException {
             src.close();
@@ -83,17 +103,85 @@ public class MeshReader {
         return dis;
     }
 
-    private Track readMeshLegacy(int frames) throws IOException{
-        Track track = new Track("legacy");
+    /**
+     * Sets the default for new readers, see {@link #setParallel(boolean)}.
+     *
+     * @param parallel
+     */
+    public static void setDefaultParallelDecode(boolean parallel){
+        defaultParallelDecode = parallel;
+    }
+
+    /**
+     * When parallel, the reading thread only reads the arrays of each mesh and the meshes are created in the
+     * fork join pool. The tracks are returned in the same order either way.
+     *
+     * @param parallel
+     */
+    public void setParallel(boolean parallel){
+        this.parallel = parallel;
+    }
+
+    /**
+     * Sets the pool used to create the meshes when decoding in parallel, the default is the common pool.
+     *
+     * @param pool
+     */
+    public void setPool(ForkJoinPool pool){
+        this.pool = pool;
+    }
 
-        Map<Integer, DeformableMesh3D> map = new HashMap<>();
+    /**
+     * Collects the meshes of a track as they are read, the meshes are either created immediately or
+     * submitted to the pool.
+     */
+    private class TrackBuilder{
+        final String name;
+        final Map<Integer, DeformableMesh3D> map = new HashMap<>();
+        final List<Integer> frames = new ArrayList<>();
+        final List<ForkJoinTask<DeformableMesh3D>> tasks = new ArrayList<>();
+
+        TrackBuilder(String name){
+            this.name = name;
+        }
+
+        /**
+         * @param raw arrays of the mesh.
+         * @param bytes size of the mesh in the file, for reporting progress.
+         */
+        void add(RawMesh raw, long bytes){
+            if(parallel){
+                frames.add(raw.frame);
+                tasks.add(pool.submit(() -> {
+                    DeformableMesh3D mesh = raw.build();
+                    decoded.addAndGet(bytes);
+                    return mesh;
+                }));
+            } else{
+                map.put(raw.frame, raw.build());
+            }
+        }
+
+        Track finish(){
+            for(int i = 0; i<tasks.size(); i++){
+                map.put(frames.get(i), tasks.get(i).join());
+            }
+            Track t = new Track(name);
+            t.setData(map);
+            return t;
+        }
+    }
+
+    private Track readMeshLegacy(int frames) throws IOException{
+        TrackBuilder builder = new TrackBuilder("legacy");
 
         for(int i = 0; i<frames; i++) {
-            readMesh(dis, map);
+            long start = pos;
+            RawMesh raw = readRawMesh(dis);
+            builder.add(raw, pos - start);
         }
 
-        track.setData(map);
-        return track;
+        return builder.finish();
     }
 
     public List<Track> loadMeshes() throws IOException{
@@ -109,70 +197,130 @@ public class MeshReader {
             if (version > 0) {
                 //instead of a version number there was a number of frames.
                 tracks.add(readMeshLegacy(version));
-            } else if (version == -1) {
+            } else if (version == IndexedMeshFile.VERSION && IndexedMeshFile.isIndexed(input)) {
+                tracks.addAll(loadIndexed());
+            } else if (version == CompactMeshFormat.VERSION) {
+                if(!IndexedMeshFile.isIndexed(input)){
+                    throw new IOException("Compact mesh file is missing its index.");
+                }
+                tracks.addAll(loadIndexed());
+            } else if (version == -1 || version == IndexedMeshFile.VERSION) {
                 int trackCount = dis.readInt();
+                List<TrackBuilder> builders = new ArrayList<>();
                 for (int i = 0; i < trackCount; i++) {
-                    Track t = loadTrack();
-                    tracks.add(t);
+                    builders.add(loadTrack());
+                }
+                for(TrackBuilder builder: builders){
+                    tracks.add(builder.finish());
                 }
             } else {
                 throw new IOException("Unsupported Version");
             }
         }
+        decoded.set(limit);
         return tracks;
     }
 
     /**
-     * Reads a mesh from the provided DataInputStream and places it into the mapped data.
+     * Loads all of the tracks using the index, the meshes are read in bulk from mapped buffers.
+     *
+     * @return all of the tracks in the file.
+     * @throws IOException
+     */
+    private List<Track> loadIndexed() throws IOException{
+        List<Track> tracks = new ArrayList<>();
+        try(IndexedMeshFile indexed = new IndexedMeshFile(input)){
+            List<TrackBuilder> builders = new ArrayList<>();
+            for(int i = 0; i<indexed.getTrackCount(); i++){
+                IndexedMeshFile.TrackIndex ti = indexed.getTrackIndex(i);
+                TrackBuilder builder = new TrackBuilder(ti.getName());
+                for(int j = 0; j<ti.size(); j++){
+                    RawMesh raw = indexed.readRawMesh(i, j);
+                    builder.add(raw, ti.lengths[j]);
+                    pos = ti.offsets[j] + ti.lengths[j];
+                }
+                builders.add(builder);
+            }
+            for(TrackBuilder builder: builders){
+                tracks.add(builder.finish());
+            }
+        }
+        pos = limit;
+        return tracks;
+    }
+
+    /**
+     * Reads the arrays of a mesh from the provided DataInputStream.
      *
      * @param dis input stream data will be read from.
-     * @param map mapping of frames to meshes.
+     * @return the arrays of the mesh, no mesh objects are created.
      * @throws IOException
      */
-    private void readMesh(DataInputStream dis, Map<Integer, DeformableMesh3D> map) throws IOException {
+    private RawMesh readRawMesh(DataInputStream dis) throws IOException {
         int current = dis.readInt();
 
         int pos_count = checkCount(dis.readInt(), Double.BYTES);
         double[] positions = new double[pos_count];
-        for (int j = 0; j < pos_count; j++) {
-            positions[j] = dis.readDouble();
-        }
+        readDoubles(dis, positions);
 
         int con_count = checkCount(dis.readInt(), Integer.BYTES);
         int[] connection_indices = new int[con_count];
-        for (int j = 0; j < con_count; j++) {
-            connection_indices[j] = dis.readInt();
-        }
+        readInts(dis, connection_indices);
 
         int tri_count = checkCount(dis.readInt(), Integer.BYTES);
         int[] triangle_indices = new int[tri_count];
+        readInts(dis, triangle_indices);
 
-        for (int j = 0; j < tri_count; j++) {
-            triangle_indices[j] = dis.readInt();
-        }
+        return new RawMesh(current, positions, connection_indices, triangle_indices);
+    }
 
-        DeformableMesh3D mesh = DeformableMesh3D.loadMesh(positions, connection_indices, triangle_indices);
-        map.put(current, mesh);
+    /**
+     * Reads the values in blocks, instead of one value at a time.
+     */
+    private void readDoubles(DataInputStream dis, double[] values) throws IOException {
+        int chunk = scratch.length/Double.BYTES;
+        for(int offset = 0; offset < values.length; offset += chunk){
+            int n = Math.min(chunk, values.length - offset);
+            dis.readFully(scratch, 0, n*Double.BYTES);
+            ByteBuffer.wrap(scratch, 0, n*Double.BYTES).asDoubleBuffer().get(values, offset, n);
+        }
+    }
 
+    private void readInts(DataInputStream dis, int[] values) throws IOException {
+        int chunk = scratch.length/Integer.BYTES;
+        for(int offset = 0; offset < values.length; offset += chunk){
+            int n = Math.min(chunk, values.length - offset);
+            dis.readFully(scratch, 0, n*Integer.BYTES);
+            ByteBuffer.wrap(scratch, 0, n*Integer.BYTES).asIntBuffer().get(values, offset, n);
+        }
     }
 
-    private Track loadTrack() throws IOException {
+    private TrackBuilder loadTrack() throws IOException {
         String name = dis.readUTF();
 
         int timePoints = dis.readInt();
-        Map<Integer, DeformableMesh3D> map = new HashMap<>();
+        TrackBuilder builder = new TrackBuilder(name);
 
         for(int i = 0; i<timePoints; i++){
-            readMesh(dis, map);
+            long start = pos;
+            RawMesh raw = readRawMesh(dis);
+            builder.add(raw, pos - start);
         }
 
-        Track t = new Track(name);
-        t.setData(map);
-        return t;
+        return builder;
 
     }
 
+    /**
+     * Fraction of the file that has been loaded. When decoding in parallel half is for reading the file
+     * and half is for creating the meshes.
+     *
+     * @return value from 0 to 1.
+     */
     public double progress(){
+        if(parallel){
+            return 0.5*(pos + decoded.get())/limit;
+        }
         return 1.0*pos/limit;
     }
 
@@ -195,4 +343,66 @@ public class MeshReader {
         MeshReader reader = new MeshReader(input);
         return reader.loadMeshes();
     }
+
+    /**
+     * Loads the tracks without creating the meshes, each mesh is created when it is requested from the track.
+     * Indexed files are mapped, otherwise only the arrays of each mesh are kept in memory.
+     *
+     * @return tracks with lazily created meshes.
+     * @throws IOException
+     */
+    public List<Track> loadLazyMeshes() throws IOException{
+        if(IndexedMeshFile.isIndexed(input)){
+            List<Track> tracks;
+            try(IndexedMeshFile indexed = new IndexedMeshFile(input)){
+                tracks = indexed.readLazyTracks();
+            }
+            pos = limit;
+            return tracks;
+        }
+        List<Track> tracks = new ArrayList<>();
+        try(
+                DataInputStream stream = startReading()
+        ) {
+            int version = dis.readInt();
+            if (version > 0) {
+                tracks.add(readMeshLegacy(version));
+            } else if (version == -1 || version == IndexedMeshFile.VERSION) {
+                int trackCount = dis.readInt();
+                for (int i = 0; i < trackCount; i++) {
+                    String name = dis.readUTF();
+                    int timePoints = dis.readInt();
+                    Map<Integer, MeshSource> sources = new HashMap<>();
+                    for(int j = 0; j<timePoints; j++){
+                        RawMesh raw = readRawMesh(dis);
+                        sources.put(raw.frame, raw);
+                    }
+                    Track t = new Track(name);
+                    t.setLazyData(sources);
+                    tracks.add(t);
+                }
+            } else {
+                throw new IOException("Unsupported Version");
+            }
+        }
+        return tracks;
+    }
+
+    /**
+     * When true, the meshes loaded through the gui are created as they are requested.
+     *
+     * @param lazy
+     */
+    public static void setDefaultLazyLoading(boolean lazy){
+        defaultLazyLoading = lazy;
+    }
+
+    public static boolean isDefaultLazyLoading(){
+        return defaultLazyLoading;
+    }
+
+    static public List<Track> loadLazyMeshes(File input) throws IOException {
+        MeshReader reader = new MeshReader(input);
+        return reader.loadLazyMeshes();
+    }
 }
@@ -35,61 +35,102 @@ import java.awt.Color;
 import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
 import java.util.*;
 
 /**
- * For writing meshes incrementally. Opens file writes a mesh and then closes it.
+ * For writing meshes incrementally. Opens the file and keeps it open, each mesh is appended, see
+ * {@link MeshAppender}.
  *
  * User: msmith
  * Date: 8/5/13
  * Time: 8:11 AM
  * To change this template use File | Settings | File Templates.
  */
-public class MeshWriter {
+public class MeshWriter implements Closeable {
+    static boolean defaultIndexed = false;
     File output;
+    MeshAppender appender;
+    MeshAppender.Durability durability = MeshAppender.Durability.FLUSH;
 
     public MeshWriter(File output){
         this.output = output;
     }
 
-    public void open(){
+    /**
+     * Creates a new empty file, replacing the existing file.
+     */
+    synchronized public void open(){
         try {
-            DataOutputStream dos = new DataOutputStream(new FileOutputStream(output));
-            //just uses too many frames
-            int frames = 0;
-
-            dos.writeInt(frames);
-            dos.close();
-
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+            if(appender != null){
+                appender.close();
+            }
+            appender = MeshAppender.create(output);
+            appender.setDurability(durability);
         } catch (IOException e) {
+            appender = null;
             e.printStackTrace();
         }
     }
 
+    /**
+     * Appends the mesh to the file. If the file has not been opened, the meshes are appended to the existing
+     * file.
+     *
+     * @param mesh
+     * @param frame
+     */
     synchronized public void write(DeformableMesh3D mesh, Integer frame){
 
         try {
-            RandomAccessFile ras = new RandomAccessFile(output, "rw");
-            ras.seek(0);
-            int frames = ras.readInt();
-            ras.seek(0);
+            if(appender == null){
+                appender = MeshAppender.append(output);
+                appender.setDurability(durability);
+            }
+            appender.append(mesh, frame);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
 
-            ras.writeInt(frames+1);
-            ras.seek(ras.length());
+    }
 
-            writeMesh(ras,mesh,frame);
-            ras.close();
+    /**
+     * Sets how often the meshes are written to disk, the default is to write each mesh as it is appended.
+     *
+     * @param durability
+     */
+    synchronized public void setDurability(MeshAppender.Durability durability){
+        this.durability = durability;
+        if(appender != null){
+            appender.setDurability(durability);
+        }
+    }
 
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Writes any buffered meshes and updates the header.
+     *
+     * @throws IOException
+     */
+    synchronized public void flush() throws IOException {
+        if(appender != null){
+            appender.flush();
         }
+    }
 
+    @Override
+    synchronized public void close() throws IOException {
+        if(appender != null){
+            try{
+                appender.close();
+            } finally{
+                appender = null;
+            }
+        }
     }
 
     /**
@@ -200,10 +241,207 @@ public class MeshWriter {
         saveMeshes(output, tracker);
     }
 
+    /**
+     * Saves the tracks in the version -1 format, or with an index when {@link #setDefaultIndexed(boolean)} has
+     * been enabled. The tracks are written to a temporary file that replaces the output when it is complete,
+     * tracks that were lazily loaded from the output file can still be read while it is being saved.
+     *
+     * @param output file that will be written.
+     * @param tracker contains the tracks that will be saved.
+     * @throws IOException
+     */
     static public void saveMeshes(File output, MeshTracker tracker) throws IOException {
+        if(defaultIndexed){
+            saveIndexedMeshes(output, tracker);
+        } else{
+            saveMeshesUnindexed(output, tracker);
+        }
+    }
+
+    /**
+     * Saves the tracks with an index, version -2, see {@link IndexedMeshFile}. Readers older than the index
+     * cannot open these files.
+     *
+     * @param output file that will be written.
+     * @param tracker contains the tracks that will be saved.
+     * @throws IOException
+     */
+    static public void saveIndexedMeshes(File output, MeshTracker tracker) throws IOException {
+        replace(output, tracker, tmp -> writeIndexed(tmp, tracker, null));
+    }
+
+    /**
+     * Sets whether {@link #saveMeshes(File, MeshTracker)} writes files with an index. The default is false, so
+     * saved files can be opened by readers that only know version -1.
+     *
+     * @param indexed true to write version -2 files.
+     */
+    public static void setDefaultIndexed(boolean indexed){
+        defaultIndexed = indexed;
+    }
+
+    public static boolean isDefaultIndexed(){
+        return defaultIndexed;
+    }
+
+    /**
+     * Saves the tracks with the compact encoding, see {@link CompactMeshFormat}. Meshes with the same
+     * connections and triangles as the previous mesh in the track reference its topology.
+     *
+     * @param output file that will be written.
+     * @param tracker contains the tracks that will be saved.
+     * @param encoding how the positions are stored, {@link CompactMeshFormat.Positions#DOUBLE} is lossless.
+     * @throws IOException
+     */
+    static public void saveCompactMeshes(File output, MeshTracker tracker, CompactMeshFormat.Positions encoding) throws IOException {
+        replace(output, tracker, tmp -> writeIndexed(tmp, tracker, encoding));
+    }
+
+    static public void saveCompactMeshes(File output, List<Track> tracks, CompactMeshFormat.Positions encoding) throws IOException {
+        MeshTracker tracker = new MeshTracker();
+        tracker.addMeshTracks(tracks);
+        saveCompactMeshes(output, tracker, encoding);
+    }
+
+    /**
+     * Writes a file next to the output.
+     */
+    interface PathWriter{
+        void write(Path path) throws IOException;
+    }
+
+    /**
+     * Writes the output, replacing an existing file once the new file is complete. Lazy meshes of the tracker
+     * that are read from the existing file are copied into memory before it is replaced, and the new file gets
+     * the permissions of the existing file.
+     *
+     * @param output file that will be written.
+     * @param tracker tracks that are being saved.
+     * @param writer writes the tracks.
+     * @throws IOException
+     */
+    private static void replace(File output, MeshTracker tracker, PathWriter writer) throws IOException {
+        Path target = output.getAbsoluteFile().toPath();
+        if(!Files.exists(target)){
+            writer.write(target);
+            return;
+        }
+        Path tmp = Files.createTempFile(target.getParent(), output.getName(), ".tmp");
+        try{
+            writer.write(tmp);
+            PosixFileAttributeView view = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+            if(view != null){
+                Files.setPosixFilePermissions(tmp, view.readAttributes().permissions());
+            }
+            for(Track track: tracker.getAllMeshTracks()){
+                track.detach(target);
+            }
+            try{
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch(AtomicMoveNotSupportedException e){
+                //eg. some network file systems, the target is replaced without the atomic rename.
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally{
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Writes the tracks followed by the index.
+     *
+     * @param output destination
+     * @param tracker contains the tracks that will be saved.
+     * @param encoding compact position encoding, or null for version -2 meshes.
+     * @throws IOException
+     */
+    static void writeIndexed(Path output, MeshTracker tracker, CompactMeshFormat.Positions encoding) throws IOException {
+        try(CountingOutputStream counter = new CountingOutputStream(
+                new BufferedOutputStream(
+                        Files.newOutputStream( output, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING )
+                )
+            );
+            DataOutputStream dos = new DataOutputStream(counter)
+        ){
+            dos.writeInt(encoding == null ? IndexedMeshFile.VERSION : CompactMeshFormat.VERSION);
+
+            List<Track> tracks = tracker.getAllMeshTracks();
+            List<long[]> offsets = new ArrayList<>();
+            dos.writeInt(tracks.size());
+            for(Track track: tracks){
+
+                dos.writeUTF(track.getName());
+                Set<Integer> frames = track.getFrames();
+
+                dos.writeInt(frames.size());
+                long[] trackOffsets = new long[frames.size() + 1];
+                int j = 0;
+                int topology = CompactMeshFormat.INLINE_TOPOLOGY;
+                int[] connections = null;
+                int[] triangles = null;
+                for(Integer i: frames){
+                    //the data output stream is not buffered, the counter is up to date.
+                    trackOffsets[j] = counter.count;
+                    DeformableMesh3D mesh = track.getMesh(i);
+                    if(encoding == null){
+                        writeMesh(dos, mesh, i);
+                    } else{
+                        boolean shared = connections != null &&
+                                Arrays.equals(connections, mesh.connection_index) &&
+                                Arrays.equals(triangles, mesh.triangle_index);
+                        if(!shared){
+                            topology = j;
+                            connections = mesh.connection_index;
+                            triangles = mesh.triangle_index;
+                        }
+                        CompactMeshFormat.writeMesh(dos, mesh, i, encoding, shared ? topology : CompactMeshFormat.INLINE_TOPOLOGY);
+                    }
+                    j++;
+                }
+                trackOffsets[j] = counter.count;
+                offsets.add(trackOffsets);
+            }
+
+            long indexStart = counter.count;
+            dos.writeInt(tracks.size());
+            for(int t = 0; t<tracks.size(); t++){
+                Track track = tracks.get(t);
+                long[] trackOffsets = offsets.get(t);
+                dos.writeUTF(track.getName());
+                Set<Integer> frames = track.getFrames();
+                dos.writeInt(frames.size());
+                int j = 0;
+                for(Integer i: frames){
+                    dos.writeInt(i);
+                    dos.writeLong(trackOffsets[j]);
+                    dos.writeInt((int)(trackOffsets[j + 1] - trackOffsets[j]));
+                    j++;
+                }
+            }
+            dos.writeLong(indexStart);
+            dos.writeInt(IndexedMeshFile.INDEX_MAGIC);
+
+        }catch(IOException exc){
+            throw new IOException(exc);
+        }
+
+    }
+
+    /**
+     * Saves the tracks in the version -1 format, without an index.
+     *
+     * @param output file that will be written.
+     * @param tracker contains the tracks that will be saved.
+     * @throws IOException
+     */
+    static public void saveMeshesUnindexed(File output, MeshTracker tracker) throws IOException {
+        replace(output, tracker, tmp -> writeUnindexed(tmp, tracker));
+    }
+
+    static void writeUnindexed(Path output, MeshTracker tracker) throws IOException {
         try(DataOutputStream dos = new DataOutputStream(
                 new BufferedOutputStream(
-                        Files.newOutputStream( output.toPath(), StandardOpenOption.CREATE
+                        Files.newOutputStream( output, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING
                     )
                 )
         )){
@@ -214,11 +452,11 @@ public class MeshWriter {
             for(Track track: tracks){
 
                 dos.writeUTF(track.getName());
-                Map<Integer, DeformableMesh3D> map = track.getTrack();
+                Set<Integer> frames = track.getFrames();
 
-                dos.writeInt(map.size());
-                for(Integer i: map.keySet()){
-                    writeMesh(dos, map.get(i), i);
+                dos.writeInt(frames.size());
+                for(Integer i: frames){
+                    writeMesh(dos, track.getMesh(i), i);
                 }
 
             }
@@ -228,6 +466,29 @@ public class MeshWriter {
         }
 
     }
+
+    /**
+     * Counts the bytes written, as a long so files larger than 2GB can be indexed.
+     */
+    static class CountingOutputStream extends FilterOutputStream{
+        long count;
+        CountingOutputStream(OutputStream out){
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
     static public void writeMesh(DataOutput dos, DeformableMesh3D mesh, int frame) throws IOException {
         dos.writeInt(frame);
         int pos_count = mesh.positions.length;
@@ -0,0 +1,61 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.io;
+
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.track.MeshSource;
+
+/**
+ * The arrays of a mesh as they are stored in a file, the mesh objects are only created when needed.
+ */
+public class RawMesh implements MeshSource {
+    public final int frame;
+    public final double[] positions;
+    public final int[] connections;
+    public final int[] triangles;
+
+    public RawMesh(int frame, double[] positions, int[] connections, int[] triangles){
+        this.frame = frame;
+        this.positions = positions;
+        this.connections = connections;
+        this.triangles = triangles;
+    }
+
+    /**
+     * Creates a new mesh using these arrays.
+     *
+     * @return a mesh that uses the positions array of this raw mesh.
+     */
+    @Override
+    public DeformableMesh3D build(){
+        return DeformableMesh3D.loadMesh(positions, connections, triangles);
+    }
+
+    @Override
+    public boolean isBacking(){
+        return true;
+    }
+}
@@ -0,0 +1,328 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes an uncompressed tiff stack one slice at a time. The pixel data is contiguous and the first IFD contains an
+ * ImageJ description, so ImageJ opens it as a hyperstack. The remaining IFDs are written by {@link #finish()},
+ * they are left out when the file is larger than 4GB since they cannot address the slices, ImageJ will still open it
+ * using the description. A writer that is closed without finishing deletes the partial file.
+ *
+ * Slices are either 16 bit gray or 8 bit rgb.
+ */
+class TiffStackWriter implements Closeable {
+    static final short NEW_SUBFILE_TYPE = 254;
+    static final short IMAGE_WIDTH = 256;
+    static final short IMAGE_LENGTH = 257;
+    static final short BITS_PER_SAMPLE = 258;
+    static final short PHOTOMETRIC = 262;
+    static final short IMAGE_DESCRIPTION = 270;
+    static final short STRIP_OFFSETS = 273;
+    static final short SAMPLES_PER_PIXEL = 277;
+    static final short ROWS_PER_STRIP = 278;
+    static final short STRIP_BYTE_COUNTS = 279;
+    static final short X_RESOLUTION = 282;
+    static final short Y_RESOLUTION = 283;
+
+    static final short SHORT = 3;
+    static final short LONG = 4;
+    static final short ASCII = 2;
+    static final short RATIONAL = 5;
+
+    static final int HEADER = 8;
+    static final int ENTRY_BYTES = 12;
+    static final long MAX_OFFSET = 0xffffffffL;
+
+    final File output;
+    final FileChannel channel;
+    final int width, height, slices, frames;
+    final boolean rgb;
+    final int bytesPerPixel;
+    final long imageBytes;
+    final int images;
+    final ByteBuffer buffer;
+
+    //locations in the first IFD that are shared by the rest.
+    long bitsOffset;
+    long resolutionOffset;
+    long nextIfdPointer;
+    long dataOffset;
+    int written;
+    boolean finished;
+
+    /**
+     * Creates the file and writes the header and the first IFD.
+     *
+     * @param output destination.
+     * @param width width in pixels
+     * @param height height in pixels
+     * @param slices slices per frame.
+     * @param frames number of frames that will be written.
+     * @param rgb true for 8 bit rgb, false for 16 bit gray.
+     * @param pixelDimensions x, y, z size of a voxel, used for the calibration.
+     * @throws IOException
+     */
+    TiffStackWriter(File output, int width, int height, int slices, int frames, boolean rgb, double[] pixelDimensions) throws IOException {
+        this.output = output;
+        this.width = width;
+        this.height = height;
+        this.slices = slices;
+        this.frames = frames;
+        this.rgb = rgb;
+        bytesPerPixel = rgb ? 3 : 2;
+        imageBytes = ((long)width)*height*bytesPerPixel;
+        images = slices*frames;
+        buffer = ByteBuffer.allocateDirect((int)Math.min(imageBytes, 1 << 20) + 1024).order(ByteOrder.BIG_ENDIAN);
+        channel = FileChannel.open(output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try{
+            writeFirstIfd(pixelDimensions);
+        } catch(IOException e){
+            channel.close();
+            throw e;
+        }
+    }
+
+    int entries(boolean first){
+        //description is only in the first ifd.
+        return first ? 12 : 11;
+    }
+
+    private String description(double[] pixelDimensions){
+        StringBuilder builder = new StringBuilder();
+        builder.append("ImageJ=1.53t\n");
+        builder.append("images=").append(images).append('\n');
+        if(slices > 1){
+            builder.append("slices=").append(slices).append('\n');
+        }
+        if(frames > 1){
+            builder.append("frames=").append(frames).append('\n');
+        }
+        if(slices > 1 && frames > 1){
+            builder.append("hyperstack=true\n");
+        }
+        if(pixelDimensions != null){
+            builder.append("spacing=").append(pixelDimensions[2]).append('\n');
+        }
+        builder.append("loop=false\n");
+        builder.append('\0');
+        return builder.toString();
+    }
+
+    private void writeFirstIfd(double[] pixelDimensions) throws IOException {
+        byte[] description = description(pixelDimensions).getBytes(StandardCharsets.US_ASCII);
+        int n = entries(true);
+        long ifdEnd = HEADER + 2 + n*ENTRY_BYTES + 4;
+        bitsOffset = ifdEnd;
+        resolutionOffset = bitsOffset + 6;
+        long descriptionOffset = resolutionOffset + 16;
+        //tiff offsets are word aligned.
+        dataOffset = (descriptionOffset + description.length + 1) & ~1L;
+        nextIfdPointer = ifdEnd - 4;
+
+        buffer.clear();
+        buffer.put((byte)'M').put((byte)'M').putShort((short)42).putInt(HEADER);
+        putEntries(true, dataOffset, description.length, descriptionOffset);
+        buffer.putInt(0);
+        buffer.putShort((short)8).putShort((short)8).putShort((short)8);
+        double xres = pixelDimensions == null ? 1 : 1/pixelDimensions[0];
+        double yres = pixelDimensions == null ? 1 : 1/pixelDimensions[1];
+        buffer.putInt((int)(xres*1000000)).putInt(1000000);
+        buffer.putInt((int)(yres*1000000)).putInt(1000000);
+        buffer.put(description);
+        while(buffer.position() < dataOffset){
+            buffer.put((byte)0);
+        }
+        buffer.flip();
+        drain();
+    }
+
+    private void putEntries(boolean first, long stripOffset, int descriptionLength, long descriptionOffset){
+        buffer.putShort((short)entries(first));
+        putEntry(NEW_SUBFILE_TYPE, LONG, 1, 0);
+        putEntry(IMAGE_WIDTH, LONG, 1, width);
+        putEntry(IMAGE_LENGTH, LONG, 1, height);
+        if(rgb){
+            putEntry(BITS_PER_SAMPLE, SHORT, 3, bitsOffset);
+        } else{
+            putShortEntry(BITS_PER_SAMPLE, 16);
+        }
+        putShortEntry(PHOTOMETRIC, rgb ? 2 : 1);
+        if(first){
+            putEntry(IMAGE_DESCRIPTION, ASCII, descriptionLength, descriptionOffset);
+        }
+        putEntry(STRIP_OFFSETS, LONG, 1, stripOffset);
+        putShortEntry(SAMPLES_PER_PIXEL, rgb ? 3 : 1);
+        putEntry(ROWS_PER_STRIP, LONG, 1, height);
+        putEntry(STRIP_BYTE_COUNTS, LONG, 1, imageBytes);
+        putEntry(X_RESOLUTION, RATIONAL, 1, resolutionOffset);
+        putEntry(Y_RESOLUTION, RATIONAL, 1, resolutionOffset + 8);
+    }
+
+    private void putEntry(short tag, short type, int count, long value){
+        buffer.putShort(tag).putShort(type).putInt(count).putInt((int)value);
+    }
+
+    private void putShortEntry(short tag, int value){
+        //values smaller than 4 bytes are left justified.
+        buffer.putShort(tag).putShort(SHORT).putInt(1).putShort((short)value).putShort((short)0);
+    }
+
+    private void drain() throws IOException {
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Writes the next 16 bit slice.
+     *
+     * @param pixels width*height values.
+     * @throws IOException
+     */
+    void writeSlice(short[] pixels) throws IOException {
+        checkSlice(rgb);
+        int chunk = buffer.capacity()/Short.BYTES;
+        for(int start = 0; start < pixels.length; start += chunk){
+            int n = Math.min(chunk, pixels.length - start);
+            buffer.clear();
+            buffer.asShortBuffer().put(pixels, start, n);
+            buffer.limit(n*Short.BYTES);
+            drain();
+        }
+        written++;
+    }
+
+    /**
+     * Writes the next rgb slice, the alpha channel is ignored.
+     *
+     * @param pixels width*height packed rgb values.
+     * @throws IOException
+     */
+    void writeSlice(int[] pixels) throws IOException {
+        checkSlice(!rgb);
+        int chunk = buffer.capacity()/3;
+        for(int start = 0; start < pixels.length; start += chunk){
+            int n = Math.min(chunk, pixels.length - start);
+            buffer.clear();
+            for(int i = start; i < start + n; i++){
+                int p = pixels[i];
+                buffer.put((byte)(p >> 16)).put((byte)(p >> 8)).put((byte)p);
+            }
+            buffer.flip();
+            drain();
+        }
+        written++;
+    }
+
+    private void checkSlice(boolean wrongType){
+        if(wrongType){
+            throw new IllegalArgumentException("slice type does not match the " + (rgb ? "rgb" : "16 bit") + " image.");
+        }
+        if(written == images){
+            throw new IllegalStateException("all " + images + " slices have already been written.");
+        }
+    }
+
+    /**
+     * Writes the IFDs for the remaining slices and closes the file. If fewer slices have been written than expected
+     * the file is padded with empty slices so that the description stays valid.
+     *
+     * @throws IOException
+     */
+    void finish() throws IOException {
+        try{
+            if(written < images){
+                buffer.clear();
+                while(buffer.hasRemaining()){
+                    buffer.put((byte)0);
+                }
+                long remaining = (images - written)*imageBytes;
+                while(remaining > 0){
+                    buffer.clear();
+                    buffer.limit((int)Math.min(remaining, buffer.capacity()));
+                    remaining -= buffer.limit();
+                    drain();
+                }
+            }
+            long end = (dataOffset + images*imageBytes + 1) & ~1L;
+            if(images > 1 && end + (images - 1L)*(2 + entries(false)*ENTRY_BYTES + 4) <= MAX_OFFSET){
+                writeIfds(end);
+            }
+            finished = true;
+        } finally{
+            channel.close();
+        }
+    }
+
+    /**
+     * Closes the file, if {@link #finish()} has not completed the export failed and the partial file is deleted.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if(finished){
+            return;
+        }
+        try{
+            channel.close();
+        } finally{
+            Files.deleteIfExists(output.toPath());
+        }
+    }
+
+    private void writeIfds(long position) throws IOException {
+        ByteBuffer pointer = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
+        pointer.putInt(0, (int)position);
+        channel.write(pointer, nextIfdPointer);
+        channel.position(position);
+
+        int ifdBytes = 2 + entries(false)*ENTRY_BYTES + 4;
+        buffer.clear();
+        for(int i = 1; i < images; i++){
+            if(buffer.remaining() < ifdBytes){
+                buffer.flip();
+                drain();
+                buffer.clear();
+            }
+            position += ifdBytes;
+            putEntries(false, dataOffset + i*imageBytes, 0, 0);
+            buffer.putInt(i == images - 1 ? 0 : (int)position);
+        }
+        buffer.flip();
+        drain();
+    }
+}
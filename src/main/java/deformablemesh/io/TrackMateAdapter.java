@@ -33,7 +33,7 @@ import deformablemesh.geometry.RayCastMesh;
 import deformablemesh.geometry.Sphere;
 import deformablemesh.track.Track;
 import deformablemesh.util.ColorSuggestions;
-import deformablemesh.util.Vector3DOps;
+import deformablemesh.util.PointKDTree;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.Spot;
@@ -53,10 +53,12 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * A utility class for using TrackMate files.
@@ -120,74 +122,91 @@ public class TrackMateAdapter {
         TrackModel trackModel = model.getTrackModel();
         trackModel.nTracks(false);
         SpotCollection spots = model.getSpots();
+
+        //frames are matched independently, then the tracks are created in order.
+        List<List<SpotMatch>> matches = IntStream.range(0, mis.getNFrames()).parallel().mapToObj(
+                frame -> matchFrame(tracks, mis, spots.iterable(frame, false), trackModel, frame, CUTOFF)
+            ).collect(Collectors.toList());
+
         Map<String, Track> mapper = new HashMap<>();
-        for (int i = 0; i < mis.getNFrames(); i++) {
-            final int frame = i;
-            List<DeformableMesh3D> meshes = tracks.stream().filter(
-                    t-> t.containsKey(frame)
-                ).map(
-                    t->t.getMesh(frame)
-                ).collect(Collectors.toList());
-            int start = meshes.size();
-            List<double[]> centers = new ArrayList<>();
-            for(int j = 0; j<meshes.size(); j++){
+        for(int i = 0; i<matches.size(); i++){
+            for(SpotMatch match: matches.get(i)){
+                Object id = match.id;
+                if(id == null){
+                    id = "N" + mapper.size();
+                }
+                Track track = mapper.computeIfAbsent(id.toString(), j -> new Track("" + j));
+                track.addMesh(i, match.mesh);
+            }
+        }
+        return new ArrayList<>(mapper.values());
+    }
+
+    /**
+     * A mesh that has been associated with a spot.
+     */
+    static class SpotMatch{
+        final Object id;
+        final DeformableMesh3D mesh;
+        SpotMatch(Object id, DeformableMesh3D mesh){
+            this.id = id;
+            this.mesh = mesh;
+        }
+    }
+
+    /**
+     * Associates each spot with the closest mesh in the frame that hasn't already been associated with a spot. Spots
+     * are processed in order, and the mesh centers are indexed with a kd-tree.
+     *
+     * @param tracks all of the tracks, only meshes in the frame are used.
+     * @param mis geometry for the real coordinates of the meshes.
+     * @param spots spots in the frame, can be null.
+     * @param trackModel for the track id of each spot.
+     * @param frame time point.
+     * @param cutoff spots further than this from every mesh, in real units, are not matched.
+     * @return the matched spots, in the order of the spots.
+     */
+    static List<SpotMatch> matchFrame(List<Track> tracks, MeshImageStack mis, Iterable<Spot> spots, TrackModel trackModel, int frame, double cutoff){
+        List<DeformableMesh3D> meshes = new ArrayList<>();
+        List<double[]> centers = new ArrayList<>();
+        for(Track t: tracks){
+            if(t.containsKey(frame)){
+                DeformableMesh3D mesh = t.getMesh(frame);
+                meshes.add(mesh);
                 //do the same conversion used to create the trackmate file. If the mesh
                 //shape hasn't been changed, and trackmate isnt' changing the CM this should be
                 //result in 0's.
-                //BinaryMomentsOfInertia bmi = new BinaryMomentsOfInertia(meshes.get(j), mis);
-                //double[] center = bmi.getCenterOfMass();
-                ProxySpot ps = new ProxySpot(meshes.get(j), mis);
-
-                centers.add( new double[] { ps.cx, ps.cy, ps.cz});
+                centers.add(getCenterRealCoordinates(mesh, mis));
             }
-
-            Iterable<Spot> si = spots.iterable(frame, false);
-            if(si != null){
-                for (Spot spot : si) {
-
-                    double min = Double.MAX_VALUE;
-                    int closest = -1;
-                    for(int j = 0; j<centers.size(); j++){
-
-                        double[] mcm = centers.get(j);
-                        double[] scm = {
-                                spot.getDoublePosition(0),
-                                spot.getDoublePosition(1),
-                                spot.getDoublePosition(2)
-                        };
-                        double d = Vector3DOps.distance(scm, mcm);
-                        if(d < min){
-                            min = d;
-                            closest = j;
-                            if( d == 0 ) break;
-                        }
-                    }
-                    if( min < CUTOFF ){
-                        Object id = trackModel.trackIDOf(spot);
-                        if(id == null){
-                            id = "N" + mapper.size();
-                        }
-
-                        Track track = mapper.computeIfAbsent(id.toString(), j -> new Track("" + j));
-                        if (track.containsKey(i)) {
-                            System.out.println("Track has multiple spots");
-                        } else {
-                            track.addMesh(i, meshes.get(closest));
-                            centers.remove(closest);
-                            meshes.remove(closest);
-                        }
-                    } else{
-                        System.out.println("couldn't map spot: " + min + " more than " + CUTOFF);
-                    }
-
-
+        }
+        List<SpotMatch> matched = new ArrayList<>();
+        if(spots == null){
+            return matched;
+        }
+        PointKDTree tree = new PointKDTree(centers);
+        Set<String> ids = new HashSet<>();
+        double[] scm = new double[3];
+        for(Spot spot: spots){
+            scm[0] = spot.getDoublePosition(0);
+            scm[1] = spot.getDoublePosition(1);
+            scm[2] = spot.getDoublePosition(2);
+            int closest = tree.nearest(scm, cutoff);
+            if(closest >= 0){
+                Object id = trackModel.trackIDOf(spot);
+                if(id != null && !ids.add(id.toString())){
+                    System.out.println("Track has multiple spots");
+                } else{
+                    matched.add(new SpotMatch(id, meshes.get(closest)));
+                    tree.remove(closest);
                 }
-            }
-            if(meshes.size() > 0){
-                System.out.println(meshes.size() + " of " + start + " meshes untracked on frame: " + frame);
+            } else{
+                System.out.println("couldn't map spot, no mesh closer than " + cutoff);
             }
         }
-        return new ArrayList<>(mapper.values());
+        if(tree.size() > 0){
+            System.out.println(tree.size() + " of " + meshes.size() + " meshes untracked on frame: " + frame);
+        }
+        return matched;
     }
 
     /**
@@ -212,8 +231,11 @@ public class TrackMateAdapter {
      * @return
      */
     public static double[] getCenterRealCoordinates( DeformableMesh3D mesh, MeshImageStack stack){
-        ProxySpot spot = new ProxySpot(mesh, stack);
-        return new double[] {spot.cx, spot.cy, spot.cz};
+        double[] center = stack.getImageCoordinates(mesh.getBoundingBox().getCenter());
+        for(int i = 0; i<3; i++){
+            center[i] *= stack.pixel_dimensions[i];
+        }
+        return center;
     }
 
     static public List<Track> createSpotList(Model model, MeshImageStack geometry){
@@ -221,6 +243,7 @@ public class TrackMateAdapter {
         Set<Integer> tracks = trackModel.trackIDs(true);
         List<Color> colors = new ArrayList<>();
         List<Track> deformableMeshTracks = new ArrayList<>();
+        List<List<Spot>> branches = new ArrayList<>();
         for(Integer id: tracks){
 
             Collection<List<Spot>> tracked = ConvexBranchesDecomposition.processTrack(
@@ -237,21 +260,43 @@ public class TrackMateAdapter {
                 String name = ColorSuggestions.getColorName(color) + "-" + id + "-" + decendants;
                 Track t = new Track(name, color);
                 decendants++;
-
-                for(Spot spot: track){
-                    double [] xyz = ProxySpot.getNormalizedCoordinates( spot, geometry);
-                    Sphere s = new Sphere(xyz, ProxySpot.getNormalizedRadius(spot, geometry) );
-                    DeformableMesh3D mesh = RayCastMesh.rayCastMesh(s, s.getCenter(), 1);
-                    t.addMesh(spot.getFeature("FRAME").intValue(), mesh);
-                }
-                if(t.size() != track.size()){
-                    System.out.println("Overlap!");
-                }
                 deformableMeshTracks.add(t);
+                branches.add(track);
+            }
+        }
+
+        //the meshes are independent so they're created in parallel, then added in order.
+        List<Spot> all = branches.stream().flatMap(List::stream).collect(Collectors.toList());
+        List<DeformableMesh3D> meshes = all.parallelStream().map(
+                spot -> createSpotMesh(spot, geometry)
+            ).collect(Collectors.toList());
+        int next = 0;
+        for(int i = 0; i<branches.size(); i++){
+            Track t = deformableMeshTracks.get(i);
+            List<Spot> track = branches.get(i);
+            for(Spot spot: track){
+                t.addMesh(spot.getFeature("FRAME").intValue(), meshes.get(next++));
+            }
+            if(t.size() != track.size()){
+                System.out.println("Overlap!");
             }
         }
         return deformableMeshTracks;
     }
+
+    /**
+     * Creates a spherical mesh with the position and radius of the spot.
+     *
+     * @param spot trackmate spot in real units.
+     * @param geometry for converting to normalized coordinates.
+     * @return a new mesh.
+     */
+    static DeformableMesh3D createSpotMesh(Spot spot, MeshImageStack geometry){
+        double [] xyz = ProxySpot.getNormalizedCoordinates( spot, geometry);
+        Sphere s = new Sphere(xyz, ProxySpot.getNormalizedRadius(spot, geometry) );
+        return RayCastMesh.rayCastMesh(s, s.getCenter(), 1);
+    }
+
     public static List<Track> importTrackMateFile(MeshImageStack mis, Path trackMateFile){
 
         List<Track> tracks = new ArrayList<>();
@@ -272,11 +317,8 @@ public class TrackMateAdapter {
                 for (Spot spot : si) {
                     Object id = trackModel.trackIDOf(spot);
                     if(id == null){
-                        double [] xyz = ProxySpot.getNormalizedCoordinates( spot, mis);
                         String name = "black-n" + nullSpots.size();
-                        double radius = spot.getFeature("RADIUS");
-                        Sphere s = new Sphere(xyz, ProxySpot.getNormalizedRadius(spot, mis) );
-                        DeformableMesh3D mesh = RayCastMesh.rayCastMesh(s, s.getCenter(), 1);
+                        DeformableMesh3D mesh = createSpotMesh(spot, mis);
                         Track t = new Track(name);
                         nullSpots.add(t);
                         t.addMesh(i, mesh);
@@ -144,6 +144,19 @@ public class FurrowTransformer{
         };
     }
 
+    /**
+     * Same as {@link #getVolumeCoordinates(double[])} but writes the result into an existing array.
+     *
+     * @param xy position in the plane.
+     * @param out destination, the three coordinates are written starting at offset.
+     * @param offset starting index in out.
+     */
+    public void getVolumeCoordinates(double[] xy, double[] out, int offset){
+        out[offset] = (xy[0]*xn[0]+xy[1]*yn[0])*invScale + vOffset[0];
+        out[offset + 1] = (xy[0]*xn[1]+xy[1]*yn[1])*invScale + vOffset[1];
+        out[offset + 2] = (xy[0]*xn[2]+xy[1]*yn[2])*invScale + vOffset[2];
+    }
+
 
 
     public int getXCounts(){
@@ -34,6 +34,7 @@ import deformablemesh.geometry.interceptable.InterceptingMesh3D;
 import deformablemesh.io.MeshReader;
 import deformablemesh.util.Vector3DOps;
 import deformablemesh.util.actions.UndoableActions;
+import deformablemesh.voxels.MeshOverlapCalculator;
 import ij.ImagePlus;
 import ij.ImageStack;
 import ij.process.ColorProcessor;
@@ -54,6 +55,7 @@ public class FrameToFrameDisplacement {
 
 
     UndoableActions perform;
+    MeshOverlapCalculator overlaps;
     /**
      * Creates a frame to frame displacement with the starting frame provided.
      * @param frame starting frame
@@ -329,15 +331,31 @@ public class FrameToFrameDisplacement {
             ).collect(Collectors.toList());
 
             dups.forEach(m->m.translate(delta));
-            maps = jaccardIndex(m1, dups);
+            maps = overlapMappings(m1, dups);
         } else{
-            maps = jaccardIndex(m1, m2);
+            maps = overlapMappings(m1, m2);
         }
 
 
         return maps;
     }
 
+    private List<Mapping> overlapMappings(List<DeformableMesh3D> one, List<DeformableMesh3D> two){
+        if(overlaps == null){
+            return jaccardIndex(one, two);
+        }
+        return bestMappings(overlaps.jaccardIndexMatrix(one, two));
+    }
+
+    /**
+     * Links meshes by their voxelized overlap, instead of the overlap of their bounding boxes.
+     *
+     * @param overlaps calculator used for the jaccard index, null to use bounding boxes.
+     */
+    public void setOverlapCalculator(MeshOverlapCalculator overlaps){
+        this.overlaps = overlaps;
+    }
+
     public static void main(String[] args) throws IOException {
         List<Track> meshes;
         String filename;
@@ -426,49 +444,30 @@ public class FrameToFrameDisplacement {
     }
 
 
+    /**
+     * Calculates the jaccard index between each pair of meshes using a 1/128 normalized voxel size. Only pairs with
+     * intersecting bounding boxes are voxelized.
+     *
+     * @see MeshOverlapCalculator
+     * @param one meshes for the rows.
+     * @param two meshes for the columns.
+     * @return one.size() x two.size() matrix of jaccard indexes.
+     */
     public static double[][] jaccardIndexMatrix(List<DeformableMesh3D> one, List<DeformableMesh3D> two){
-        if(two.size() == 0){
-            return new double[one.size()][0];
-        }
-        ImagePlus mos1 = generateMosaicImage(one);
-        ImagePlus mos2 = generateMosaicImage(two);
-
-
-        ImageStack stackA = mos1.getStack();
-        ImageStack stackB = mos2.getStack();
-
-        int[] sizes = new int[one.size() + two.size()];
-        int[][] intersections = new int[one.size()][two.size()];
-        int nA = one.size();
-        for(int i = 1; i<= stackA.size(); i++){
-            int[] pA = (int[])stackA.getPixels(i);
-            int[] pB = (int[])stackB.getPixels(i);
-            for(int j = 0; j<pA.length; j++){
-                int xA = pA[j]&0xffffff;
+        return new MeshOverlapCalculator(1.0/128).jaccardIndexMatrix(one, two);
+    }
 
-                int xB = pB[j]&0xffffff;
-                if(xA>0){
-                    sizes[xA-1] += 1;
-                }
-                if(xB > 0){
-                    sizes[nA + xB - 1] += 1;
-                }
-                if(xA > 0 && xB > 0){
-                    intersections[xA - 1][xB - 1] += 1;
-                }
-            }
-        }
-        double[][] ji = new double[intersections.length][intersections[0].length];
-        for(int a = 0; a<one.size(); a++){
-            for(int b = 0; b<two.size(); b++){
-                int intersection = intersections[a][b];
-                int union = sizes[a] + sizes[nA + b] - intersection;
-                if(union > 0) {
-                    ji[a][b] = intersection * 1.0 / union;
-                }
-            }
-        }
-        return ji;
+    /**
+     * Calculates the jaccard index between each pair of meshes, with a voxel size from the image calibration.
+     *
+     * @see MeshOverlapCalculator
+     * @param one meshes for the rows.
+     * @param two meshes for the columns.
+     * @param stack image the meshes were segmented from.
+     * @return one.size() x two.size() matrix of jaccard indexes.
+     */
+    public static double[][] jaccardIndexMatrix(List<DeformableMesh3D> one, List<DeformableMesh3D> two, MeshImageStack stack){
+        return new MeshOverlapCalculator(stack).jaccardIndexMatrix(one, two);
     }
 
     public static double[][] boundingBoxJaccardIndexMatrix(List<DeformableMesh3D> one, List<DeformableMesh3D> two){
@@ -502,8 +501,16 @@ public class FrameToFrameDisplacement {
      * @return a list of mappings the same length as one
      */
     public static List<Mapping> jaccardIndex(List<DeformableMesh3D> one, List<DeformableMesh3D> two){
+        return bestMappings(boundingBoxJaccardIndexMatrix(one, two));
+    }
 
-        double[][] ji = boundingBoxJaccardIndexMatrix(one, two);
+    /**
+     * Creates a mapping for each row to the column with the largest value.
+     *
+     * @param ji jaccard index matrix.
+     * @return a list of mappings, one for each row.
+     */
+    static List<Mapping> bestMappings(double[][] ji){
         List<Mapping> mappings = new ArrayList<>();
 
         for(int i = 0; i<ji.length; i++){
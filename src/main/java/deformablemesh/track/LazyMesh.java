@@ -0,0 +1,149 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.track;
+
+import deformablemesh.geometry.DeformableMesh3D;
+
+import java.lang.ref.SoftReference;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A mesh that is only created when requested. Once created the mesh is held by a soft reference, and the
+ * most recently used meshes are held strongly, so meshes that are in use keep their identity and the rest
+ * can be collected when memory is needed.
+ *
+ * After the first build the arrays of the mesh are kept, so changes to the node positions are not lost
+ * when the mesh is collected. Changes that replace the arrays, such as remeshing, should replace the
+ * mesh in the track.
+ */
+public final class LazyMesh {
+    static int cacheSize = 64;
+    static final Map<LazyMesh, DeformableMesh3D> recent = new LinkedHashMap<LazyMesh, DeformableMesh3D>(16, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<LazyMesh, DeformableMesh3D> eldest){
+            return size() > cacheSize;
+        }
+    };
+
+    private MeshSource source;
+    private double[] positions;
+    private int[] connections;
+    private int[] triangles;
+    private SoftReference<DeformableMesh3D> reference;
+
+    public LazyMesh(MeshSource source){
+        this.source = source;
+    }
+
+    /**
+     * Sets the number of recently used meshes that are held strongly, for all lazy meshes. Older meshes are
+     * only softly reachable.
+     *
+     * @param size number of meshes.
+     */
+    public static void setCacheSize(int size){
+        synchronized (recent){
+            cacheSize = size;
+            Iterator<LazyMesh> eldest = recent.keySet().iterator();
+            while(recent.size() > size && eldest.hasNext()){
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    public static int getCacheSize(){
+        return cacheSize;
+    }
+
+    /**
+     * Gets the mesh, creating it if it has not been created or it has been collected.
+     *
+     * @param created called with the mesh when a new mesh is created, before it is returned.
+     * @return the mesh.
+     */
+    public synchronized DeformableMesh3D get(Consumer<DeformableMesh3D> created){
+        DeformableMesh3D mesh = peek();
+        if(mesh == null){
+            if(source != null){
+                mesh = source.build();
+                if(!source.isBacking()){
+                    positions = mesh.positions;
+                    connections = mesh.connection_index;
+                    triangles = mesh.triangle_index;
+                    source = null;
+                }
+            } else{
+                mesh = DeformableMesh3D.loadMesh(positions, connections, triangles);
+            }
+            reference = new SoftReference<>(mesh);
+            created.accept(mesh);
+        }
+        synchronized (recent){
+            recent.put(this, mesh);
+        }
+        return mesh;
+    }
+
+    /**
+     * @return the mesh if it currently exists, otherwise null.
+     */
+    public synchronized DeformableMesh3D peek(){
+        return reference == null ? null : reference.get();
+    }
+
+    /**
+     * Copies the arrays of the mesh when the source reads the file, so the file is no longer used.
+     *
+     * @param file that will be replaced.
+     */
+    synchronized void detach(Path file){
+        if(source == null || !source.reads(file)){
+            return;
+        }
+        DeformableMesh3D mesh = peek();
+        if(mesh == null){
+            mesh = source.build();
+        }
+        positions = mesh.positions;
+        connections = mesh.connection_index;
+        triangles = mesh.triangle_index;
+        source = null;
+    }
+
+    /**
+     * Removes the mesh from the recently used meshes, if it was there.
+     */
+    void release(){
+        synchronized (recent){
+            recent.remove(this);
+        }
+    }
+}
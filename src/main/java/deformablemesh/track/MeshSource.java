@@ -0,0 +1,63 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.track;
+
+import deformablemesh.geometry.DeformableMesh3D;
+
+import java.nio.file.Path;
+
+/**
+ * Creates a mesh when it is needed. Used by {@link Track} to keep frames that have not been viewed as
+ * arrays, or as bytes in a file, instead of a full set of nodes, connections and triangles.
+ */
+public interface MeshSource {
+    /**
+     * Creates the mesh, each call creates a new mesh.
+     *
+     * @return a new mesh.
+     */
+    DeformableMesh3D build();
+
+    /**
+     * If the meshes that are built share the arrays of this source, then changes to the node positions
+     * are kept after the mesh has been released.
+     *
+     * @return true if built meshes use the backing arrays of this source.
+     */
+    default boolean isBacking(){
+        return false;
+    }
+
+    /**
+     * For checking if a file can be replaced while this source is in use.
+     *
+     * @param file
+     * @return true if the mesh is read from the file when it is built.
+     */
+    default boolean reads(Path file){
+        return false;
+    }
+}
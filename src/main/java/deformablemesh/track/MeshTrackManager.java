@@ -64,7 +64,7 @@ public class MeshTrackManager implements StateListener{
     List<Track> tracks = new ArrayList<>();
     MeshListModel model;
     MeshSelectionModel selectionModel = new MeshSelectionModel();
-    Map<DeformableMesh3D, JLabel> labels = new HashMap<>();
+    Map<DeformableMesh3D, JLabel> labels = new WeakHashMap<>();
     JLabel nullLabel = getNullLabel();
     long lastUpdated = -1;
     static final int w = 32;
@@ -176,7 +176,7 @@ public class MeshTrackManager implements StateListener{
         public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
 
             if(value instanceof DeformableMesh3D){
-                JLabel label = labels.get(value);
+                JLabel label = labels.computeIfAbsent((DeformableMesh3D)value, MeshTrackManager.this::createLabel);
                 if(isSelected){
                     label.setOpaque(true);
                     label.setBackground(Color.BLACK);
@@ -645,8 +645,6 @@ public class MeshTrackManager implements StateListener{
         List<Track> newTracks = new ArrayList<>();
 
 
-
-        Map<DeformableMesh3D, JLabel> newLabels = new HashMap<>();
         int rows = 0;
         Set<String> names = new HashSet<>();
         for(Track track: tracks){
@@ -664,19 +662,12 @@ public class MeshTrackManager implements StateListener{
             if(track.isSelected()){
                 replacement.setSelected(true);
             }
-            Set<Integer> ints = track.getTrack().keySet();
-            for(Integer i: ints){
-
-                DeformableMesh3D mesh = track.getMesh(i);
-                JLabel label = createLabel(mesh);
-                newLabels.put(mesh, label);
-
-                if(i>rows){
-                    rows = i;
-                }
-                //this sets the show surface property of the mesh.
-                //since this mesh is in two tracks, it can be inconsistent.
-                replacement.addMesh(i, mesh);
+            //this sets the show surface property of the mesh.
+            //since this mesh is in two tracks, it can be inconsistent.
+            //meshes that have not been created are shared and their labels are created when they are shown.
+            replacement.copyFrames(track);
+            if(!replacement.isEmpty() && replacement.getLastFrame()>rows){
+                rows = replacement.getLastFrame();
             }
             newTracks.add(replacement);
         }
@@ -691,7 +682,6 @@ public class MeshTrackManager implements StateListener{
             this.tracks.clear();
             this.tracks.addAll(newTracks);
             labels.clear();
-            labels.putAll(newLabels);
             shapeTableII();
         });
 
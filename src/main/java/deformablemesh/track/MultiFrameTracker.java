@@ -0,0 +1,405 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.track;
+
+import deformablemesh.SegmentationModel;
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.util.actions.UndoableActions;
+import deformablemesh.voxels.MeshOverlapCalculator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Links the meshes of all frames in a range at once. Candidate links are found between each frame and the
+ * following frames, up to the maximum gap, using the overlap of the meshes. Every mesh can be linked to one
+ * following mesh, can divide into a second mesh in the next frame, or can end its track. Every mesh can also
+ * start a new track. The cheapest combination of links, for all frames together, is found by solving a sparse
+ * assignment problem.
+ *
+ * Link costs are 1 - jaccard index, plus the gap penalty for each skipped frame. A division costs the fraction
+ * of the new mesh that is not covered by the dividing mesh, plus the division penalty.
+ */
+public class MultiFrameTracker {
+    final static double COST_SCALE = 1000;
+
+    final MeshOverlapCalculator overlaps;
+    int maxGap = 2;
+    double minimumOverlap = 0.05;
+    double gapPenalty = 0.25;
+    double divisionPenalty = 0.2;
+    double initiateCost = 0.5;
+    double terminateCost = 0.5;
+
+    //results of the last call to link
+    List<Track> tracks;
+    int first, last;
+    List<Map<Integer, DeformableMesh3D>> chains;
+    List<Integer> chainTracks;
+    int divisions;
+
+    /**
+     * A candidate link from mesh a to mesh b.
+     */
+    static class Candidate{
+        final int a, b;
+        final double cost;
+        final double divisionCost;
+        Candidate(int a, int b, double cost, double divisionCost){
+            this.a = a;
+            this.b = b;
+            this.cost = cost;
+            this.divisionCost = divisionCost;
+        }
+    }
+
+    /**
+     * @param overlaps used to find the overlap of meshes in different frames.
+     */
+    public MultiFrameTracker(MeshOverlapCalculator overlaps){
+        this.overlaps = overlaps;
+    }
+
+    /**
+     * @param gap largest number of frames a link can cover, 1 links consecutive frames only.
+     */
+    public void setMaxGap(int gap){
+        maxGap = gap;
+    }
+
+    /**
+     * @param ji meshes with a smaller jaccard index are not considered for linking.
+     */
+    public void setMinimumOverlap(double ji){
+        minimumOverlap = ji;
+    }
+
+    public void setGapPenalty(double penalty){
+        gapPenalty = penalty;
+    }
+
+    public void setDivisionPenalty(double penalty){
+        divisionPenalty = penalty;
+    }
+
+    /**
+     * Costs for starting and ending a track, a link is only made when it is cheaper than ending one track and
+     * starting another.
+     *
+     * @param initiate cost of starting a track.
+     * @param terminate cost of ending a track.
+     */
+    public void setTrackCosts(double initiate, double terminate){
+        initiateCost = initiate;
+        terminateCost = terminate;
+    }
+
+    /**
+     * Finds the links between all of the meshes from the first to the last frame. The tracks are not modified,
+     * use {@link #createAction(SegmentationModel)} to apply the result.
+     *
+     * @param tracks source of the meshes.
+     * @param first first frame.
+     * @param last last frame, inclusive.
+     */
+    public void link(List<Track> tracks, int first, int last){
+        this.tracks = new ArrayList<>(tracks);
+        this.first = first;
+        this.last = last;
+
+        List<DeformableMesh3D> meshes = new ArrayList<>();
+        List<Integer> frames = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        //index of the first mesh in each frame, meshes are ordered by frame then track.
+        int nFrames = last - first + 1;
+        int[] frameOffsets = new int[nFrames + 1];
+        for(int f = first; f<=last; f++){
+            for(int t = 0; t<this.tracks.size(); t++){
+                Track track = this.tracks.get(t);
+                if(track.containsKey(f)){
+                    meshes.add(track.getMesh(f));
+                    frames.add(f);
+                    owners.add(t);
+                }
+            }
+            frameOffsets[f - first + 1] = meshes.size();
+        }
+        int n = meshes.size();
+        double[] volumes = meshes.stream().parallel().mapToDouble(DeformableMesh3D::calculateVolume).toArray();
+
+        List<int[]> framePairs = new ArrayList<>();
+        for(int i = 0; i<nFrames; i++){
+            for(int g = 1; g<=maxGap && i + g < nFrames; g++){
+                framePairs.add(new int[]{i, g});
+            }
+        }
+        List<List<Candidate>> found = framePairs.stream().parallel().map(pair->{
+            int i = pair[0];
+            int g = pair[1];
+            List<DeformableMesh3D> from = meshes.subList(frameOffsets[i], frameOffsets[i + 1]);
+            List<DeformableMesh3D> to = meshes.subList(frameOffsets[i + g], frameOffsets[i + g + 1]);
+            double[][] ji = overlaps.jaccardIndexMatrix(from, to);
+            List<Candidate> candidates = new ArrayList<>();
+            for(int a = 0; a<from.size(); a++){
+                for(int b = 0; b<to.size(); b++){
+                    double j = ji[a][b];
+                    if(j < minimumOverlap){
+                        continue;
+                    }
+                    int ia = frameOffsets[i] + a;
+                    int ib = frameOffsets[i + g] + b;
+                    double cost = 1 - j + gapPenalty*(g - 1);
+                    double divisionCost = -1;
+                    if(g == 1 && volumes[ib] > 0){
+                        double intersection = j*(volumes[ia] + volumes[ib])/(1 + j);
+                        double covered = Math.min(intersection/volumes[ib], 1);
+                        divisionCost = 1 - covered + divisionPenalty;
+                    }
+                    candidates.add(new Candidate(ia, ib, cost, divisionCost));
+                }
+            }
+            return candidates;
+        }).collect(Collectors.toList());
+        List<Candidate> candidates = new ArrayList<>();
+        found.forEach(candidates::addAll);
+
+        int[] successors = new int[n];
+        int[] daughters = new int[n];
+        solve(n, candidates, successors, daughters);
+
+        //a mesh with a predecessor continues a chain, division daughters start new chains.
+        boolean[] continued = new boolean[n];
+        for(int i = 0; i<n; i++){
+            if(successors[i] >= 0){
+                continued[successors[i]] = true;
+            }
+        }
+        chains = new ArrayList<>();
+        chainTracks = new ArrayList<>();
+        divisions = 0;
+        for(int i = 0; i<n; i++){
+            if(daughters[i] >= 0){
+                divisions++;
+            }
+            if(continued[i]){
+                continue;
+            }
+            Map<Integer, DeformableMesh3D> chain = new TreeMap<>();
+            int current = i;
+            while(current >= 0){
+                chain.put(frames.get(current), meshes.get(current));
+                current = successors[current];
+            }
+            chains.add(chain);
+            chainTracks.add(owners.get(i));
+        }
+    }
+
+    /**
+     * Builds the assignment problem and finds the best links. Rows are the meshes, as the source of a link,
+     * followed by a division row for each mesh that can divide, then a row for each mesh starting a track.
+     * Columns are the meshes, as the destination of a link, followed by a column for each source row ending.
+     *
+     * @param n number of meshes.
+     * @param candidates possible links.
+     * @param successors filled with the index of the mesh each mesh links to, or -1.
+     * @param daughters filled with the index of the mesh each mesh divides into, or -1. Only meshes with a
+     *                  successor divide.
+     */
+    void solve(int n, List<Candidate> candidates, int[] successors, int[] daughters){
+        int[] divisionRows = new int[n];
+        int sources = n;
+        for(int i = 0; i<n; i++){
+            divisionRows[i] = -1;
+        }
+        for(Candidate c: candidates){
+            if(c.divisionCost >= 0 && divisionRows[c.a] < 0){
+                divisionRows[c.a] = sources++;
+            }
+        }
+        int size = sources + n;
+
+        List<List<long[]>> rows = new ArrayList<>(size);
+        for(int i = 0; i<size; i++){
+            rows.add(new ArrayList<>());
+        }
+        long terminate = Math.round(terminateCost*COST_SCALE);
+        long initiate = Math.round(initiateCost*COST_SCALE);
+        for(int i = 0; i<n; i++){
+            rows.get(i).add(new long[]{n + i, terminate});
+            rows.get(sources + i).add(new long[]{i, initiate});
+        }
+        for(int i = 0; i<n; i++){
+            if(divisionRows[i] >= 0){
+                rows.get(divisionRows[i]).add(new long[]{n + divisionRows[i], 0});
+            }
+        }
+        for(Candidate c: candidates){
+            rows.get(c.a).add(new long[]{c.b, Math.round(c.cost*COST_SCALE)});
+            //when b isn't started, the start row can take the unused end column of a.
+            rows.get(sources + c.b).add(new long[]{n + c.a, 0});
+            if(c.divisionCost >= 0){
+                int row = divisionRows[c.a];
+                rows.get(row).add(new long[]{c.b, Math.round(c.divisionCost*COST_SCALE)});
+                rows.get(sources + c.b).add(new long[]{n + row, 0});
+            }
+        }
+        int[] offsets = new int[size + 1];
+        for(int i = 0; i<size; i++){
+            offsets[i + 1] = offsets[i] + rows.get(i).size();
+        }
+        int[] columns = new int[offsets[size]];
+        long[] costs = new long[offsets[size]];
+        for(int i = 0; i<size; i++){
+            int k = offsets[i];
+            for(long[] entry: rows.get(i)){
+                columns[k] = (int)entry[0];
+                costs[k] = entry[1];
+                k++;
+            }
+        }
+
+        int[] assigned = new SparseAssignment(size, offsets, columns, costs).solve();
+        for(int i = 0; i<n; i++){
+            successors[i] = assigned[i] < n ? assigned[i] : -1;
+            //the division row is solved independently of the mesh row, a mesh that ends cannot divide.
+            boolean divides = successors[i] >= 0 && divisionRows[i] >= 0 && assigned[divisionRows[i]] < n;
+            daughters[i] = divides ? assigned[divisionRows[i]] : -1;
+        }
+    }
+
+    /**
+     * Number of tracks found by the last call to link.
+     */
+    public int getTrackCount(){
+        return chains.size();
+    }
+
+    /**
+     * Number of divisions found by the last call to link.
+     */
+    public int getDivisionCount(){
+        return divisions;
+    }
+
+    /**
+     * Creates an action that replaces the tracks with the result of {@link #link(List, int, int)}. Each new track
+     * keeps the track of its first mesh when possible, and meshes outside of the frame range stay with their
+     * original track. Performing the action sets the tracks of the model, undo restores the original tracks.
+     *
+     * @param model model that the tracks belong to, used for creating new tracks.
+     * @return an action that has not been performed.
+     */
+    public UndoableActions createAction(SegmentationModel model){
+        List<Track> originalTracks = model.getAllTracks();
+        Map<Track, Map<Integer, DeformableMesh3D>> future = new HashMap<>();
+        for(Track track: tracks){
+            Map<Integer, DeformableMesh3D> outside = new TreeMap<>();
+            for(Integer f: track.getFrames()){
+                if(f < first || f > last){
+                    outside.put(f, track.getMesh(f));
+                }
+            }
+            future.put(track, outside);
+        }
+        boolean[] claimed = new boolean[tracks.size()];
+        List<Map<Integer, DeformableMesh3D>> unclaimed = new ArrayList<>();
+        for(int i = 0; i<chains.size(); i++){
+            int t = chainTracks.get(i);
+            if(claimed[t]){
+                unclaimed.add(chains.get(i));
+            } else{
+                claimed[t] = true;
+                future.get(tracks.get(t)).putAll(chains.get(i));
+            }
+        }
+        List<Track> fresh = unclaimed.size() > 0 ? model.startEmptyTracks(unclaimed.size()) : new ArrayList<>();
+        for(int i = 0; i<fresh.size(); i++){
+            future.put(fresh.get(i), unclaimed.get(i));
+        }
+
+        List<Track> changing = new ArrayList<>();
+        List<Map<Integer, DeformableMesh3D>> history = new ArrayList<>();
+        List<Track> updated = new ArrayList<>();
+        for(Track track: originalTracks){
+            Map<Integer, DeformableMesh3D> data = future.get(track);
+            if(data == null){
+                updated.add(track);
+                continue;
+            }
+            if(data.size() > 0){
+                updated.add(track);
+            }
+            Map<Integer, DeformableMesh3D> old = track.getTrack();
+            if(!old.equals(data)){
+                changing.add(track);
+                history.add(old);
+            }
+        }
+        for(Track track: fresh){
+            changing.add(track);
+            history.add(new TreeMap<>());
+            updated.add(track);
+        }
+        List<Map<Integer, DeformableMesh3D>> changes = changing.stream().map(future::get).collect(Collectors.toList());
+        int nTracks = chains.size();
+        int nDivisions = divisions;
+        int f0 = first;
+        int f1 = last;
+
+        return new UndoableActions() {
+            @Override
+            public void perform() {
+                for(int i = 0; i<changing.size(); i++){
+                    changing.get(i).setData(changes.get(i));
+                }
+                model.setMeshes(updated);
+            }
+
+            @Override
+            public void undo() {
+                for(int i = 0; i<changing.size(); i++){
+                    changing.get(i).setData(history.get(i));
+                }
+                model.setMeshes(originalTracks);
+            }
+
+            @Override
+            public void redo() {
+                perform();
+            }
+
+            @Override
+            public String getName(){
+                return "linked frames " + f0 + " to " + f1 + ", " + nTracks + " tracks, " + nDivisions + " divisions";
+            }
+        };
+    }
+}
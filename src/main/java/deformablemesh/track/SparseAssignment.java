@@ -0,0 +1,140 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.track;
+
+import java.util.Arrays;
+
+/**
+ * Solves a square, sparse, minimum cost assignment problem with the auction algorithm. The rows bid for columns
+ * in a fixed order, so the same problem always gives the same assignment. Costs are integers and are scaled by
+ * n + 1, which makes the final epsilon of 1 an exact solution. Epsilon scaling keeps the number of bids low.
+ *
+ * The problem is stored in a compressed row layout: the columns available to row i are
+ * columns[offsets[i]] to columns[offsets[i+1] - 1], with the corresponding costs.
+ */
+class SparseAssignment {
+    final static int EPSILON_FACTOR = 5;
+    final int n;
+    final int[] offsets;
+    final int[] columns;
+    final long[] benefits;
+    final long range;
+
+    /**
+     *
+     * @param n number of rows and columns.
+     * @param offsets n + 1 offsets into columns for each row.
+     * @param columns column for each entry.
+     * @param costs cost of each entry.
+     */
+    SparseAssignment(int n, int[] offsets, int[] columns, long[] costs){
+        this.n = n;
+        this.offsets = offsets;
+        this.columns = columns;
+        benefits = new long[costs.length];
+        long max = 0;
+        for(int i = 0; i<costs.length; i++){
+            benefits[i] = -costs[i]*(n + 1);
+            long a = Math.abs(benefits[i]);
+            if(a > max){
+                max = a;
+            }
+        }
+        range = 2*max + 1;
+    }
+
+    /**
+     * Finds the assignment with the lowest total cost. Every row needs to be assignable, for some assignment
+     * of all rows.
+     *
+     * @return the column assigned to each row.
+     */
+    int[] solve(){
+        long[] prices = new long[n];
+        int[] assigned = new int[n];
+        int[] owners = new int[n];
+        int[] queue = new int[n];
+
+        long epsilon = Math.max(1, range/EPSILON_FACTOR);
+        //prices stay bounded when there is a complete assignment.
+        long limit = 4*(n + 1L)*(range + epsilon);
+        while(true){
+            Arrays.fill(assigned, -1);
+            Arrays.fill(owners, -1);
+            for(int i = 0; i<n; i++){
+                queue[i] = i;
+            }
+            //circular queue of unassigned rows, it is full at the start of each round.
+            int head = 0;
+            int count = n;
+            while(count > 0){
+                int row = queue[head];
+                head = (head + 1)%n;
+                count--;
+
+                long best = Long.MIN_VALUE;
+                long second = Long.MIN_VALUE;
+                int bestColumn = -1;
+                for(int k = offsets[row]; k<offsets[row + 1]; k++){
+                    long value = benefits[k] - prices[columns[k]];
+                    if(value > best){
+                        second = best;
+                        best = value;
+                        bestColumn = columns[k];
+                    } else if(value > second){
+                        second = value;
+                    }
+                }
+                if(bestColumn < 0){
+                    throw new IllegalArgumentException("row " + row + " does not have any columns");
+                }
+                if(second == Long.MIN_VALUE){
+                    //only one choice, the bid is bounded by the range of benefits.
+                    second = best - range;
+                }
+                prices[bestColumn] += best - second + epsilon;
+                if(prices[bestColumn] > limit){
+                    throw new IllegalArgumentException("rows cannot all be assigned");
+                }
+
+                int previous = owners[bestColumn];
+                owners[bestColumn] = row;
+                assigned[row] = bestColumn;
+                if(previous >= 0){
+                    assigned[previous] = -1;
+                    queue[(head + count)%n] = previous;
+                    count++;
+                }
+            }
+            if(epsilon == 1){
+                break;
+            }
+            epsilon = Math.max(1, epsilon/EPSILON_FACTOR);
+        }
+        return assigned;
+    }
+
+}
@@ -29,18 +29,27 @@ import deformablemesh.geometry.DeformableMesh3D;
 import deformablemesh.util.ColorSuggestions;
 
 import java.awt.Color;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedSet;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * Created by msmith on 3/30/16.
+ *
+ * A track can also hold frames that are created when they are requested, see {@link #setLazyData(Map)}.
+ * Methods that return every mesh, such as {@link #getTrack()}, will create all of the meshes, use
+ * {@link #getFrames()} with {@link #getMesh(Integer)} to work through long tracks.
  */
 public class Track {
     String name;
     Color color;
     boolean showSurface = false;
     private Map<Integer, DeformableMesh3D> track = new TreeMap<>();
+    private Map<Integer, LazyMesh> lazy = new TreeMap<>();
     private boolean selected;
 
     public Track(List<Color> usedColors){
@@ -59,51 +68,89 @@ public class Track {
     }
 
     public void addMesh(Integer i, DeformableMesh3D mesh){
+        prepare(mesh);
+        removeLazy(i);
+        track.put(i, mesh);
+    }
+
+    /**
+     * Applies the properties of this track to a mesh that is being added.
+     */
+    private void prepare(DeformableMesh3D mesh){
         mesh.setColor(color);
         mesh.setShowSurface(showSurface);
-        track.put(i, mesh);
         mesh.setSelected(selected);
     }
 
+    private void removeLazy(Integer i){
+        LazyMesh removed = lazy.remove(i);
+        if(removed != null){
+            removed.release();
+        }
+    }
+
     public boolean containsKey(Integer i){
-        return track.containsKey(i);
+        return track.containsKey(i) || lazy.containsKey(i);
     }
 
     void removeMesh(int i, DeformableMesh3D mesh){
-        track.remove(i, mesh);
+        if(!track.remove(i, mesh)){
+            LazyMesh lm = lazy.get(i);
+            if(lm != null && lm.peek() == mesh){
+                removeLazy(i);
+            }
+        }
     }
 
     /**
-     * Legacy method that returns a duplicate map that represents the time vs. track.
+     * Legacy method that returns a duplicate map that represents the time vs. track. Frames that have not
+     * been created yet will be created.
+     *
      * @return TreeMap
      */
     public Map<Integer, DeformableMesh3D> getTrack(){
-        return new TreeMap<>(track);
+        Map<Integer, DeformableMesh3D> copy = new TreeMap<>(track);
+        for(Integer i: lazy.keySet()){
+            copy.put(i, getMesh(i));
+        }
+        return copy;
+    }
+
+    /**
+     * The frames that have a mesh, without creating any meshes.
+     *
+     * @return a sorted copy of the frames in this track.
+     */
+    public SortedSet<Integer> getFrames(){
+        SortedSet<Integer> frames = new TreeSet<>(track.keySet());
+        frames.addAll(lazy.keySet());
+        return frames;
     }
 
     public DeformableMesh3D getMesh(Integer i){
-        return track.get(i);
+        DeformableMesh3D mesh = track.get(i);
+        if(mesh == null){
+            LazyMesh lm = lazy.get(i);
+            if(lm != null){
+                mesh = lm.get(this::prepare);
+            }
+        }
+        return mesh;
     }
 
     public boolean isEmpty(){
-        return track.isEmpty();
+        return track.isEmpty() && lazy.isEmpty();
     }
 
     public void remove(DeformableMesh3D mesh) {
-        Integer found = -1;
-        for(Integer i: track.keySet()){
-            if(track.get(i)==mesh){
-                found = i;
-                break;
-            }
-        }
-        if(found.compareTo(0)>=0){
-            track.remove(found);
+        int found = getFrame(mesh);
+        if(found >= 0){
+            removeMesh(found, mesh);
         }
     }
     public Integer getFirstFrame(){
         Integer min = Integer.MAX_VALUE;
-        for(Integer i: track.keySet()){
+        for(Integer i: getFrames()){
             if(i<min){
                 min = i;
             }
@@ -113,7 +160,7 @@ public class Track {
 
     public Integer getLastFrame(){
         Integer max = -1;
-        for(Integer i: track.keySet()){
+        for(Integer i: getFrames()){
             if(i>max){
                 max = i;
             }
@@ -127,15 +174,37 @@ public class Track {
                 return i;
             };
         }
+        //a lazy mesh that is in use cannot have been collected.
+        for(Map.Entry<Integer, LazyMesh> entry: lazy.entrySet()){
+            if(entry.getValue().peek() == mesh){
+                return entry.getKey();
+            }
+        }
         return -1;
     }
 
     public int size(){
-        return track.size();
+        return track.size() + lazy.size();
     }
 
     public boolean containsMesh(DeformableMesh3D mesh) {
-        return track.values().contains(mesh);
+        return getFrame(mesh) >= 0;
+    }
+
+    /**
+     * Meshes that currently exist, the meshes in this track that have not been created are skipped.
+     *
+     * @return list of meshes.
+     */
+    private List<DeformableMesh3D> existingMeshes(){
+        List<DeformableMesh3D> meshes = new ArrayList<>(track.values());
+        for(LazyMesh lm: lazy.values()){
+            DeformableMesh3D mesh = lm.peek();
+            if(mesh != null){
+                meshes.add(mesh);
+            }
+        }
+        return meshes;
     }
 
 
@@ -153,6 +222,7 @@ public class Track {
      * @param data
      */
     public void setData(Map<Integer, DeformableMesh3D> data){
+        clearLazy();
         track = new TreeMap<>(data);
         for(DeformableMesh3D mesh: track.values()){
             mesh.setSelected(selected);
@@ -160,12 +230,65 @@ public class Track {
         }
     }
 
+    /**
+     * For use when reading data from a file, the meshes are created the first time they are requested.
+     * Replaces all of the current meshes.
+     *
+     * @param data sources for each frame.
+     */
+    public void setLazyData(Map<Integer, ? extends MeshSource> data){
+        clearLazy();
+        track = new TreeMap<>();
+        for(Map.Entry<Integer, ? extends MeshSource> entry: data.entrySet()){
+            lazy.put(entry.getKey(), new LazyMesh(entry.getValue()));
+        }
+    }
+
+    /**
+     * Reads the frames that have not been created from the file, so the file can be replaced without
+     * changing this track.
+     *
+     * @param file that will be replaced.
+     */
+    public void detach(Path file){
+        for(LazyMesh lm: lazy.values()){
+            lm.detach(file);
+        }
+    }
+
+    private void clearLazy(){
+        for(LazyMesh lm: lazy.values()){
+            lm.release();
+        }
+        lazy = new TreeMap<>();
+    }
+
+    /**
+     * Copies the meshes of the other track into this track. Frames that have not been created are shared,
+     * so either track will return the same mesh, and they are not created by copying.
+     *
+     * @param other track that will be copied.
+     */
+    void copyFrames(Track other){
+        for(Map.Entry<Integer, DeformableMesh3D> entry: other.track.entrySet()){
+            addMesh(entry.getKey(), entry.getValue());
+        }
+        for(Map.Entry<Integer, LazyMesh> entry: other.lazy.entrySet()){
+            track.remove(entry.getKey());
+            lazy.put(entry.getKey(), entry.getValue());
+            DeformableMesh3D mesh = entry.getValue().peek();
+            if(mesh != null){
+                prepare(mesh);
+            }
+        }
+    }
+
     public Color getColor() {
         return color;
     }
     public void setColor(Color c){
         if (!color.equals(c)) {
-            for(DeformableMesh3D mesh: track.values()){
+            for(DeformableMesh3D mesh: existingMeshes()){
                 mesh.setColor(c);
             }
         }
@@ -173,7 +296,7 @@ public class Track {
     }
 
     public void setSelected(boolean selected) {
-        for(DeformableMesh3D mesh: track.values()){
+        for(DeformableMesh3D mesh: existingMeshes()){
             mesh.setSelected(selected);
         }
 
@@ -182,7 +305,7 @@ public class Track {
 
     public void setShowSurface(boolean show){
         showSurface = show;
-        for(DeformableMesh3D mesh: track.values()){
+        for(DeformableMesh3D mesh: existingMeshes()){
             mesh.setShowSurface(show);
         }
     }
@@ -196,6 +319,9 @@ public class Track {
     }
 
     public void putAll(Map<Integer, DeformableMesh3D> newMeshes) {
+        for(Integer i: newMeshes.keySet()){
+            removeLazy(i);
+        }
         track.putAll(newMeshes);
     }
 }
@@ -149,7 +149,7 @@ public class IntensitySurfacePlot extends SurfacePlot{
         tracks.addAll(MeshReader.loadMeshes(new File(args[0])));
         ImagePlus plus = new ImagePlus(new File(args[1]).getAbsolutePath());
         for(Track track: tracks) {
-            for (Integer key : track.getTrack().keySet()) {
+            for (Integer key : track.getFrames()) {
                 new IntensitySurfacePlot(track.getMesh(key), plus).processAndShow(true);
             }
         }
@@ -25,8 +25,10 @@
  */
 package deformablemesh.util;
 
+import deformablemesh.DeformableMesh3DTools;
 import deformablemesh.geometry.Box3D;
 import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.Intersection;
 import deformablemesh.geometry.interceptable.InterceptingMesh3D;
 import deformablemesh.io.MeshReader;
 import deformablemesh.track.Track;
@@ -34,13 +36,22 @@ import lightgraph.Graph;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class MeshComparisons {
     static double ds = 1.0/128.0;
-    static double dv = ds*ds*ds;
 
+    /**
+     * Jaccard index of the two meshes. One ray is cast along x for each (y, z) row of the intersecting bounding
+     * box, on a ds grid, and the inside intervals of the two meshes are intersected exactly along the row.
+     *
+     * @param a first mesh
+     * @param b second mesh
+     * @return overlap volume over the union volume.
+     */
     static double getMeshOverlap(DeformableMesh3D a, DeformableMesh3D b){
         Box3D boxA = a.getBoundingBox();
         Box3D boxB = b.getBoundingBox();
@@ -51,31 +62,76 @@ public class MeshComparisons {
         if( w < ds || h < ds || d < ds){
             return 0;
         }
-        int xSteps = (int)(w/ds + 0.5);
         int ySteps = (int)(h/ds + 0.5);
         int zSteps = (int)(d/ds + 0.5);
-        double overlap = 0;
         double vA = a.calculateVolume();
         double vB = b.calculateVolume();
         InterceptingMesh3D imA = new InterceptingMesh3D(a);
         InterceptingMesh3D imB = new InterceptingMesh3D(b);
-        for(int i = 0; i<xSteps; i++){
-            for(int j = 0; j<ySteps; j++){
-                for(int k = 0; k<zSteps; k++){
-                    double[] pt = {
-                            intersection.low[0] + ds*(i + 0.5),
-                            intersection.low[1] + ds*(j + 0.5),
-                            intersection.low[2] + ds*(k + 0.5)
-                    };
-
-                    if(imA.contains(pt) && imB.contains(pt)){
-                        overlap += dv;
-                    }
+        double[] rows = new double[ySteps*zSteps];
+        IntStream.range(0, rows.length).parallel().forEach(row->{
+            double y = intersection.low[1] + ds*(row%ySteps + 0.5);
+            double z = intersection.low[2] + ds*(row/ySteps + 0.5);
+            rows[row] = intervalOverlap(insideIntervals(imA, y, z), insideIntervals(imB, y, z));
+        });
+        double overlap = 0;
+        for(double length: rows){
+            overlap += length*ds*ds;
+        }
+
+        return (overlap)/(vA + vB - overlap);
+    }
+
+    /**
+     * Finds the intervals along the x-axis, at the provided y and z, that are inside of the mesh.
+     *
+     * @return start and end x value of each interval, sorted.
+     */
+    static double[] insideIntervals(InterceptingMesh3D mesh, double y, double z){
+        List<Intersection> sections = mesh.getIntersections(new double[]{0, y, z}, Vector3DOps.xhat);
+        DeformableMesh3DTools.scanDirty(sections);
+        sections.sort((s0, s1)->Double.compare(s0.location[0], s1.location[0]));
+        double[] bounds = new double[sections.size()];
+        int n = 0;
+        int count = 0;
+        for(Intersection section: sections){
+            if(section.surfaceNormal[0] < 0){
+                //entering
+                count++;
+                if(count == 1){
+                    bounds[n++] = section.location[0];
+                }
+            } else{
+                count--;
+                if(count == 0){
+                    bounds[n++] = section.location[0];
                 }
             }
         }
+        //an unmatched entrance is dropped.
+        return Arrays.copyOf(bounds, n - n%2);
+    }
 
-        return (overlap)/(vA + vB - overlap);
+    /**
+     * Total length covered by both sets of intervals.
+     */
+    static double intervalOverlap(double[] a, double[] b){
+        double length = 0;
+        int i = 0;
+        int j = 0;
+        while(i < a.length && j < b.length){
+            double start = Math.max(a[i], b[j]);
+            double end = Math.min(a[i + 1], b[j + 1]);
+            if(end > start){
+                length += end - start;
+            }
+            if(a[i + 1] < b[j + 1]){
+                i += 2;
+            } else{
+                j += 2;
+            }
+        }
+        return length;
     }
 
     static double getBoundOverlap(DeformableMesh3D a, DeformableMesh3D b){
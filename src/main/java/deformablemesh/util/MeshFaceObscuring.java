@@ -139,7 +139,7 @@ public class MeshFaceObscuring {
      */
     static public List<double[]> analyzeTracks(Track target, List<Track> others, double cutoff){
         List<double[]> overlaps = new ArrayList<>();
-        for(Integer frame: target.getTrack().keySet()){
+        for(Integer frame: target.getFrames()){
             MeshFaceObscuring finder =  new MeshFaceObscuring();
             finder.cutoff = cutoff;
             //1 over lap  per track plus frame plus total area.
@@ -301,7 +301,7 @@ public class MeshFaceObscuring {
 
             TrackData currentData = new TrackData(track.getName(), track.getColor());
             List<Integer> frames = new ArrayList<>();
-            for(Integer frame: track.getTrack().keySet()){
+            for(Integer frame: track.getFrames()){
                 DeformableMesh3D mesh = track.getMesh(frame);
                 double volume = mesh.calculateVolume();
                 double area = DeformableMesh3DTools.calculateSurfaceArea(mesh);
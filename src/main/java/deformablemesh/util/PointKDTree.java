@@ -0,0 +1,198 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.util;
+
+import java.util.List;
+
+/**
+ * A static kd-tree of 3D points for nearest neighbor queries. Points can be removed after the tree is built, which is
+ * used for greedy matching where each point can only be matched once. The tree is stored implicitly, each node is the
+ * median of a range of the ordering and its children are the two halves of the range.
+ *
+ * Not thread safe, each thread should use its own tree.
+ */
+public class PointKDTree {
+    final double[] points;
+    //original index of the point at each tree position.
+    final int[] order;
+    //tree position of each original index.
+    final int[] position;
+    //number of points remaining in the subtree rooted at each tree position.
+    final int[] alive;
+    final boolean[] removed;
+
+    double best;
+    int bestIndex;
+
+    /**
+     *
+     * @param points {x, y, z} points, the index in the list is used to refer to the point.
+     */
+    public PointKDTree(List<double[]> points){
+        int n = points.size();
+        this.points = new double[3*n];
+        for(int i = 0; i<n; i++){
+            double[] p = points.get(i);
+            this.points[3*i] = p[0];
+            this.points[3*i + 1] = p[1];
+            this.points[3*i + 2] = p[2];
+        }
+        order = new int[n];
+        for(int i = 0; i<n; i++){
+            order[i] = i;
+        }
+        position = new int[n];
+        alive = new int[n];
+        removed = new boolean[n];
+        build(0, n, 0);
+    }
+
+    private void build(int lo, int hi, int depth){
+        if(lo >= hi){
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, depth%3);
+        alive[mid] = hi - lo;
+        position[order[mid]] = mid;
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+
+    /**
+     * Partially sorts order[lo..hi] so that the k'th position has the k'th smallest value along the axis.
+     */
+    private void select(int lo, int hi, int k, int axis){
+        while(hi > lo){
+            double pivot = points[3*order[(lo + hi) >>> 1] + axis];
+            int i = lo;
+            int j = hi;
+            while(i <= j){
+                while(points[3*order[i] + axis] < pivot) i++;
+                while(points[3*order[j] + axis] > pivot) j--;
+                if(i <= j){
+                    int swap = order[i];
+                    order[i] = order[j];
+                    order[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if(k <= j){
+                hi = j;
+            } else if(k >= i){
+                lo = i;
+            } else{
+                return;
+            }
+        }
+    }
+
+    /**
+     * Number of points that haven't been removed.
+     *
+     * @return
+     */
+    public int size(){
+        return order.length == 0 ? 0 : alive[order.length >>> 1];
+    }
+
+    /**
+     * Finds the closest point that hasn't been removed. When points are the same distance, the lowest index is
+     * returned.
+     *
+     * @param p {x, y, z} query point.
+     * @param maxDistance only points closer than this distance are considered.
+     * @return index of the closest point, or -1 if there isn't a point closer than maxDistance.
+     */
+    public int nearest(double[] p, double maxDistance){
+        best = maxDistance*maxDistance;
+        bestIndex = -1;
+        search(0, order.length, 0, p[0], p[1], p[2]);
+        return bestIndex;
+    }
+
+    private void search(int lo, int hi, int depth, double x, double y, double z){
+        if(lo >= hi){
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        if(alive[mid] == 0){
+            return;
+        }
+        int index = order[mid];
+        int o = 3*index;
+        if(!removed[index]){
+            double dx = points[o] - x;
+            double dy = points[o + 1] - y;
+            double dz = points[o + 2] - z;
+            double d = dx*dx + dy*dy + dz*dz;
+            if(d < best || (d == best && bestIndex >= 0 && index < bestIndex)){
+                best = d;
+                bestIndex = index;
+            }
+        }
+        int axis = depth%3;
+        double delta = (axis == 0 ? x : axis == 1 ? y : z) - points[o + axis];
+        if(delta < 0){
+            search(lo, mid, depth + 1, x, y, z);
+            if(delta*delta <= best){
+                search(mid + 1, hi, depth + 1, x, y, z);
+            }
+        } else{
+            search(mid + 1, hi, depth + 1, x, y, z);
+            if(delta*delta <= best){
+                search(lo, mid, depth + 1, x, y, z);
+            }
+        }
+    }
+
+    /**
+     * Removes the point so it will not be returned by subsequent searches.
+     *
+     * @param index index of the point in the original list.
+     */
+    public void remove(int index){
+        if(removed[index]){
+            return;
+        }
+        removed[index] = true;
+        int target = position[index];
+        int lo = 0;
+        int hi = order.length;
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            alive[mid]--;
+            if(target == mid){
+                return;
+            } else if(target < mid){
+                hi = mid;
+            } else{
+                lo = mid + 1;
+            }
+        }
+    }
+}
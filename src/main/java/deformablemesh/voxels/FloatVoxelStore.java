@@ -0,0 +1,123 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.voxels;
+
+import ij.process.ImageProcessor;
+
+/**
+ * Voxels stored in a single float array ordered x, then y, then z.
+ */
+public class FloatVoxelStore implements VoxelStore{
+    final int width, height, depth;
+    final float[] values;
+    double min, max;
+
+    public FloatVoxelStore(int width, int height, int depth){
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        values = new float[width*height*depth];
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public double getValue(int x, int y, int z) {
+        return values[(z*height + y)*width + x];
+    }
+
+    /**
+     * The backing array, ordered x, then y, then z.
+     */
+    public float[] getValues(){
+        return values;
+    }
+
+    @Override
+    public void load(ImageProcessor[] slices) {
+        int n = width*height;
+        for(int i = 0; i<slices.length; i++){
+            VoxelStore.copySlice(slices[i], values, i*n);
+        }
+        updateRange();
+    }
+
+    @Override
+    public void copyFrom(VoxelStore other) {
+        if(other instanceof FloatVoxelStore){
+            System.arraycopy(((FloatVoxelStore)other).values, 0, values, 0, values.length);
+        } else{
+            int dex = 0;
+            for(int z = 0; z<depth; z++){
+                for(int y = 0; y<height; y++){
+                    for(int x = 0; x<width; x++){
+                        values[dex++] = (float)other.getValue(x, y, z);
+                    }
+                }
+            }
+        }
+        updateRange();
+    }
+
+    void updateRange(){
+        float lo = Float.MAX_VALUE;
+        float hi = -Float.MAX_VALUE;
+        for(float v: values){
+            if(v<lo) lo = v;
+            if(v>hi) hi = v;
+        }
+        min = lo;
+        max = hi;
+    }
+
+    @Override
+    public double getMinValue() {
+        return min;
+    }
+
+    @Override
+    public double getMaxValue() {
+        return max;
+    }
+
+    @Override
+    public long getMemorySize() {
+        return 4L*values.length;
+    }
+}
@@ -0,0 +1,226 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.voxels;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Keeps recently used frames loaded, up to a memory budget, and loads frames in the background before they are
+ * requested. Stores returned by this cache are shared and should not be modified.
+ */
+public class FrameCache {
+    /**
+     * Creates a loaded store for the frame and channel.
+     */
+    public interface Loader{
+        VoxelStore load(int frame, int channel);
+    }
+
+    private static final ExecutorService prefetcher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "frame-prefetch");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Loader loader;
+    private final LinkedHashMap<Long, VoxelStore> frames = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, Future<VoxelStore>> pending = new HashMap<>();
+    private long budget;
+    private long frameSize;
+    private long used;
+    private int generation;
+    private int hits, misses;
+
+    /**
+     * @param loader creates stores for frames that are not in the cache.
+     * @param budget memory budget in bytes, 0 disables caching.
+     */
+    public FrameCache(Loader loader, long budget){
+        this.loader = loader;
+        this.budget = budget;
+    }
+
+    static long key(int frame, int channel){
+        return (((long)frame)<<32) | (channel & 0xffffffffL);
+    }
+
+    /**
+     * Gets the store for the frame and channel. If it is being prefetched this will wait for it, otherwise it is
+     * loaded on the calling thread.
+     *
+     * @param frame 0 based frame.
+     * @param channel 0 based channel.
+     * @return a loaded store.
+     */
+    public VoxelStore get(int frame, int channel){
+        long key = key(frame, channel);
+        Future<VoxelStore> future;
+        int gen;
+        synchronized(this){
+            VoxelStore store = frames.get(key);
+            if(store != null){
+                hits++;
+                return store;
+            }
+            misses++;
+            future = pending.get(key);
+            gen = generation;
+        }
+        VoxelStore store = null;
+        if(future != null){
+            try{
+                store = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            } catch (CancellationException e) {
+                //cleared while waiting, load it here.
+            }
+        }
+        if(store == null){
+            store = loader.load(frame, channel);
+            put(key, store, gen);
+        }
+        return store;
+    }
+
+    /**
+     * Starts loading the frame in the background if it is not already loaded or loading.
+     *
+     * @param frame 0 based frame.
+     * @param channel 0 based channel.
+     */
+    public synchronized void prefetch(int frame, int channel){
+        long key = key(frame, channel);
+        if(!fits(frameSize) || frames.containsKey(key) || pending.containsKey(key)){
+            return;
+        }
+        final int gen = generation;
+        pending.put(key, prefetcher.submit(() -> {
+            try{
+                VoxelStore store = loader.load(frame, channel);
+                put(key, store, gen);
+                return store;
+            } finally{
+                synchronized(FrameCache.this){
+                    if(gen == generation){
+                        pending.remove(key);
+                    }
+                }
+            }
+        }));
+    }
+
+    private synchronized void put(long key, VoxelStore store, int gen){
+        if(gen != generation){
+            return;
+        }
+        long size = store.getMemorySize();
+        if(!fits(size)){
+            return;
+        }
+        VoxelStore old = frames.put(key, store);
+        if(old != null){
+            used -= old.getMemorySize();
+        }
+        used += size;
+        trim();
+    }
+
+    private void trim(){
+        Iterator<VoxelStore> stores = frames.values().iterator();
+        while(used > budget && stores.hasNext()){
+            used -= stores.next().getMemorySize();
+            stores.remove();
+        }
+    }
+
+    /**
+     * Removes all of the frames, and ignores any prefetch that is still running. Needs to be called when the
+     * values of the original image change.
+     */
+    public synchronized void clear(){
+        generation++;
+        frames.clear();
+        List<Future<VoxelStore>> running = new ArrayList<>(pending.values());
+        pending.clear();
+        for(Future<VoxelStore> f: running){
+            f.cancel(false);
+        }
+        used = 0;
+    }
+
+    /**
+     * @param budget maximum number of bytes that will be kept, 0 disables caching.
+     */
+    public synchronized void setBudget(long budget){
+        this.budget = budget;
+        trim();
+    }
+
+    /**
+     * Sets the estimated size of one loaded frame. Frames are not prefetched when they are larger than the
+     * budget, because they would be discarded once they are loaded.
+     *
+     * @param bytes estimated number of bytes for one frame.
+     */
+    public synchronized void setFrameSize(long bytes){
+        frameSize = bytes;
+    }
+
+    /**
+     * Checks if a frame of the provided size can be kept by this cache.
+     *
+     * @param bytes size of a frame.
+     * @return true if caching is enabled and the frame is not larger than the budget.
+     */
+    public synchronized boolean fits(long bytes){
+        return budget > 0 && bytes <= budget;
+    }
+
+    public synchronized long getBudget(){
+        return budget;
+    }
+
+    public synchronized long getUsedMemory(){
+        return used;
+    }
+
+    public synchronized String getStatistics(){
+        return String.format("frames: %d, bytes: %d/%d, hits: %d, misses: %d", frames.size(), used, budget, hits, misses);
+    }
+}
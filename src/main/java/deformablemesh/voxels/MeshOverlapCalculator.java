@@ -0,0 +1,228 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.voxels;
+
+import deformablemesh.MeshImageStack;
+import deformablemesh.geometry.Box3D;
+import deformablemesh.geometry.DeformableMesh3D;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Measures the overlap between meshes by voxelizing both meshes inside of their shared bounding box. Only pairs
+ * with intersecting bounding boxes are voxelized. The grid is as fine as the image voxels, and it is refined for
+ * small overlaps so that each shared box has at least a minimum number of voxels.
+ */
+public class MeshOverlapCalculator {
+    static int defaultMinimumVoxels = 4096;
+    /**
+     * Limits the number of voxels along the longest edge of a refined box, relative to a cube with the same number
+     * of voxels.
+     */
+    static final int MAX_ASPECT = 4;
+
+    final double voxel;
+    int minimumVoxels = defaultMinimumVoxels;
+
+    /**
+     * @param voxel largest voxel edge length used, in normalized units.
+     */
+    public MeshOverlapCalculator(double voxel){
+        this.voxel = voxel;
+    }
+
+    /**
+     * Uses the smallest pixel dimension of the image as the largest voxel size.
+     *
+     * @param stack calibrated image the meshes belong to.
+     */
+    public MeshOverlapCalculator(MeshImageStack stack){
+        this(stack.getMinPx());
+    }
+
+    /**
+     * Sets the number of voxels a shared bounding box is divided into, when the image voxels would give fewer.
+     *
+     * @param voxels minimum number of voxels.
+     */
+    public void setMinimumVoxels(int voxels){
+        minimumVoxels = voxels;
+    }
+
+    public static void setDefaultMinimumVoxels(int voxels){
+        defaultMinimumVoxels = voxels;
+    }
+
+    /**
+     * Voxel edge length used for the provided shared bounding box. The refined voxel depends on the volume of the box,
+     * and it is limited by the longest edge so a wide thin box is not divided into a huge number of voxels.
+     *
+     * @param shared intersection of two bounding boxes.
+     * @return edge length in normalized units.
+     */
+    public double getVoxelSize(Box3D shared){
+        double largest = 0;
+        for(int i = 0; i<3; i++){
+            largest = Math.max(largest, shared.high[i] - shared.low[i]);
+        }
+        double refined = Math.max(
+                Math.cbrt(shared.getVolume()/minimumVoxels),
+                largest/(MAX_ASPECT*Math.cbrt(minimumVoxels))
+        );
+        return refined < voxel ? refined : voxel;
+    }
+
+    /**
+     * Estimates the volume contained by both meshes.
+     *
+     * @param a first mesh.
+     * @param b second mesh.
+     * @return volume in normalized units, 0 if the bounding boxes do not intersect.
+     */
+    public double getIntersectionVolume(DeformableMesh3D a, DeformableMesh3D b){
+        return getIntersectionVolume(a, a.getBoundingBox(), b, b.getBoundingBox());
+    }
+
+    double getIntersectionVolume(DeformableMesh3D a, Box3D boxA, DeformableMesh3D b, Box3D boxB){
+        if(!boxA.intersects(boxB)){
+            return 0;
+        }
+        Box3D shared = boxA.getIntersectingBox(boxB);
+        if(shared.getVolume() <= 0){
+            return 0;
+        }
+        double v = getVoxelSize(shared);
+        int w = (int)Math.ceil((shared.high[0] - shared.low[0])/v);
+        int h = (int)Math.ceil((shared.high[1] - shared.low[1])/v);
+        int d = (int)Math.ceil((shared.high[2] - shared.low[2])/v);
+        MeshImageStack grid = createGrid(shared.low, v);
+
+        short[][] inA = new short[d][w*h];
+        new MeshVoxelizer(grid, a, d, w, h).fill(inA, (short)1);
+
+        long[] counts = new long[d];
+        new MeshVoxelizer(grid, b, d, w, h).forEachSpan((slice, row, start, end)->{
+            short[] pixels = inA[slice];
+            int offset = row*w;
+            long c = 0;
+            for(int p = start; p<end; p++){
+                c += pixels[offset + p];
+            }
+            counts[slice] += c;
+        });
+        long total = 0;
+        for(long c: counts){
+            total += c;
+        }
+        return total*v*v*v;
+    }
+
+    /**
+     * The jaccard index, intersection over union, of the two meshes. The union uses the volumes of the meshes.
+     *
+     * @param a first mesh.
+     * @param b second mesh.
+     * @return value from 0 to 1.
+     */
+    public double getJaccardIndex(DeformableMesh3D a, DeformableMesh3D b){
+        double intersection = getIntersectionVolume(a, b);
+        return jaccardIndex(a.calculateVolume(), b.calculateVolume(), intersection);
+    }
+
+    static double jaccardIndex(double va, double vb, double intersection){
+        if(intersection <= 0){
+            return 0;
+        }
+        //the intersection is estimated, it cannot be larger than either mesh.
+        double limit = va < vb ? va : vb;
+        if(intersection > limit){
+            intersection = limit;
+        }
+        double union = va + vb - intersection;
+        return union > 0 ? intersection/union : 0;
+    }
+
+    /**
+     * Calculates the jaccard index for every pair of meshes. Pairs with intersecting bounding boxes are
+     * calculated in parallel, and the remaining pairs are 0.
+     *
+     * @param one meshes for the rows.
+     * @param two meshes for the columns.
+     * @return one.size() x two.size() matrix of jaccard indexes.
+     */
+    public double[][] jaccardIndexMatrix(List<DeformableMesh3D> one, List<DeformableMesh3D> two){
+        double[][] ji = new double[one.size()][two.size()];
+        if(two.size() == 0){
+            return ji;
+        }
+        Box3D[] boxesA = one.stream().map(DeformableMesh3D::getBoundingBox).toArray(Box3D[]::new);
+        Box3D[] boxesB = two.stream().map(DeformableMesh3D::getBoundingBox).toArray(Box3D[]::new);
+        List<int[]> candidates = new ArrayList<>();
+        for(int i = 0; i<boxesA.length; i++){
+            for(int j = 0; j<boxesB.length; j++){
+                if(boxesA[i].intersects(boxesB[j])){
+                    candidates.add(new int[]{i, j});
+                }
+            }
+        }
+        if(candidates.size() == 0){
+            return ji;
+        }
+        double[] volumesA = one.stream().parallel().mapToDouble(DeformableMesh3D::calculateVolume).toArray();
+        double[] volumesB = two.stream().parallel().mapToDouble(DeformableMesh3D::calculateVolume).toArray();
+
+        IntStream.range(0, candidates.size()).parallel().forEach(k ->{
+            int[] pair = candidates.get(k);
+            int i = pair[0];
+            int j = pair[1];
+            double intersection = getIntersectionVolume(one.get(i), boxesA[i], two.get(j), boxesB[j]);
+            ji[i][j] = jaccardIndex(volumesA[i], volumesB[j], intersection);
+        });
+        return ji;
+    }
+
+    /**
+     * Creates image geometry for a grid of cubic voxels, with the center of voxel 0, 0, 0 half a voxel from the
+     * origin.
+     *
+     * @param origin low corner of the grid in normalized coordinates.
+     * @param v voxel edge length.
+     * @return stack used to convert between the grid and normalized coordinates.
+     */
+    static MeshImageStack createGrid(double[] origin, double v){
+        MeshImageStack grid = new MeshImageStack();
+        grid.SCALE = 1;
+        grid.pixel_dimensions = new double[]{v, v, v};
+        grid.offsets = new double[]{
+                -origin[0] - 0.5*v,
+                -origin[1] - 0.5*v,
+                -origin[2] - 0.5*v
+        };
+        return grid;
+    }
+}
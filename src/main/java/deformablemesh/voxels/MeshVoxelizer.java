@@ -0,0 +1,328 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.voxels;
+
+import deformablemesh.DeformableMesh3DTools;
+import deformablemesh.MeshImageStack;
+import deformablemesh.geometry.Box3D;
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.Intersection;
+import deformablemesh.geometry.Triangle3D;
+import deformablemesh.geometry.interceptable.InterceptingTriangle3D;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the voxels contained in a mesh by casting a ray along the x-axis for each row of each slice. Triangles are
+ * binned by the rows and slices they span, so each ray only checks the triangles that could intersect it. Slices
+ * are processed in parallel.
+ */
+public class MeshVoxelizer {
+    /**
+     * Receives the contained voxels as spans along a row.
+     */
+    public interface SpanConsumer{
+        /**
+         * Called with the voxels from start, inclusive, to end, exclusive. Calls for different slices can be
+         * concurrent.
+         *
+         * @param slice 0 based slice.
+         * @param row y pixel.
+         * @param start first x pixel inside.
+         * @param end first x pixel after the span.
+         */
+        void accept(int slice, int row, int start, int end);
+    }
+
+    //rays are retried slightly off of the row when they have an odd number of intersections.
+    final static double RETRY_OFFSET = 0.1;
+    final static double MARGIN = RETRY_OFFSET + 1e-3;
+    final static double[] xdirection = {1, 0, 0};
+
+    final MeshImageStack stack;
+    final int width;
+    final int sliceLow, sliceHigh, rowLow, rowHigh, xhi;
+    final InterceptingTriangle3D[] triangles;
+    //triangle indexes for each (slice, row) cell.
+    final int[] binOffsets;
+    final int[] binTriangles;
+
+    /**
+     * Voxelizer using the dimensions of the image stack.
+     *
+     * @param stack image geometry.
+     * @param mesh mesh to be voxelized.
+     */
+    public MeshVoxelizer(MeshImageStack stack, DeformableMesh3D mesh){
+        this(stack, mesh, stack.getNSlices(), stack.getWidthPx(), stack.getHeightPx());
+    }
+
+    /**
+     *
+     * @param stack image geometry for converting between normalized and image coordinates.
+     * @param mesh mesh to be voxelized.
+     * @param slices number of slices of the output.
+     * @param w width of the output.
+     * @param h height of the output.
+     */
+    public MeshVoxelizer(MeshImageStack stack, DeformableMesh3D mesh, int slices, int w, int h){
+        this.stack = stack;
+        this.width = w;
+        Box3D box = mesh.getBoundingBox();
+        double[] lowI = stack.getImageCoordinates(box.low);
+        double[] highI = stack.getImageCoordinates(box.high);
+
+        int sl = (int)lowI[2];
+        int sh = (int)highI[2];
+        sliceLow = sl < 0 ? 0 : sl;
+        sliceHigh = sh <= slices ? sh : slices;
+
+        int jlo = (int)lowI[1];
+        int jhi = (int)highI[1];
+        rowLow = jlo < 0 ? 0 : jlo;
+        rowHigh = jhi <= h ? jhi : h;
+
+        int x = (int)highI[0];
+        xhi = x > w ? w : x;
+
+        int nSlices = Math.max(sliceHigh - sliceLow, 0);
+        int nRows = Math.max(rowHigh - rowLow, 0);
+        int cells = nSlices*nRows;
+
+        int n = mesh.triangles.size();
+        triangles = new InterceptingTriangle3D[n];
+        int[] ranges = new int[4*n];
+        int[] counts = new int[cells + 1];
+        for(int i = 0; i<n; i++){
+            Triangle3D t = mesh.triangles.get(i);
+            triangles[i] = new InterceptingTriangle3D(t);
+            double[] a = stack.getImageCoordinates(t.A.getCoordinates());
+            double[] b = stack.getImageCoordinates(t.B.getCoordinates());
+            double[] c = stack.getImageCoordinates(t.C.getCoordinates());
+            int r0 = Math.max((int)Math.ceil(Math.min(a[1], Math.min(b[1], c[1])) - MARGIN), rowLow);
+            int r1 = Math.min((int)Math.floor(Math.max(a[1], Math.max(b[1], c[1])) + MARGIN), rowHigh - 1);
+            int s0 = Math.max((int)Math.ceil(Math.min(a[2], Math.min(b[2], c[2])) - MARGIN), sliceLow);
+            int s1 = Math.min((int)Math.floor(Math.max(a[2], Math.max(b[2], c[2])) + MARGIN), sliceHigh - 1);
+            ranges[4*i] = r0;
+            ranges[4*i + 1] = r1;
+            ranges[4*i + 2] = s0;
+            ranges[4*i + 3] = s1;
+            for(int s = s0; s<=s1; s++){
+                for(int r = r0; r<=r1; r++){
+                    counts[(s - sliceLow)*nRows + r - rowLow + 1]++;
+                }
+            }
+        }
+        for(int i = 0; i<cells; i++){
+            counts[i + 1] += counts[i];
+        }
+        binOffsets = counts;
+        binTriangles = new int[counts[cells]];
+        int[] fill = new int[cells];
+        for(int i = 0; i<n; i++){
+            for(int s = ranges[4*i + 2]; s<=ranges[4*i + 3]; s++){
+                for(int r = ranges[4*i]; r<=ranges[4*i + 1]; r++){
+                    int cell = (s - sliceLow)*nRows + r - rowLow;
+                    binTriangles[binOffsets[cell] + fill[cell]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds all of the spans of contained voxels, slices are processed in parallel.
+     *
+     * @param consumer receives each span.
+     */
+    public void forEachSpan(SpanConsumer consumer){
+        IntStream.range(sliceLow, sliceHigh).parallel().forEach(slice ->{
+            double[] center = new double[3];
+            for(int j = rowLow; j<rowHigh; j++){
+                scanRow(slice, j, center, consumer);
+            }
+        });
+    }
+
+    /**
+     * Sets the value of all of the contained voxels.
+     *
+     * @param slices pixels of each slice, row major with the width of this voxelizer.
+     * @param value label that will be written.
+     */
+    public void fill(int[][] slices, int value){
+        forEachSpan((slice, row, start, end)->{
+            int offset = row*width;
+            int[] pixels = slices[slice];
+            for(int p = start; p<end; p++){
+                pixels[offset + p] = value;
+            }
+        });
+    }
+
+    /**
+     * Sets the value of all of the contained voxels.
+     *
+     * @param slices pixels of each slice, row major with the width of this voxelizer.
+     * @param value label that will be written.
+     */
+    public void fill(short[][] slices, short value){
+        forEachSpan((slice, row, start, end)->{
+            int offset = row*width;
+            short[] pixels = slices[slice];
+            for(int p = start; p<end; p++){
+                pixels[offset + p] = value;
+            }
+        });
+    }
+
+    /**
+     * Creates a list of all of the contained voxels ordered by slice, row, then x.
+     *
+     * @return {x, y, z} for each voxel.
+     */
+    public List<int[]> getContainedPixels(){
+        int nSlices = Math.max(sliceHigh - sliceLow, 0);
+        List<List<int[]>> perSlice = new ArrayList<>(nSlices);
+        for(int i = 0; i<nSlices; i++){
+            perSlice.add(new ArrayList<>());
+        }
+        forEachSpan((slice, row, start, end)->{
+            List<int[]> pixels = perSlice.get(slice - sliceLow);
+            for(int p = start; p<end; p++){
+                pixels.add(new int[]{p, row, slice});
+            }
+        });
+        List<int[]> contained = new ArrayList<>();
+        for(List<int[]> pixels: perSlice){
+            contained.addAll(pixels);
+        }
+        return contained;
+    }
+
+    List<Intersection> getIntersections(int cell, double[] center){
+        List<Intersection> sections = new ArrayList<>();
+        double[] origin = stack.getNormalizedCoordinate(center);
+        for(int i = binOffsets[cell]; i<binOffsets[cell + 1]; i++){
+            triangles[binTriangles[i]].getIntersection(origin, xdirection, sections);
+        }
+        return sections;
+    }
+
+    void scanRow(int slice, int j, double[] center, SpanConsumer consumer){
+        int cell = (slice - sliceLow)*(rowHigh - rowLow) + j - rowLow;
+        if(binOffsets[cell] == binOffsets[cell + 1]){
+            //No intersections. No points inside.
+            return;
+        }
+        center[0] = 0;
+        center[1] = j;
+        center[2] = slice;
+
+        List<Intersection> sections = getIntersections(cell, center);
+        DeformableMesh3DTools.scanDirty(sections);
+        if(sections.size() % 2 != 0) {
+            for (int zeta = 0; zeta < 3; zeta+=2) {
+                center[1] = j - RETRY_OFFSET + zeta * RETRY_OFFSET;
+                sections = getIntersections(cell, center);
+                DeformableMesh3DTools.scanDirty(sections);
+                if(sections.size() % 2 == 0){
+                    break;
+                }
+            }
+        }
+
+        if(sections.size()==0){
+            return;
+        }
+
+        sections.sort((a,b)->Double.compare(a.location[0], b.location[0]));
+
+        boolean startInside = false;
+        int count = 0;
+        double[] boundaries = new double[sections.size()+1];
+
+        //the number of boundaries that switch the state from inside to outside.
+        int valid = 0;
+
+        for(Intersection section: sections){
+
+            double bound = stack.getImageCoordinates(section.location)[0];
+
+            boolean facingLeft = section.surfaceNormal[0]<0;
+            //going through all interfaces, and either going further in
+            //or back out.
+            if(facingLeft){
+                count++;
+            } else{
+                count--;
+            }
+            if(bound>0) {
+                //check if it is actually a boundary
+                if ( count==1 && facingLeft ) {
+                    //boundary entering region.
+                    if( valid == 0){
+                        startInside = false;
+                    }
+                    boundaries[valid] = bound;
+                    valid++;
+                } else if (count==0 && !facingLeft) {
+                    //stepped out.
+                    if( valid == 0){
+                        startInside = true;
+                    }
+                    boundaries[valid] = bound;
+                    valid++;
+                }
+            }
+        }
+        boundaries[valid] = width;
+
+        boolean inside = startInside;
+        int current = 0;
+        int spanStart = -1;
+        int last = Math.min(width - 1, xhi);
+        for(int p = 0; p<=last; p++){
+            if(p>boundaries[current]){
+                //switch.
+                current++;
+                inside = !inside;
+            }
+            if(inside){
+                if(spanStart < 0){
+                    spanStart = p;
+                }
+            } else if(spanStart >= 0){
+                consumer.accept(slice, j, spanStart, p);
+                spanStart = -1;
+            }
+        }
+        if(spanStart >= 0){
+            consumer.accept(slice, j, spanStart, last + 1);
+        }
+    }
+}
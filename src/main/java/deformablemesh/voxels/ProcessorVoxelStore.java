@@ -0,0 +1,174 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.voxels;
+
+import ij.process.ImageProcessor;
+
+/**
+ * Reads values directly from the pixel arrays of the image processors. Uncalibrated 8 bit, 16 bit and float images
+ * are not copied, other images are converted to float slices.
+ *
+ * Since the arrays are shared, changes to the original image will be seen by this store, but the min and max value
+ * are only updated when loading.
+ */
+public class ProcessorVoxelStore implements VoxelStore{
+    final int width, height, depth;
+    float[][] floatSlices;
+    short[][] shortSlices;
+    byte[][] byteSlices;
+    //true when the float slices were allocated by this store, instead of the image pixel arrays.
+    boolean ownsFloats;
+    double min, max;
+
+    public ProcessorVoxelStore(int width, int height, int depth){
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        floatSlices = new float[depth][width*height];
+        ownsFloats = true;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public double getValue(int x, int y, int z) {
+        int dex = y*width + x;
+        if(floatSlices != null){
+            return floatSlices[z][dex];
+        } else if(shortSlices != null){
+            return shortSlices[z][dex] & 0xffff;
+        }
+        return byteSlices[z][dex] & 0xff;
+    }
+
+    @Override
+    public void load(ImageProcessor[] slices) {
+        boolean shorts = true;
+        boolean bytes = true;
+        boolean floats = true;
+        for(ImageProcessor proc: slices){
+            Object pixels = proc.getPixels();
+            boolean raw = VoxelStore.isRaw(proc);
+            shorts &= raw && pixels instanceof short[];
+            bytes &= raw && pixels instanceof byte[];
+            floats &= pixels instanceof float[];
+        }
+        floatSlices = null;
+        shortSlices = null;
+        byteSlices = null;
+        ownsFloats = false;
+        if(shorts){
+            shortSlices = new short[depth][];
+            for(int i = 0; i<depth; i++){
+                shortSlices[i] = (short[])slices[i].getPixels();
+            }
+        } else if(bytes){
+            byteSlices = new byte[depth][];
+            for(int i = 0; i<depth; i++){
+                byteSlices[i] = (byte[])slices[i].getPixels();
+            }
+        } else{
+            floatSlices = new float[depth][];
+            ownsFloats = !floats;
+            for(int i = 0; i<depth; i++){
+                if(floats){
+                    floatSlices[i] = (float[])slices[i].getPixels();
+                } else{
+                    floatSlices[i] = new float[width*height];
+                    VoxelStore.copySlice(slices[i], floatSlices[i], 0);
+                }
+            }
+        }
+        updateRange();
+    }
+
+    @Override
+    public void copyFrom(VoxelStore other) {
+        floatSlices = new float[depth][width*height];
+        ownsFloats = true;
+        shortSlices = null;
+        byteSlices = null;
+        for(int z = 0; z<depth; z++){
+            float[] slice = floatSlices[z];
+            for(int y = 0; y<height; y++){
+                for(int x = 0; x<width; x++){
+                    slice[y*width + x] = (float)other.getValue(x, y, z);
+                }
+            }
+        }
+        updateRange();
+    }
+
+    void updateRange(){
+        double lo = Double.MAX_VALUE;
+        double hi = -Double.MAX_VALUE;
+        for(int z = 0; z<depth; z++){
+            for(int y = 0; y<height; y++){
+                for(int x = 0; x<width; x++){
+                    double v = getValue(x, y, z);
+                    if(v<lo) lo = v;
+                    if(v>hi) hi = v;
+                }
+            }
+        }
+        min = lo;
+        max = hi;
+    }
+
+    @Override
+    public double getMinValue() {
+        return min;
+    }
+
+    @Override
+    public double getMaxValue() {
+        return max;
+    }
+
+    /**
+     * Only counts memory that was allocated for this store, shared pixel arrays are not counted.
+     */
+    @Override
+    public long getMemorySize() {
+        if(floatSlices == null || !ownsFloats){
+            return 0;
+        }
+        return 4L*width*height*depth;
+    }
+}
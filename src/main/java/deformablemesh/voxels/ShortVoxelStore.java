@@ -0,0 +1,176 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.voxels;
+
+import ij.process.ImageProcessor;
+
+/**
+ * Voxels stored as unsigned shorts, the value is offset + scale*stored. 8 and 16 bit images are stored exactly,
+ * other images are quantized between their minimum and maximum value.
+ */
+public class ShortVoxelStore implements VoxelStore{
+    static final int LEVELS = 65535;
+    final int width, height, depth;
+    final short[] values;
+    double scale = 1;
+    double offset = 0;
+    double min, max;
+
+    public ShortVoxelStore(int width, int height, int depth){
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        values = new short[width*height*depth];
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public double getValue(int x, int y, int z) {
+        return offset + scale*(values[(z*height + y)*width + x] & 0xffff);
+    }
+
+    @Override
+    public void load(ImageProcessor[] slices) {
+        int n = width*height;
+        boolean raw = true;
+        for(ImageProcessor proc: slices){
+            Object pixels = proc.getPixels();
+            raw &= VoxelStore.isRaw(proc) && !(pixels instanceof float[]);
+        }
+        if(raw){
+            for(int i = 0; i<slices.length; i++){
+                Object pixels = slices[i].getPixels();
+                if(pixels instanceof short[]){
+                    System.arraycopy(pixels, 0, values, i*n, n);
+                } else{
+                    byte[] px = (byte[])pixels;
+                    for(int j = 0; j<n; j++){
+                        values[i*n + j] = (short)(px[j] & 0xff);
+                    }
+                }
+            }
+            scale = 1;
+            offset = 0;
+            updateRange();
+            return;
+        }
+
+        float[] slice = new float[n];
+        double lo = Double.MAX_VALUE;
+        double hi = -Double.MAX_VALUE;
+        for(ImageProcessor proc: slices){
+            VoxelStore.copySlice(proc, slice, 0);
+            for(float v: slice){
+                if(v<lo) lo = v;
+                if(v>hi) hi = v;
+            }
+        }
+        offset = lo;
+        scale = hi>lo ? (hi - lo)/LEVELS : 1;
+        for(int i = 0; i<slices.length; i++){
+            VoxelStore.copySlice(slices[i], slice, 0);
+            for(int j = 0; j<n; j++){
+                values[i*n + j] = quantize(slice[j]);
+            }
+        }
+        min = lo;
+        max = hi;
+    }
+
+    short quantize(double v){
+        long q = Math.round((v - offset)/scale);
+        if(q<0) q = 0;
+        if(q>LEVELS) q = LEVELS;
+        return (short)q;
+    }
+
+    @Override
+    public void copyFrom(VoxelStore other) {
+        if(other instanceof ShortVoxelStore){
+            ShortVoxelStore o = (ShortVoxelStore)other;
+            System.arraycopy(o.values, 0, values, 0, values.length);
+            scale = o.scale;
+            offset = o.offset;
+            min = o.min;
+            max = o.max;
+            return;
+        }
+        offset = other.getMinValue();
+        double hi = other.getMaxValue();
+        scale = hi>offset ? (hi - offset)/LEVELS : 1;
+        int dex = 0;
+        for(int z = 0; z<depth; z++){
+            for(int y = 0; y<height; y++){
+                for(int x = 0; x<width; x++){
+                    values[dex++] = quantize(other.getValue(x, y, z));
+                }
+            }
+        }
+        min = offset;
+        max = hi;
+    }
+
+    void updateRange(){
+        int lo = Integer.MAX_VALUE;
+        int hi = Integer.MIN_VALUE;
+        for(short s: values){
+            int v = s & 0xffff;
+            if(v<lo) lo = v;
+            if(v>hi) hi = v;
+        }
+        min = offset + scale*lo;
+        max = offset + scale*hi;
+    }
+
+    @Override
+    public double getMinValue() {
+        return min;
+    }
+
+    @Override
+    public double getMaxValue() {
+        return max;
+    }
+
+    @Override
+    public long getMemorySize() {
+        return 2L*values.length;
+    }
+}
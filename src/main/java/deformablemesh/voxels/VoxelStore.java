@@ -0,0 +1,126 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.voxels;
+
+import ij.process.ImageProcessor;
+
+/**
+ * Holds the voxel values of a single frame and channel of an image for sampling.
+ *
+ * The values should be the same as the ones returned by {@link ImageProcessor#getPixelValue(int, int)}.
+ */
+public interface VoxelStore {
+    int getWidth();
+    int getHeight();
+    int getDepth();
+
+    /**
+     * Gets the value at the voxel, no bounds checking is performed.
+     *
+     * @param x pixel
+     * @param y pixel
+     * @param z slice, 0 based.
+     * @return value of the voxel.
+     */
+    double getValue(int x, int y, int z);
+
+    /**
+     * Replaces the current values with the provided slices.
+     *
+     * @param slices one processor per slice, they need to be the same size as this store.
+     */
+    void load(ImageProcessor[] slices);
+
+    /**
+     * Replaces the current values with the values of another store of the same size.
+     *
+     * @param other source of values.
+     */
+    void copyFrom(VoxelStore other);
+
+    /**
+     * @return smallest value since the last load.
+     */
+    double getMinValue();
+
+    /**
+     * @return largest value since the last load.
+     */
+    double getMaxValue();
+
+    /**
+     * Approximate number of bytes used to store the values.
+     */
+    long getMemorySize();
+
+    /**
+     * Checks that the processor pixels can be read directly. Calibrated 8 and 16 bit images use a lookup table,
+     * and color images are converted to a luminance.
+     *
+     * @param proc processor being checked.
+     * @return true if the raw pixels are the same as getPixelValue.
+     */
+    static boolean isRaw(ImageProcessor proc){
+        Object pixels = proc.getPixels();
+        if(pixels instanceof float[]){
+            return true;
+        }
+        return (pixels instanceof short[] || pixels instanceof byte[]) && proc.getCalibrationTable() == null;
+    }
+
+    /**
+     * Copies the values of a processor into a float array, for uncalibrated images this is a direct copy.
+     *
+     * @param proc source.
+     * @param dest where the values are written, row major.
+     * @param offset starting position in dest.
+     */
+    static void copySlice(ImageProcessor proc, float[] dest, int offset){
+        Object pixels = proc.getPixels();
+        int w = proc.getWidth();
+        int n = w*proc.getHeight();
+        if(pixels instanceof float[]){
+            System.arraycopy(pixels, 0, dest, offset, n);
+        } else if(isRaw(proc) && pixels instanceof short[]){
+            short[] px = (short[])pixels;
+            for(int i = 0; i<n; i++){
+                dest[offset + i] = px[i] & 0xffff;
+            }
+        } else if(isRaw(proc) && pixels instanceof byte[]){
+            byte[] px = (byte[])pixels;
+            for(int i = 0; i<n; i++){
+                dest[offset + i] = px[i] & 0xff;
+            }
+        } else{
+            int h = proc.getHeight();
+            for(int j = 0; j<h; j++){
+                for(int k = 0; k<w; k++){
+                    dest[offset + j*w + k] = proc.getPixelValue(k, j);
+                }
+            }
+        }
+    }
+}
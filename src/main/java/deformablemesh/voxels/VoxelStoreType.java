@@ -0,0 +1,63 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.voxels;
+
+/**
+ * How the voxels of a MeshImageStack are stored.
+ *
+ * FLOAT one contiguous float array. Same values as the image, half of the memory of double.
+ *
+ * SHORT a short array with a scale and offset. Exact for 8 and 16 bit images, float images are quantized to 65536
+ * levels between their min and max values.
+ *
+ * VIEW reads the pixel arrays of the original image directly, frame changes do not copy. Changes to the original
+ * image are visible.
+ */
+public enum VoxelStoreType {
+    FLOAT, SHORT, VIEW;
+
+    public VoxelStore create(int width, int height, int depth){
+        switch(this){
+            case SHORT:
+                return new ShortVoxelStore(width, height, depth);
+            case VIEW:
+                return new ProcessorVoxelStore(width, height, depth);
+            case FLOAT:
+            default:
+                return new FloatVoxelStore(width, height, depth);
+        }
+    }
+
+    /**
+     * Largest number of bytes used for each voxel. A VIEW of an 8 bit, 16 bit or float image uses less, because
+     * the pixels are not copied.
+     *
+     * @return bytes per voxel.
+     */
+    public int getBytesPerVoxel(){
+        return this == SHORT ? 2 : 4;
+    }
+}
@@ -30,6 +30,13 @@ import struct
 
 from .meshdata import Track, Mesh
 
+COMPACT_VERSION = -3
+INLINE_TOPOLOGY = -1
+DOUBLE_POSITIONS = 0
+FLOAT_POSITIONS = 1
+QUANTIZED_POSITIONS = 2
+QUANTIZED_LEVELS = 65535
+
 class MeshReader:
     """
         Class for reading meshes from a collection of bytes. This class
@@ -59,16 +66,92 @@ class MeshReader:
             name = self.readUTFString();
             track = Track(name)
             mesh_count = self.readInt()
+            topologies = []
             for j in range(mesh_count):
-                frame = self.readInt()
-                position_count = self.readInt()
-                positions = self.readDoubles(position_count)
-                connection_count = self.readInt()
-                connections = self.readInts(connection_count)
-                triangle_count = self.readInt()
-                triangles = self.readInts(triangle_count)
-                track.addMesh(frame, Mesh(positions, connections, triangles))
+                if self.version == COMPACT_VERSION:
+                    frame, mesh = self.readCompactMesh(topologies)
+                else:
+                    frame = self.readInt()
+                    position_count = self.readInt()
+                    positions = self.readDoubles(position_count)
+                    connection_count = self.readInt()
+                    connections = self.readInts(connection_count)
+                    triangle_count = self.readInt()
+                    triangles = self.readInts(triangle_count)
+                    mesh = Mesh(positions, connections, triangles)
+                track.addMesh(frame, mesh)
             self.tracks.append(track)
+        # version -2 and -3 files end with an index, which is not needed when reading every mesh.
+
+    def readCompactMesh(self, topologies):
+        """
+            Reads a mesh written with the compact encoding, version -3.
+            Args:
+                topologies: list of the (connections, triangles) of the meshes
+                            read so far in the current track, the mesh is appended.
+            Returns:
+                frame, Mesh
+        """
+        frame = self.readInt()
+        encoding = self.readByte()
+        count = self.readInt()
+        if encoding == DOUBLE_POSITIONS:
+            positions = self.readDoubles(count)
+        elif encoding == FLOAT_POSITIONS:
+            positions = struct.unpack_from(">%sf"%count, self.bytes, self.pos)
+            self.pos += 4*count
+        elif encoding == QUANTIZED_POSITIONS:
+            low = self.readDoubles(3)
+            high = self.readDoubles(3)
+            levels = struct.unpack_from(">%sH"%count, self.bytes, self.pos)
+            self.pos += 2*count
+            positions = tuple( low[i%3] + q*(high[i%3] - low[i%3])/QUANTIZED_LEVELS for i, q in enumerate(levels) )
+        else:
+            raise ValueError("Unknown position encoding %s"%encoding)
+        reference = self.readInt()
+        if reference == INLINE_TOPOLOGY:
+            connections = self.readDeltas()
+            triangles = self.readDeltas()
+        else:
+            connections, triangles = topologies[reference]
+        topologies.append( (connections, triangles) )
+        return frame, Mesh(positions, connections, triangles)
+
+    def readByte(self):
+        """
+            Reads a single signed byte.
+        """
+        b = struct.unpack_from(">b", self.bytes, self.pos)[0]
+        self.pos += 1
+        return b
+
+    def readVarint(self):
+        """
+            Reads an unsigned varint, 7 bits per byte least significant first.
+        """
+        value = 0
+        shift = 0
+        while True:
+            b = self.bytes[self.pos]
+            self.pos += 1
+            value |= (b & 0x7f) << shift
+            if b < 0x80:
+                return value
+            shift += 7
+
+    def readDeltas(self):
+        """
+            Reads a varint count followed by that many zigzag encoded differences, returns the
+            accumulated values.
+        """
+        count = self.readVarint()
+        values = []
+        last = 0
+        for i in range(count):
+            zigzag = self.readVarint()
+            last += (zigzag >> 1) ^ -(zigzag & 1)
+            values.append(last)
+        return tuple(values)
             
                 
     def readInt(self):
@@ -31,8 +31,11 @@ import deformablemesh.track.Track;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by msmith on 3/23/16.
@@ -183,4 +186,50 @@ public class ControllerTest {
 
         controller.stopRunning();
     }
+
+    @Test
+    public void remeshFrames(){
+        SegmentationModel model = new SegmentationModel();
+        SegmentationController controller = new SegmentationController(model);
+        for(int i = 0; i<2; i++){
+            DeformableMesh3D first = RayCastMesh.sphereRayCastMesh(1);
+            controller.startNewMeshTrack(0, first);
+            waitFor(controller);
+            model.selectTrackWithMesh(first);
+            Track track = model.getSelectedTrack();
+            for(int f = 1; f<3; f++){
+                controller.setMesh(track, f, RayCastMesh.sphereRayCastMesh(1));
+            }
+        }
+        waitFor(controller);
+        List<Track> tracks = model.getAllTracks();
+        Assert.assertEquals(2, tracks.size());
+        Map<Track, List<DeformableMesh3D>> originals = new HashMap<>();
+        for(Track t: tracks){
+            originals.put(t, new ArrayList<>(t.getTrack().values()));
+        }
+
+        controller.reMeshConnections(tracks, 0, 2, 0.1, 0.2);
+        waitFor(controller);
+        waitFor(controller);
+
+        for(Track t: tracks){
+            List<DeformableMesh3D> old = originals.get(t);
+            for(int f = 0; f<3; f++){
+                DeformableMesh3D mesh = t.getMesh(f);
+                Assert.assertNotSame(old.get(f), mesh);
+                Assert.assertTrue(mesh.connections.size() > old.get(f).connections.size());
+            }
+        }
+
+        controller.undo();
+        waitFor(controller);
+        for(Track t: tracks){
+            List<DeformableMesh3D> old = originals.get(t);
+            for(int f = 0; f<3; f++){
+                Assert.assertSame(old.get(f), t.getMesh(f));
+            }
+        }
+        controller.stopRunning();
+    }
 }
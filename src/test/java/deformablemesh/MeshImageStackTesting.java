@@ -26,9 +26,13 @@
 package deformablemesh;
 
 import deformablemesh.util.Vector3DOps;
+import deformablemesh.voxels.ProcessorVoxelStore;
+import deformablemesh.voxels.VoxelStoreType;
 import ij.ImagePlus;
 import ij.ImageStack;
 import ij.io.FileInfo;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import ij.process.ShortProcessor;
 import org.junit.Assert;
@@ -90,4 +94,53 @@ public class MeshImageStackTesting {
         Assert.assertEquals(i, v, Vector3DOps.TOL);
     }
 
+    @Test
+    public void storeTypes(){
+        ImagePlus original = testStack();
+        MeshImageStack mesh_stack = new MeshImageStack(original);
+        for(VoxelStoreType type: VoxelStoreType.values()){
+            mesh_stack.setStoreType(type);
+            for(int z = 0; z<5; z++){
+                ImageProcessor proc = original.getStack().getProcessor(z + 1);
+                for(int y = 0; y<30; y++){
+                    for(int x = 0; x<10; x++){
+                        Assert.assertEquals(proc.getPixelValue(x, y), mesh_stack.getValue(x, y, z), 0);
+                    }
+                }
+            }
+            Assert.assertEquals(0, mesh_stack.MIN_VALUE, 0);
+            Assert.assertEquals(18 + (58<<4) + (8<<8), mesh_stack.MAX_VALUE, 0);
+        }
+    }
+
+    @Test
+    public void batchSample(){
+        MeshImageStack mesh_stack = new MeshImageStack(testStack());
+        int n = 50;
+        double[] xyz = new double[3*n];
+        for(int i = 0; i<n; i++){
+            //includes points outside of the image.
+            xyz[3*i] = -0.6 + 1.2*i/n;
+            xyz[3*i + 1] = 0.55 - 1.1*i/n;
+            xyz[3*i + 2] = 0.1*Math.sin(i);
+        }
+        double[] out = new double[n];
+        mesh_stack.sample(xyz, n, out);
+        for(int i = 0; i<n; i++){
+            double[] pt = {xyz[3*i], xyz[3*i + 1], xyz[3*i + 2]};
+            Assert.assertEquals(mesh_stack.getInterpolatedValue(pt), out[i], 0);
+        }
+    }
+
+    @Test
+    public void viewMemorySize(){
+        ProcessorVoxelStore store = new ProcessorVoxelStore(4, 3, 2);
+        //float pixels are shared with the image.
+        store.load(new ImageProcessor[]{new FloatProcessor(4, 3), new FloatProcessor(4, 3)});
+        Assert.assertEquals(0, store.getMemorySize());
+        //color pixels are converted to float slices owned by the store.
+        store.load(new ImageProcessor[]{new ColorProcessor(4, 3), new ColorProcessor(4, 3)});
+        Assert.assertEquals(4*4*3*2, store.getMemorySize());
+    }
+
 }
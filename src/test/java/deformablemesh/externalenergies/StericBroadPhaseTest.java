@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.externalenergies;
+
+import deformablemesh.DeformableMesh3DTools;
+import deformablemesh.geometry.DeformableMesh3D;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class StericBroadPhaseTest {
+
+    static DeformableMesh3D block(double x, double y, double z){
+        DeformableMesh3D mesh = DeformableMesh3DTools.createTestBlock(2, 2, 2);
+        mesh.translate(new double[]{x, y, z});
+        return mesh;
+    }
+
+    @Test
+    public void findsNeighbors(){
+        DeformableMesh3D a = block(0, 0, 0);
+        //overlaps a.
+        DeformableMesh3D b = block(1.5, 0.5, 0);
+        //separated from a by less than the margin.
+        DeformableMesh3D c = block(0, 0, 2.05);
+        //far from everything.
+        DeformableMesh3D d = block(10, 10, 10);
+
+        StericBroadPhase broadPhase = new StericBroadPhase(Arrays.asList(a, b, c, d), 0.1);
+        broadPhase.update();
+
+        assertNeighbors(broadPhase.getNeighbors(a), b, c);
+        assertNeighbors(broadPhase.getNeighbors(b), a, c);
+        assertNeighbors(broadPhase.getNeighbors(c), a, b);
+        assertNeighbors(broadPhase.getNeighbors(d));
+
+        //not part of the frame.
+        Assert.assertTrue(broadPhase.getNeighbors(block(0, 0, 0)).isEmpty());
+    }
+
+    @Test
+    public void followsMovingMeshes(){
+        DeformableMesh3D a = block(0, 0, 0);
+        DeformableMesh3D b = block(2.5, 0, 0);
+        DeformableMesh3D c = block(0, 5, 0);
+
+        StericBroadPhase broadPhase = new StericBroadPhase(Arrays.asList(a, b, c), 0.1);
+        broadPhase.update();
+        assertNeighbors(broadPhase.getNeighbors(a));
+        assertNeighbors(broadPhase.getNeighbors(b));
+        assertNeighbors(broadPhase.getNeighbors(c));
+
+        b.translate(new double[]{-0.6, 0, 0});
+        c.translate(new double[]{0, -3, 0});
+
+        //the pairs are only recalculated by update.
+        assertNeighbors(broadPhase.getNeighbors(a));
+
+        broadPhase.update();
+        assertNeighbors(broadPhase.getNeighbors(a), b, c);
+        assertNeighbors(broadPhase.getNeighbors(b), a, c);
+        assertNeighbors(broadPhase.getNeighbors(c), a, b);
+
+        c.translate(new double[]{0, 3, 0});
+        broadPhase.update();
+        assertNeighbors(broadPhase.getNeighbors(a), b);
+        assertNeighbors(broadPhase.getNeighbors(b), a);
+        assertNeighbors(broadPhase.getNeighbors(c));
+    }
+
+    static void assertNeighbors(List<DeformableMesh3D> found, DeformableMesh3D... expected){
+        Assert.assertEquals(expected.length, found.size());
+        for(DeformableMesh3D mesh: expected){
+            Assert.assertTrue(found.stream().anyMatch(m -> m == mesh));
+        }
+    }
+}
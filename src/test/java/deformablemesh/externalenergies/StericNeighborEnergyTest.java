@@ -0,0 +1,81 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.externalenergies;
+
+import deformablemesh.geometry.DeformableMesh3D;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class StericNeighborEnergyTest {
+
+    @Test
+    public void pairsFollowBroadPhase(){
+        DeformableMesh3D a = StericBroadPhaseTest.block(0, 0, 0);
+        DeformableMesh3D b = StericBroadPhaseTest.block(5, 0, 0);
+        DeformableMesh3D c = StericBroadPhaseTest.block(0, 5, 0);
+
+        StericBroadPhase broadPhase = new StericBroadPhase(Arrays.asList(a, b, c), 0.1);
+        StericNeighborEnergy energy = new StericNeighborEnergy(a, broadPhase, 1.0);
+
+        broadPhase.update();
+        energy.update();
+        Assert.assertEquals(0, energy.getPairCount());
+
+        //b moves next to a.
+        b.translate(new double[]{-3, 0, 0});
+        broadPhase.update();
+        energy.update();
+        Assert.assertEquals(1, energy.getPairCount());
+        StericMesh withB = energy.pairs.get(b);
+        Assert.assertNotNull(withB);
+        Assert.assertSame(b, withB.deformableMesh);
+
+        //c moves next to a, the existing pair is kept.
+        c.translate(new double[]{0, -3, 0});
+        broadPhase.update();
+        energy.update();
+        Assert.assertEquals(2, energy.getPairCount());
+        Assert.assertSame(withB, energy.pairs.get(b));
+        Assert.assertNotNull(energy.pairs.get(c));
+
+        //b leaves.
+        b.translate(new double[]{3, 0, 0});
+        broadPhase.update();
+        energy.update();
+        Assert.assertEquals(1, energy.getPairCount());
+        Assert.assertNull(energy.pairs.get(b));
+        Assert.assertNotNull(energy.pairs.get(c));
+
+        //b returns, a new pair is created.
+        b.translate(new double[]{-3, 0, 0});
+        broadPhase.update();
+        energy.update();
+        Assert.assertEquals(2, energy.getPairCount());
+        Assert.assertNotSame(withB, energy.pairs.get(b));
+    }
+}
@@ -0,0 +1,78 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.geometry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConnectionRemesherTest {
+
+    @Test
+    public void refineSphere(){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(1);
+        ConnectionRemesher remesher = new ConnectionRemesher();
+        remesher.setMinAndMaxLengths(0.1, 0.2);
+        DeformableMesh3D remeshed = remesher.remesh(mesh);
+
+        Assert.assertTrue(remeshed.connections.size() > mesh.connections.size());
+        //still a closed sphere.
+        Assert.assertEquals(2, remeshed.nodes.size() - remeshed.connections.size() + remeshed.triangles.size());
+        MeshTopology topo = remeshed.getTopology();
+        for(int c = 0; c<topo.connectionCount; c++){
+            Assert.assertEquals(2, topo.connectionTriangleOffsets[c + 1] - topo.connectionTriangleOffsets[c]);
+        }
+        for(int n = 0; n<remeshed.nodes.size(); n++){
+            Assert.assertEquals(n, remeshed.nodes.get(n).index);
+            Assert.assertTrue(topo.getDegree(n) >= 3);
+        }
+    }
+
+    @Test
+    public void repeatable(){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(2);
+        ConnectionRemesher remesher = new ConnectionRemesher();
+        remesher.setMinAndMaxLengths(0.05, 0.1);
+        DeformableMesh3D a = remesher.remesh(mesh);
+        ConnectionRemesher second = new ConnectionRemesher();
+        second.setMinAndMaxLengths(0.05, 0.1);
+        DeformableMesh3D b = second.remesh(mesh);
+        Assert.assertArrayEquals(a.positions, b.positions, 0);
+        Assert.assertArrayEquals(a.connection_index, b.connection_index);
+        Assert.assertArrayEquals(a.triangle_index, b.triangle_index);
+    }
+
+    @Test
+    public void inputUnchanged(){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(3);
+        double[] positions = mesh.positions.clone();
+        ConnectionRemesher remesher = new ConnectionRemesher();
+        //only short connections, the nodes are moved in place.
+        remesher.setMinAndMaxLengths(0.2, 1.0);
+        DeformableMesh3D remeshed = remesher.remesh(mesh);
+        Assert.assertTrue(remeshed.connections.size() < mesh.connections.size());
+        Assert.assertArrayEquals(positions, mesh.positions, 0);
+    }
+}
@@ -26,10 +26,15 @@
 package deformablemesh.geometry;
 
 import deformablemesh.DeformableMesh3DTools;
+import deformablemesh.externalenergies.ExternalEnergy;
+import deformablemesh.geometry.solvers.SolverType;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by msmith on 4/21/16.
@@ -97,4 +102,165 @@ public class DeformableMesh3DTests {
         Assert.assertEquals(before, after, 1e-2);
     }
 
+    @Test
+    public void testSparseSolver(){
+        DeformableMesh3D dense = RayCastMesh.sphereRayCastMesh(2);
+        DeformableMesh3D sparse = new DeformableMesh3D(dense.positions.clone(), dense.connection_index, dense.triangle_index);
+        sparse.setSolverType(SolverType.SPARSE);
+        for(DeformableMesh3D mesh: new DeformableMesh3D[]{dense, sparse}){
+            mesh.ALPHA = 1.0;
+            mesh.BETA = 0.5;
+            mesh.GAMMA = 10;
+            mesh.addExternalEnergy(new ExternalEnergy(){
+                @Override
+                public void updateForces(double[] positions, double[] fx, double[] fy, double[] fz) {
+                    for(int i = 0; i<fx.length; i++){
+                        fx[i] += 0.1*positions[3*i];
+                        fy[i] += 0.1*positions[3*i + 1];
+                        fz[i] += 0.1*positions[3*i + 2];
+                    }
+                }
+
+                @Override
+                public double getEnergy(double[] pos) {
+                    return 0;
+                }
+            });
+        }
+        for(int i = 0; i<5; i++){
+            dense.update();
+            sparse.update();
+        }
+        Assert.assertArrayEquals(dense.positions, sparse.positions, 1e-6);
+    }
+
+    @Test
+    public void testSharedSolver(){
+        DeformableMesh3D a = RayCastMesh.sphereRayCastMesh(1);
+        DeformableMesh3D b = RayCastMesh.sphereRayCastMesh(1);
+        b.translate(new double[]{1, 2, 3});
+        for(DeformableMesh3D mesh: new DeformableMesh3D[]{a, b}){
+            mesh.ALPHA = 1.0;
+            mesh.BETA = 0.1;
+            mesh.GAMMA = 100;
+            mesh.reshape();
+        }
+        Assert.assertSame(a.solver, b.solver);
+
+        b.GAMMA = 50;
+        b.reshape();
+        Assert.assertNotSame(a.solver, b.solver);
+
+        b.GAMMA = 100;
+        b.nodes.get(0).setGammaFactor(2);
+        b.reshape();
+        Assert.assertNotSame(a.solver, b.solver);
+    }
+
+    @Test
+    public void stiffnessKeyMatchesIndexes(){
+        DeformableMesh3D a = RayCastMesh.sphereRayCastMesh(1);
+        a.BETA = 0.1;
+        //the first two connections swap places, the lists are not synchronized.
+        int[] cons = a.connection_index;
+        for(int i = 0; i<2; i++){
+            int t = cons[i];
+            cons[i] = cons[i + 2];
+            cons[i + 2] = t;
+        }
+        DeformableMesh3D b = new DeformableMesh3D(a.positions, cons, a.triangle_index);
+        b.BETA = 0.1;
+        Assert.assertEquals(b.getStiffnessKey(), a.getStiffnessKey());
+        Assert.assertSame(a.getTopology(), a.getIndexedTopology());
+        Assert.assertArrayEquals(cons, a.getTopology().connection_index);
+
+        int n = a.nodes.size();
+        double[][] ma = new double[n][n];
+        double[][] mb = new double[n][n];
+        a.assembleStiffnessMatrix((i, j, v) -> ma[i][j] += v);
+        b.assembleStiffnessMatrix((i, j, v) -> mb[i][j] += v);
+        for(int i = 0; i<n; i++){
+            Assert.assertArrayEquals(mb[i], ma[i], 1e-12);
+        }
+    }
+
+    static ExternalEnergy expansion(double factor){
+        return new ExternalEnergy(){
+            @Override
+            public void updateForces(double[] positions, double[] fx, double[] fy, double[] fz) {
+                for(int i = 0; i<fx.length; i++){
+                    fx[i] += factor*positions[3*i];
+                    fy[i] += factor*positions[3*i + 1];
+                    fz[i] += factor*positions[3*i + 2];
+                }
+            }
+
+            @Override
+            public double getEnergy(double[] pos) {
+                return 0;
+            }
+        };
+    }
+
+    @Test
+    public void testScheduler(){
+        int n = 6;
+        List<DeformableMesh3D> scheduled = new ArrayList<>();
+        List<DeformableMesh3D> sequential = new ArrayList<>();
+        for(int i = 0; i<n; i++){
+            DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(2);
+            mesh.translate(new double[]{i, 0.5*i, 0});
+            DeformableMesh3D copy = new DeformableMesh3D(mesh.positions.clone(), mesh.connection_index, mesh.triangle_index);
+            for(DeformableMesh3D m: new DeformableMesh3D[]{mesh, copy}){
+                m.ALPHA = 1.0;
+                m.BETA = 0.1;
+                m.GAMMA = 10;
+                m.addExternalEnergy(expansion(0.05*(i + 1)));
+            }
+            scheduled.add(mesh);
+            sequential.add(copy);
+        }
+
+        //each mesh records the positions of the next mesh while its forces are calculated.
+        List<double[]> seen = new ArrayList<>();
+        for(int i = 0; i<n; i++){
+            DeformableMesh3D next = scheduled.get((i + 1)%n);
+            seen.add(null);
+            int index = i;
+            scheduled.get(i).addExternalEnergy(new ExternalEnergy(){
+                @Override
+                public void updateForces(double[] positions, double[] fx, double[] fy, double[] fz) {
+                    seen.set(index, next.positions.clone());
+                }
+
+                @Override
+                public double getEnergy(double[] pos) {
+                    return 0;
+                }
+            });
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try{
+            DeformationScheduler scheduler = new DeformationScheduler(pool);
+            for(int step = 0; step<5; step++){
+                List<double[]> before = new ArrayList<>();
+                for(DeformableMesh3D mesh: scheduled){
+                    before.add(mesh.positions.clone());
+                }
+                scheduler.step(scheduled);
+                for(DeformableMesh3D mesh: sequential){
+                    mesh.update();
+                }
+                for(int i = 0; i<n; i++){
+                    Assert.assertArrayEquals(sequential.get(i).positions, scheduled.get(i).positions, 1e-12);
+                    int next = (i + 1)%n;
+                    Assert.assertArrayEquals(before.get(next), seen.get(i), 0);
+                    Assert.assertFalse(Arrays.equals(before.get(next), scheduled.get(next).positions));
+                }
+            }
+        } finally{
+            pool.shutdown();
+        }
+    }
 }
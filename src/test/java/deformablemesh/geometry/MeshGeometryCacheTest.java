@@ -0,0 +1,97 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.geometry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class MeshGeometryCacheTest {
+
+    static List<Triangle3D> touching(DeformableMesh3D mesh, Node3D node){
+        List<Triangle3D> touching = new ArrayList<>();
+        for(Triangle3D t: mesh.triangles){
+            if(t.hasNode(node)){
+                touching.add(t);
+            }
+        }
+        return touching;
+    }
+
+    static void assertCalculatorValues(DeformableMesh3D mesh, MeshGeometryCache cache){
+        for(Node3D node: mesh.nodes){
+            List<Triangle3D> triangles = touching(mesh, node);
+            double[] nc = CurvatureCalculator.getNormalAndCurvature(node, triangles);
+            double[] normal = cache.getNormal(node.index);
+            Assert.assertArrayEquals(new double[]{nc[0], nc[1], nc[2]}, normal, 1e-12);
+            Assert.assertEquals(nc[3], cache.getCurvature(node.index), 1e-9*Math.abs(nc[3]) + 1e-9);
+            double area = CurvatureCalculator.calculateMixedArea(node, triangles);
+            Assert.assertEquals(area, cache.getMixedArea(node.index), 1e-14);
+            double[] kappa = CurvatureCalculator.calculateMeanCurvatureNormal(node, triangles);
+            Assert.assertArrayEquals(kappa, cache.getMeanCurvatureNormal(node.index), 1e-9);
+        }
+    }
+
+    @Test
+    public void matchesCalculator(){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(2);
+        Random r = new Random(2);
+        for(int i = 0; i<mesh.positions.length; i++){
+            mesh.positions[i] *= 1 + 0.2*r.nextDouble();
+        }
+        MeshGeometryCache cache = mesh.getGeometryCache();
+        Assert.assertSame(cache, mesh.getGeometryCache());
+        assertCalculatorValues(mesh, cache);
+    }
+
+    @Test
+    public void onlyMovedTriangles(){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(2);
+        MeshGeometryCache cache = mesh.getGeometryCache();
+        cache.update();
+        long full = cache.recalculatedTriangles;
+        Assert.assertEquals(mesh.triangles.size(), full);
+
+        //nothing moved.
+        cache.update();
+        Assert.assertEquals(full, cache.recalculatedTriangles);
+
+        Node3D node = mesh.nodes.get(5);
+        double[] pt = node.getCoordinates();
+        pt[0] += 0.05;
+        node.setPosition(pt);
+        cache.getNormal(5);
+        Assert.assertEquals(full + touching(mesh, node).size(), cache.recalculatedTriangles);
+        assertCalculatorValues(mesh, cache);
+
+        //new topology
+        RayCastMesh.subDivideMesh(mesh);
+        assertCalculatorValues(mesh, cache);
+    }
+}
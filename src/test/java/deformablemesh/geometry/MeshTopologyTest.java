@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.geometry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class MeshTopologyTest {
+
+    @Test
+    public void matchesMaps(){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(2);
+        MeshTopology topo = mesh.getTopology();
+        Assert.assertSame(topo, mesh.getTopology());
+        Assert.assertEquals(mesh.nodes.size(), topo.vertexCount);
+        Assert.assertEquals(mesh.connections.size(), topo.connectionCount);
+        Assert.assertEquals(mesh.triangles.size(), topo.triangleCount);
+
+        Map<Node3D, List<Connection3D>> noder = mesh.getCurvatureMap();
+        Map<Connection3D, Set<Connection3D>> conner = mesh.getAdjacencyMap(noder);
+        for(Node3D node: mesh.nodes){
+            List<Connection3D> cons = noder.get(node);
+            Assert.assertEquals(cons.size(), topo.getDegree(node.index));
+            for(int i = 0; i<cons.size(); i++){
+                int c = topo.vertexConnections[topo.vertexConnectionOffsets[node.index] + i];
+                Assert.assertSame(cons.get(i), mesh.connections.get(c));
+            }
+        }
+        for(int a = 0; a<topo.connectionCount; a++){
+            //closed surface, each connection is part of two triangles.
+            Assert.assertEquals(2, topo.connectionTriangleOffsets[a + 1] - topo.connectionTriangleOffsets[a]);
+            Set<Connection3D> adjacent = conner.get(mesh.connections.get(a));
+            for(int b = 0; b<topo.connectionCount; b++){
+                if(a != b){
+                    Assert.assertEquals(adjacent.contains(mesh.connections.get(b)), topo.shareTriangle(a, b));
+                }
+            }
+        }
+        for(int t = 0; t<topo.triangleCount; t++){
+            for(int k = topo.vertexTriangleOffsets[mesh.triangle_index[3*t]]; ; k++){
+                if(topo.vertexTriangles[k] == t){
+                    break;
+                }
+                Assert.assertTrue(k < topo.vertexTriangleOffsets[mesh.triangle_index[3*t] + 1]);
+            }
+        }
+
+        RayCastMesh.subDivideMesh(mesh);
+        Assert.assertNotSame(topo, mesh.getTopology());
+        Assert.assertEquals(mesh.connections.size(), mesh.getTopology().connectionCount);
+    }
+
+    @Test
+    public void curvatureMatrix(){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(2);
+        int n = mesh.nodes.size();
+        mesh.ALPHA = 1.0;
+        mesh.GAMMA = 10;
+        mesh.BETA = 0.5;
+        double[][] matrix = new double[n][n];
+        mesh.assembleStiffnessMatrix((i, j, v) -> matrix[i][j] += v);
+
+        //curvature terms as they were calculated with the connection maps.
+        double[][] expected = new double[n][n];
+        double beta = mesh.BETA;
+        mesh.BETA = 0;
+        mesh.assembleStiffnessMatrix((i, j, v) -> expected[i][j] += v);
+        Map<Node3D, List<Connection3D>> noder = mesh.getCurvatureMap();
+        Map<Connection3D, Set<Connection3D>> conner = mesh.getAdjacencyMap(noder);
+        for(Node3D node: mesh.nodes){
+            List<Connection3D> cons = noder.get(node);
+            for(int i = 0; i<cons.size(); i++){
+                Connection3D a = cons.get(i);
+                Node3D other = a.A.equals(node) ? a.B : a.A;
+                Set<Connection3D> adjacent = conner.get(a);
+                for(int j = i + 1; j<cons.size(); j++){
+                    Connection3D b = cons.get(j);
+                    if(adjacent.contains(b)){
+                        continue;
+                    }
+                    Node3D another = b.A.equals(node) ? b.B : b.A;
+                    expected[node.index][another.index] -= beta;
+                    expected[node.index][other.index] -= beta;
+                    expected[node.index][node.index] += 2*beta;
+                }
+                for(Connection3D con: noder.get(other)){
+                    if(con.equals(a) || adjacent.contains(con)){
+                        continue;
+                    }
+                    Node3D another = con.A.equals(other) ? con.B : con.A;
+                    expected[node.index][node.index] += beta;
+                    expected[node.index][another.index] += beta;
+                    expected[node.index][other.index] -= 2*beta;
+                }
+            }
+        }
+        for(int i = 0; i<n; i++){
+            Assert.assertArrayEquals(expected[i], matrix[i], 1e-12);
+        }
+    }
+
+    @Test
+    public void curvatureNeighbors(){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(2);
+        CurvatureCalculator calculator = new CurvatureCalculator(mesh);
+        Map<Node3D, List<Connection3D>> noder = mesh.getCurvatureMap();
+        for(Node3D node: mesh.nodes){
+            Set<Node3D> expected = new HashSet<>();
+            for(Connection3D c: noder.get(node)){
+                expected.add(c.A == node ? c.B : c.A);
+            }
+            Assert.assertEquals(expected, calculator.getNeighbors(node));
+        }
+    }
+}
@@ -63,4 +63,35 @@ public class InterceptionMesh3DTest {
         }
 
     }
+
+    /**
+     * Compares the bounding volume hierarchy with checking every triangle, before and after the mesh has moved.
+     */
+    @Test
+    public void testBoundingVolumeHierarchy(){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(3);
+        for(int i = 0; i<mesh.positions.length; i++){
+            mesh.positions[i] *= 1 + 0.3*Math.sin(7*i);
+        }
+        InterceptingMesh3D bvh = new InterceptingMesh3D(mesh, true);
+        for(int round = 0; round<2; round++){
+            InterceptingMesh3D linear = new InterceptingMesh3D(mesh, false);
+            for(double[] angle: AngleGenerator.generator(25, 15)){
+                double[] o = {0.1*angle[1], -0.2*angle[2], 0.3*angle[0]};
+                List<Intersection> expected = linear.getIntersections(o, angle);
+                List<Intersection> found = bvh.getIntersections(o, angle);
+                Assert.assertEquals(expected.size(), found.size());
+                expected.sort((a, b) -> Double.compare(Vector3DOps.dot(a.location, angle), Vector3DOps.dot(b.location, angle)));
+                found.sort((a, b) -> Double.compare(Vector3DOps.dot(a.location, angle), Vector3DOps.dot(b.location, angle)));
+                for(int i = 0; i<expected.size(); i++){
+                    Assert.assertArrayEquals(expected.get(i).location, found.get(i).location, TOL);
+                }
+                Assert.assertEquals(linear.contains(o), bvh.contains(o));
+            }
+            for(int i = 0; i<mesh.positions.length; i++){
+                mesh.positions[i] += 0.1*Math.cos(3*i);
+            }
+            bvh.refit();
+        }
+    }
 }
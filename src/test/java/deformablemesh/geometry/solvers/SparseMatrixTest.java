@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.geometry.solvers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class SparseMatrixTest {
+    final static double TOL = 1e-8;
+
+    @Test
+    public void builderSumsDuplicates(){
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(3, 4);
+        builder.add(2, 1, 1.0);
+        builder.add(0, 0, 2.0);
+        builder.add(2, 1, 0.5);
+        builder.add(1, 2, -1.0);
+        builder.add(0, 2, 3.0);
+        builder.add(0, 0, 1.0);
+        SparseMatrix m = builder.build();
+
+        Assert.assertEquals(4, m.getNonZeroCount());
+        Assert.assertEquals(3.0, m.get(0, 0), TOL);
+        Assert.assertEquals(3.0, m.get(0, 2), TOL);
+        Assert.assertEquals(-1.0, m.get(1, 2), TOL);
+        Assert.assertEquals(1.5, m.get(2, 1), TOL);
+        Assert.assertEquals(0, m.get(1, 1), TOL);
+        Assert.assertFalse(m.isSymmetric(1e-12));
+    }
+
+    /**
+     * Creates a ring laplacian with a diagonal term, similar to a mesh stiffness matrix.
+     */
+    static double[][] ringMatrix(int n, double alpha, double gamma, double skew){
+        double[][] data = new double[n][n];
+        for(int i = 0; i<n; i++){
+            int j = (i + 1)%n;
+            data[i][i] += alpha + gamma;
+            data[j][j] += alpha;
+            data[i][j] -= alpha;
+            data[j][i] -= alpha*(1 - skew);
+            data[j][j] -= alpha*skew;
+        }
+        return data;
+    }
+
+    static SparseMatrix toSparse(double[][] data){
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(data.length, data.length*3);
+        for(int i = 0; i<data.length; i++){
+            for(int j = 0; j<data.length; j++){
+                if(data[i][j] != 0){
+                    builder.add(i, j, data[i][j]);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    void compareSolvers(double[][] data, boolean symmetric){
+        int n = data.length;
+        Random ng = new Random(1);
+        double[] b = new double[n];
+        double[] guess = new double[n];
+        for(int i = 0; i<n; i++){
+            b[i] = ng.nextDouble() - 0.5;
+            guess[i] = ng.nextDouble() - 0.5;
+        }
+
+        SparseIterativeSolver sparse = new SparseIterativeSolver(toSparse(data), 1e-14, 1000);
+        Assert.assertEquals(symmetric, sparse.isSymmetric());
+
+        double[] expected = new DenseLUSolver(data).solve(b, null);
+        Assert.assertArrayEquals(expected, sparse.solve(b, guess), TOL);
+        Assert.assertArrayEquals(expected, sparse.solve(b, null), TOL);
+    }
+
+    @Test
+    public void conjugateGradient(){
+        compareSolvers(ringMatrix(50, 1.0, 0.1, 0), true);
+    }
+
+    @Test
+    public void biConjugateGradient(){
+        compareSolvers(ringMatrix(50, 1.0, 0.1, 0.25), false);
+    }
+
+    @Test
+    public void reportsNonConvergence(){
+        for(double skew: new double[]{0, 0.25}){
+            double[][] data = ringMatrix(50, 1.0, 0.1, skew);
+            SparseIterativeSolver sparse = new SparseIterativeSolver(toSparse(data), 1e-14, 2);
+            double[] b = new double[data.length];
+            for(int i = 0; i<b.length; i++){
+                b[i] = Math.sin(i);
+            }
+            try{
+                sparse.solve(b, null);
+                Assert.fail("an unconverged solution should not be returned.");
+            } catch(RuntimeException e){
+                //expected
+            }
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.io;
+
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.RayCastMesh;
+import deformablemesh.track.MeshTracker;
+import deformablemesh.track.Track;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+public class IndexedMeshFileTest {
+
+    static List<Track> createTracks(){
+        List<Track> tracks = new ArrayList<>();
+        for(int t = 0; t<3; t++){
+            Track track = new Track("track-" + t);
+            for(int f = t; f<t + 4; f++){
+                DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(1);
+                for(int i = 0; i<mesh.positions.length; i++){
+                    mesh.positions[i] = mesh.positions[i]*0.1 + 0.01*f + 0.2*t;
+                }
+                track.addMesh(f, mesh);
+            }
+            tracks.add(track);
+        }
+        return tracks;
+    }
+
+    static void assertSameMesh(DeformableMesh3D expected, DeformableMesh3D actual){
+        Assert.assertArrayEquals(expected.positions, actual.positions, 0);
+        Assert.assertArrayEquals(expected.connection_index, actual.connection_index);
+        Assert.assertArrayEquals(expected.triangle_index, actual.triangle_index);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        List<Track> tracks = createTracks();
+        MeshTracker tracker = new MeshTracker();
+        tracker.addMeshTracks(tracks);
+
+        File file = File.createTempFile("indexed", ".bmf");
+        file.deleteOnExit();
+        MeshWriter.saveIndexedMeshes(file, tracker);
+
+        Assert.assertTrue(IndexedMeshFile.isIndexed(file));
+
+        List<Track> loaded = MeshReader.loadMeshes(file);
+        Assert.assertEquals(tracks.size(), loaded.size());
+        for(int i = 0; i<tracks.size(); i++){
+            Track expected = tracks.get(i);
+            Track actual = loaded.get(i);
+            Assert.assertEquals(expected.getName(), actual.getName());
+            for(Integer f: expected.getTrack().keySet()){
+                assertSameMesh(expected.getMesh(f), actual.getMesh(f));
+            }
+        }
+
+        try(IndexedMeshFile indexed = new IndexedMeshFile(file)){
+            Assert.assertEquals(tracks.size(), indexed.getTrackCount());
+            assertSameMesh(tracks.get(1).getMesh(3), indexed.readMesh(1, 3));
+            Assert.assertNull(indexed.readMesh(1, 0));
+
+            List<Track> frame = indexed.readFrame(3);
+            Assert.assertEquals(3, frame.size());
+            for(Track track: frame){
+                Assert.assertTrue(track.containsKey(3));
+            }
+        }
+    }
+
+    @Test
+    public void unindexedFallback() throws IOException {
+        List<Track> tracks = createTracks();
+        MeshTracker tracker = new MeshTracker();
+        tracker.addMeshTracks(tracks);
+
+        File file = File.createTempFile("unindexed", ".bmf");
+        file.deleteOnExit();
+        MeshWriter.saveMeshesUnindexed(file, tracker);
+
+        Assert.assertFalse(IndexedMeshFile.isIndexed(file));
+        List<Track> loaded = MeshReader.loadMeshes(file);
+        Assert.assertEquals(tracks.size(), loaded.size());
+        assertSameMesh(tracks.get(2).getMesh(4), loaded.get(2).getMesh(4));
+    }
+
+    @Test
+    public void unindexedByDefault() throws IOException {
+        MeshTracker tracker = new MeshTracker();
+        tracker.addMeshTracks(createTracks());
+
+        File file = File.createTempFile("default", ".bmf");
+        file.deleteOnExit();
+        MeshWriter.saveMeshes(file, tracker);
+        try(DataInputStream dis = new DataInputStream(new FileInputStream(file))){
+            Assert.assertEquals(-1, dis.readInt());
+        }
+        Assert.assertFalse(IndexedMeshFile.isIndexed(file));
+
+        boolean indexed = MeshWriter.isDefaultIndexed();
+        try{
+            MeshWriter.setDefaultIndexed(true);
+            MeshWriter.saveMeshes(file, tracker);
+            Assert.assertTrue(IndexedMeshFile.isIndexed(file));
+        } finally{
+            MeshWriter.setDefaultIndexed(indexed);
+        }
+    }
+
+    @Test
+    public void replaceLazySource() throws IOException {
+        List<Track> tracks = createTracks();
+        File file = File.createTempFile("replace", ".bmf");
+        file.deleteOnExit();
+        MeshTracker tracker = new MeshTracker();
+        tracker.addMeshTracks(tracks);
+        MeshWriter.saveIndexedMeshes(file, tracker);
+        PosixFileAttributeView view = Files.getFileAttributeView(file.toPath(), PosixFileAttributeView.class);
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+        if(view != null){
+            Files.setPosixFilePermissions(file.toPath(), permissions);
+        }
+
+        List<Track> lazy = MeshReader.loadLazyMeshes(file);
+        MeshTracker lazyTracker = new MeshTracker();
+        lazyTracker.addMeshTracks(lazy);
+        MeshWriter.saveIndexedMeshes(file, lazyTracker);
+        //the saved meshes were read from the replaced file.
+        MeshWriter.saveMeshes(file, lazyTracker);
+
+        if(view != null){
+            Assert.assertEquals(permissions, Files.getPosixFilePermissions(file.toPath()));
+        }
+        List<Track> loaded = MeshReader.loadMeshes(file);
+        for(int i = 0; i<tracks.size(); i++){
+            for(Integer f: tracks.get(i).getFrames()){
+                assertSameMesh(tracks.get(i).getMesh(f), lazy.get(i).getMesh(f));
+                assertSameMesh(tracks.get(i).getMesh(f), loaded.get(i).getMesh(f));
+            }
+        }
+    }
+
+    @Test
+    public void lazyTracks() throws IOException {
+        List<Track> tracks = createTracks();
+        MeshTracker tracker = new MeshTracker();
+        tracker.addMeshTracks(tracks);
+
+        File indexed = File.createTempFile("lazy-indexed", ".bmf");
+        indexed.deleteOnExit();
+        MeshWriter.saveIndexedMeshes(indexed, tracker);
+        File unindexed = File.createTempFile("lazy-unindexed", ".bmf");
+        unindexed.deleteOnExit();
+        MeshWriter.saveMeshesUnindexed(unindexed, tracker);
+
+        for(File file: new File[]{indexed, unindexed}){
+            List<Track> lazy = MeshReader.loadLazyMeshes(file);
+            Assert.assertEquals(tracks.size(), lazy.size());
+            for(int i = 0; i<tracks.size(); i++){
+                Track expected = tracks.get(i);
+                Track actual = lazy.get(i);
+                Assert.assertEquals(expected.getFrames(), actual.getFrames());
+                Assert.assertEquals(expected.getFirstFrame(), actual.getFirstFrame());
+                Assert.assertEquals(expected.getLastFrame(), actual.getLastFrame());
+                for(Integer f: expected.getFrames()){
+                    DeformableMesh3D mesh = actual.getMesh(f);
+                    assertSameMesh(expected.getMesh(f), mesh);
+                    Assert.assertSame(mesh, actual.getMesh(f));
+                    Assert.assertEquals((int)f, actual.getFrame(mesh));
+                    Assert.assertEquals(actual.getColor(), mesh.getColor());
+                }
+            }
+
+            Track first = lazy.get(0);
+            DeformableMesh3D replacement = RayCastMesh.sphereRayCastMesh(0);
+            first.addMesh(1, replacement);
+            Assert.assertSame(replacement, first.getMesh(1));
+            Assert.assertEquals(4, first.size());
+
+            DeformableMesh3D removed = first.getMesh(2);
+            first.remove(removed);
+            Assert.assertFalse(first.containsKey(2));
+            Assert.assertEquals(3, first.getTrack().size());
+        }
+    }
+
+    @Test
+    public void compactRoundTrip() throws IOException {
+        List<Track> tracks = createTracks();
+        //a new topology part way through the track.
+        DeformableMesh3D finer = RayCastMesh.sphereRayCastMesh(2);
+        tracks.get(0).addMesh(4, finer);
+
+        File full = File.createTempFile("full", ".bmf");
+        full.deleteOnExit();
+        MeshWriter.saveMeshes(full, tracks);
+
+        for(CompactMeshFormat.Positions encoding: CompactMeshFormat.Positions.values()){
+            File file = File.createTempFile("compact", ".bmf");
+            file.deleteOnExit();
+            MeshWriter.saveCompactMeshes(file, tracks, encoding);
+            Assert.assertTrue(IndexedMeshFile.isIndexed(file));
+            Assert.assertTrue(file.length() < full.length()/2);
+
+            double tolerance = encoding == CompactMeshFormat.Positions.DOUBLE ? 0 :
+                    encoding == CompactMeshFormat.Positions.FLOAT ? 1e-7 : 2e-5;
+            List<Track> loaded = MeshReader.loadMeshes(file);
+            List<Track> lazy = MeshReader.loadLazyMeshes(file);
+            for(int i = 0; i<tracks.size(); i++){
+                Track expected = tracks.get(i);
+                for(Integer f: expected.getFrames()){
+                    for(Track actual: new Track[]{loaded.get(i), lazy.get(i)}){
+                        DeformableMesh3D e = expected.getMesh(f);
+                        DeformableMesh3D a = actual.getMesh(f);
+                        Assert.assertArrayEquals(e.positions, a.positions, tolerance);
+                        Assert.assertArrayEquals(e.connection_index, a.connection_index);
+                        Assert.assertArrayEquals(e.triangle_index, a.triangle_index);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parallelDecode() throws IOException {
+        List<Track> tracks = createTracks();
+        MeshTracker tracker = new MeshTracker();
+        tracker.addMeshTracks(tracks);
+
+        File indexed = File.createTempFile("parallel-indexed", ".bmf");
+        indexed.deleteOnExit();
+        MeshWriter.saveIndexedMeshes(indexed, tracker);
+        File unindexed = File.createTempFile("parallel-unindexed", ".bmf");
+        unindexed.deleteOnExit();
+        MeshWriter.saveMeshesUnindexed(unindexed, tracker);
+
+        for(File file: new File[]{indexed, unindexed}){
+            MeshReader reader = new MeshReader(file);
+            reader.setParallel(true);
+            List<Track> loaded = reader.loadMeshes();
+            Assert.assertEquals(1.0, reader.progress(), 1e-12);
+            Assert.assertEquals(tracks.size(), loaded.size());
+            for(int i = 0; i<tracks.size(); i++){
+                Assert.assertEquals(tracks.get(i).getName(), loaded.get(i).getName());
+                for(Integer f: tracks.get(i).getFrames()){
+                    assertSameMesh(tracks.get(i).getMesh(f), loaded.get(i).getMesh(f));
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.io;
+
+import deformablemesh.MeshImageStack;
+import deformablemesh.track.Track;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ShortProcessor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+public class LabelImageExporterTest {
+
+    static MeshImageStack blankStack(int w, int h, int d){
+        ImageStack stack = new ImageStack(w, h);
+        for(int i = 0; i<d; i++){
+            stack.addSlice(new ShortProcessor(w, h));
+        }
+        return new MeshImageStack(new ImagePlus("blank", stack));
+    }
+
+    static String description(ByteBuffer tiff){
+        int ifd = tiff.getInt(4);
+        int entries = tiff.getShort(ifd);
+        for(int i = 0; i<entries; i++){
+            int entry = ifd + 2 + 12*i;
+            if(tiff.getShort(entry) == TiffStackWriter.IMAGE_DESCRIPTION){
+                byte[] bytes = new byte[tiff.getInt(entry + 4)];
+                tiff.position(tiff.getInt(entry + 8));
+                tiff.get(bytes);
+                return new String(bytes, StandardCharsets.US_ASCII);
+            }
+        }
+        return null;
+    }
+
+    static int stripOffset(ByteBuffer tiff, int ifd){
+        int entries = tiff.getShort(ifd);
+        for(int i = 0; i<entries; i++){
+            int entry = ifd + 2 + 12*i;
+            if(tiff.getShort(entry) == TiffStackWriter.STRIP_OFFSETS){
+                return tiff.getInt(entry + 8);
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void labelHyperstack() throws IOException {
+        MeshImageStack stack = blankStack(32, 30, 12);
+        List<Track> tracks = MeshExporterTest.createTracks();
+        LabelImageExporter exporter = new LabelImageExporter(stack, tracks, LabelImageExporter.Type.LABELS);
+        exporter.setFramesInFlight(2);
+        File file = File.createTempFile("labels", ".tif");
+        file.deleteOnExit();
+        int[] count = {0};
+        exporter.writeHyperstack(file, 0, 6, (frame, completed, total) -> {
+            Assert.assertEquals(frame + 1, completed);
+            Assert.assertEquals(7, total);
+            count[0]++;
+        });
+        Assert.assertEquals(7, count[0]);
+
+        ByteBuffer tiff = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.BIG_ENDIAN);
+        String description = description(tiff);
+        Assert.assertTrue(description.contains("images=84\n"));
+        Assert.assertTrue(description.contains("slices=12\n"));
+        Assert.assertTrue(description.contains("frames=7\n"));
+
+        int ifd = tiff.getInt(4);
+        int images = 0;
+        int sliceBytes = 32*30*2;
+        while(ifd != 0){
+            Assert.assertEquals(stripOffset(tiff, 8) + images*sliceBytes, stripOffset(tiff, ifd));
+            images++;
+            ifd = tiff.getInt(ifd + 2 + 12*tiff.getShort(ifd));
+        }
+        Assert.assertEquals(84, images);
+
+        boolean[] labels = new boolean[3];
+        for(int frame = 0; frame < 7; frame++){
+            short[][] expected = (short[][])exporter.rasterize(frame);
+            for(int z = 0; z<12; z++){
+                int offset = stripOffset(tiff, 8) + (frame*12 + z)*sliceBytes;
+                for(int i = 0; i<expected[z].length; i++){
+                    short v = tiff.getShort(offset + 2*i);
+                    Assert.assertEquals(expected[z][i], v);
+                    labels[v] = true;
+                }
+            }
+        }
+        Assert.assertTrue(labels[1]);
+        Assert.assertTrue(labels[2]);
+    }
+
+    @Test
+    public void failedExportIsDeleted() throws IOException {
+        MeshImageStack stack = blankStack(32, 30, 12);
+        LabelImageExporter exporter = new LabelImageExporter(stack, MeshExporterTest.createTracks(), LabelImageExporter.Type.LABELS);
+        File file = File.createTempFile("failed", ".tif");
+        file.deleteOnExit();
+        try{
+            exporter.writeHyperstack(file, 0, 6, (frame, completed, total) -> {
+                if(frame == 2){
+                    throw new IllegalStateException("export cancelled");
+                }
+            });
+            Assert.fail("the listener exception should stop the export.");
+        } catch(IllegalStateException e){
+            //expected
+        }
+        //the unwritten frames are not padded, the partial file is removed.
+        Assert.assertFalse(file.exists());
+    }
+
+    @Test
+    public void mosaicFrames() throws IOException {
+        MeshImageStack stack = blankStack(32, 30, 12);
+        List<Track> tracks = MeshExporterTest.createTracks();
+        LabelImageExporter exporter = new LabelImageExporter(stack, tracks, LabelImageExporter.Type.MOSAIC);
+        File base = File.createTempFile("mosaic", ".tif");
+        base.deleteOnExit();
+        List<File> files = exporter.writeFrames(base, 2, 3, null);
+        Assert.assertEquals(2, files.size());
+        for(int f = 0; f<2; f++){
+            File file = files.get(f);
+            file.deleteOnExit();
+            Assert.assertEquals(LabelImageExporter.getFrameFile(base, f + 2), file);
+            ByteBuffer tiff = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.BIG_ENDIAN);
+            Assert.assertTrue(description(tiff).contains("images=12\n"));
+
+            int[][] expected = (int[][])exporter.rasterize(f + 2);
+            int offset = stripOffset(tiff, 8);
+            for(int z = 0; z<12; z++){
+                for(int i = 0; i<expected[z].length; i++){
+                    int p = offset + 3*(z*expected[z].length + i);
+                    int rgb = ((tiff.get(p) & 0xff) << 16) | ((tiff.get(p + 1) & 0xff) << 8) | (tiff.get(p + 2) & 0xff);
+                    Assert.assertEquals(expected[z][i] & 0xffffff, rgb);
+                }
+            }
+        }
+    }
+}
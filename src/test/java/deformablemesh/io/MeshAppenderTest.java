@@ -0,0 +1,135 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.io;
+
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.RayCastMesh;
+import deformablemesh.track.Track;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+public class MeshAppenderTest {
+
+    static DeformableMesh3D createMesh(int frame){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(2);
+        for(int i = 0; i<mesh.positions.length; i++){
+            mesh.positions[i] = mesh.positions[i]*0.1 + 0.01*frame;
+        }
+        return mesh;
+    }
+
+    static void assertMeshes(File file, int count) throws IOException {
+        List<Track> tracks = MeshReader.loadMeshes(file);
+        Assert.assertEquals(1, tracks.size());
+        Track track = tracks.get(0);
+        Assert.assertEquals(count, track.size());
+        for(int i = 0; i<count; i++){
+            DeformableMesh3D expected = createMesh(i);
+            DeformableMesh3D actual = track.getMesh(i);
+            Assert.assertArrayEquals(expected.positions, actual.positions, 0);
+            Assert.assertArrayEquals(expected.connection_index, actual.connection_index);
+            Assert.assertArrayEquals(expected.triangle_index, actual.triangle_index);
+        }
+    }
+
+    @Test
+    public void appendAndReopen() throws IOException {
+        File file = File.createTempFile("appended", ".bmf");
+        file.deleteOnExit();
+
+        MeshWriter writer = new MeshWriter(file);
+        writer.open();
+        for(int i = 0; i<3; i++){
+            writer.write(createMesh(i), i);
+        }
+        //flushed after each mesh, so it can be read before closing.
+        assertMeshes(file, 3);
+        writer.close();
+
+        //bytes from an interrupted write are not counted by the header and are replaced.
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")){
+            raf.seek(raf.length());
+            raf.writeInt(3);
+            raf.writeInt(1000);
+        }
+
+        MeshWriter reopened = new MeshWriter(file);
+        reopened.write(createMesh(3), 3);
+        reopened.close();
+        assertMeshes(file, 4);
+    }
+
+    @Test
+    public void trailingBytesRemoved() throws IOException {
+        File file = File.createTempFile("trailing", ".bmf");
+        file.deleteOnExit();
+        File clean = File.createTempFile("clean", ".bmf");
+        clean.deleteOnExit();
+        for(File f: new File[]{file, clean}){
+            MeshWriter writer = new MeshWriter(f);
+            writer.open();
+            for(int i = 0; i<2; i++){
+                writer.write(createMesh(i), i);
+            }
+            writer.close();
+        }
+
+        //longer than the mesh that replaces it.
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")){
+            raf.setLength(raf.length() + 10*clean.length());
+        }
+        for(File f: new File[]{file, clean}){
+            MeshWriter writer = new MeshWriter(f);
+            writer.write(createMesh(2), 2);
+            writer.close();
+        }
+        Assert.assertEquals(clean.length(), file.length());
+        assertMeshes(file, 3);
+    }
+
+    @Test
+    public void smallBuffer() throws IOException {
+        File file = File.createTempFile("buffered", ".bmf");
+        file.deleteOnExit();
+        int original = MeshAppender.defaultBufferSize;
+        MeshAppender.setDefaultBufferSize(1024);
+        try(MeshAppender appender = MeshAppender.create(file)){
+            appender.setDurability(MeshAppender.Durability.BUFFERED);
+            for(int i = 0; i<5; i++){
+                appender.append(createMesh(i), i);
+            }
+            Assert.assertEquals(5, appender.getMeshCount());
+        } finally{
+            MeshAppender.setDefaultBufferSize(original);
+        }
+        assertMeshes(file, 5);
+    }
+}
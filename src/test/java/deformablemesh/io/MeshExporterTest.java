@@ -0,0 +1,137 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.io;
+
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.RayCastMesh;
+import deformablemesh.track.Track;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+public class MeshExporterTest {
+
+    static List<Track> createTracks(){
+        List<Track> tracks = new ArrayList<>();
+        for(int t = 0; t<2; t++){
+            Track track = new Track("track-" + t);
+            for(int f = t; f<t + 5; f++){
+                DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(1);
+                for(int i = 0; i<mesh.positions.length; i++){
+                    mesh.positions[i] = mesh.positions[i]*0.1 + 0.3*t;
+                }
+                track.addMesh(f, mesh);
+            }
+            tracks.add(track);
+        }
+        return tracks;
+    }
+
+    @Test
+    public void binaryStl() throws IOException {
+        List<Track> tracks = createTracks();
+        File file = File.createTempFile("binary", ".stl");
+        file.deleteOnExit();
+        double[] offset = {0.5, 0.5, 0.5};
+        MeshExporter.writeBinaryStl(file, tracks, offset, 2.0, 1);
+
+        DeformableMesh3D first = tracks.get(0).getMesh(1);
+        DeformableMesh3D second = tracks.get(1).getMesh(1);
+        int triangles = first.triangles.size() + second.triangles.size();
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        Assert.assertEquals(84 + 50*triangles, buffer.capacity());
+        Assert.assertEquals(triangles, buffer.getInt(80));
+
+        int[] indexes = first.triangles.get(0).getIndices();
+        for(int v = 0; v<3; v++){
+            for(int k = 0; k<3; k++){
+                float expected = (float)((first.positions[3*indexes[v] + k] + offset[k])*2.0);
+                Assert.assertEquals(expected, buffer.getFloat(84 + 12 + 12*v + 4*k), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void binaryPly() throws IOException {
+        List<Track> tracks = createTracks();
+        File file = File.createTempFile("binary", ".ply");
+        file.deleteOnExit();
+        MeshExporter.writeBinaryPly(file, tracks, 2, 1.0);
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        String text = new String(bytes, StandardCharsets.US_ASCII);
+        int end = text.indexOf("end_header\n") + "end_header\n".length();
+        Assert.assertTrue(text.startsWith("ply\nformat binary_little_endian 1.0\n"));
+
+        int vertices = 0;
+        int faces = 0;
+        for(Track track: tracks){
+            vertices += track.getMesh(2).positions.length/3;
+            faces += track.getMesh(2).triangles.size();
+        }
+        Assert.assertTrue(text.contains("element vertex " + vertices + "\n"));
+        Assert.assertTrue(text.contains("element face " + faces + "\n"));
+        Assert.assertEquals(end + 15*vertices + 13*faces, bytes.length);
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        DeformableMesh3D mesh = tracks.get(0).getMesh(2);
+        Assert.assertEquals((float)mesh.positions[0], buffer.getFloat(end), 0f);
+        Assert.assertEquals(tracks.get(0).getColor().getRed(), buffer.get(end + 12) & 0xff);
+    }
+
+    @Test
+    public void exportFrames() throws IOException {
+        List<Track> tracks = createTracks();
+        File dir = Files.createTempDirectory("frames").toFile();
+        dir.deleteOnExit();
+        File base = new File(dir, "cells.stl");
+        Set<Integer> reported = new ConcurrentSkipListSet<>();
+        List<File> files = MeshExporter.exportFrames(
+                base, tracks, MeshExporter.Format.STL, 2, 10, new double[3], 1.0,
+                (frame, completed, total) -> reported.add(frame)
+        );
+        //frames 2 to 5 have meshes.
+        Assert.assertEquals(4, files.size());
+        Assert.assertEquals(4, reported.size());
+        for(int i = 0; i<files.size(); i++){
+            File f = files.get(i);
+            f.deleteOnExit();
+            Assert.assertEquals(MeshExporter.getFrameFile(base, i + 2, MeshExporter.Format.STL), f);
+            Assert.assertTrue(f.exists());
+        }
+        Assert.assertEquals("cells-t0002.stl", files.get(0).getName());
+    }
+}
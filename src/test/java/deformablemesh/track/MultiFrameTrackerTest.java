@@ -0,0 +1,150 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.track;
+
+import deformablemesh.SegmentationModel;
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.RayCastMesh;
+import deformablemesh.util.actions.UndoableActions;
+import deformablemesh.voxels.MeshOverlapCalculator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class MultiFrameTrackerTest {
+
+    static DeformableMesh3D sphere(double r, double x, double y, double z){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(2);
+        double[] center = {x, y, z};
+        for(int i = 0; i<mesh.positions.length; i++){
+            mesh.positions[i] = mesh.positions[i]*r + center[i%3];
+        }
+        return new DeformableMesh3D(mesh.positions, mesh.connection_index, mesh.triangle_index);
+    }
+
+    @Test
+    public void gapsAndDivisions(){
+        //each mesh starts in its own track, the label is the cell it belongs to.
+        List<Track> tracks = new ArrayList<>();
+        Map<DeformableMesh3D, Integer> labels = new IdentityHashMap<>();
+        for(int f = 0; f<6; f++){
+            Map<DeformableMesh3D, Integer> frame = new IdentityHashMap<>();
+            frame.put(sphere(0.08, -0.3 + 0.01*f, -0.3, 0), 0);
+            if(f != 3){
+                frame.put(sphere(0.08, 0.3, -0.3, 0.005*f), 1);
+            }
+            if(f < 3){
+                frame.put(sphere(0.08, 0, 0.3, 0), 2);
+            } else{
+                frame.put(sphere(0.0635, -0.03, 0.3, 0), 3);
+                frame.put(sphere(0.0635, 0.03, 0.3, 0), 4);
+            }
+            for(Map.Entry<DeformableMesh3D, Integer> entry: frame.entrySet()){
+                Track track = new Track("t" + tracks.size());
+                track.addMesh(f, entry.getKey());
+                tracks.add(track);
+                labels.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        MultiFrameTracker tracker = new MultiFrameTracker(new MeshOverlapCalculator(1.0/64));
+        tracker.link(tracks, 0, 5);
+        Assert.assertEquals(4, tracker.getTrackCount());
+        Assert.assertEquals(1, tracker.getDivisionCount());
+
+        Set<Set<Integer>> found = new HashSet<>();
+        for(Map<Integer, DeformableMesh3D> chain: tracker.chains){
+            Set<Integer> cells = new HashSet<>();
+            for(DeformableMesh3D mesh: chain.values()){
+                cells.add(labels.get(mesh));
+            }
+            found.add(cells);
+            if(cells.contains(1)){
+                Assert.assertEquals(5, chain.size());
+                Assert.assertFalse(chain.containsKey(3));
+            }
+        }
+        Assert.assertTrue(found.contains(setOf(0)));
+        Assert.assertTrue(found.contains(setOf(1)));
+        //one daughter continues the mother track, the other starts a new track.
+        Assert.assertTrue(found.contains(setOf(2, 3)) || found.contains(setOf(2, 4)));
+        Assert.assertTrue(found.contains(setOf(3)) || found.contains(setOf(4)));
+
+        //same input gives the same tracks.
+        List<Map<Integer, DeformableMesh3D>> chains = tracker.chains;
+        tracker.link(tracks, 0, 5);
+        Assert.assertEquals(chains, tracker.chains);
+
+        SegmentationModel model = new SegmentationModel();
+        model.setMeshes(tracks);
+        UndoableActions action = tracker.createAction(model);
+        action.perform();
+        List<Track> linked = model.getAllTracks();
+        Assert.assertEquals(4, linked.size());
+        int meshes = 0;
+        for(Track track: linked){
+            meshes += track.size();
+        }
+        Assert.assertEquals(labels.size(), meshes);
+
+        action.undo();
+        Assert.assertEquals(tracks, model.getAllTracks());
+        for(Track track: tracks){
+            Assert.assertEquals(1, track.size());
+        }
+    }
+
+    @Test
+    public void noDivisionWithoutSuccessor(){
+        //b lies inside a with a low overlap, ending a and dividing into b costs less than linking them.
+        MultiFrameTracker tracker = new MultiFrameTracker(new MeshOverlapCalculator(1.0/64));
+        List<MultiFrameTracker.Candidate> candidates = new ArrayList<>();
+        candidates.add(new MultiFrameTracker.Candidate(0, 1, 0.8, 0.2));
+        int[] successors = new int[2];
+        int[] daughters = new int[2];
+        tracker.solve(2, candidates, successors, daughters);
+        for(int i = 0; i<2; i++){
+            if(daughters[i] >= 0){
+                Assert.assertTrue(successors[i] >= 0);
+            }
+        }
+        Assert.assertEquals(-1, daughters[0]);
+    }
+
+    static Set<Integer> setOf(int... values){
+        Set<Integer> set = new HashSet<>();
+        for(int v: values){
+            set.add(v);
+        }
+        return set;
+    }
+}
@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.track;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class SparseAssignmentTest {
+
+    static long bruteForce(int row, boolean[] used, long[][] costs){
+        if(row == costs.length){
+            return 0;
+        }
+        long best = Long.MAX_VALUE;
+        for(int j = 0; j<costs.length; j++){
+            if(used[j] || costs[row][j] < 0){
+                continue;
+            }
+            used[j] = true;
+            long rest = bruteForce(row + 1, used, costs);
+            used[j] = false;
+            if(rest != Long.MAX_VALUE && rest + costs[row][j] < best){
+                best = rest + costs[row][j];
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void randomProblems(){
+        Random ng = new Random(1);
+        for(int trial = 0; trial<200; trial++){
+            int n = 1 + ng.nextInt(7);
+            //-1 is a missing entry, the diagonal is always available.
+            long[][] costs = new long[n][n];
+            int[] offsets = new int[n + 1];
+            List<Integer> columns = new ArrayList<>();
+            List<Long> values = new ArrayList<>();
+            for(int i = 0; i<n; i++){
+                for(int j = 0; j<n; j++){
+                    if(i == j || ng.nextDouble() < 0.4){
+                        costs[i][j] = ng.nextInt(20);
+                        columns.add(j);
+                        values.add(costs[i][j]);
+                    } else{
+                        costs[i][j] = -1;
+                    }
+                }
+                offsets[i + 1] = columns.size();
+            }
+            SparseAssignment assignment = new SparseAssignment(
+                    n, offsets, columns.stream().mapToInt(Integer::intValue).toArray(),
+                    values.stream().mapToLong(Long::longValue).toArray()
+            );
+            int[] solution = assignment.solve();
+            boolean[] used = new boolean[n];
+            long total = 0;
+            for(int i = 0; i<n; i++){
+                int j = solution[i];
+                Assert.assertTrue(costs[i][j] >= 0);
+                Assert.assertFalse(used[j]);
+                used[j] = true;
+                total += costs[i][j];
+            }
+            Assert.assertEquals(bruteForce(0, new boolean[n], costs), total);
+            Assert.assertArrayEquals(solution, assignment.solve());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void infeasible(){
+        //both rows can only use column 0.
+        new SparseAssignment(2, new int[]{0, 1, 2}, new int[]{0, 0}, new long[]{1, 1}).solve();
+    }
+}
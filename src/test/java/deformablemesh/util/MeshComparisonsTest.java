@@ -0,0 +1,64 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.util;
+
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.RayCastMesh;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MeshComparisonsTest {
+
+    static DeformableMesh3D sphere(double r, double x){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(3);
+        for(int i = 0; i<mesh.positions.length; i++){
+            mesh.positions[i] = mesh.positions[i]*r + (i%3 == 0 ? x : 0);
+        }
+        return new DeformableMesh3D(mesh.positions, mesh.connection_index, mesh.triangle_index);
+    }
+
+    @Test
+    public void intervals(){
+        double[] a = {0, 1, 2, 4};
+        double[] b = {0.5, 2.5, 3, 5};
+        Assert.assertEquals(0.5 + 0.5 + 1, MeshComparisons.intervalOverlap(a, b), 1e-12);
+        Assert.assertEquals(0, MeshComparisons.intervalOverlap(a, new double[0]), 0);
+    }
+
+    @Test
+    public void sphereOverlap(){
+        double r = 0.2;
+        DeformableMesh3D a = sphere(r, 0);
+        Assert.assertEquals(1, MeshComparisons.getMeshOverlap(a, sphere(r, 0)), 0.02);
+
+        double d = 0.15;
+        double lens = Math.PI*(4*r + d)*(2*r - d)*(2*r - d)/12;
+        double volume = a.calculateVolume();
+        Assert.assertEquals(lens/(2*volume - lens), MeshComparisons.getMeshOverlap(a, sphere(r, d)), 0.02);
+
+        Assert.assertEquals(0, MeshComparisons.getMeshOverlap(a, sphere(r, 0.5)), 0);
+    }
+}
@@ -0,0 +1,92 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class PointKDTreeTest {
+
+    static int bruteForce(List<double[]> points, boolean[] removed, double[] p, double maxDistance){
+        double best = maxDistance*maxDistance;
+        int index = -1;
+        for(int i = 0; i<points.size(); i++){
+            if(removed[i]){
+                continue;
+            }
+            double[] q = points.get(i);
+            double dx = q[0] - p[0];
+            double dy = q[1] - p[1];
+            double dz = q[2] - p[2];
+            double d = dx*dx + dy*dy + dz*dz;
+            if(d < best){
+                best = d;
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    @Test
+    public void nearestWithRemoval(){
+        Random r = new Random(1);
+        List<double[]> points = new ArrayList<>();
+        for(int i = 0; i<2000; i++){
+            //some duplicates to check ties.
+            if(i%10 == 9){
+                points.add(points.get(r.nextInt(i)).clone());
+            } else{
+                points.add(new double[]{r.nextDouble(), r.nextDouble(), r.nextDouble()});
+            }
+        }
+        PointKDTree tree = new PointKDTree(points);
+        boolean[] removed = new boolean[points.size()];
+        int remaining = points.size();
+        for(int i = 0; i<3000; i++){
+            double[] p = {r.nextDouble(), r.nextDouble(), r.nextDouble()};
+            double max = r.nextDouble()*0.2;
+            int expected = bruteForce(points, removed, p, max);
+            Assert.assertEquals(expected, tree.nearest(p, max));
+            if(expected >= 0){
+                tree.remove(expected);
+                removed[expected] = true;
+                remaining--;
+            }
+            Assert.assertEquals(remaining, tree.size());
+        }
+    }
+
+    @Test
+    public void empty(){
+        PointKDTree tree = new PointKDTree(new ArrayList<>());
+        Assert.assertEquals(0, tree.size());
+        Assert.assertEquals(-1, tree.nearest(new double[3], 10));
+    }
+}
@@ -0,0 +1,80 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.voxels;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FrameCacheTest {
+
+    @Test
+    public void largeFramesAreNotPrefetched() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        AtomicInteger backgroundLoads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        //4000 bytes per frame.
+        FrameCache cache = new FrameCache((f, c)->{
+            loads.incrementAndGet();
+            if(Thread.currentThread().getName().equals("frame-prefetch")){
+                backgroundLoads.incrementAndGet();
+                started.countDown();
+                try{
+                    release.await();
+                } catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return new FloatVoxelStore(10, 10, 10);
+        }, 1000);
+        cache.setFrameSize(4000);
+        Assert.assertFalse(cache.fits(4000));
+
+        //a prefetch would be pending, and get would wait for the background load.
+        cache.prefetch(0, 0);
+        cache.get(0, 0);
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(0, backgroundLoads.get());
+        Assert.assertEquals(0, cache.getUsedMemory());
+
+        cache.setBudget(8000);
+        cache.prefetch(1, 0);
+        //the load starts before the frame is requested.
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(2, loads.get());
+        release.countDown();
+
+        cache.get(1, 0);
+        cache.get(1, 0);
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(1, backgroundLoads.get());
+        Assert.assertEquals(4000, cache.getUsedMemory());
+    }
+}
@@ -0,0 +1,117 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.voxels;
+
+import deformablemesh.geometry.Box3D;
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.RayCastMesh;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class MeshOverlapCalculatorTest {
+
+    static DeformableMesh3D sphere(double r, double x, double y, double z){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(3);
+        double[] center = {x, y, z};
+        for(int i = 0; i<mesh.positions.length; i++){
+            mesh.positions[i] = mesh.positions[i]*r + center[i%3];
+        }
+        return new DeformableMesh3D(mesh.positions, mesh.connection_index, mesh.triangle_index);
+    }
+
+    @Test
+    public void lensVolume(){
+        double r = 0.2;
+        double d = 0.15;
+        DeformableMesh3D a = sphere(r, 0, 0, 0);
+        DeformableMesh3D b = sphere(r, d, 0, 0);
+        MeshOverlapCalculator calculator = new MeshOverlapCalculator(1.0/64);
+
+        double lens = Math.PI*(4*r + d)*(2*r - d)*(2*r - d)/12;
+        double volume = 4*Math.PI/3*r*r*r;
+        Assert.assertEquals(lens, calculator.getIntersectionVolume(a, b), lens*0.05);
+        Assert.assertEquals(lens/(2*volume - lens), calculator.getJaccardIndex(a, b), 0.02);
+
+        Assert.assertEquals(1, calculator.getJaccardIndex(a, a), 0.02);
+        Assert.assertEquals(0, calculator.getJaccardIndex(a, sphere(r, 0.5, 0, 0)), 0);
+    }
+
+    @Test
+    public void smallMeshesAreRefined(){
+        //smaller than a single voxel.
+        double r = 0.005;
+        DeformableMesh3D a = sphere(r, 0.001, 0, 0);
+        DeformableMesh3D b = sphere(r, 0.004, 0, 0);
+        MeshOverlapCalculator calculator = new MeshOverlapCalculator(1.0/64);
+        double dv = 0.003;
+        double lens = Math.PI*(4*r + dv)*(2*r - dv)*(2*r - dv)/12;
+        double volume = 4*Math.PI/3*r*r*r;
+        Assert.assertEquals(lens/(2*volume - lens), calculator.getJaccardIndex(a, b), 0.03);
+    }
+
+    @Test
+    public void thinBoxesAreBounded(){
+        MeshOverlapCalculator calculator = new MeshOverlapCalculator(1.0/64);
+        //wide and very thin, refining by volume alone gives billions of voxels in a slice.
+        Box3D thin = new Box3D(0, 0, 0, 0.5, 0.5, 1e-9);
+        double v = calculator.getVoxelSize(thin);
+        long w = (long)Math.ceil(0.5/v);
+        Assert.assertTrue(w*w <= 16L*MeshOverlapCalculator.defaultMinimumVoxels);
+
+        //barely touching spheres have a thin shared box.
+        double r = 0.1;
+        DeformableMesh3D a = sphere(r, 0, 0, 0);
+        DeformableMesh3D b = sphere(r, 0, 0, 2*r - 1e-7);
+        Assert.assertEquals(0, calculator.getIntersectionVolume(a, b), 1e-6);
+    }
+
+    @Test
+    public void matrix(){
+        List<DeformableMesh3D> one = Arrays.asList(
+                sphere(0.1, 0, 0, 0), sphere(0.1, 0.3, 0, 0), sphere(0.05, -0.3, 0.1, 0)
+        );
+        List<DeformableMesh3D> two = Arrays.asList(
+                sphere(0.1, 0.05, 0, 0), sphere(0.05, -0.28, 0.1, 0.02), sphere(0.1, 0, 0.4, 0), sphere(0.1, 0.25, 0.05, 0)
+        );
+        MeshOverlapCalculator calculator = new MeshOverlapCalculator(1.0/64);
+        double[][] ji = calculator.jaccardIndexMatrix(one, two);
+        Assert.assertEquals(one.size(), ji.length);
+        for(int i = 0; i<one.size(); i++){
+            Assert.assertEquals(two.size(), ji[i].length);
+            for(int j = 0; j<two.size(); j++){
+                Assert.assertEquals(calculator.getJaccardIndex(one.get(i), two.get(j)), ji[i][j], 1e-12);
+            }
+        }
+        Assert.assertTrue(ji[0][0] > 0.4);
+        Assert.assertTrue(ji[1][3] > 0.3);
+        Assert.assertTrue(ji[2][1] > 0.3);
+        Assert.assertEquals(0, ji[0][2], 0);
+        Assert.assertEquals(0, ji[2][0], 0);
+    }
+}
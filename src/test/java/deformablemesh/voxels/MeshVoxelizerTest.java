@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * Triangulated surface for deforming in 3D.
+ * %%
+ * Copyright (C) 2013 - 2023 University College London
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+package deformablemesh.voxels;
+
+import deformablemesh.DeformableMesh3DTools;
+import deformablemesh.MeshImageStack;
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.Intersection;
+import deformablemesh.geometry.RayCastMesh;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ShortProcessor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MeshVoxelizerTest {
+
+    static MeshImageStack blankStack(int w, int h, int d){
+        ImageStack stack = new ImageStack(w, h);
+        for(int i = 0; i<d; i++){
+            stack.addSlice(new ShortProcessor(w, h));
+        }
+        return new MeshImageStack(new ImagePlus("blank", stack));
+    }
+
+    @Test
+    public void sphereVolume(){
+        MeshImageStack stack = blankStack(48, 48, 48);
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(3);
+        double r = 0.3;
+        for(int i = 0; i<mesh.positions.length; i++){
+            mesh.positions[i] *= r;
+        }
+        MeshVoxelizer voxelizer = new MeshVoxelizer(stack, mesh);
+        List<int[]> pixels = voxelizer.getContainedPixels();
+
+        double expected = 4*Math.PI/3*Math.pow(r*48, 3);
+        Assert.assertEquals(expected, pixels.size(), expected*0.05);
+
+        int[][] labels = new int[48][48*48];
+        voxelizer.fill(labels, 3);
+        int count = 0;
+        for(int[] slice: labels){
+            for(int v: slice){
+                if(v == 3){
+                    count++;
+                }
+            }
+        }
+        Assert.assertEquals(pixels.size(), count);
+        for(int[] px: pixels){
+            Assert.assertEquals(3, labels[px[2]][px[0] + 48*px[1]]);
+        }
+    }
+
+    @Test
+    public void scanDirtyRemovesDuplicates(){
+        double[] normal = {1, 0, 0};
+        List<Intersection> sections = new ArrayList<>();
+        Intersection a = new Intersection(new double[]{0.1, 0, 0}, normal);
+        a.setDirty(1e-6);
+        Intersection b = new Intersection(new double[]{0.1 + 1e-8, 0, 0}, normal);
+        b.setDirty(1e-6);
+        Intersection c = new Intersection(new double[]{0.5, 0, 0}, normal);
+        c.setDirty(1e-6);
+        sections.add(a);
+        sections.add(c);
+        sections.add(b);
+        DeformableMesh3DTools.scanDirty(sections);
+        Assert.assertEquals(2, sections.size());
+        Assert.assertSame(c, sections.get(0));
+        Assert.assertSame(b, sections.get(1));
+    }
+}